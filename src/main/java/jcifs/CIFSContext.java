@@ -19,6 +19,8 @@ package jcifs;
 
 
 import java.net.URLStreamHandler;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
 
 
 /**
@@ -109,6 +111,24 @@ public interface CIFSContext {
     SidResolver getSIDResolver ();
 
 
+    /**
+     * @return the metrics collector for this context
+     */
+    MetricsCollector getMetrics ();
+
+
+    /**
+     * @return executor for background work of this context, shut down when the context is closed
+     */
+    ExecutorService getExecutor ();
+
+
+    /**
+     * @return scheduler for delayed and periodic tasks of this context, shut down when the context is closed
+     */
+    ScheduledExecutorService getScheduler ();
+
+
     /**
      * 
      * @return the used credentials
@@ -161,5 +181,4 @@ public interface CIFSContext {
      * @return whether new credentials are obtained
      */
     boolean renewCredentials ( String locationHint, Throwable error );
-
 }
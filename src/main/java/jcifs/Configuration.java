@@ -83,6 +83,29 @@ public interface Configuration {
     boolean isDfsConvertToFQDN ();
 
 
+    /**
+     * Order DFS referral targets by measured latency
+     * 
+     * Targets that recently failed are always tried last, this controls whether the remaining targets
+     * are ordered by their observed connect latency instead of the order returned by the server.
+     * Targets that have not been measured yet are probed in the background. Only the time to establish new
+     * connections is measured. Enabling this overrides the site cost based order chosen by the server.
+     * 
+     * Property <tt>jcifs.smb.client.dfs.preferLowLatency</tt> (boolean, default false)
+     * 
+     * @return whether to prefer the DFS target with the lowest latency
+     */
+    boolean isDfsPreferLowLatency ();
+
+
+    /**
+     * Property <tt>jcifs.smb.client.dfs.targetCooldown</tt> (long, default 60000)
+     * 
+     * @return time in milliseconds a DFS target that failed to connect is only used as a last resort
+     */
+    long getDfsTargetCooldown ();
+
+
     /**
      * Minimum protocol version
      * 
@@ -233,6 +256,62 @@ public interface Configuration {
     int getConnTimeout ();
 
 
+    /**
+     * Property <tt>jcifs.smb.client.connRaceDelay</tt> (int, default 250)
+     * 
+     * When a host resolves to multiple addresses, or port 139 failover is enabled, connection attempts
+     * are started this many milliseconds apart, racing each other, instead of one after another.
+     * 
+     * @return delay between staggered connection attempts, 0 to try one after another
+     */
+    int getConnRaceDelay ();
+
+
+    /**
+     * Property <tt>jcifs.smb.client.negotiationCacheTtl</tt> (long, default 3600)
+     * 
+     * Servers known to speak SMB2 are negotiated with directly, skipping the SMB1 multi-protocol negotiate.
+     * 
+     * @return time to remember the negotiation result of a server, in seconds, 0 to disable
+     */
+    long getNegotiationCacheTtl ();
+
+
+    /**
+     * Property <tt>jcifs.smb.client.rejectDialectDowngrade</tt> (boolean, default false)
+     * 
+     * If enabled, connections to a server remembered in the negotiation cache fail when they negotiate a lower
+     * dialect than before, until the entry expires (<tt>jcifs.smb.client.negotiationCacheTtl</tt>). Otherwise the
+     * downgrade is logged and the remembered result replaced, which is required for servers that were reconfigured
+     * or for names resolving to servers with different capabilities.
+     * 
+     * @return whether to reject connections negotiating a lower dialect than previously seen
+     */
+    boolean isRejectDialectDowngrade ();
+
+
+    /**
+     * Property <tt>jcifs.smb.client.keepAliveInterval</tt> (int, default 0)
+     * 
+     * Pooled SMB2 transports that have not seen any traffic for this long are sent an echo request. This keeps
+     * them from being dropped by the idle timeout or by firewalls, and measures the round trip time.
+     * 
+     * @return interval in milliseconds after which idle connections are probed, 0 to disable
+     */
+    int getKeepAliveInterval ();
+
+
+    /**
+     * Property <tt>jcifs.smb.client.keepAliveMaxIdle</tt> (int, default 2)
+     * 
+     * Only applies if keep alive is enabled. Idle connections beyond this number are closed, the most recently used
+     * ones are kept.
+     * 
+     * @return maximum number of unused connections to keep warm per server, -1 for no limit
+     */
+    int getKeepAliveMaxIdle ();
+
+
     /**
      * Property <tt>jcifs.smb.client.sessionTimeout</tt> (int, default 35000)
      * 
@@ -242,6 +321,18 @@ public interface Configuration {
     int getSessionTimeout ();
 
 
+    /**
+     * Property <tt>jcifs.smb.client.sessionRenewalMargin</tt> (int, default 300)
+     * 
+     * SMB2 sessions authenticated with a mechanism that has a limited lifetime (kerberos) are reauthenticated in
+     * the background this long before they would expire, so that requests do not run into the expiration.
+     * SMB1 has no reauthentication of an existing session, SMB1 sessions are therefore not renewed.
+     * 
+     * @return time before authentication expiration at which sessions in use are renewed, in seconds, 0 to disable
+     */
+    int getSessionRenewalMargin ();
+
+
     /**
      * 
      * Property <tt>jcifs.smb.client.responseTimeout</tt> (int, default 30000)
@@ -353,6 +444,17 @@ public interface Configuration {
     boolean isAllowNTLMFallback ();
 
 
+    /**
+     * Property <tt>jcifs.smb.kerberosTicketRenewalMargin</tt> (int, default 300)
+     * 
+     * Kerberos service tickets are shared between sessions for the same client and service principal. A ticket
+     * closer to its expiration than this is no longer handed out, so that a fresh one is requested ahead of time.
+     * 
+     * @return time before service ticket expiration at which a new ticket is requested, in seconds, -1 to disable the service ticket cache
+     */
+    int getKerberosTicketRenewalMargin ();
+
+
     /**
      * Property <tt>jcifs.smb.useRawNTLM</tt> (boolean, default false)
      * 
@@ -608,6 +710,8 @@ public interface Configuration {
 
 
     /**
+     * 
+     * Property <tt>jcifs.smb.client.maximumBufferSize</tt> (int, default 65536)
      * 
      * @return the maximum size of IO buffers, limits the maximum message size
      */
@@ -650,6 +754,33 @@ public interface Configuration {
     int getListSize ();
 
 
+    /**
+     * 
+     * Property <tt>jcifs.smb.client.listPrefetch</tt> (boolean, default true)
+     * 
+     * If enabled, the next page of a SMB2 directory listing is requested in the background
+     * while the current one is being consumed.
+     * 
+     * @return whether to prefetch directory listing pages
+     */
+    boolean isListPrefetch ();
+
+
+    /**
+     * 
+     * Property <tt>jcifs.smb.client.largeMtuEnabled</tt> (boolean, default false)
+     * 
+     * If enabled, support for multi-credit messages (LARGE_MTU) is announced to SMB 2.1+ servers. These are
+     * currently only used for directory listings, whose responses are limited by
+     * <tt>jcifs.smb.client.listSize</tt>, <tt>jcifs.smb.client.maximumBufferSize</tt> and
+     * <tt>jcifs.smb.client.transaction_buf_size</tt>. With their defaults responses always fit a single credit, so all
+     * three need to be raised above 65536 for this to have any effect.
+     * 
+     * @return whether to announce multi-credit support
+     */
+    boolean isLargeMtuEnabled ();
+
+
     /**
      * 
      * 
@@ -660,6 +791,37 @@ public interface Configuration {
     long getAttributeCacheTimeout ();
 
 
+    /**
+     * 
+     * Property <tt>jcifs.smb.client.metadataCacheSize</tt> (int, default 0)
+     * 
+     * If enabled, file metadata (attributes, sizes, times and existence) loaded through one resource object is shared,
+     * per tree, with other resource objects for the same path for the duration of the attribute cache timeout
+     * (<tt>jcifs.smb.client.attrExpirationPeriod</tt>). Changes made through this context invalidate the shared
+     * entries, but changes made by other clients or contexts are not seen by any resource object until the entry
+     * expires. Without sharing, only the resource object that loaded the metadata caches it. 0 disables sharing.
+     * 
+     * @return maximum number of file metadata entries cached per tree, 0 to not share metadata
+     */
+    int getMetadataCacheSize ();
+
+
+    /**
+     * Property <tt>jcifs.smb.client.sidCacheSize</tt> (int, default 10000)
+     * 
+     * @return maximum number of resolved SIDs to cache, least recently used entries are evicted first
+     */
+    int getSidCacheSize ();
+
+
+    /**
+     * Property <tt>jcifs.smb.client.sidCacheTtl</tt> (long, default 3600)
+     * 
+     * @return time to live, in seconds, for resolved SID names
+     */
+    long getSidCacheTtl ();
+
+
     /**
      * 
      * 
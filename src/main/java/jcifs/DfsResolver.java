@@ -18,6 +18,10 @@
 package jcifs;
 
 
+import java.util.Collection;
+import java.util.List;
+
+
 /**
  * This is an internal API.
  * 
@@ -71,4 +75,51 @@ public interface DfsResolver {
      */
     void cache ( CIFSContext tc, String path, DfsReferralData dr );
 
+
+    /**
+     * Determine the order in which the targets of a referral should be tried
+     * 
+     * @param tc
+     * @param dr
+     *            referral, all targets reachable through {@link DfsReferralData#next()} are considered
+     * @return the targets, preferred first
+     */
+    List<DfsReferralData> orderTargets ( CIFSContext tc, DfsReferralData dr );
+
+
+    /**
+     * Record a successful connection to a target
+     * 
+     * @param server
+     * @param latency
+     *            time a new connection took to connect and negotiate in milliseconds, -1 if an existing connection was
+     *            used
+     */
+    void targetConnected ( String server, long latency );
+
+
+    /**
+     * Record a failed connection attempt to a target
+     * 
+     * @param tc
+     * @param server
+     */
+    void targetFailed ( CIFSContext tc, String server );
+
+
+    /**
+     * Record the round trip time of a request sent to a target
+     * 
+     * @param server
+     * @param latency
+     *            in milliseconds
+     */
+    void requestCompleted ( String server, long latency );
+
+
+    /**
+     * @return statistics for all targets seen so far
+     */
+    Collection<DfsTargetStatistics> getTargetStatistics ();
+
 }
\ No newline at end of file
@@ -0,0 +1,63 @@
+/*
+ * © 2026 agent <agent@local>
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package jcifs;
+
+
+/**
+ * Health and latency information collected for a DFS target server
+ * 
+ * @author agent
+ *
+ */
+public interface DfsTargetStatistics {
+
+    /**
+     * @return the target server name
+     */
+    String getServer ();
+
+
+    /**
+     * @return smoothed time in milliseconds it took to connect to the target, -1 if not measured yet
+     */
+    long getConnectLatency ();
+
+
+    /**
+     * @return smoothed request round trip time in milliseconds, -1 if not measured yet
+     */
+    long getRequestLatency ();
+
+
+    /**
+     * @return number of successful connections
+     */
+    long getSuccessCount ();
+
+
+    /**
+     * @return number of failed connections
+     */
+    long getFailureCount ();
+
+
+    /**
+     * @return whether the target is not in its failure cooldown period
+     */
+    boolean isAvailable ();
+}
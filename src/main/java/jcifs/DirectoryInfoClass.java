@@ -0,0 +1,52 @@
+/*
+ * © 2026 agent <agent@local>
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package jcifs;
+
+
+/**
+ * File information classes that can be used for directory listings
+ * 
+ * Leaner information classes reduce both the amount of data transferred and the decoding
+ * cost for large listings. These are only honored for SMB2+, SMB1 listings always use
+ * {@link #BOTH_DIRECTORY_INFO}.
+ * 
+ * @author agent
+ *
+ */
+public enum DirectoryInfoClass {
+
+    /**
+     * Full information including 8.3 short names (default)
+     */
+    BOTH_DIRECTORY_INFO,
+
+    /**
+     * File names only, resources returned will not have any attributes loaded
+     */
+    NAMES_INFO,
+
+    /**
+     * Full information including the server file id, without short names
+     */
+    ID_FULL_DIRECTORY_INFO,
+
+    /**
+     * Full information including the server file id and 8.3 short names
+     */
+    ID_BOTH_DIRECTORY_INFO
+}
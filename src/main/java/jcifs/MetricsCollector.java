@@ -0,0 +1,140 @@
+/*
+ * © 2026 agent <agent@local>
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package jcifs;
+
+
+/**
+ * Receives measurements about the operations performed by the library
+ * 
+ * Implementations can feed these into a metrics library of choice, e.g. to build per command latency histograms,
+ * in-flight gauges, throughput counters and cache hit rates. The callbacks are invoked synchronously on the threads
+ * performing the operations, so they must be thread safe and should not block.
+ * 
+ * The default implementation {@link jcifs.smb.NoopMetricsCollector} does nothing, a collector can be set using
+ * {@link jcifs.context.BaseContext#BaseContext(Configuration, MetricsCollector)}.
+ * 
+ * @see CIFSContext#getMetrics()
+ * @author agent
+ *
+ */
+public interface MetricsCollector {
+
+    /**
+     * Buffer cache, a hit means a buffer could be reused
+     */
+    String CACHE_BUFFER = "buffer";
+
+    /**
+     * DFS domain controller referral cache
+     */
+    String CACHE_DFS_DC = "dfs.dc";
+
+    /**
+     * DFS root referral cache
+     */
+    String CACHE_DFS_ROOT = "dfs.root";
+
+    /**
+     * DFS link referral cache, negative entries count as hits
+     */
+    String CACHE_DFS_LINK = "dfs.link";
+
+    /**
+     * SID name cache
+     */
+    String CACHE_SID = "sid";
+
+    /**
+     * Retry of a request on a tree connection
+     */
+    String RETRY_SEND = "send";
+
+    /**
+     * Retry of a DFS resolution
+     */
+    String RETRY_DFS = "dfs";
+
+
+    /**
+     * A request is about to be sent
+     * 
+     * @param command
+     *            request command name
+     */
+    void requestStarted ( String command );
+
+
+    /**
+     * A request has completed
+     * 
+     * Called exactly once for every {@link #requestStarted(String)}.
+     * 
+     * @param command
+     *            request command name
+     * @param durationNanos
+     *            time from sending the request until the response was received or the request failed
+     * @param success
+     *            whether a response was received without an error status
+     */
+    void requestCompleted ( String command, long durationNanos, boolean success );
+
+
+    /**
+     * @param bytes
+     *            number of bytes written to a transport
+     */
+    void bytesSent ( int bytes );
+
+
+    /**
+     * @param bytes
+     *            number of bytes read from a transport
+     */
+    void bytesReceived ( int bytes );
+
+
+    /**
+     * A request had to wait for the server to grant credits
+     * 
+     * @param waitNanos
+     *            time spent waiting
+     * @param acquired
+     *            whether the credits were acquired, false if the wait timed out
+     */
+    void creditsStarved ( long waitNanos, boolean acquired );
+
+
+    /**
+     * An operation failed and is retried
+     * 
+     * @param operation
+     *            one of the RETRY_ constants
+     */
+    void retried ( String operation );
+
+
+    /**
+     * A cache lookup was performed
+     * 
+     * @param cache
+     *            one of the CACHE_ constants
+     * @param hit
+     *            whether the lookup was served from the cache
+     */
+    void cacheAccess ( String cache, boolean hit );
+}
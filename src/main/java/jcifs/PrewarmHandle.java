@@ -0,0 +1,53 @@
+/*
+ * © 2026 agent <agent@local>
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package jcifs;
+
+
+/**
+ * Handle for connections kept established to a set of shares
+ * 
+ * @see jcifs.smb.SmbPrewarmer#prewarm(CIFSContext, java.util.Collection, long)
+ * @author agent
+ *
+ */
+public interface PrewarmHandle extends AutoCloseable {
+
+    /**
+     * @return whether all shares were connected at the last attempt
+     */
+    boolean isWarm ();
+
+
+    /**
+     * Re-establish connections that have been lost
+     * 
+     * @return whether all shares are connected
+     */
+    boolean refresh ();
+
+
+    /**
+     * Stop refreshing and release the connections
+     * 
+     * {@inheritDoc}
+     *
+     * @see java.lang.AutoCloseable#close()
+     */
+    @Override
+    void close () throws CIFSException;
+}
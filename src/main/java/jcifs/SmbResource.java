@@ -472,6 +472,28 @@ public interface SmbResource extends AutoCloseable {
     SmbWatchHandle watch ( int filter, boolean recursive ) throws CIFSException;
 
 
+    /**
+     * Creates a continuous directory watch
+     * 
+     * A change notify request is kept outstanding for the directory and re-armed as soon as the server
+     * responds, the reported changes are passed to the listener. Waiting for the response blocks a thread of the
+     * context's executor ({@link CIFSContext#getExecutor()}) for as long as the watch is active, listener delivery
+     * runs on further executor threads. Changes occurring before the request is re-armed are collected by the server
+     * and reported with the next response, unless they overflow the notify buffer
+     * ({@link SmbWatchListener#changed(java.util.List)}).
+     * 
+     * @param filter
+     *            see constants in {@link FileNotifyInformation}
+     * @param recursive
+     *            whether to also watch subdirectories
+     * @param listener
+     *            receives the changes
+     * @return watch registration, needs to be closed when finished
+     * @throws CIFSException
+     */
+    SmbWatchRegistration watch ( int filter, boolean recursive, SmbWatchListener listener ) throws CIFSException;
+
+
     /**
      * Return the resolved owner group SID for this file or directory
      * 
@@ -742,4 +764,21 @@ public interface SmbResource extends AutoCloseable {
      */
     CloseableIterator<SmbResource> children ( ResourceFilter filter ) throws CIFSException;
 
+
+    /**
+     * Fetch children matching pattern, server-side filtering, using a specific file information class
+     * 
+     * Depending on the information class, the returned resources will carry less information (no attributes
+     * for {@link DirectoryInfoClass#NAMES_INFO}) or the server file id (available through {@link #fileIndex()}
+     * without further requests).
+     * 
+     * @param wildcard
+     * @param infoClass
+     *            file information class to use for the listing
+     * @return an iterator over the child resources
+     * @see SmbResource#children(String)
+     * @throws CIFSException
+     */
+    CloseableIterator<SmbResource> children ( String wildcard, DirectoryInfoClass infoClass ) throws CIFSException;
+
 }
\ No newline at end of file
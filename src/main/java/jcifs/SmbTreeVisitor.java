@@ -0,0 +1,56 @@
+/*
+ * © 2026 agent <agent@local>
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package jcifs;
+
+
+/**
+ * Callback interface for recursive tree walks
+ * 
+ * Implementations will be called concurrently from multiple threads and therefore need to be thread-safe.
+ * 
+ * Resources passed to the callbacks are closed once the walker is done with them, implementations
+ * must not hold on to them after returning.
+ * 
+ * @author agent
+ *
+ */
+public interface SmbTreeVisitor {
+
+    /**
+     * Called for every resource encountered that is accepted by the configured filter
+     * 
+     * @param resource
+     * @param depth
+     *            depth of the resource relative to the walk root, direct children have depth 1
+     * @return for directories, whether to descend into it, ignored for other resources
+     * @throws CIFSException
+     *             aborts the walk
+     */
+    boolean visit ( SmbResource resource, int depth ) throws CIFSException;
+
+
+    /**
+     * Called when enumerating a directory fails
+     * 
+     * @param directory
+     * @param e
+     * @throws CIFSException
+     *             to abort the walk, return normally to continue with other directories
+     */
+    void visitFailed ( SmbResource directory, CIFSException e ) throws CIFSException;
+}
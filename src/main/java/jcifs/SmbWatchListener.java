@@ -0,0 +1,55 @@
+/*
+ * © 2026 agent <agent@local>
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package jcifs;
+
+
+import java.util.List;
+
+
+/**
+ * Receives change notifications from a continuous directory watch
+ * 
+ * Callbacks for a single watch are delivered sequentially and in order, but not on the thread that
+ * waits for the server's response, so a slow listener does not delay re-arming the watch.
+ * 
+ * @see SmbResource#watch(int, boolean, SmbWatchListener)
+ * @author agent
+ *
+ */
+public interface SmbWatchListener {
+
+    /**
+     * Called when the server reported a set of changes
+     * 
+     * If the server could not fulfill the request because the changes did not fit the buffer
+     * an empty list is passed, the watched directory should be re-enumerated in that case.
+     * 
+     * @param changes
+     */
+    void changed ( List<FileNotifyInformation> changes );
+
+
+    /**
+     * Called when the watch failed, or was cancelled by the server, and has been stopped
+     * 
+     * Not called when the watch is stopped through {@link SmbWatchRegistration#close()}.
+     * 
+     * @param e
+     */
+    void failed ( CIFSException e );
+}
@@ -126,7 +126,21 @@ public class BaseConfiguration implements Configuration {
     protected int bufferCacheSize = 16;
     protected int smbListSize = 65435;
     protected int smbListCount = 200;
+    protected boolean smbListPrefetch = true;
+    protected boolean largeMtuEnabled = false;
     protected long smbAttributeExpiration = 5000L;
+    protected int sessionRenewalMargin = 300;
+    protected int kerberosTicketRenewalMargin = 300;
+    protected int keepAliveMaxIdle = 2;
+    protected int keepAliveInterval = 0;
+    protected long negotiationCacheTtl = 3600;
+    protected boolean rejectDialectDowngrade = false;
+    protected int connRaceDelay = 250;
+    protected long sidCacheTtl = 3600;
+    protected int sidCacheSize = 10000;
+    protected long dfsTargetCooldown = 60000L;
+    protected boolean dfsPreferLowLatency = false;
+    protected int smbMetadataCacheSize = 0;
     protected boolean ignoreCopyToException = false;
     protected int maxRequestRetries = 2;
     protected boolean traceResourceUsage;
@@ -194,6 +208,36 @@ public class BaseConfiguration implements Configuration {
     }
 
 
+    @Override
+    public int getConnRaceDelay () {
+        return this.connRaceDelay;
+    }
+
+
+    @Override
+    public long getNegotiationCacheTtl () {
+        return this.negotiationCacheTtl;
+    }
+
+
+    @Override
+    public boolean isRejectDialectDowngrade () {
+        return this.rejectDialectDowngrade;
+    }
+
+
+    @Override
+    public int getKeepAliveInterval () {
+        return this.keepAliveInterval;
+    }
+
+
+    @Override
+    public int getKeepAliveMaxIdle () {
+        return this.keepAliveMaxIdle;
+    }
+
+
     @Override
     public int getResponseTimeout () {
         return this.smbResponseTimeout;
@@ -212,6 +256,12 @@ public class BaseConfiguration implements Configuration {
     }
 
 
+    @Override
+    public int getSessionRenewalMargin () {
+        return this.sessionRenewalMargin;
+    }
+
+
     @Override
     public int getSendBufferSize () {
         return this.smbSendBufferSize;
@@ -339,6 +389,18 @@ public class BaseConfiguration implements Configuration {
     }
 
 
+    @Override
+    public boolean isDfsPreferLowLatency () {
+        return this.dfsPreferLowLatency;
+    }
+
+
+    @Override
+    public long getDfsTargetCooldown () {
+        return this.dfsTargetCooldown;
+    }
+
+
     @Override
     public String getLogonShare () {
         return this.logonShare;
@@ -381,6 +443,12 @@ public class BaseConfiguration implements Configuration {
     }
 
 
+    @Override
+    public int getKerberosTicketRenewalMargin () {
+        return this.kerberosTicketRenewalMargin;
+    }
+
+
     @Override
     public boolean isUseRawNTLM () {
         return this.useRawNTLM;
@@ -567,12 +635,42 @@ public class BaseConfiguration implements Configuration {
     }
 
 
+    @Override
+    public boolean isListPrefetch () {
+        return this.smbListPrefetch;
+    }
+
+
+    @Override
+    public boolean isLargeMtuEnabled () {
+        return this.largeMtuEnabled;
+    }
+
+
     @Override
     public long getAttributeCacheTimeout () {
         return this.smbAttributeExpiration;
     }
 
 
+    @Override
+    public int getMetadataCacheSize () {
+        return this.smbMetadataCacheSize;
+    }
+
+
+    @Override
+    public int getSidCacheSize () {
+        return this.sidCacheSize;
+    }
+
+
+    @Override
+    public long getSidCacheTtl () {
+        return this.sidCacheTtl;
+    }
+
+
     @Override
     public boolean isIgnoreCopyToException () {
         return this.ignoreCopyToException;
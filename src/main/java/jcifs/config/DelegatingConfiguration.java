@@ -168,6 +168,28 @@ public class DelegatingConfiguration implements Configuration {
     }
 
 
+    /**
+     * {@inheritDoc}
+     *
+     * @see jcifs.Configuration#isDfsPreferLowLatency()
+     */
+    @Override
+    public boolean isDfsPreferLowLatency () {
+        return this.delegate.isDfsPreferLowLatency();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see jcifs.Configuration#getDfsTargetCooldown()
+     */
+    @Override
+    public long getDfsTargetCooldown () {
+        return this.delegate.getDfsTargetCooldown();
+    }
+
+
     /**
      * {@inheritDoc}
      * 
@@ -312,6 +334,61 @@ public class DelegatingConfiguration implements Configuration {
     }
 
 
+    /**
+     * {@inheritDoc}
+     *
+     * @see jcifs.Configuration#getConnRaceDelay()
+     */
+    @Override
+    public int getConnRaceDelay () {
+        return this.delegate.getConnRaceDelay();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see jcifs.Configuration#getNegotiationCacheTtl()
+     */
+    @Override
+    public long getNegotiationCacheTtl () {
+        return this.delegate.getNegotiationCacheTtl();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see jcifs.Configuration#isRejectDialectDowngrade()
+     */
+    @Override
+    public boolean isRejectDialectDowngrade () {
+        return this.delegate.isRejectDialectDowngrade();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see jcifs.Configuration#getKeepAliveInterval()
+     */
+    @Override
+    public int getKeepAliveInterval () {
+        return this.delegate.getKeepAliveInterval();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see jcifs.Configuration#getKeepAliveMaxIdle()
+     */
+    @Override
+    public int getKeepAliveMaxIdle () {
+        return this.delegate.getKeepAliveMaxIdle();
+    }
+
+
     /**
      * {@inheritDoc}
      *
@@ -323,6 +400,17 @@ public class DelegatingConfiguration implements Configuration {
     }
 
 
+    /**
+     * {@inheritDoc}
+     *
+     * @see jcifs.Configuration#getSessionRenewalMargin()
+     */
+    @Override
+    public int getSessionRenewalMargin () {
+        return this.delegate.getSessionRenewalMargin();
+    }
+
+
     /**
      * {@inheritDoc}
      * 
@@ -443,6 +531,17 @@ public class DelegatingConfiguration implements Configuration {
     }
 
 
+    /**
+     * {@inheritDoc}
+     *
+     * @see jcifs.Configuration#getKerberosTicketRenewalMargin()
+     */
+    @Override
+    public int getKerberosTicketRenewalMargin () {
+        return this.delegate.getKerberosTicketRenewalMargin();
+    }
+
+
     /**
      * {@inheritDoc}
      *
@@ -795,6 +894,28 @@ public class DelegatingConfiguration implements Configuration {
     }
 
 
+    /**
+     * {@inheritDoc}
+     *
+     * @see jcifs.Configuration#isListPrefetch()
+     */
+    @Override
+    public boolean isListPrefetch () {
+        return this.delegate.isListPrefetch();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see jcifs.Configuration#isLargeMtuEnabled()
+     */
+    @Override
+    public boolean isLargeMtuEnabled () {
+        return this.delegate.isLargeMtuEnabled();
+    }
+
+
     /**
      * {@inheritDoc}
      * 
@@ -806,6 +927,39 @@ public class DelegatingConfiguration implements Configuration {
     }
 
 
+    /**
+     * {@inheritDoc}
+     *
+     * @see jcifs.Configuration#getMetadataCacheSize()
+     */
+    @Override
+    public int getMetadataCacheSize () {
+        return this.delegate.getMetadataCacheSize();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see jcifs.Configuration#getSidCacheSize()
+     */
+    @Override
+    public int getSidCacheSize () {
+        return this.delegate.getSidCacheSize();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see jcifs.Configuration#getSidCacheTtl()
+     */
+    @Override
+    public long getSidCacheTtl () {
+        return this.delegate.getSidCacheTtl();
+    }
+
+
     /**
      * {@inheritDoc}
      * 
@@ -129,12 +129,27 @@ public final class PropertyConfiguration extends BaseConfiguration implements Co
         this.winsServer = Config.getInetAddressArray(p, "jcifs.netbios.wins", ",", new InetAddress[0]);
 
         this.transactionBufferSize = Config.getInt(p, "jcifs.smb.client.transaction_buf_size", 0xFFFF) - 512;
+        this.maximumBufferSize = Config.getInt(p, "jcifs.smb.client.maximumBufferSize", 0x10000);
         this.bufferCacheSize = Config.getInt(p, "jcifs.smb.maxBuffers", 16);
 
         this.smbListSize = Config.getInt(p, "jcifs.smb.client.listSize", 65435);
         this.smbListCount = Config.getInt(p, "jcifs.smb.client.listCount", 200);
+        this.smbListPrefetch = Config.getBoolean(p, "jcifs.smb.client.listPrefetch", true);
+        this.largeMtuEnabled = Config.getBoolean(p, "jcifs.smb.client.largeMtuEnabled", false);
 
         this.smbAttributeExpiration = Config.getLong(p, "jcifs.smb.client.attrExpirationPeriod", 5000L);
+        this.sessionRenewalMargin = Config.getInt(p, "jcifs.smb.client.sessionRenewalMargin", 300);
+        this.kerberosTicketRenewalMargin = Config.getInt(p, "jcifs.smb.kerberosTicketRenewalMargin", 300);
+        this.keepAliveMaxIdle = Config.getInt(p, "jcifs.smb.client.keepAliveMaxIdle", 2);
+        this.keepAliveInterval = Config.getInt(p, "jcifs.smb.client.keepAliveInterval", 0);
+        this.negotiationCacheTtl = Config.getLong(p, "jcifs.smb.client.negotiationCacheTtl", 3600);
+        this.rejectDialectDowngrade = Config.getBoolean(p, "jcifs.smb.client.rejectDialectDowngrade", false);
+        this.connRaceDelay = Config.getInt(p, "jcifs.smb.client.connRaceDelay", 250);
+        this.sidCacheTtl = Config.getLong(p, "jcifs.smb.client.sidCacheTtl", 3600);
+        this.sidCacheSize = Config.getInt(p, "jcifs.smb.client.sidCacheSize", 10000);
+        this.dfsTargetCooldown = Config.getLong(p, "jcifs.smb.client.dfs.targetCooldown", 60000L);
+        this.dfsPreferLowLatency = Config.getBoolean(p, "jcifs.smb.client.dfs.preferLowLatency", false);
+        this.smbMetadataCacheSize = Config.getInt(p, "jcifs.smb.client.metadataCacheSize", 0);
         this.ignoreCopyToException = Config.getBoolean(p, "jcifs.smb.client.ignoreCopyToException", false);
         this.broadcastAddress = Config.getInetAddress(p, "jcifs.netbios.baddr", null);
 
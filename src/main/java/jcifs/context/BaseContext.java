@@ -20,12 +20,19 @@ package jcifs.context;
 
 import java.net.MalformedURLException;
 import java.net.URLStreamHandler;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import jcifs.BufferCache;
 import jcifs.CIFSException;
 import jcifs.Configuration;
 import jcifs.Credentials;
 import jcifs.DfsResolver;
+import jcifs.MetricsCollector;
 import jcifs.NameServiceClient;
 import jcifs.SidResolver;
 import jcifs.SmbPipeResource;
@@ -36,11 +43,13 @@ import jcifs.smb.BufferCacheImpl;
 import jcifs.smb.CredentialsInternal;
 import jcifs.smb.DfsImpl;
 import jcifs.smb.Handler;
+import jcifs.smb.NoopMetricsCollector;
 import jcifs.smb.NtlmPasswordAuthenticator;
 import jcifs.smb.SIDCacheImpl;
 import jcifs.smb.SmbFile;
 import jcifs.smb.SmbNamedPipe;
 import jcifs.smb.SmbTransportPoolImpl;
+import jcifs.util.NamedThreadFactory;
 
 
 /**
@@ -57,6 +66,10 @@ public class BaseContext extends AbstractCIFSContext {
     private final BufferCache bufferCache;
     private final SmbTransportPool transportPool;
     private final CredentialsInternal defaultCredentials;
+    private final MetricsCollector metrics;
+    private final NamedThreadFactory threadFactory = new NamedThreadFactory("JCIFS-Worker-");
+    private ExecutorService executor;
+    private ScheduledExecutorService scheduler;
 
 
     /**
@@ -67,12 +80,26 @@ public class BaseContext extends AbstractCIFSContext {
      * 
      */
     public BaseContext ( Configuration config ) {
+        this(config, NoopMetricsCollector.INSTANCE);
+    }
+
+
+    /**
+     * Construct a context reporting to a metrics collector
+     * 
+     * @param config
+     *            configuration for the context
+     * @param metrics
+     *            collector receiving measurements for this context
+     */
+    public BaseContext ( Configuration config, MetricsCollector metrics ) {
         this.config = config;
+        this.metrics = metrics;
         this.dfs = new DfsImpl(this);
         this.sidResolver = new SIDCacheImpl(this);
         this.urlHandler = new Handler(this);
         this.nameServiceClient = new NameServiceClientImpl(this);
-        this.bufferCache = new BufferCacheImpl(this.config);
+        this.bufferCache = new BufferCacheImpl(this.config, metrics);
         this.transportPool = new SmbTransportPoolImpl();
         String defUser = config.getDefaultUsername();
         String defPassword = config.getDefaultPassword();
@@ -192,6 +219,51 @@ public class BaseContext extends AbstractCIFSContext {
     }
 
 
+    /**
+     * {@inheritDoc}
+     *
+     * @see jcifs.CIFSContext#getMetrics()
+     */
+    @Override
+    public MetricsCollector getMetrics () {
+        return this.metrics;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * 
+     * Created on first use, a new executor is created if the context is used again after being closed.
+     *
+     * @see jcifs.CIFSContext#getExecutor()
+     */
+    @Override
+    public synchronized ExecutorService getExecutor () {
+        if ( this.executor == null ) {
+            this.executor = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), this.threadFactory);
+        }
+        return this.executor;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * 
+     * Tasks run on a single thread and must hand off blocking work to {@link #getExecutor()}.
+     *
+     * @see jcifs.CIFSContext#getScheduler()
+     */
+    @Override
+    public synchronized ScheduledExecutorService getScheduler () {
+        if ( this.scheduler == null ) {
+            ScheduledThreadPoolExecutor s = new ScheduledThreadPoolExecutor(1, this.threadFactory);
+            s.setRemoveOnCancelPolicy(true);
+            this.scheduler = s;
+        }
+        return this.scheduler;
+    }
+
+
     /**
      * {@inheritDoc}
      *
@@ -212,6 +284,16 @@ public class BaseContext extends AbstractCIFSContext {
     public boolean close () throws CIFSException {
         boolean inUse = super.close();
         inUse |= this.transportPool.close();
+        synchronized ( this ) {
+            if ( this.scheduler != null ) {
+                this.scheduler.shutdownNow();
+                this.scheduler = null;
+            }
+            if ( this.executor != null ) {
+                this.executor.shutdownNow();
+                this.executor = null;
+            }
+        }
         return inUse;
     }
 
@@ -20,6 +20,8 @@ package jcifs.context;
 
 import java.net.MalformedURLException;
 import java.net.URLStreamHandler;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
 
 import jcifs.BufferCache;
 import jcifs.CIFSContext;
@@ -27,6 +29,7 @@ import jcifs.CIFSException;
 import jcifs.Configuration;
 import jcifs.Credentials;
 import jcifs.DfsResolver;
+import jcifs.MetricsCollector;
 import jcifs.NameServiceClient;
 import jcifs.SidResolver;
 import jcifs.SmbPipeResource;
@@ -130,6 +133,24 @@ public class CIFSContextWrapper implements CIFSContext {
     }
 
 
+    @Override
+    public MetricsCollector getMetrics () {
+        return this.delegate.getMetrics();
+    }
+
+
+    @Override
+    public ExecutorService getExecutor () {
+        return this.delegate.getExecutor();
+    }
+
+
+    @Override
+    public ScheduledExecutorService getScheduler () {
+        return this.delegate.getScheduler();
+    }
+
+
     @Override
     public boolean hasDefaultCredentials () {
         return this.delegate.hasDefaultCredentials();
@@ -0,0 +1,352 @@
+/*
+ * © 2026 agent <agent@local>
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package jcifs.http;
+
+
+import java.io.IOException;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jcifs.Address;
+import jcifs.CIFSContext;
+import jcifs.netbios.UniAddress;
+import jcifs.smb.NtlmChallenge;
+import jcifs.smb.SmbSessionInternal;
+import jcifs.smb.SmbTransportInternal;
+
+
+/**
+ * Obtains NTLM challenges from the domain controllers of a domain
+ * 
+ * Challenges are requested from the domain controllers in round-robin order, without any global locking. Each
+ * domain controller is contacted using the pooled connection to it, as the challenge is bound to the connection
+ * that later validates the response. Controllers that fail are skipped for a back-off period. An expired controller
+ * list is refreshed by a single request, concurrent requests continue to use the old list meanwhile.
+ * 
+ * @author agent
+ */
+public class NtlmChallengeProvider {
+
+    private static final Logger log = LoggerFactory.getLogger(NtlmChallengeProvider.class);
+
+    private static final long LOOKUP_FAILURE_RETRY = TimeUnit.MINUTES.toMillis(15);
+
+    private final CIFSContext context;
+    private final String domain;
+    private final int maxControllers;
+    private final long listTtl;
+    private final long failureBackoff;
+
+    private final ReentrantLock refreshLock = new ReentrantLock();
+    private final AtomicInteger counter = new AtomicInteger();
+    private volatile DomainController[] controllers;
+    private volatile long listExpiration;
+
+
+    /**
+     * @param context
+     *            context to connect to the domain controllers with
+     * @param domain
+     *            domain to get challenges for
+     * @param maxControllers
+     *            maximum number of domain controllers to use
+     * @param listTtl
+     *            time in milliseconds after which the domain controller list is refreshed
+     * @param failureBackoff
+     *            time in milliseconds a failed domain controller is not used
+     */
+    public NtlmChallengeProvider ( CIFSContext context, String domain, int maxControllers, long listTtl, long failureBackoff ) {
+        this.context = context;
+        this.domain = domain;
+        this.maxControllers = maxControllers;
+        this.listTtl = listTtl;
+        this.failureBackoff = failureBackoff;
+    }
+
+
+    /**
+     * @return a challenge from one of the domain controllers
+     * @throws UnknownHostException
+     *             if no domain controller could be contacted
+     */
+    public NtlmChallenge getChallenge () throws UnknownHostException {
+        DomainController[] dcs = getControllers(null);
+        NtlmChallenge chal = tryControllers(dcs);
+        if ( chal != null ) {
+            return chal;
+        }
+
+        // all failed, the list may be outdated
+        chal = tryControllers(getControllers(dcs));
+        if ( chal != null ) {
+            return chal;
+        }
+        throw new UnknownHostException("Failed to negotiate with a suitable domain controller for " + this.domain);
+    }
+
+
+    /**
+     * @return the domain controllers currently in use, with their statistics
+     */
+    public List<DomainController> getDomainControllers () {
+        DomainController[] dcs = this.controllers;
+        if ( dcs == null ) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(Arrays.asList(dcs));
+    }
+
+
+    /**
+     * @return the addresses of the domain controllers for the domain
+     * @throws UnknownHostException
+     */
+    protected Address[] lookupDomainControllers () throws UnknownHostException {
+        return this.context.getNameServiceClient().getNbtAllByName(this.domain, 0x1C, null, null);
+    }
+
+
+    /**
+     * @param addr
+     * @return the challenge of the connection to the domain controller
+     * @throws IOException
+     */
+    protected NtlmChallenge interrogate ( Address addr ) throws IOException {
+        CIFSContext tf = this.context;
+        UniAddress dc = new UniAddress(addr);
+        try ( SmbTransportInternal trans = tf.getTransportPool()
+                .getSmbTransport(tf, dc, 0, false, tf.hasDefaultCredentials() && tf.getConfig().isIpcSigningEnforced())
+                .unwrap(SmbTransportInternal.class) ) {
+            if ( !tf.hasDefaultCredentials() ) {
+                trans.ensureConnected();
+                log.warn(
+                    "Default credentials (jcifs.smb.client.username/password)" + " not specified. SMB signing may not work propertly."
+                            + "  Skipping DC interrogation.");
+            }
+            else {
+                try ( SmbSessionInternal ssn = trans.getSmbSession(tf.withDefaultCredentials()).unwrap(SmbSessionInternal.class) ) {
+                    ssn.treeConnectLogon();
+                }
+            }
+            return new NtlmChallenge(trans.getServerEncryptionKey(), dc);
+        }
+    }
+
+
+    private NtlmChallenge tryControllers ( DomainController[] dcs ) {
+        long now = System.currentTimeMillis();
+        List<DomainController> candidates = new ArrayList<>(dcs.length);
+        int start = ( this.counter.getAndIncrement() & Integer.MAX_VALUE ) % dcs.length;
+        for ( int i = 0; i < dcs.length; i++ ) {
+            DomainController dc = dcs[ ( start + i ) % dcs.length ];
+            if ( dc.isAvailable(now) ) {
+                candidates.add(dc);
+            }
+        }
+        if ( candidates.isEmpty() ) {
+            // rather try the failed ones than none at all
+            for ( int i = 0; i < dcs.length; i++ ) {
+                candidates.add(dcs[ ( start + i ) % dcs.length ]);
+            }
+        }
+
+        for ( DomainController dc : candidates ) {
+            long begin = System.nanoTime();
+            try {
+                NtlmChallenge chal = interrogate(dc.getAddress());
+                dc.succeeded(System.nanoTime() - begin);
+                return chal;
+            }
+            catch ( IOException e ) {
+                log.warn("Failed validate DC: " + dc.getAddress(), e);
+                dc.failed(System.currentTimeMillis() + this.failureBackoff);
+            }
+        }
+        return null;
+    }
+
+
+    /**
+     * @param stale
+     *            list to replace, null to only refresh if expired
+     * @return current domain controller list
+     * @throws UnknownHostException
+     */
+    private DomainController[] getControllers ( DomainController[] stale ) throws UnknownHostException {
+        DomainController[] dcs = this.controllers;
+        if ( dcs != null && ( stale != null ? dcs != stale : System.currentTimeMillis() < this.listExpiration ) ) {
+            return dcs;
+        }
+
+        if ( dcs != null && stale == null ) {
+            if ( !this.refreshLock.tryLock() ) {
+                // someone else is refreshing, continue with the current list
+                return dcs;
+            }
+        }
+        else {
+            this.refreshLock.lock();
+        }
+
+        try {
+            dcs = this.controllers;
+            long now = System.currentTimeMillis();
+            if ( dcs != null && ( stale != null ? dcs != stale : now < this.listExpiration ) ) {
+                // refreshed concurrently
+                return dcs;
+            }
+
+            Address[] list = null;
+            try {
+                list = lookupDomainControllers();
+            }
+            catch ( UnknownHostException e ) {
+                log.debug("Domain controller lookup failed", e);
+            }
+
+            if ( list == null || list.length == 0 ) {
+                log.warn("Failed to retrieve DC list from WINS");
+                if ( dcs == null ) {
+                    throw new UnknownHostException("Failed to find domain controllers for " + this.domain);
+                }
+                /* keep using the old list */
+                this.listExpiration = now + LOOKUP_FAILURE_RETRY;
+                return dcs;
+            }
+
+            // keep statistics and health for known controllers
+            Map<String, DomainController> known = new HashMap<>();
+            if ( dcs != null ) {
+                for ( DomainController dc : dcs ) {
+                    known.put(dc.getAddress().getHostAddress(), dc);
+                }
+            }
+            int n = Math.min(list.length, this.maxControllers);
+            DomainController[] updated = new DomainController[n];
+            for ( int i = 0; i < n; i++ ) {
+                DomainController dc = known.get(list[ i ].getHostAddress());
+                updated[ i ] = dc != null ? dc : new DomainController(list[ i ]);
+            }
+            if ( log.isDebugEnabled() ) {
+                log.debug("Domain controllers for " + this.domain + ": " + Arrays.toString(updated));
+            }
+            this.controllers = updated;
+            this.listExpiration = now + this.listTtl;
+            return updated;
+        }
+        finally {
+            this.refreshLock.unlock();
+        }
+    }
+
+    /**
+     * Domain controller health and statistics
+     */
+    public static final class DomainController {
+
+        private final Address address;
+        private final AtomicLong requests = new AtomicLong();
+        private final AtomicLong failures = new AtomicLong();
+        private final AtomicLong totalTime = new AtomicLong();
+        private volatile long unavailableUntil;
+
+
+        DomainController ( Address address ) {
+            this.address = address;
+        }
+
+
+        /**
+         * @return the domain controller address
+         */
+        public Address getAddress () {
+            return this.address;
+        }
+
+
+        /**
+         * @return number of challenges obtained
+         */
+        public long getRequests () {
+            return this.requests.get();
+        }
+
+
+        /**
+         * @return number of failed attempts
+         */
+        public long getFailures () {
+            return this.failures.get();
+        }
+
+
+        /**
+         * @return average time to obtain a challenge, in microseconds
+         */
+        public long getAverageTime () {
+            long r = this.requests.get();
+            return r > 0 ? TimeUnit.NANOSECONDS.toMicros(this.totalTime.get() / r) : 0;
+        }
+
+
+        /**
+         * @param now
+         * @return whether the controller is not backing off after a failure
+         */
+        public boolean isAvailable ( long now ) {
+            return now >= this.unavailableUntil;
+        }
+
+
+        void succeeded ( long nanos ) {
+            this.requests.incrementAndGet();
+            this.totalTime.addAndGet(nanos);
+            this.unavailableUntil = 0;
+        }
+
+
+        void failed ( long until ) {
+            this.failures.incrementAndGet();
+            this.unavailableUntil = until;
+        }
+
+
+        @Override
+        public String toString () {
+            return String.format(
+                "DC[%s,requests=%d,failures=%d,avg=%dus,available=%s]",
+                this.address,
+                getRequests(),
+                getFailures(),
+                getAverageTime(),
+                isAvailable(System.currentTimeMillis()));
+        }
+    }
+}
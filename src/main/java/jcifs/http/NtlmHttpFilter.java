@@ -24,7 +24,6 @@ package jcifs.http;
 
 
 import java.io.IOException;
-import java.net.UnknownHostException;
 import java.util.Enumeration;
 import java.util.Properties;
 
@@ -48,14 +47,10 @@ import jcifs.CIFSException;
 import jcifs.Config;
 import jcifs.config.PropertyConfiguration;
 import jcifs.context.BaseContext;
-import jcifs.netbios.UniAddress;
 import jcifs.smb.NtStatus;
 import jcifs.smb.NtlmChallenge;
 import jcifs.smb.NtlmPasswordAuthentication;
 import jcifs.smb.SmbAuthException;
-import jcifs.smb.SmbException;
-import jcifs.smb.SmbSessionInternal;
-import jcifs.smb.SmbTransportInternal;
 
 
 /**
@@ -82,12 +77,7 @@ public class NtlmHttpFilter implements Filter {
     private String realm;
 
     private CIFSContext transportContext;
-    private Address[] dcList = null;
-    private long dcListExpiration;
-
-    private int netbiosLookupRespLimit = 3;
-    private long netbiosCacheTimeout = 60 * 60 * 10;
-    private static int dcListCounter;
+    private NtlmChallengeProvider challengeProvider;
 
 
     @Override
@@ -127,13 +117,22 @@ public class NtlmHttpFilter implements Filter {
             this.enableBasic = Boolean.valueOf(p.getProperty("jcifs.http.enableBasic")).booleanValue();
             this.insecureBasic = Boolean.valueOf(p.getProperty("jcifs.http.insecureBasic")).booleanValue();
             this.realm = p.getProperty("jcifs.http.basicRealm");
-            this.netbiosLookupRespLimit = Config.getInt(p, "jcifs.netbios.lookupRespLimit", 3);
-            this.netbiosCacheTimeout = Config.getInt(p, "jcifs.netbios.cachePolicy", 60 * 10) * 60; /* 10 hours */
+            int netbiosLookupRespLimit = Config.getInt(p, "jcifs.netbios.lookupRespLimit", 3);
+            long netbiosCacheTimeout = Config.getInt(p, "jcifs.netbios.cachePolicy", 60 * 10) * 60; /* 10 hours */
+            long dcFailureBackoff = Config.getLong(p, "jcifs.http.dcFailureBackoff", 60 * 1000L);
 
             if ( this.realm == null )
                 this.realm = "jCIFS";
 
             this.transportContext = new BaseContext(new PropertyConfiguration(p));
+            if ( this.loadBalance && this.defaultDomain != null ) {
+                this.challengeProvider = new NtlmChallengeProvider(
+                    this.transportContext,
+                    this.defaultDomain,
+                    netbiosLookupRespLimit,
+                    netbiosCacheTimeout * 1000L,
+                    dcFailureBackoff);
+            }
         }
         catch ( CIFSException ex ) {
             throw new ServletException("Failed to initialize CIFS context");
@@ -196,7 +195,10 @@ public class NtlmHttpFilter implements Filter {
                 if ( this.loadBalance ) {
                     NtlmChallenge chal = (NtlmChallenge) ssn.getAttribute("NtlmHttpChal");
                     if ( chal == null ) {
-                        chal = getChallengeForDomain(this.defaultDomain);
+                        if ( this.challengeProvider == null ) {
+                            throw new ServletException("A domain was not specified");
+                        }
+                        chal = this.challengeProvider.getChallenge();
                         ssn.setAttribute("NtlmHttpChal", chal);
                     }
                     dc = chal.dc;
@@ -276,76 +278,11 @@ public class NtlmHttpFilter implements Filter {
     }
 
 
-    private synchronized NtlmChallenge getChallengeForDomain ( String domain ) throws UnknownHostException, ServletException {
-        if ( domain == null ) {
-            throw new ServletException("A domain was not specified");
-        }
-        long now = System.currentTimeMillis();
-        int retry = 1;
-
-        do {
-            if ( this.dcListExpiration < now ) {
-                Address[] list = getTransportContext().getNameServiceClient().getNbtAllByName(domain, 0x1C, null, null);
-                this.dcListExpiration = now + this.netbiosCacheTimeout * 1000L;
-                if ( list != null && list.length > 0 ) {
-                    this.dcList = list;
-                }
-                else { /* keep using the old list */
-                    this.dcListExpiration = now + 1000 * 60 * 15; /* 15 min */
-                    log.warn("Failed to retrieve DC list from WINS");
-                }
-            }
-
-            int max = Math.min(this.dcList.length, this.netbiosLookupRespLimit);
-            for ( int j = 0; j < max; j++ ) {
-                int i = dcListCounter++ % max;
-                if ( this.dcList[ i ] != null ) {
-                    try {
-                        return interrogate(getTransportContext(), this.dcList[ i ]);
-                    }
-                    catch ( SmbException se ) {
-                        log.warn("Failed validate DC: " + this.dcList[ i ], se);
-                    }
-                    this.dcList[ i ] = null;
-                }
-            }
-
-            /*
-             * No DCs found, for retieval of list by expiring it and retry.
-             */
-            this.dcListExpiration = 0;
-        }
-        while ( retry-- > 0 );
-
-        this.dcListExpiration = now + 1000 * 60 * 15; /* 15 min */
-        throw new UnknownHostException("Failed to negotiate with a suitable domain controller for " + domain);
-    }
-
-
-    private static NtlmChallenge interrogate ( CIFSContext tf, Address addr ) throws SmbException {
-        UniAddress dc = new UniAddress(addr);
-        try ( SmbTransportInternal trans = tf.getTransportPool()
-                .getSmbTransport(tf, dc, 0, false, tf.hasDefaultCredentials() && tf.getConfig().isIpcSigningEnforced())
-                .unwrap(SmbTransportInternal.class) ) {
-            if ( !tf.hasDefaultCredentials() ) {
-                trans.ensureConnected();
-                log.warn(
-                    "Default credentials (jcifs.smb.client.username/password)" + " not specified. SMB signing may not work propertly."
-                            + "  Skipping DC interrogation.");
-            }
-            else {
-                try ( SmbSessionInternal ssn = trans.getSmbSession(tf.withDefaultCredentials()).unwrap(SmbSessionInternal.class) ) {
-                    ssn.treeConnectLogon();
-                }
-            }
-            return new NtlmChallenge(trans.getServerEncryptionKey(), dc);
-        }
-        catch ( SmbException e ) {
-            throw e;
-        }
-        catch ( IOException e ) {
-            throw new SmbException("Connection failed", e);
-        }
+    /**
+     * @return the provider for challenges from the domain controllers, null if not load balancing
+     */
+    protected NtlmChallengeProvider getChallengeProvider () {
+        return this.challengeProvider;
     }
 
 
@@ -0,0 +1,44 @@
+/*
+ * © 2026 agent <agent@local>
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package jcifs.internal;
+
+
+/**
+ * Request that is told when it has been written to the connection
+ * 
+ * Used for long running requests (e.g. change notifications) whose caller needs to know that the
+ * server will see the request before any request issued afterwards.
+ * 
+ * @author agent
+ *
+ */
+public interface RequestWithSentCallback extends CommonServerMessageBlockRequest {
+
+    /**
+     * @param callback
+     *            to run once the request has been sent, may be null
+     */
+    void setSentCallback ( Runnable callback );
+
+
+    /**
+     * Called by the transport once the request has been written
+     */
+    void sent ();
+
+}
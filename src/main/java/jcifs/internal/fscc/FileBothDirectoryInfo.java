@@ -21,18 +21,16 @@ package jcifs.internal.fscc;
 import java.util.Date;
 
 import jcifs.Configuration;
-import jcifs.Decodable;
 import jcifs.SmbConstants;
 import jcifs.internal.SMBProtocolDecodingException;
 import jcifs.internal.util.SMBUtil;
-import jcifs.smb.FileEntry;
 import jcifs.util.Strings;
 
 
 /**
  * 
  */
-public class FileBothDirectoryInfo implements FileEntry, Decodable {
+public class FileBothDirectoryInfo implements FileDirectoryEntry {
 
     private int nextEntryOffset;
     private int fileIndex;
@@ -123,6 +121,7 @@ public class FileBothDirectoryInfo implements FileEntry, Decodable {
     /**
      * @return the nextEntryOffset
      */
+    @Override
     public int getNextEntryOffset () {
         return this.nextEntryOffset;
     }
@@ -0,0 +1,191 @@
+/*
+ * © 2026 agent <agent@local>
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package jcifs.internal.fscc;
+
+
+import java.util.Date;
+
+import jcifs.SmbConstants;
+import jcifs.internal.SMBProtocolDecodingException;
+import jcifs.internal.util.SMBUtil;
+import jcifs.util.Strings;
+
+
+/**
+ * FILE_ID_FULL_DIR_INFORMATION
+ * 
+ * @author agent
+ *
+ */
+public class FileIdFullDirectoryInfo implements FileDirectoryEntry {
+
+    private int nextEntryOffset;
+    private int fileIndex;
+    private long creationTime;
+    private long lastAccessTime;
+    private long lastWriteTime;
+    private long changeTime;
+    private long endOfFile;
+    private long allocationSize;
+    private int extFileAttributes;
+    private int eaSize;
+    private long fileId;
+    private String filename;
+
+
+    @Override
+    public String getName () {
+        return this.filename;
+    }
+
+
+    @Override
+    public int getType () {
+        return SmbConstants.TYPE_FILESYSTEM;
+    }
+
+
+    @Override
+    public int getFileIndex () {
+        return this.fileIndex;
+    }
+
+
+    /**
+     * @return the server assigned file id
+     */
+    public long getFileId () {
+        return this.fileId;
+    }
+
+
+    @Override
+    public int getAttributes () {
+        return this.extFileAttributes;
+    }
+
+
+    @Override
+    public long createTime () {
+        return this.creationTime;
+    }
+
+
+    @Override
+    public long lastModified () {
+        return this.lastWriteTime;
+    }
+
+
+    @Override
+    public long lastAccess () {
+        return this.lastAccessTime;
+    }
+
+
+    /**
+     * @return the change time
+     */
+    public long changeTime () {
+        return this.changeTime;
+    }
+
+
+    @Override
+    public long length () {
+        return this.endOfFile;
+    }
+
+
+    /**
+     * @return the allocationSize
+     */
+    public long getAllocationSize () {
+        return this.allocationSize;
+    }
+
+
+    @Override
+    public int getNextEntryOffset () {
+        return this.nextEntryOffset;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see jcifs.Decodable#decode(byte[], int, int)
+     */
+    @Override
+    public int decode ( byte[] buffer, int bufferIndex, int len ) throws SMBProtocolDecodingException {
+        int start = bufferIndex;
+        this.nextEntryOffset = SMBUtil.readInt4(buffer, bufferIndex);
+        bufferIndex += 4;
+        this.fileIndex = SMBUtil.readInt4(buffer, bufferIndex);
+        bufferIndex += 4;
+        this.creationTime = SMBUtil.readTime(buffer, bufferIndex);
+        bufferIndex += 8;
+        this.lastAccessTime = SMBUtil.readTime(buffer, bufferIndex);
+        bufferIndex += 8;
+        this.lastWriteTime = SMBUtil.readTime(buffer, bufferIndex);
+        bufferIndex += 8;
+        this.changeTime = SMBUtil.readTime(buffer, bufferIndex);
+        bufferIndex += 8;
+        this.endOfFile = SMBUtil.readInt8(buffer, bufferIndex);
+        bufferIndex += 8;
+        this.allocationSize = SMBUtil.readInt8(buffer, bufferIndex);
+        bufferIndex += 8;
+        this.extFileAttributes = SMBUtil.readInt4(buffer, bufferIndex);
+        bufferIndex += 4;
+        int fileNameLength = SMBUtil.readInt4(buffer, bufferIndex);
+        bufferIndex += 4;
+        this.eaSize = SMBUtil.readInt4(buffer, bufferIndex);
+        bufferIndex += 4;
+
+        bufferIndex += skipBeforeFileId(buffer, bufferIndex);
+
+        this.fileId = SMBUtil.readInt8(buffer, bufferIndex);
+        bufferIndex += 8;
+
+        this.filename = Strings.fromUNIBytes(buffer, bufferIndex, fileNameLength);
+        bufferIndex += fileNameLength;
+        return bufferIndex - start;
+    }
+
+
+    /**
+     * @param buffer
+     * @param bufferIndex
+     *            position after the EaSize field
+     * @return number of bytes between EaSize and FileId
+     */
+    protected int skipBeforeFileId ( byte[] buffer, int bufferIndex ) {
+        // Reserved
+        return 4;
+    }
+
+
+    @Override
+    public String toString () {
+        return getClass().getSimpleName() + "[nextEntryOffset=" + this.nextEntryOffset + ",fileIndex=" + this.fileIndex + ",creationTime="
+                + new Date(this.creationTime) + ",lastAccessTime=" + new Date(this.lastAccessTime) + ",lastWriteTime=" + new Date(this.lastWriteTime)
+                + ",changeTime=" + new Date(this.changeTime) + ",endOfFile=" + this.endOfFile + ",allocationSize=" + this.allocationSize
+                + ",extFileAttributes=" + this.extFileAttributes + ",eaSize=" + this.eaSize + ",fileId=" + this.fileId + ",filename="
+                + this.filename + "]";
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * © 2026 agent <agent@local>
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package jcifs.internal.fscc;
+
+
+import jcifs.SmbConstants;
+import jcifs.internal.SMBProtocolDecodingException;
+import jcifs.internal.util.SMBUtil;
+import jcifs.util.Strings;
+
+
+/**
+ * FILE_NAMES_INFORMATION
+ * 
+ * Only contains the file name, all attributes/times/sizes are reported as zero.
+ * 
+ * @author agent
+ *
+ */
+public class FileNamesInfo implements FileDirectoryEntry {
+
+    private int nextEntryOffset;
+    private int fileIndex;
+    private String filename;
+
+
+    @Override
+    public String getName () {
+        return this.filename;
+    }
+
+
+    @Override
+    public int getType () {
+        return SmbConstants.TYPE_FILESYSTEM;
+    }
+
+
+    @Override
+    public int getFileIndex () {
+        return this.fileIndex;
+    }
+
+
+    @Override
+    public int getAttributes () {
+        return 0;
+    }
+
+
+    @Override
+    public long createTime () {
+        return 0;
+    }
+
+
+    @Override
+    public long lastModified () {
+        return 0;
+    }
+
+
+    @Override
+    public long lastAccess () {
+        return 0;
+    }
+
+
+    @Override
+    public long length () {
+        return 0;
+    }
+
+
+    @Override
+    public int getNextEntryOffset () {
+        return this.nextEntryOffset;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see jcifs.Decodable#decode(byte[], int, int)
+     */
+    @Override
+    public int decode ( byte[] buffer, int bufferIndex, int len ) throws SMBProtocolDecodingException {
+        int start = bufferIndex;
+        this.nextEntryOffset = SMBUtil.readInt4(buffer, bufferIndex);
+        bufferIndex += 4;
+        this.fileIndex = SMBUtil.readInt4(buffer, bufferIndex);
+        bufferIndex += 4;
+        int fileNameLength = SMBUtil.readInt4(buffer, bufferIndex);
+        bufferIndex += 4;
+        this.filename = Strings.fromUNIBytes(buffer, bufferIndex, fileNameLength);
+        bufferIndex += fileNameLength;
+        return bufferIndex - start;
+    }
+
+
+    @Override
+    public String toString () {
+        return "FileNamesInfo[nextEntryOffset=" + this.nextEntryOffset + ",fileIndex=" + this.fileIndex + ",filename=" + this.filename + "]";
+    }
+}
@@ -20,6 +20,7 @@ package jcifs.internal.smb1.trans.nt;
 
 
 import jcifs.Configuration;
+import jcifs.internal.RequestWithSentCallback;
 import jcifs.internal.util.SMBUtil;
 import jcifs.util.Hexdump;
 
@@ -27,11 +28,12 @@ import jcifs.util.Hexdump;
 /**
  * 
  */
-public class NtTransNotifyChange extends SmbComNtTransaction {
+public class NtTransNotifyChange extends SmbComNtTransaction implements RequestWithSentCallback {
 
     int fid;
     private int completionFilter;
     private boolean watchTree;
+    private Runnable sentCallback;
 
 
     /**
@@ -54,6 +56,31 @@ public class NtTransNotifyChange extends SmbComNtTransaction {
     }
 
 
+    /**
+     * {@inheritDoc}
+     *
+     * @see jcifs.internal.RequestWithSentCallback#setSentCallback(java.lang.Runnable)
+     */
+    @Override
+    public void setSentCallback ( Runnable callback ) {
+        this.sentCallback = callback;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see jcifs.internal.RequestWithSentCallback#sent()
+     */
+    @Override
+    public void sent () {
+        Runnable cb = this.sentCallback;
+        if ( cb != null ) {
+            cb.run();
+        }
+    }
+
+
     @Override
     protected int writeSetupWireFormat ( byte[] dst, int dstIndex ) {
         int start = dstIndex;
@@ -254,6 +254,15 @@ public abstract class ServerMessageBlock2 implements CommonServerMessageBlock {
     }
 
 
+    /**
+     * @param creditCharge
+     *            the creditCharge to set
+     */
+    protected final void setCreditCharge ( int creditCharge ) {
+        this.creditCharge = creditCharge;
+    }
+
+
     @Override
     public void retainPayload () {
         this.retainPayload = true;
@@ -143,7 +143,7 @@ public abstract class ServerMessageBlock2Request <T extends ServerMessageBlock2R
      */
     @Override
     public int getCreditCost () {
-        return 1;
+        return Math.max(1, getCreditCharge());
     }
 
 
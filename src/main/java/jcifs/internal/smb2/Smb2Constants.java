@@ -109,6 +109,11 @@ public final class Smb2Constants {
      */
     public static final int SMB2_GLOBAL_CAP_ENCRYPTION = 0x40;
 
+    /**
+     * Payload size covered by a single credit, larger requests/responses need multiple credits
+     */
+    public static final int SMB2_CREDIT_PAYLOAD_SIZE = 65536;
+
     /**
      * 
      */
@@ -61,20 +61,20 @@ public class Smb2SigningDigest implements SMBSigningDigest {
         switch ( dialect ) {
         case Smb2Constants.SMB2_DIALECT_0202:
         case Smb2Constants.SMB2_DIALECT_0210:
-            m = Mac.getInstance("HmacSHA256");
+            m = Crypto.getHmacSHA256();
             signingKey = sessionKey;
             break;
         case Smb2Constants.SMB2_DIALECT_0300:
         case Smb2Constants.SMB2_DIALECT_0302:
             signingKey = Smb3KeyDerivation.deriveSigningKey(dialect, sessionKey, new byte[0] /* unimplemented */);
-            m = Mac.getInstance("AESCMAC", Crypto.getProvider());
+            m = Crypto.getAesCmac();
             break;
         case Smb2Constants.SMB2_DIALECT_0311:
             if ( preauthIntegrityHash == null ) {
                 throw new IllegalArgumentException("Missing preauthIntegrityHash for SMB 3.1");
             }
             signingKey = Smb3KeyDerivation.deriveSigningKey(dialect, sessionKey, preauthIntegrityHash);
-            m = Mac.getInstance("AESCMAC", Crypto.getProvider());
+            m = Crypto.getAesCmac();
             break;
         default:
             throw new IllegalArgumentException("Unknown dialect");
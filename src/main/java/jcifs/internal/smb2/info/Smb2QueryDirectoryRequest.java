@@ -150,6 +150,21 @@ public class Smb2QueryDirectoryRequest extends ServerMessageBlock2Request<Smb2Qu
     }
 
 
+    /**
+     * Set the maximum amount of data the server may return
+     * 
+     * Lengths exceeding a single credit's payload will charge multiple credits, callers need to make sure
+     * that the server supports multi-credit operations (LARGE_MTU) and that the response fits the receive buffers.
+     * 
+     * @param outputBufferLength
+     *            the outputBufferLength to set
+     */
+    public void setOutputBufferLength ( int outputBufferLength ) {
+        this.outputBufferLength = outputBufferLength;
+        setCreditCharge(( outputBufferLength - 1 ) / Smb2Constants.SMB2_CREDIT_PAYLOAD_SIZE + 1);
+    }
+
+
     /**
      * @param fileName
      *            the fileName to set
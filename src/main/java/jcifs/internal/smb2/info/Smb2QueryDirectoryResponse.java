@@ -24,6 +24,10 @@ import java.util.List;
 import jcifs.Configuration;
 import jcifs.internal.SMBProtocolDecodingException;
 import jcifs.internal.fscc.FileBothDirectoryInfo;
+import jcifs.internal.fscc.FileDirectoryEntry;
+import jcifs.internal.fscc.FileIdBothDirectoryInfo;
+import jcifs.internal.fscc.FileIdFullDirectoryInfo;
+import jcifs.internal.fscc.FileNamesInfo;
 import jcifs.internal.smb2.ServerMessageBlock2Response;
 import jcifs.internal.smb2.Smb2Constants;
 import jcifs.internal.util.SMBUtil;
@@ -97,7 +101,7 @@ public class Smb2QueryDirectoryResponse extends ServerMessageBlock2Response {
 
         List<FileEntry> infos = new ArrayList<>();
         do {
-            FileBothDirectoryInfo cur = createFileInfo();
+            FileDirectoryEntry cur = createFileInfo();
             if ( cur == null ) {
                 break;
             }
@@ -117,11 +121,19 @@ public class Smb2QueryDirectoryResponse extends ServerMessageBlock2Response {
     }
 
 
-    private FileBothDirectoryInfo createFileInfo () {
-        if ( this.expectInfoClass == Smb2QueryDirectoryRequest.FILE_BOTH_DIRECTORY_INFO ) {
+    private FileDirectoryEntry createFileInfo () {
+        switch ( this.expectInfoClass ) {
+        case Smb2QueryDirectoryRequest.FILE_BOTH_DIRECTORY_INFO:
             return new FileBothDirectoryInfo(getConfig(), true);
+        case Smb2QueryDirectoryRequest.FILE_NAMES_INFO:
+            return new FileNamesInfo();
+        case Smb2QueryDirectoryRequest.FILE_ID_FULL_DIRECTORY_INFO:
+            return new FileIdFullDirectoryInfo();
+        case Smb2QueryDirectoryRequest.FILE_ID_BOTH_DIRECTORY_INFO:
+            return new FileIdBothDirectoryInfo();
+        default:
+            return null;
         }
-        return null;
     }
 
 }
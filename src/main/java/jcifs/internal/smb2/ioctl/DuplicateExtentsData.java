@@ -0,0 +1,84 @@
+/*
+ * © 2026 agent <agent@local>
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package jcifs.internal.smb2.ioctl;
+
+
+import jcifs.Encodable;
+import jcifs.internal.util.SMBUtil;
+
+
+/**
+ * Input for FSCTL_DUPLICATE_EXTENTS_TO_FILE
+ * 
+ * @author agent
+ *
+ */
+public class DuplicateExtentsData implements Encodable {
+
+    private final byte[] sourceFileId;
+    private final long sourceOffset;
+    private final long targetOffset;
+    private final long byteCount;
+
+
+    /**
+     * @param sourceFileId
+     *            file id of the source handle
+     * @param soff
+     * @param toff
+     * @param count
+     */
+    public DuplicateExtentsData ( byte[] sourceFileId, long soff, long toff, long count ) {
+        this.sourceFileId = sourceFileId;
+        this.sourceOffset = soff;
+        this.targetOffset = toff;
+        this.byteCount = count;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see jcifs.Encodable#encode(byte[], int)
+     */
+    @Override
+    public int encode ( byte[] dst, int dstIndex ) {
+        int start = dstIndex;
+        System.arraycopy(this.sourceFileId, 0, dst, dstIndex, 16);
+        dstIndex += 16;
+        SMBUtil.writeInt8(this.sourceOffset, dst, dstIndex);
+        dstIndex += 8;
+        SMBUtil.writeInt8(this.targetOffset, dst, dstIndex);
+        dstIndex += 8;
+        SMBUtil.writeInt8(this.byteCount, dst, dstIndex);
+        dstIndex += 8;
+        return dstIndex - start;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see jcifs.Encodable#size()
+     */
+    @Override
+    public int size () {
+        return 40;
+    }
+
+}
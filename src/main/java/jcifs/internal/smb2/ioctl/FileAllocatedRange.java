@@ -0,0 +1,113 @@
+/*
+ * © 2026 agent <agent@local>
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package jcifs.internal.smb2.ioctl;
+
+
+import jcifs.Decodable;
+import jcifs.Encodable;
+import jcifs.internal.util.SMBUtil;
+
+
+/**
+ * FILE_ALLOCATED_RANGE_BUFFER
+ * 
+ * Used as input and output of FSCTL_QUERY_ALLOCATED_RANGES
+ * 
+ * @author agent
+ *
+ */
+public class FileAllocatedRange implements Encodable, Decodable {
+
+    private long offset;
+    private long length;
+
+
+    /**
+     * 
+     */
+    public FileAllocatedRange () {}
+
+
+    /**
+     * @param offset
+     * @param length
+     */
+    public FileAllocatedRange ( long offset, long length ) {
+        this.offset = offset;
+        this.length = length;
+    }
+
+
+    /**
+     * @return the offset
+     */
+    public long getOffset () {
+        return this.offset;
+    }
+
+
+    /**
+     * @return the length
+     */
+    public long getLength () {
+        return this.length;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see jcifs.Encodable#encode(byte[], int)
+     */
+    @Override
+    public int encode ( byte[] dst, int dstIndex ) {
+        SMBUtil.writeInt8(this.offset, dst, dstIndex);
+        SMBUtil.writeInt8(this.length, dst, dstIndex + 8);
+        return 16;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see jcifs.Decodable#decode(byte[], int, int)
+     */
+    @Override
+    public int decode ( byte[] buffer, int bufferIndex, int len ) {
+        this.offset = SMBUtil.readInt8(buffer, bufferIndex);
+        this.length = SMBUtil.readInt8(buffer, bufferIndex + 8);
+        return 16;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see jcifs.Encodable#size()
+     */
+    @Override
+    public int size () {
+        return 16;
+    }
+
+
+    @Override
+    public String toString () {
+        return "FileAllocatedRange[offset=" + this.offset + ",length=" + this.length + "]";
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * © 2026 agent <agent@local>
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package jcifs.internal.smb2.ioctl;
+
+
+import jcifs.Decodable;
+import jcifs.internal.SMBProtocolDecodingException;
+
+
+/**
+ * @author agent
+ *
+ */
+public class QueryAllocatedRangesResponse implements Decodable {
+
+    private FileAllocatedRange[] ranges;
+
+
+    /**
+     * @return the allocated ranges
+     */
+    public FileAllocatedRange[] getRanges () {
+        return this.ranges;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see jcifs.Decodable#decode(byte[], int, int)
+     */
+    @Override
+    public int decode ( byte[] buffer, int bufferIndex, int len ) throws SMBProtocolDecodingException {
+        int start = bufferIndex;
+        this.ranges = new FileAllocatedRange[len / 16];
+        for ( int i = 0; i < this.ranges.length; i++ ) {
+            this.ranges[ i ] = new FileAllocatedRange();
+            bufferIndex += this.ranges[ i ].decode(buffer, bufferIndex, len);
+        }
+        return bufferIndex - start;
+    }
+
+}
@@ -93,6 +93,18 @@ public class Smb2IoctlRequest extends ServerMessageBlock2Request<Smb2IoctlRespon
      * 
      */
     public static final int FSCTL_VALIDATE_NEGOTIATE_INFO = 0x000140204;
+    /**
+     * 
+     */
+    public static final int FSCTL_DUPLICATE_EXTENTS_TO_FILE = 0x00098344;
+    /**
+     * 
+     */
+    public static final int FSCTL_QUERY_ALLOCATED_RANGES = 0x000940CF;
+    /**
+     * 
+     */
+    public static final int FSCTL_SET_SPARSE = 0x000900C4;
 
     /**
      * 
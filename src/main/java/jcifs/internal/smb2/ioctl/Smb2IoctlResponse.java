@@ -145,7 +145,8 @@ public class Smb2IoctlResponse extends ServerMessageBlock2Response {
                 && ! ( status == NtStatus.NT_STATUS_INVALID_PARAMETER
                         && ( this.ctlCode == Smb2IoctlRequest.FSCTL_SRV_COPYCHUNK || this.ctlCode == Smb2IoctlRequest.FSCTL_SRV_COPYCHUNK_WRITE ) )
                 && ! ( status == NtStatus.NT_STATUS_BUFFER_OVERFLOW && ( this.ctlCode == Smb2IoctlRequest.FSCTL_PIPE_TRANSCEIVE
-                        || this.ctlCode == Smb2IoctlRequest.FSCTL_PIPE_PEEK || this.ctlCode == Smb2IoctlRequest.FSCTL_DFS_GET_REFERRALS ) )
+                        || this.ctlCode == Smb2IoctlRequest.FSCTL_PIPE_PEEK || this.ctlCode == Smb2IoctlRequest.FSCTL_DFS_GET_REFERRALS
+                        || this.ctlCode == Smb2IoctlRequest.FSCTL_QUERY_ALLOCATED_RANGES ) )
                 && super.isErrorResponseStatus();
     }
 
@@ -228,6 +229,8 @@ public class Smb2IoctlResponse extends ServerMessageBlock2Response {
             return new ValidateNegotiateInfoResponse();
         case Smb2IoctlRequest.FSCTL_PIPE_PEEK:
             return new SrvPipePeekResponse();
+        case Smb2IoctlRequest.FSCTL_QUERY_ALLOCATED_RANGES:
+            return new QueryAllocatedRangesResponse();
         }
         return null;
     }
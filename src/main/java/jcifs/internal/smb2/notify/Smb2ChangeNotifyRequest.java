@@ -20,6 +20,7 @@ package jcifs.internal.smb2.notify;
 
 import jcifs.CIFSContext;
 import jcifs.Configuration;
+import jcifs.internal.RequestWithSentCallback;
 import jcifs.internal.smb2.ServerMessageBlock2Request;
 import jcifs.internal.smb2.Smb2Constants;
 import jcifs.internal.util.SMBUtil;
@@ -29,7 +30,7 @@ import jcifs.internal.util.SMBUtil;
  * @author mbechler
  *
  */
-public class Smb2ChangeNotifyRequest extends ServerMessageBlock2Request<Smb2ChangeNotifyResponse> {
+public class Smb2ChangeNotifyRequest extends ServerMessageBlock2Request<Smb2ChangeNotifyResponse> implements RequestWithSentCallback {
 
     /**
      * 
@@ -89,6 +90,7 @@ public class Smb2ChangeNotifyRequest extends ServerMessageBlock2Request<Smb2Chan
     private int outputBufferLength;
     private int notifyFlags;
     private int completionFilter;
+    private Runnable sentCallback;
 
 
     /**
@@ -120,6 +122,31 @@ public class Smb2ChangeNotifyRequest extends ServerMessageBlock2Request<Smb2Chan
     }
 
 
+    /**
+     * {@inheritDoc}
+     *
+     * @see jcifs.internal.RequestWithSentCallback#setSentCallback(java.lang.Runnable)
+     */
+    @Override
+    public void setSentCallback ( Runnable callback ) {
+        this.sentCallback = callback;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see jcifs.internal.RequestWithSentCallback#sent()
+     */
+    @Override
+    public void sent () {
+        Runnable cb = this.sentCallback;
+        if ( cb != null ) {
+            cb.run();
+        }
+    }
+
+
     /**
      * {@inheritDoc}
      *
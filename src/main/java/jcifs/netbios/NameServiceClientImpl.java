@@ -21,18 +21,22 @@ package jcifs.netbios;
 
 import java.io.IOException;
 import java.io.InterruptedIOException;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
 import java.net.InetAddress;
-import java.net.SocketTimeoutException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
 import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -48,6 +52,11 @@ import jcifs.util.Hexdump;
 
 
 /**
+ * NetBIOS name service client
+ * 
+ * All queries share a single non-blocking datagram channel, responses are read by one receiver thread and
+ * matched to the waiting query by transaction id. Queries to WINS are sent to all configured WINS servers at
+ * once and the first positive answer is used.
  * 
  * @author mbechler
  *
@@ -64,18 +73,20 @@ public class NameServiceClientImpl implements Runnable, NameServiceClient {
 
     private final Object LOCK = new Object();
 
-    private int nbnsIndex = 0;
+    private volatile int nbnsIndex = 0;
 
-    private final Map<Name, CacheEntry> addressCache = new HashMap<>();
-    private final Set<Name> inFlightLookups = new HashSet<>();
+    private final ConcurrentMap<Name, CacheEntry> addressCache = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Name, CountDownLatch> inFlightLookups = new ConcurrentHashMap<>();
 
     private int lport, closeTimeout;
-    private byte[] snd_buf, rcv_buf;
-    private DatagramSocket socket;
-    private DatagramPacket in, out;
-    private Map<Integer, NameServicePacket> responseTable = new HashMap<>();
+    private int sndBufSize;
+    private byte[] rcv_buf;
+    private DatagramChannel channel;
+    private Selector selector;
+    private final ConcurrentMap<Integer, Query> responseTable = new ConcurrentHashMap<>();
     private Thread thread;
-    private int nextNameTrnId = 0;
+    private volatile long lastActivity;
+    private final AtomicInteger nextNameTrnId = new AtomicInteger();
     private List<ResolverType> resolveOrder = new ArrayList<>();
 
     private InetAddress laddr, baddr;
@@ -102,10 +113,8 @@ public class NameServiceClientImpl implements Runnable, NameServiceClient {
         this.transportContext = tc;
 
         this.baddr = tc.getConfig().getBroadcastAddress();
-        this.snd_buf = new byte[tc.getConfig().getNetbiosSndBufSize()];
+        this.sndBufSize = tc.getConfig().getNetbiosSndBufSize();
         this.rcv_buf = new byte[tc.getConfig().getNetbiosRcvBufSize()];
-        this.out = new DatagramPacket(this.snd_buf, tc.getConfig().getNetbiosSndBufSize(), this.baddr, NAME_SERVICE_UDP_PORT);
-        this.in = new DatagramPacket(this.rcv_buf, tc.getConfig().getNetbiosRcvBufSize());
         this.resolveOrder = tc.getConfig().getResolveOrder();
 
         initCache(tc);
@@ -113,9 +122,9 @@ public class NameServiceClientImpl implements Runnable, NameServiceClient {
 
     static final class CacheEntry {
 
-        Name hostName;
-        NbtAddress address;
-        long expiration;
+        final Name hostName;
+        final NbtAddress address;
+        final long expiration;
 
 
         CacheEntry ( Name hostName, NbtAddress address, long expiration ) {
@@ -125,6 +134,80 @@ public class NameServiceClientImpl implements Runnable, NameServiceClient {
         }
     }
 
+    /**
+     * A single datagram sent to one destination
+     */
+    static final class Query {
+
+        final NameServicePacket request;
+        final NameServicePacket response;
+        final InetAddress destination;
+        final Completion completion;
+        int nameTrnId;
+
+
+        Query ( NameServicePacket request, NameServicePacket response, InetAddress destination, Completion completion ) {
+            this.request = request;
+            this.response = response;
+            this.destination = destination;
+            this.completion = completion;
+        }
+    }
+
+    /**
+     * Tracks a set of queries sent in parallel, completes with the first positive answer or once all queries
+     * have been answered
+     */
+    static final class Completion {
+
+        private int outstanding;
+        private Query answer;
+
+
+        Completion ( int outstanding ) {
+            this.outstanding = outstanding;
+        }
+
+
+        synchronized void received ( Query q ) {
+            this.outstanding--;
+            if ( this.answer == null && q.response.resultCode == 0 ) {
+                this.answer = q;
+            }
+            notifyAll();
+        }
+
+
+        synchronized void failed () {
+            this.outstanding--;
+            notifyAll();
+        }
+
+
+        synchronized boolean isDone () {
+            return this.answer != null || this.outstanding <= 0;
+        }
+
+
+        synchronized Query await ( long timeout ) throws InterruptedIOException {
+            long deadline = System.currentTimeMillis() + timeout;
+            try {
+                while ( this.answer == null && this.outstanding > 0 ) {
+                    long remain = deadline - System.currentTimeMillis();
+                    if ( remain <= 0 ) {
+                        break;
+                    }
+                    wait(remain);
+                }
+            }
+            catch ( InterruptedException ie ) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+            return this.answer;
+        }
+    }
+
 
     /**
      * 
@@ -207,16 +290,18 @@ public class NameServiceClientImpl implements Runnable, NameServiceClient {
              * comments there for a description of how the LOOKUP_TABLE prevents
              * redundant queries from going out on the wire.
              */
-            if ( ( addr = (NbtAddress) checkLookupTable(name) ) == null ) {
+            CountDownLatch inFlight = new CountDownLatch(1);
+            if ( ( addr = checkLookupTable(name, inFlight) ) == null ) {
                 try {
                     addr = getByName(name, svr);
                 }
                 catch ( UnknownHostException uhe ) {
+                    // cache the failure as well, so that repeated lookups of unknown names do not hit the network
                     addr = this.unknownAddress;
                 }
                 finally {
                     cacheAddress(name, addr);
-                    updateLookupTable(name);
+                    updateLookupTable(name, inFlight);
                 }
             }
         }
@@ -227,39 +312,31 @@ public class NameServiceClientImpl implements Runnable, NameServiceClient {
     }
 
 
-    private Object checkLookupTable ( Name name ) {
-        Object obj;
-
-        synchronized ( this.inFlightLookups ) {
-            if ( this.inFlightLookups.contains(name) == false ) {
-                this.inFlightLookups.add(name);
+    private NbtAddress checkLookupTable ( Name name, CountDownLatch inFlight ) {
+        while ( true ) {
+            CountDownLatch existing = this.inFlightLookups.putIfAbsent(name, inFlight);
+            if ( existing == null ) {
                 return null;
             }
-            while ( this.inFlightLookups.contains(name) ) {
-                try {
-                    this.inFlightLookups.wait();
-                }
-                catch ( InterruptedException e ) {
-                    log.trace("Interrupted", e);
-                }
+            try {
+                existing.await();
             }
-        }
-        obj = getCachedAddress(name);
-        if ( obj == null ) {
-            synchronized ( this.inFlightLookups ) {
-                this.inFlightLookups.add(name);
+            catch ( InterruptedException e ) {
+                log.trace("Interrupted", e);
+                Thread.currentThread().interrupt();
+                return null;
+            }
+            NbtAddress addr = getCachedAddress(name);
+            if ( addr != null ) {
+                return addr;
             }
         }
-
-        return obj;
     }
 
 
-    private void updateLookupTable ( Name name ) {
-        synchronized ( this.inFlightLookups ) {
-            this.inFlightLookups.remove(name);
-            this.inFlightLookups.notifyAll();
-        }
+    private void updateLookupTable ( Name name, CountDownLatch inFlight ) {
+        this.inFlightLookups.remove(name, inFlight);
+        inFlight.countDown();
     }
 
 
@@ -279,17 +356,7 @@ public class NameServiceClientImpl implements Runnable, NameServiceClient {
         if ( this.transportContext.getConfig().getNetbiosCachePolicy() == 0 ) {
             return;
         }
-        synchronized ( this.addressCache ) {
-            CacheEntry entry = this.addressCache.get(hostName);
-            if ( entry == null ) {
-                entry = new CacheEntry(hostName, addr, expiration);
-                this.addressCache.put(hostName, entry);
-            }
-            else {
-                entry.address = addr;
-                entry.expiration = expiration;
-            }
-        }
+        this.addressCache.put(hostName, new CacheEntry(hostName, addr, expiration));
     }
 
 
@@ -301,18 +368,8 @@ public class NameServiceClientImpl implements Runnable, NameServiceClient {
         if ( this.transportContext.getConfig().getNetbiosCachePolicy() != SmbConstants.FOREVER ) {
             expiration = System.currentTimeMillis() + this.transportContext.getConfig().getNetbiosCachePolicy() * 1000;
         }
-        synchronized ( this.addressCache ) {
-            for ( int i = 0; i < addrs.length; i++ ) {
-                CacheEntry entry = this.addressCache.get(addrs[ i ].hostName);
-                if ( entry == null ) {
-                    entry = new CacheEntry(addrs[ i ].hostName, addrs[ i ], expiration);
-                    this.addressCache.put(addrs[ i ].hostName, entry);
-                }
-                else {
-                    entry.address = addrs[ i ];
-                    entry.expiration = expiration;
-                }
-            }
+        for ( int i = 0; i < addrs.length; i++ ) {
+            this.addressCache.put(addrs[ i ].hostName, new CacheEntry(addrs[ i ].hostName, addrs[ i ], expiration));
         }
     }
 
@@ -321,21 +378,26 @@ public class NameServiceClientImpl implements Runnable, NameServiceClient {
         if ( this.transportContext.getConfig().getNetbiosCachePolicy() == 0 ) {
             return null;
         }
-        synchronized ( this.addressCache ) {
-            CacheEntry entry = this.addressCache.get(hostName);
-            if ( entry != null && entry.expiration < System.currentTimeMillis() && entry.expiration >= 0 ) {
-                entry = null;
-            }
-            return entry != null ? entry.address : null;
+        CacheEntry entry = this.addressCache.get(hostName);
+        if ( entry == null ) {
+            return null;
+        }
+        if ( entry.expiration < System.currentTimeMillis() && entry.expiration >= 0 ) {
+            this.addressCache.remove(hostName, entry);
+            return null;
         }
+        return entry.address;
     }
 
 
-    int getNextNameTrnId () {
-        if ( ( ++this.nextNameTrnId & 0xFFFF ) == 0 ) {
-            this.nextNameTrnId = 1;
+    private int register ( Query q ) {
+        while ( true ) {
+            int id = this.nextNameTrnId.incrementAndGet() & 0xFFFF;
+            if ( id != 0 && this.responseTable.putIfAbsent(id, q) == null ) {
+                q.nameTrnId = id;
+                return id;
+            }
         }
-        return this.nextNameTrnId;
     }
 
 
@@ -344,10 +406,24 @@ public class NameServiceClientImpl implements Runnable, NameServiceClient {
         if ( this.transportContext.getConfig().getNetbiosSoTimeout() != 0 ) {
             this.closeTimeout = Math.max(this.transportContext.getConfig().getNetbiosSoTimeout(), timeout);
         }
-        // If socket is still good, the new closeTimeout will
-        // be ignored; see tryClose comment.
-        if ( this.socket == null ) {
-            this.socket = new DatagramSocket(this.lport, this.laddr);
+        // If the channel is still good, the new closeTimeout will
+        // be picked up by the next idle check of the receiver.
+        if ( this.channel == null ) {
+            DatagramChannel ch = DatagramChannel.open();
+            try {
+                ch.setOption(StandardSocketOptions.SO_BROADCAST, true);
+                ch.bind(new InetSocketAddress(this.laddr, this.lport));
+                ch.configureBlocking(false);
+                Selector sel = Selector.open();
+                ch.register(sel, SelectionKey.OP_READ);
+                this.selector = sel;
+            }
+            catch ( IOException e ) {
+                ch.close();
+                throw e;
+            }
+            this.channel = ch;
+            this.lastActivity = System.currentTimeMillis();
             this.thread = new Thread(this, "JCIFS-NameServiceClient");
             this.thread.setDaemon(true);
             this.thread.start();
@@ -357,198 +433,289 @@ public class NameServiceClientImpl implements Runnable, NameServiceClient {
 
     void tryClose () {
         synchronized ( this.LOCK ) {
+            closeChannel();
+        }
+    }
 
-            /*
-             * Yes, there is the potential to drop packets
-             * because we might close the socket during a
-             * request. However the chances are slim and the
-             * retry code should ensure the overall request
-             * is serviced. The alternative complicates things
-             * more than I think is worth it.
-             */
 
-            if ( this.socket != null ) {
-                this.socket.close();
-                this.socket = null;
+    private void closeChannel () {
+        if ( this.channel != null ) {
+            try {
+                this.selector.close();
+                this.channel.close();
+            }
+            catch ( IOException e ) {
+                log.debug("Failed to close name service channel", e);
+            }
+            this.channel = null;
+            this.selector = null;
+        }
+        this.thread = null;
+        for ( Query q : this.responseTable.values() ) {
+            if ( this.responseTable.remove(q.nameTrnId, q) ) {
+                q.completion.failed();
             }
-            this.thread = null;
-            this.responseTable.clear();
         }
     }
 
 
     @Override
     public void run () {
+        ByteBuffer buf = ByteBuffer.wrap(this.rcv_buf);
         try {
-            while ( this.thread == Thread.currentThread() ) {
-                this.in.setLength(this.transportContext.getConfig().getNetbiosRcvBufSize());
-
-                this.socket.setSoTimeout(this.closeTimeout);
-                this.socket.receive(this.in);
+            while ( true ) {
+                DatagramChannel ch;
+                Selector sel;
+                int timeout;
+                synchronized ( this.LOCK ) {
+                    if ( this.thread != Thread.currentThread() ) {
+                        return;
+                    }
+                    ch = this.channel;
+                    sel = this.selector;
+                    timeout = this.closeTimeout;
+                }
 
-                log.trace("NetBIOS: new data read from socket");
+                sel.select(timeout);
+                sel.selectedKeys().clear();
 
-                int nameTrnId = NameServicePacket.readNameTrnId(this.rcv_buf, 0);
-                NameServicePacket response = this.responseTable.get(new Integer(nameTrnId));
-                if ( response == null || response.received ) {
-                    continue;
+                boolean any = false;
+                buf.clear();
+                while ( ch.receive(buf) != null ) {
+                    any = true;
+                    log.trace("NetBIOS: new data read from socket");
+                    handleResponse(buf.position());
+                    buf.clear();
                 }
-                synchronized ( response ) {
-                    response.readWireFormat(this.rcv_buf, 0);
-                    response.received = true;
 
-                    if ( log.isTraceEnabled() ) {
-                        log.trace(response.toString());
-                        log.trace(Hexdump.toHexString(this.rcv_buf, 0, this.in.getLength()));
+                if ( any ) {
+                    this.lastActivity = System.currentTimeMillis();
+                }
+                else if ( timeout > 0 && System.currentTimeMillis() - this.lastActivity >= timeout ) {
+                    synchronized ( this.LOCK ) {
+                        if ( this.thread == Thread.currentThread() && this.responseTable.isEmpty() ) {
+                            log.trace("Closing idle name service channel");
+                            closeChannel();
+                            return;
+                        }
                     }
-
-                    response.notify();
                 }
             }
         }
-        catch ( SocketTimeoutException ste ) {
-            log.trace("Socket timeout", ste);
-        }
-        catch ( Exception ex ) {
-            log.warn("Uncaught exception in NameServiceClient", ex);
+        catch ( IOException | ClosedSelectorException ex ) {
+            boolean closed;
+            synchronized ( this.LOCK ) {
+                closed = this.thread != Thread.currentThread();
+            }
+            if ( closed ) {
+                // the channel was closed while we were waiting on it
+                log.debug("Name service channel closed", ex);
+            }
+            else {
+                log.warn("Uncaught exception in NameServiceClient", ex);
+            }
         }
         finally {
-            tryClose();
+            synchronized ( this.LOCK ) {
+                if ( this.thread == Thread.currentThread() ) {
+                    closeChannel();
+                }
+            }
         }
     }
 
 
-    void send ( NameServicePacket request, NameServicePacket response, int timeout ) throws IOException {
-        Integer nid = null;
-        int max = this.transportContext.getConfig().getWinsServers().length;
-
-        if ( max == 0 ) {
-            max = 1; /* No WINs, try only bcast addr */
+    private void handleResponse ( int len ) {
+        int nameTrnId = NameServicePacket.readNameTrnId(this.rcv_buf, 0);
+        Query q = this.responseTable.get(nameTrnId);
+        if ( q == null || q.completion.isDone() ) {
+            return;
         }
 
-        synchronized ( response ) {
-            while ( max-- > 0 ) {
-                try {
-                    synchronized ( this.LOCK ) {
-                        request.nameTrnId = getNextNameTrnId();
-                        nid = new Integer(request.nameTrnId);
+        try {
+            q.response.readWireFormat(this.rcv_buf, 0);
+        }
+        catch ( RuntimeException e ) {
+            log.debug("Failed to decode name service response", e);
+            return;
+        }
 
-                        this.out.setAddress(request.addr);
-                        this.out.setLength(request.writeWireFormat(this.snd_buf, 0));
-                        response.received = false;
+        if ( log.isTraceEnabled() ) {
+            log.trace(q.response.toString());
+            log.trace(Hexdump.toHexString(this.rcv_buf, 0, len));
+        }
 
-                        this.responseTable.put(nid, response);
-                        ensureOpen(timeout + 1000);
-                        this.socket.send(this.out);
+        /*
+         * JetDirect printer can respond to regular broadcast query
+         * with node status so we need to check to make sure that
+         * the record type matches the question type and if not,
+         * keep waiting.
+         */
+        if ( q.request.questionType != q.response.recordType ) {
+            return;
+        }
 
-                        if ( log.isTraceEnabled() ) {
-                            log.trace(request.toString());
-                            log.trace(Hexdump.toHexString(this.snd_buf, 0, this.out.getLength()));
-                        }
-                    }
+        if ( this.responseTable.remove(nameTrnId, q) ) {
+            q.response.received = true;
+            q.completion.received(q);
+        }
+    }
 
-                    long start = System.currentTimeMillis();
-                    while ( timeout > 0 ) {
-                        response.wait(timeout);
-
-                        /*
-                         * JetDirect printer can respond to regular broadcast query
-                         * with node status so we need to check to make sure that
-                         * the record type matches the question type and if not,
-                         * loop around and try again.
-                         */
-                        if ( response.received && request.questionType == response.recordType )
-                            return;
 
-                        response.received = false;
-                        timeout -= System.currentTimeMillis() - start;
+    /**
+     * Send all queries and wait for the first positive answer
+     * 
+     * @param queries
+     * @param completion
+     * @param timeout
+     * @return the query that received a positive answer, null if all were answered negatively or timed out
+     * @throws IOException
+     */
+    Query send ( List<Query> queries, Completion completion, int timeout ) throws IOException {
+        try {
+            for ( Query q : queries ) {
+                q.response.received = false;
+                int id = register(q);
+                q.request.nameTrnId = id;
+                q.request.addr = q.destination;
+
+                byte[] snd = new byte[this.sndBufSize];
+                int len = q.request.writeWireFormat(snd, 0);
+                synchronized ( this.LOCK ) {
+                    ensureOpen(timeout + 1000);
+                    this.lastActivity = System.currentTimeMillis();
+                    if ( this.channel.send(ByteBuffer.wrap(snd, 0, len), new InetSocketAddress(q.destination, getNameServicePort())) == 0 ) {
+                        // no buffer space available, treat like a lost datagram
+                        this.responseTable.remove(id, q);
+                        completion.failed();
+                        continue;
                     }
-
-                }
-                catch ( InterruptedException ie ) {
-                    throw new InterruptedIOException();
                 }
-                finally {
-                    this.responseTable.remove(nid);
+
+                if ( log.isTraceEnabled() ) {
+                    log.trace(q.request.toString());
+                    log.trace(Hexdump.toHexString(snd, 0, len));
                 }
+            }
 
-                synchronized ( this.LOCK ) {
-                    if ( isWINS(request.addr) == false )
-                        break;
-                    /*
-                     * Message was sent to WINS but
-                     * failed to receive response.
-                     * Try a different WINS server.
-                     */
-                    if ( request.addr == getWINSAddress() )
-                        switchWINS();
-                    request.addr = getWINSAddress();
+            return completion.await(timeout);
+        }
+        finally {
+            for ( Query q : queries ) {
+                if ( q.nameTrnId != 0 ) {
+                    this.responseTable.remove(q.nameTrnId, q);
                 }
             }
         }
     }
 
 
-    NbtAddress[] getAllByName ( Name name, InetAddress addr ) throws UnknownHostException {
-        int n;
-        Configuration config = this.transportContext.getConfig();
-        NameQueryRequest request = new NameQueryRequest(config, name);
-        NameQueryResponse response = new NameQueryResponse(config);
+    void send ( NameServicePacket request, NameServicePacket response, int timeout ) throws IOException {
+        Completion c = new Completion(1);
+        send(Arrays.asList(new Query(request, response, request.addr, c)), c, timeout);
+    }
 
-        request.addr = addr != null ? addr : getWINSAddress();
-        request.isBroadcast = request.addr == null || isBroadcastAddress(request.addr);
 
-        if ( request.isBroadcast ) {
-            if ( request.addr == null ) {
-                request.addr = this.baddr;
+    /**
+     * Query the given names in parallel, if the target is a WINS server all configured WINS servers are queried
+     * 
+     * @param names
+     * @param target
+     * @param isBroadcast
+     * @return the query that was answered positively, null if none
+     * @throws IOException
+     */
+    private Query queryNames ( Name[] names, InetAddress target, boolean isBroadcast ) throws IOException {
+        Configuration config = this.transportContext.getConfig();
+        InetAddress[] destinations;
+        if ( isWINS(target) ) {
+            InetAddress[] wins = config.getWinsServers();
+            destinations = new InetAddress[wins.length];
+            int idx = this.nbnsIndex;
+            for ( int i = 0; i < wins.length; i++ ) {
+                // preferred server first
+                destinations[ i ] = wins[ ( idx + i ) % wins.length ];
             }
-            n = config.getNetbiosRetryCount();
         }
         else {
-            n = 1;
+            destinations = new InetAddress[] {
+                target
+            };
+        }
+
+        Completion c = new Completion(names.length * destinations.length);
+        List<Query> queries = new ArrayList<>(names.length * destinations.length);
+        for ( Name name : names ) {
+            for ( InetAddress dest : destinations ) {
+                NameQueryRequest request = new NameQueryRequest(config, name);
+                request.isBroadcast = isBroadcast;
+                queries.add(new Query(request, new NameQueryResponse(config), dest, c));
+            }
+        }
+
+        Query answer = send(queries, c, config.getNetbiosRetryTimeout());
+        if ( answer != null && destinations.length > 1 ) {
+            preferWINS(answer.destination);
         }
+        return answer;
+    }
 
+
+    private NbtAddress[] queryAllByName ( Name[] names, InetAddress addr ) throws UnknownHostException {
+        Configuration config = this.transportContext.getConfig();
+        InetAddress target = addr != null ? addr : getWINSAddress();
+        boolean isBroadcast = target == null || isBroadcastAddress(target);
+        if ( target == null ) {
+            target = this.baddr;
+        }
+
+        int n = isBroadcast ? config.getNetbiosRetryCount() : 1;
         do {
+            Query answer;
             try {
-                send(request, response, config.getNetbiosRetryTimeout());
+                answer = queryNames(names, target, isBroadcast);
             }
             catch ( InterruptedIOException ioe ) {
-                // second query thread to finish gets interrupted so this is expected
                 if ( log.isTraceEnabled() ) {
-                    log.trace("Failed to send nameservice request for " + name.name, ioe);
+                    log.trace("Interrupted while waiting for nameservice response for " + names[ 0 ].name, ioe);
                 }
-                throw new UnknownHostException(name.name);
+                throw new UnknownHostException(names[ 0 ].name);
             }
             catch ( IOException ioe ) {
-                log.info("Failed to send nameservice request for " + name.name, ioe);
-                throw new UnknownHostException(name.name);
+                log.info("Failed to send nameservice request for " + names[ 0 ].name, ioe);
+                throw new UnknownHostException(names[ 0 ].name);
             }
 
-            if ( response.received && response.resultCode == 0 ) {
-                return response.addrEntry;
+            if ( answer != null ) {
+                return ( (NameQueryResponse) answer.response ).addrEntry;
             }
         }
-        while ( --n > 0 && request.isBroadcast );
+        while ( --n > 0 && isBroadcast );
 
-        throw new UnknownHostException(name.name);
+        throw new UnknownHostException(names[ 0 ].name);
     }
 
 
-    NbtAddress getByName ( Name name, InetAddress addr ) throws UnknownHostException {
-        NameQueryRequest request = new NameQueryRequest(this.transportContext.getConfig(), name);
-        NameQueryResponse response = new NameQueryResponse(this.transportContext.getConfig());
+    NbtAddress[] getAllByName ( Name name, InetAddress addr ) throws UnknownHostException {
+        return queryAllByName(new Name[] {
+            name
+        }, addr);
+    }
 
+
+    NbtAddress getByName ( Name name, InetAddress addr ) throws UnknownHostException {
         if ( addr != null ) { /*
                                * UniAddress calls always use this
                                * because it specifies addr
                                */
-            request.addr = addr; /* if addr ends with 255 flag it bcast */
-            request.isBroadcast = isBroadcastAddress(addr);
-
+            boolean isBroadcast = isBroadcastAddress(addr); /* if addr ends with 255 flag it bcast */
             int n = this.transportContext.getConfig().getNetbiosRetryCount();
             do {
+                Query answer;
                 try {
-                    send(request, response, this.transportContext.getConfig().getNetbiosRetryTimeout());
+                    answer = queryNames(new Name[] {
+                        name
+                    }, addr, isBroadcast);
                 }
                 catch ( InterruptedIOException ioe ) {
                     if ( log.isTraceEnabled() ) {
@@ -561,13 +728,14 @@ public class NameServiceClientImpl implements Runnable, NameServiceClient {
                     throw new UnknownHostException(name.name);
                 }
 
-                if ( response.received && response.resultCode == 0 ) {
-                    int last = response.addrEntry.length - 1;
-                    response.addrEntry[ last ].hostName.srcHashCode = addr.hashCode();
-                    return response.addrEntry[ last ];
+                if ( answer != null ) {
+                    NbtAddress[] addrEntry = ( (NameQueryResponse) answer.response ).addrEntry;
+                    int last = addrEntry.length - 1;
+                    addrEntry[ last ].hostName.srcHashCode = addr.hashCode();
+                    return addrEntry[ last ];
                 }
             }
-            while ( --n > 0 && request.isBroadcast );
+            while ( --n > 0 && isBroadcast );
 
             throw new UnknownHostException(name.name);
         }
@@ -590,38 +758,39 @@ public class NameServiceClientImpl implements Runnable, NameServiceClient {
                     break;
                 case RESOLVER_WINS:
                 case RESOLVER_BCAST:
+                    InetAddress target;
+                    boolean isBroadcast;
                     if ( resolverType == ResolverType.RESOLVER_WINS && name.name != NbtAddress.MASTER_BROWSER_NAME && name.hexCode != 0x1d ) {
-                        request.addr = getWINSAddress();
-                        request.isBroadcast = false;
+                        target = getWINSAddress();
+                        isBroadcast = false;
+                        if ( target == null ) {
+                            break;
+                        }
                     }
                     else {
-                        request.addr = this.baddr;
-                        request.isBroadcast = true;
+                        target = this.baddr;
+                        isBroadcast = true;
                     }
 
                     int n = this.transportContext.getConfig().getNetbiosRetryCount();
                     while ( n-- > 0 ) {
-                        try {
-                            send(request, response, this.transportContext.getConfig().getNetbiosRetryTimeout());
-                        }
-                        catch ( IOException ioe ) {
-                            log.info("Failed to send nameservice request for " + name.name, ioe);
-                            throw new UnknownHostException(name.name);
-                        }
-                        if ( response.received && response.resultCode == 0 ) {
-
+                        Query answer = queryNames(new Name[] {
+                            name
+                        }, target, isBroadcast);
+                        if ( answer != null ) {
+                            NbtAddress[] addrEntry = ( (NameQueryResponse) answer.response ).addrEntry;
                             /*
                              * Before we return, in anticipation of this address being cached we must
                              * augment the addresses name's hashCode to distinguish those resolved by
                              * Lmhosts, WINS, or BCAST. Otherwise a failed query from say WINS would
                              * get pulled out of the cache for a BCAST on the same name.
                              */
-                            response.addrEntry[ 0 ].hostName.srcHashCode = request.addr.hashCode();
-                            return response.addrEntry[ 0 ];
+                            addrEntry[ 0 ].hostName.srcHashCode = answer.destination.hashCode();
+                            return addrEntry[ 0 ];
                         }
                         else if ( resolverType == ResolverType.RESOLVER_WINS ) {
                             /*
-                             * If WINS reports negative, no point in retry
+                             * All WINS servers have been asked in parallel, no point in retry
                              */
                             break;
                         }
@@ -639,7 +808,6 @@ public class NameServiceClientImpl implements Runnable, NameServiceClient {
     }
 
 
-
     @Override
     public NbtAddress[] getNodeStatus ( NetbiosAddress addr ) throws UnknownHostException {
         NodeStatusResponse response = new NodeStatusResponse(this.transportContext.getConfig(), addr.unwrap(NbtAddress.class));
@@ -777,14 +945,23 @@ public class NameServiceClientImpl implements Runnable, NameServiceClient {
     }
 
 
+    /**
+     * 
+     * @return the UDP port name service requests are sent to
+     */
+    protected int getNameServicePort () {
+        return NAME_SERVICE_UDP_PORT;
+    }
+
+
     /**
      * 
      * @param tc
      * @return address of active WINS server
      */
     protected InetAddress getWINSAddress () {
-        return this.transportContext.getConfig().getWinsServers().length == 0 ? null
-                : this.transportContext.getConfig().getWinsServers()[ this.nbnsIndex ];
+        InetAddress[] wins = this.transportContext.getConfig().getWinsServers();
+        return wins.length == 0 ? null : wins[ this.nbnsIndex % wins.length ];
     }
 
 
@@ -814,139 +991,35 @@ public class NameServiceClientImpl implements Runnable, NameServiceClient {
 
 
     protected InetAddress switchWINS () {
-        this.nbnsIndex = ( this.nbnsIndex + 1 ) < this.transportContext.getConfig().getWinsServers().length ? this.nbnsIndex + 1 : 0;
-        return this.transportContext.getConfig().getWinsServers().length == 0 ? null
-                : this.transportContext.getConfig().getWinsServers()[ this.nbnsIndex ];
-    }
-
-    static class Sem {
-
-        Sem ( int count ) {
-            this.count = count;
-        }
-
-        int count;
+        InetAddress[] wins = this.transportContext.getConfig().getWinsServers();
+        this.nbnsIndex = ( this.nbnsIndex + 1 ) < wins.length ? this.nbnsIndex + 1 : 0;
+        return wins.length == 0 ? null : wins[ this.nbnsIndex ];
     }
 
-    static class QueryThread extends Thread {
-
-        private Sem sem;
-        private String host, scope;
-        private int type;
-        private NetbiosAddress[] ans = null;
-        private InetAddress svr;
-        private UnknownHostException uhe;
-        private CIFSContext tc;
-
-
-        QueryThread ( Sem sem, String host, int type, String scope, InetAddress svr, CIFSContext tc ) {
-            super("JCIFS-QueryThread: " + host);
-            this.sem = sem;
-            this.host = host;
-            this.type = type;
-            this.scope = scope;
-            this.svr = svr;
-            this.tc = tc;
-        }
-
 
-        @Override
-        public void run () {
-            try {
-                this.ans = this.tc.getNameServiceClient().getNbtAllByName(this.host, this.type, this.scope, this.svr);
-            }
-            catch ( UnknownHostException ex ) {
-                this.uhe = ex;
-            }
-            catch ( Exception ex ) {
-                this.uhe = new UnknownHostException(ex.getMessage());
-            }
-            finally {
-                synchronized ( this.sem ) {
-                    this.sem.count--;
-                    this.sem.notify();
-                }
+    /**
+     * Make the WINS server that answered first the one queried first next time
+     * 
+     * @param svr
+     */
+    private void preferWINS ( InetAddress svr ) {
+        InetAddress[] wins = this.transportContext.getConfig().getWinsServers();
+        for ( int i = 0; i < wins.length; i++ ) {
+            if ( wins[ i ].equals(svr) ) {
+                this.nbnsIndex = i;
+                return;
             }
         }
-
-
-        /**
-         * @return the ans
-         */
-        public NetbiosAddress[] getAnswer () {
-            return this.ans;
-        }
-
-
-        /**
-         * @return the uhe
-         */
-        public UnknownHostException getException () {
-            return this.uhe;
-        }
-
     }
 
 
     NetbiosAddress[] lookupServerOrWorkgroup ( String name, InetAddress svr ) throws UnknownHostException {
-        Sem sem = new Sem(2);
         int type = isWINS(svr) ? 0x1b : 0x1d;
-
-        QueryThread q1x = new QueryThread(sem, name, type, null, svr, this.transportContext);
-        QueryThread q20 = new QueryThread(sem, name, 0x20, null, svr, this.transportContext);
-        q1x.setDaemon(true);
-        q20.setDaemon(true);
-        try {
-            synchronized ( sem ) {
-                q1x.start();
-                q20.start();
-
-                while ( sem.count > 0 && q1x.getAnswer() == null && q20.getAnswer() == null ) {
-                    sem.wait();
-                }
-            }
-        }
-        catch ( InterruptedException ie ) {
-            throw new UnknownHostException(name);
-        }
-        waitForQueryThreads(q1x, q20);
-        if ( q1x.getAnswer() != null ) {
-            return q1x.getAnswer();
-        }
-        else if ( q20.getAnswer() != null ) {
-            return q20.getAnswer();
-        }
-        else {
-            throw q1x.getException();
-        }
-    }
-
-
-    private static void waitForQueryThreads ( QueryThread q1x, QueryThread q20 ) {
-        interruptThreadSafely(q1x);
-        joinThread(q1x);
-        interruptThreadSafely(q20);
-        joinThread(q20);
-    }
-
-
-    private static void interruptThreadSafely ( QueryThread thread ) {
-        try {
-            thread.interrupt();
-        }
-        catch ( SecurityException e ) {
-            e.printStackTrace();
-        }
-    }
-
-
-    private static void joinThread ( Thread thread ) {
-        try {
-            thread.join();
-        }
-        catch ( InterruptedException e ) {
-            e.printStackTrace();
-        }
+        Configuration config = this.transportContext.getConfig();
+        // query for the domain/workgroup and the server name at the same time
+        return queryAllByName(new Name[] {
+            new Name(config, name, type, null), new Name(config, name, 0x20, null)
+        }, svr);
     }
 
 
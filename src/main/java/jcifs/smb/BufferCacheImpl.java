@@ -23,6 +23,7 @@ import java.util.Arrays;
 
 import jcifs.BufferCache;
 import jcifs.Configuration;
+import jcifs.MetricsCollector;
 
 
 /**
@@ -34,6 +35,7 @@ public class BufferCacheImpl implements BufferCache {
 
     private final Object[] cache;
     private final int bufferSize;
+    private final MetricsCollector metrics;
     private int freeBuffers = 0;
 
 
@@ -42,7 +44,17 @@ public class BufferCacheImpl implements BufferCache {
      * @param cfg
      */
     public BufferCacheImpl ( Configuration cfg ) {
-        this(cfg.getBufferCacheSize(), cfg.getMaximumBufferSize());
+        this(cfg, NoopMetricsCollector.INSTANCE);
+    }
+
+
+    /**
+     * 
+     * @param cfg
+     * @param metrics
+     */
+    public BufferCacheImpl ( Configuration cfg, MetricsCollector metrics ) {
+        this(cfg.getBufferCacheSize(), cfg.getMaximumBufferSize(), metrics);
     }
 
 
@@ -52,8 +64,19 @@ public class BufferCacheImpl implements BufferCache {
      * 
      */
     public BufferCacheImpl ( int maxBuffers, int maxSize ) {
+        this(maxBuffers, maxSize, NoopMetricsCollector.INSTANCE);
+    }
+
+
+    /**
+     * @param maxBuffers
+     * @param maxSize
+     * @param metrics
+     */
+    public BufferCacheImpl ( int maxBuffers, int maxSize, MetricsCollector metrics ) {
         this.cache = new Object[maxBuffers];
         this.bufferSize = maxSize;
+        this.metrics = metrics;
     }
 
 
@@ -64,21 +87,21 @@ public class BufferCacheImpl implements BufferCache {
      */
     @Override
     public byte[] getBuffer () {
+        byte[] buf = null;
         synchronized ( this.cache ) {
-            byte[] buf;
-
             if ( this.freeBuffers > 0 ) {
                 for ( int i = 0; i < this.cache.length; i++ ) {
                     if ( this.cache[ i ] != null ) {
                         buf = (byte[]) this.cache[ i ];
                         this.cache[ i ] = null;
                         this.freeBuffers--;
-                        return buf;
+                        break;
                     }
                 }
             }
-            return new byte[this.bufferSize];
         }
+        this.metrics.cacheAccess(MetricsCollector.CACHE_BUFFER, buf != null);
+        return buf != null ? buf : new byte[this.bufferSize];
     }
 
 
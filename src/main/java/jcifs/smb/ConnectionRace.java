@@ -0,0 +1,291 @@
+/*
+ * © 2026 agent <agent@local>
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package jcifs.smb;
+
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Races staggered connection attempts against each other
+ * 
+ * The first attempt is started immediately, further attempts are started after the configured delay, or as soon as
+ * the previous one failed. The first attempt to succeed is used, attempts still in progress are aborted and
+ * results of attempts completing later are discarded.
+ * 
+ * Attempts are in order of preference. If a preference window is set, a connection established while a preferred
+ * attempt is still in progress is held back until either that attempt finished or the window expired.
+ * 
+ * @author agent
+ *
+ * @param <T>
+ *            connection type
+ */
+abstract class ConnectionRace <T> {
+
+    private static final Logger log = LoggerFactory.getLogger(ConnectionRace.class);
+
+    private final Executor executor;
+    private final int delay;
+    private final int preferenceWindow;
+    private final BlockingQueue<Outcome<T>> outcomes = new LinkedBlockingQueue<>();
+    private final Object lock = new Object();
+    private boolean finished;
+
+
+    /**
+     * @param executor
+     *            executor to run the attempts on
+     * @param delay
+     *            delay between starting attempts, in milliseconds
+     */
+    ConnectionRace ( Executor executor, int delay ) {
+        this(executor, delay, 0);
+    }
+
+
+    /**
+     * @param executor
+     *            executor to run the attempts on
+     * @param delay
+     *            delay between starting attempts, in milliseconds
+     * @param preferenceWindow
+     *            time to wait for preferred attempts still in progress once a less preferred one succeeded, in
+     *            milliseconds
+     */
+    ConnectionRace ( Executor executor, int delay, int preferenceWindow ) {
+        this.executor = executor;
+        this.delay = delay;
+        this.preferenceWindow = preferenceWindow;
+    }
+
+
+    /**
+     * Perform the connection attempt, runs in a separate thread
+     * 
+     * @param index
+     * @return the established connection
+     * @throws IOException
+     */
+    protected abstract T attempt ( int index ) throws IOException;
+
+
+    /**
+     * Abort an attempt that is still in progress, may be called concurrently with {@link #attempt(int)}
+     * 
+     * @param index
+     */
+    protected abstract void abort ( int index );
+
+
+    /**
+     * Release a connection that was established after another attempt won
+     * 
+     * @param index
+     * @param conn
+     */
+    protected abstract void discard ( int index, T conn );
+
+
+    /**
+     * Called when an attempt has failed
+     * 
+     * @param index
+     * @param e
+     */
+    protected void failed ( int index, IOException e ) {}
+
+
+    /**
+     * @param count
+     *            number of attempts
+     * @return the first established connection
+     * @throws IOException
+     *             the last failure if all attempts failed
+     */
+    T run ( int count ) throws IOException {
+        int started = 0;
+        int outstanding = 0;
+        long nextStart = 0;
+        boolean[] settled = new boolean[count];
+        IOException last = null;
+        T candidate = null;
+        int candidateIndex = -1;
+        long candidateDeadline = 0;
+        try {
+            while ( true ) {
+                long now = System.currentTimeMillis();
+                if ( candidate != null && ( now >= candidateDeadline || !isPreferredPending(candidateIndex, settled) ) ) {
+                    T conn = candidate;
+                    candidate = null;
+                    return conn;
+                }
+                if ( candidate == null && started < count && ( outstanding == 0 || now >= nextStart ) ) {
+                    start(started++);
+                    outstanding++;
+                    nextStart = now + this.delay;
+                    continue;
+                }
+                if ( outstanding == 0 ) {
+                    break;
+                }
+
+                Outcome<T> o;
+                if ( candidate != null ) {
+                    o = this.outcomes.poll(Math.max(1, candidateDeadline - now), TimeUnit.MILLISECONDS);
+                }
+                else if ( started < count ) {
+                    o = this.outcomes.poll(Math.max(1, nextStart - now), TimeUnit.MILLISECONDS);
+                }
+                else {
+                    o = this.outcomes.take();
+                }
+                if ( o == null ) {
+                    continue;
+                }
+
+                outstanding--;
+                settled[ o.index ] = true;
+                if ( o.error == null ) {
+                    if ( candidate == null ) {
+                        candidate = o.conn;
+                        candidateIndex = o.index;
+                        candidateDeadline = now + this.preferenceWindow;
+                    }
+                    else if ( o.index < candidateIndex ) {
+                        discard(candidateIndex, candidate);
+                        candidate = o.conn;
+                        candidateIndex = o.index;
+                    }
+                    else {
+                        discard(o.index, o.conn);
+                    }
+                    continue;
+                }
+                last = o.error;
+                failed(o.index, o.error);
+                // start the next attempt right away
+                nextStart = now;
+            }
+        }
+        catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while connecting");
+        }
+        finally {
+            if ( candidate != null ) {
+                discard(candidateIndex, candidate);
+            }
+            finish(started, settled);
+        }
+
+        if ( last == null ) {
+            throw new IOException("No connection attempts");
+        }
+        throw last;
+    }
+
+
+    private static boolean isPreferredPending ( int index, boolean[] settled ) {
+        for ( int i = 0; i < index; i++ ) {
+            if ( !settled[ i ] ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    private void start ( final int index ) {
+        if ( log.isDebugEnabled() && index > 0 ) {
+            log.debug("Starting connection attempt " + index);
+        }
+        try {
+            this.executor.execute(new Runnable() {
+
+                @Override
+                public void run () {
+                    Outcome<T> o;
+                    try {
+                        o = new Outcome<>(index, attempt(index), null);
+                    }
+                    catch ( IOException e ) {
+                        o = new Outcome<>(index, null, e);
+                    }
+                    catch ( RuntimeException e ) {
+                        o = new Outcome<>(index, null, new IOException("Connection attempt failed", e));
+                    }
+                    synchronized ( ConnectionRace.this.lock ) {
+                        if ( !ConnectionRace.this.finished ) {
+                            ConnectionRace.this.outcomes.add(o);
+                            return;
+                        }
+                    }
+                    if ( o.conn != null ) {
+                        discard(index, o.conn);
+                    }
+                }
+            });
+        }
+        catch ( RejectedExecutionException e ) {
+            this.outcomes.add(new Outcome<T>(index, null, new IOException("Context is closed", e)));
+        }
+    }
+
+
+    private void finish ( int started, boolean[] settled ) {
+        synchronized ( this.lock ) {
+            this.finished = true;
+        }
+        Outcome<T> o;
+        while ( ( o = this.outcomes.poll() ) != null ) {
+            settled[ o.index ] = true;
+            if ( o.conn != null ) {
+                discard(o.index, o.conn);
+            }
+        }
+        for ( int i = 0; i < started; i++ ) {
+            if ( !settled[ i ] ) {
+                abort(i);
+            }
+        }
+    }
+
+    private static final class Outcome <T> {
+
+        final int index;
+        final T conn;
+        final IOException error;
+
+
+        Outcome ( int index, T conn, IOException error ) {
+            this.index = index;
+            this.conn = conn;
+            this.error = error;
+        }
+    }
+}
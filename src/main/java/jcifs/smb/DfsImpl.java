@@ -20,12 +20,16 @@ package jcifs.smb;
 
 
 import java.io.IOException;
-import java.util.HashMap;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -33,6 +37,8 @@ import org.slf4j.LoggerFactory;
 import jcifs.CIFSContext;
 import jcifs.DfsReferralData;
 import jcifs.DfsResolver;
+import jcifs.DfsTargetStatistics;
+import jcifs.MetricsCollector;
 import jcifs.SmbTransport;
 import jcifs.internal.dfs.DfsReferralDataImpl;
 import jcifs.internal.dfs.DfsReferralDataInternal;
@@ -41,6 +47,11 @@ import jcifs.internal.dfs.DfsReferralDataInternal;
 /**
  * Caching DFS resolver implementation
  * 
+ * Lookups are served from concurrent caches without locking. Loading a missing or expired entry is
+ * single-flight per key, other threads needing the same entry wait for that load while lookups of other keys proceed.
+ * Entries that are close to expiring are refreshed in the background while the cached value continues to be served,
+ * failures (e.g. non-DFS paths) are cached as negative entries.
+ * 
  * @internal
  */
 public class DfsImpl implements DfsResolver {
@@ -50,13 +61,31 @@ public class DfsImpl implements DfsResolver {
     private static class CacheEntry <T> {
 
         long expiration;
-        Map<String, T> map;
+        long refreshAfter;
+        ConcurrentMap<String, T> map;
+        /**
+         * negative lookups by key and their expiration
+         */
+        final ConcurrentMap<String, Long> misses = new ConcurrentHashMap<>();
 
 
         CacheEntry ( long ttl ) {
-            this.expiration = System.currentTimeMillis() + ttl * 1000L;
+            long now = System.currentTimeMillis();
+            this.expiration = now + ttl * 1000L;
+            // start refreshing in the background once three quarters of the TTL have passed
+            this.refreshAfter = now + ttl * 750L;
             this.map = new ConcurrentHashMap<>();
         }
+
+
+        boolean isExpired ( long now ) {
+            return now > this.expiration;
+        }
+
+
+        boolean needsRefresh ( long now ) {
+            return now > this.refreshAfter;
+        }
     }
 
     private static class NegativeCacheEntry <T> extends CacheEntry<T> {
@@ -73,17 +102,22 @@ public class DfsImpl implements DfsResolver {
     private static final Logger log = LoggerFactory.getLogger(DfsImpl.class);
     private static final String DC_ENTRY = "dc";
 
-    private CacheEntry<Map<String, CacheEntry<DfsReferralDataInternal>>> _domains = null; /*
-                                                                                           * aka trusted domains cache
-                                                                                           */
+    private volatile CacheEntry<Map<String, CacheEntry<DfsReferralDataInternal>>> _domains = null; /*
+                                                                                                    * aka trusted
+                                                                                                    * domains cache
+                                                                                                    */
     private final Object domainsLock = new Object();
 
-    private final Map<String, CacheEntry<DfsReferralDataInternal>> dcCache = new HashMap<>();
-    private final Object dcLock = new Object();
+    private final ConcurrentMap<String, CacheEntry<DfsReferralDataInternal>> dcCache = new ConcurrentHashMap<>();
 
-    private CacheEntry<DfsReferralDataInternal> referrals = null;
+    private volatile CacheEntry<DfsReferralDataInternal> referrals = null;
     private final Object referralsLock = new Object();
 
+    private final DfsTargetTracker targetTracker = new DfsTargetTracker();
+
+    private final ConcurrentMap<String, Object> loadLocks = new ConcurrentHashMap<>();
+    private final Set<String> refreshing = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
 
     /**
      * @param tc
@@ -92,16 +126,115 @@ public class DfsImpl implements DfsResolver {
     public DfsImpl ( CIFSContext tc ) {}
 
 
-    private Map<String, Map<String, CacheEntry<DfsReferralDataInternal>>> getTrustedDomains ( CIFSContext tf ) throws SmbAuthException {
+    /**
+     * Lock object for loading the given key, so that concurrent lookups of the same key only cause a single request
+     * 
+     * @param key
+     * @return the lock to hold while loading
+     */
+    private Object getLoadLock ( String key ) {
+        Object lock = this.loadLocks.get(key);
+        if ( lock == null ) {
+            lock = new Object();
+            Object old = this.loadLocks.putIfAbsent(key, lock);
+            if ( old != null ) {
+                lock = old;
+            }
+        }
+        return lock;
+    }
+
+
+    private void releaseLoadLock ( String key, Object lock ) {
+        this.loadLocks.remove(key, lock);
+    }
+
+
+    /**
+     * Run a refresh in the background, unless one is already running for the key
+     * 
+     * @param tf
+     *            context whose executor to use
+     * @param key
+     * @param refresh
+     */
+    private void refreshAsync ( CIFSContext tf, final String key, final Refresh refresh ) {
+        if ( !this.refreshing.add(key) ) {
+            return;
+        }
+        if ( log.isDebugEnabled() ) {
+            log.debug("Refreshing " + key + " in background");
+        }
+        try {
+            tf.getExecutor().execute(new Runnable() {
+
+                @Override
+                public void run () {
+                    try {
+                        refresh.run();
+                    }
+                    catch ( SmbAuthException e ) {
+                        log.debug("Background refresh failed for " + key, e);
+                    }
+                    catch ( RuntimeException e ) {
+                        log.warn("Background refresh failed for " + key, e);
+                    }
+                    finally {
+                        DfsImpl.this.refreshing.remove(key);
+                    }
+                }
+            });
+        }
+        catch ( RuntimeException e ) {
+            this.refreshing.remove(key);
+            log.warn("Failed to schedule refresh", e);
+        }
+    }
+
+    private static interface Refresh {
+
+        void run () throws SmbAuthException;
+    }
+
+
+    private Map<String, Map<String, CacheEntry<DfsReferralDataInternal>>> getTrustedDomains ( final CIFSContext tf ) throws SmbAuthException {
         if ( tf.getConfig().isDfsDisabled() || tf.getCredentials().getUserDomain() == null || tf.getCredentials().getUserDomain().isEmpty() ) {
             return null;
         }
 
-        if ( this._domains != null && System.currentTimeMillis() > this._domains.expiration ) {
-            this._domains = null;
+        long now = System.currentTimeMillis();
+        CacheEntry<Map<String, CacheEntry<DfsReferralDataInternal>>> d = this._domains;
+        if ( d != null && !d.isExpired(now) ) {
+            if ( d.needsRefresh(now) ) {
+                refreshAsync(tf, "domains", new Refresh() {
+
+                    @Override
+                    public void run () throws SmbAuthException {
+                        synchronized ( DfsImpl.this.domainsLock ) {
+                            loadTrustedDomains(tf, DfsImpl.this._domains, true);
+                        }
+                    }
+                });
+            }
+            return d.map;
+        }
+
+        synchronized ( this.domainsLock ) {
+            d = this._domains;
+            if ( d != null && !d.isExpired(System.currentTimeMillis()) ) {
+                // loaded by another thread in the meantime
+                return d.map;
+            }
+            return loadTrustedDomains(tf, d, false);
         }
-        if ( this._domains != null )
-            return this._domains.map;
+    }
+
+
+    /**
+     * Must be called with domainsLock held
+     */
+    private Map<String, Map<String, CacheEntry<DfsReferralDataInternal>>> loadTrustedDomains ( CIFSContext tf,
+            CacheEntry<Map<String, CacheEntry<DfsReferralDataInternal>>> previous, boolean background ) throws SmbAuthException {
         try {
             String authDomain = tf.getCredentials().getUserDomain();
             // otherwise you end up with a wrong server name for kerberos
@@ -109,47 +242,72 @@ public class DfsImpl implements DfsResolver {
             // https://lists.samba.org/archive/samba-technical/2009-August/066486.html
             // UniAddress addr = UniAddress.getByName(authDomain, true, tf);
             // SmbTransport trans = tf.getTransportPool().getSmbTransport(tf, addr, 0);
-            try ( SmbTransport dc = getDc(tf, authDomain) ) {
+            DfsReferralData initial = fetchDomainReferral(tf, authDomain);
+            if ( initial != null ) {
                 CacheEntry<Map<String, CacheEntry<DfsReferralDataInternal>>> entry = new CacheEntry<>(tf.getConfig().getDfsTtl() * 10L);
-                DfsReferralData initial = null;
-                @SuppressWarnings ( "resource" )
-                SmbTransportInternal trans = dc != null ? dc.unwrap(SmbTransportInternal.class) : null;
-                if ( trans != null ) {
-                    // get domain referral
-                    initial = trans.getDfsReferrals(tf.withAnonymousCredentials(), "", trans.getRemoteHostName(), authDomain, 0);
-                }
-                if ( initial != null ) {
-                    DfsReferralDataInternal start = initial.unwrap(DfsReferralDataInternal.class);
-                    DfsReferralDataInternal dr = start;
-                    do {
-                        String domain = dr.getServer().toLowerCase();
-                        entry.map.put(domain, new HashMap<String, CacheEntry<DfsReferralDataInternal>>());
-                        if ( log.isTraceEnabled() ) {
-                            log.trace("Inserting cache entry for domain " + domain + ": " + dr);
-                        }
-                        dr = dr.next();
+                DfsReferralDataInternal start = initial.unwrap(DfsReferralDataInternal.class);
+                DfsReferralDataInternal dr = start;
+                do {
+                    String domain = dr.getServer().toLowerCase();
+                    // keep the roots already cached for the domain
+                    Map<String, CacheEntry<DfsReferralDataInternal>> roots = previous != null ? previous.map.get(domain) : null;
+                    entry.map.put(domain, roots != null ? roots : new ConcurrentHashMap<String, CacheEntry<DfsReferralDataInternal>>());
+                    if ( log.isTraceEnabled() ) {
+                        log.trace("Inserting cache entry for domain " + domain + ": " + dr);
                     }
-                    while ( dr != start );
-                    this._domains = entry;
-                    return this._domains.map;
+                    dr = dr.next();
                 }
+                while ( dr != start );
+                this._domains = entry;
+                return entry.map;
             }
         }
         catch ( IOException ioe ) {
             if ( log.isDebugEnabled() ) {
                 log.debug("getting trusted domains failed: " + tf.getCredentials().getUserDomain(), ioe);
             }
+            if ( background && previous != null && !previous.map.isEmpty() ) {
+                // keep serving the previous state until it expires
+                return previous.map;
+            }
             CacheEntry<Map<String, CacheEntry<DfsReferralDataInternal>>> entry = new CacheEntry<>(tf.getConfig().getDfsTtl() * 10L);
             this._domains = entry;
             if ( tf.getConfig().isDfsStrictView() && ioe instanceof SmbAuthException ) {
                 throw (SmbAuthException) ioe;
             }
-            return this._domains.map;
+            return entry.map;
         }
+
+        if ( background && previous != null && !previous.map.isEmpty() ) {
+            return previous.map;
+        }
+        // no domain referral, remember that
+        CacheEntry<Map<String, CacheEntry<DfsReferralDataInternal>>> entry = new CacheEntry<>(tf.getConfig().getDfsTtl() * 10L);
+        this._domains = entry;
         return null;
     }
 
 
+    /**
+     * Request the domain referral listing the trusted domains
+     * 
+     * @param tf
+     * @param authDomain
+     * @return the domain referral, null if there is none
+     * @throws IOException
+     */
+    DfsReferralData fetchDomainReferral ( CIFSContext tf, String authDomain ) throws IOException {
+        try ( SmbTransport dc = getDc(tf, authDomain) ) {
+            if ( dc == null ) {
+                return null;
+            }
+            @SuppressWarnings ( "resource" )
+            SmbTransportInternal trans = dc.unwrap(SmbTransportInternal.class);
+            return trans.getDfsReferrals(tf.withAnonymousCredentials(), "", trans.getRemoteHostName(), authDomain, 0);
+        }
+    }
+
+
     /**
      * 
      * {@inheritDoc}
@@ -158,65 +316,118 @@ public class DfsImpl implements DfsResolver {
      */
     @Override
     public boolean isTrustedDomain ( CIFSContext tf, String domain ) throws SmbAuthException {
-        synchronized ( this.domainsLock ) {
-            Map<String, Map<String, CacheEntry<DfsReferralDataInternal>>> domains = getTrustedDomains(tf);
-            if ( domains == null )
-                return false;
-            domain = domain.toLowerCase(Locale.ROOT);
-            return domains.get(domain) != null;
-        }
+        Map<String, Map<String, CacheEntry<DfsReferralDataInternal>>> domains = getTrustedDomains(tf);
+        if ( domains == null )
+            return false;
+        domain = domain.toLowerCase(Locale.ROOT);
+        return domains.get(domain) != null;
     }
 
 
-    private DfsReferralData getDcReferrals ( CIFSContext tf, String domain ) throws SmbAuthException {
+    private DfsReferralData getDcReferrals ( final CIFSContext tf, final String domain ) throws SmbAuthException {
         if ( tf.getConfig().isDfsDisabled() )
             return null;
-        String dom = domain.toLowerCase(Locale.ROOT);
-        synchronized ( this.dcLock ) {
-            CacheEntry<DfsReferralDataInternal> ce = this.dcCache.get(dom);
-            if ( ce != null && System.currentTimeMillis() > ce.expiration ) {
-                ce = null;
-            }
-            if ( ce != null ) {
-                DfsReferralDataInternal ri = ce.map.get(DC_ENTRY);
-                if ( ri == NEGATIVE_ENTRY ) {
-                    return null;
-                }
-                return ri;
-            }
-            ce = new CacheEntry<>(tf.getConfig().getDfsTtl());
-            try {
-                try ( SmbTransportInternal trans = tf.getTransportPool().getSmbTransport(tf, domain, 0, false, false)
-                        .unwrap(SmbTransportInternal.class) ) {
-                    synchronized ( trans ) {
-                        DfsReferralData dr = trans.getDfsReferrals(tf.withAnonymousCredentials(), "\\" + dom, domain, dom, 1);
-
-                        if ( dr != null ) {
-                            if ( log.isDebugEnabled() ) {
-                                log.debug("Got DC referral " + dr);
-                            }
-                            DfsReferralDataInternal dri = dr.unwrap(DfsReferralDataInternal.class);
-                            ce.map.put(DC_ENTRY, dri);
-                            this.dcCache.put(dom, ce);
-                            return dr;
-                        }
+        final String dom = domain.toLowerCase(Locale.ROOT);
+        long now = System.currentTimeMillis();
+        CacheEntry<DfsReferralDataInternal> ce = this.dcCache.get(dom);
+        if ( ce != null && !ce.isExpired(now) ) {
+            if ( ce.needsRefresh(now) ) {
+                refreshAsync(tf, "dc:" + dom, new Refresh() {
+
+                    @Override
+                    public void run () throws SmbAuthException {
+                        fetchDcReferrals(tf, domain, dom, true);
                     }
+                });
+            }
+            tf.getMetrics().cacheAccess(MetricsCollector.CACHE_DFS_DC, true);
+            return getDcEntry(ce);
+        }
+
+        tf.getMetrics().cacheAccess(MetricsCollector.CACHE_DFS_DC, false);
+        String key = "dc:" + dom;
+        Object lock = getLoadLock(key);
+        try {
+            synchronized ( lock ) {
+                ce = this.dcCache.get(dom);
+                if ( ce != null && !ce.isExpired(System.currentTimeMillis()) ) {
+                    // loaded by another thread in the meantime
+                    return getDcEntry(ce);
                 }
+                return fetchDcReferrals(tf, domain, dom, false);
             }
-            catch ( IOException ioe ) {
+        }
+        finally {
+            releaseLoadLock(key, lock);
+        }
+    }
+
+
+    private static DfsReferralDataInternal getDcEntry ( CacheEntry<DfsReferralDataInternal> ce ) {
+        DfsReferralDataInternal ri = ce.map.get(DC_ENTRY);
+        if ( ri == NEGATIVE_ENTRY ) {
+            return null;
+        }
+        return ri;
+    }
+
+
+    private DfsReferralData fetchDcReferrals ( CIFSContext tf, String domain, String dom, boolean background ) throws SmbAuthException {
+        CacheEntry<DfsReferralDataInternal> ce = new CacheEntry<>(tf.getConfig().getDfsTtl());
+        try {
+            DfsReferralData dr = fetchDcReferral(tf, domain, dom);
+            if ( dr != null ) {
                 if ( log.isDebugEnabled() ) {
-                    log.debug(String.format("Getting domain controller for %s failed", domain), ioe);
+                    log.debug("Got DC referral " + dr);
                 }
+                DfsReferralDataInternal dri = dr.unwrap(DfsReferralDataInternal.class);
+                ce.map.put(DC_ENTRY, dri);
+                this.dcCache.put(dom, ce);
+                return dr;
+            }
+        }
+        catch ( IOException ioe ) {
+            if ( log.isDebugEnabled() ) {
+                log.debug(String.format("Getting domain controller for %s failed", domain), ioe);
+            }
+            if ( !background && tf.getConfig().isDfsStrictView() && ioe instanceof SmbAuthException ) {
                 ce.map.put(DC_ENTRY, NEGATIVE_ENTRY);
-                if ( tf.getConfig().isDfsStrictView() && ioe instanceof SmbAuthException ) {
-                    throw (SmbAuthException) ioe;
-                }
+                this.dcCache.put(dom, ce);
+                throw (SmbAuthException) ioe;
             }
-            ce.map.put(DC_ENTRY, NEGATIVE_ENTRY);
-            this.dcCache.put(dom, ce);
-            return null;
         }
 
+        CacheEntry<DfsReferralDataInternal> previous = this.dcCache.get(dom);
+        if ( background && previous != null && getDcEntry(previous) != null ) {
+            // keep serving the previous referral until it expires
+            return getDcEntry(previous);
+        }
+        ce.map.put(DC_ENTRY, NEGATIVE_ENTRY);
+        this.dcCache.put(dom, ce);
+        return null;
+    }
+
+
+    /**
+     * Request the DC referral for a domain
+     * 
+     * @param tf
+     * @param domain
+     * @param dom
+     *            lower case domain name
+     * @return the DC referral, null if there is none
+     * @throws IOException
+     */
+    DfsReferralData fetchDcReferral ( CIFSContext tf, String domain, String dom ) throws IOException {
+        try ( SmbTransportInternal trans = tf.getTransportPool().getSmbTransport(tf, domain, 0, false, false).unwrap(SmbTransportInternal.class) ) {
+            /*
+             * The DC transport is shared through the pool, this only serializes referral requests on that one
+             * connection (like the root referral below), lookups for other domains and cache reads do not wait.
+             */
+            synchronized ( trans ) {
+                return trans.getDfsReferrals(tf.withAnonymousCredentials(), "\\" + dom, domain, dom, 1);
+            }
+        }
     }
 
 
@@ -345,28 +556,26 @@ public class DfsImpl implements DfsResolver {
 
         DfsReferralDataInternal dr = null;
         long now = System.currentTimeMillis();
-        synchronized ( this.domainsLock ) {
+        /*
+         * domains that can contain DFS points to maps of roots for each
+         */
+        Map<String, Map<String, CacheEntry<DfsReferralDataInternal>>> domains = getTrustedDomains(tf);
+        if ( domains != null ) {
+            if ( log.isTraceEnabled() ) {
+                dumpReferralCache(domains);
+            }
+
+            root = root.toLowerCase();
             /*
-             * domains that can contain DFS points to maps of roots for each
+             * domain-based DFS root shares to links for each
              */
-            Map<String, Map<String, CacheEntry<DfsReferralDataInternal>>> domains = getTrustedDomains(tf);
-            if ( domains != null ) {
-                if ( log.isTraceEnabled() ) {
-                    dumpReferralCache(domains);
-                }
-
-                root = root.toLowerCase();
-                /*
-                 * domain-based DFS root shares to links for each
-                 */
-                Map<String, CacheEntry<DfsReferralDataInternal>> roots = domains.get(domain);
-                if ( roots != null ) {
-                    dr = getLinkReferral(tf, domain, root, path, now, roots);
-                }
+            Map<String, CacheEntry<DfsReferralDataInternal>> roots = domains.get(domain);
+            if ( roots != null ) {
+                dr = getLinkReferral(tf, domain, root, path, now, roots);
+            }
 
-                if ( tf.getConfig().isDfsConvertToFQDN() && dr instanceof DfsReferralDataImpl ) {
-                    ( (DfsReferralDataImpl) dr ).fixupDomain(domain);
-                }
+            if ( tf.getConfig().isDfsConvertToFQDN() && dr instanceof DfsReferralDataImpl ) {
+                ( (DfsReferralDataImpl) dr ).fixupDomain(domain);
             }
         }
 
@@ -472,8 +681,8 @@ public class DfsImpl implements DfsResolver {
      * @return
      * @throws SmbAuthException
      */
-    private DfsReferralDataInternal getLinkReferral ( CIFSContext tf, String domain, String root, String path, long now,
-            Map<String, CacheEntry<DfsReferralDataInternal>> roots ) throws SmbAuthException {
+    private DfsReferralDataInternal getLinkReferral ( final CIFSContext tf, final String domain, final String root, String path, long now,
+            final Map<String, CacheEntry<DfsReferralDataInternal>> roots ) throws SmbAuthException {
         DfsReferralDataInternal dr = null;
         if ( log.isTraceEnabled() ) {
             log.trace("Is a domain referral for " + domain);
@@ -487,24 +696,43 @@ public class DfsImpl implements DfsResolver {
          * Note that paths are relative to the root like "\" and not "\example.com\root".
          */
         CacheEntry<DfsReferralDataInternal> links = roots.get(root);
-        if ( links != null && now > links.expiration ) {
-            if ( log.isDebugEnabled() ) {
-                log.debug("Removing expired " + links.map);
+        if ( links != null && !links.isExpired(now) ) {
+            tf.getMetrics().cacheAccess(MetricsCollector.CACHE_DFS_ROOT, true);
+            if ( links.needsRefresh(now) ) {
+                refreshAsync(tf, "root:" + domain + "\\" + root, new Refresh() {
+
+                    @Override
+                    public void run () throws SmbAuthException {
+                        loadRootReferral(tf, domain, root, roots, true);
+                    }
+                });
             }
-            roots.remove(root);
-            links = null;
         }
-
-        if ( links == null ) {
-            log.trace("Loadings roots");
-            String refServerName = domain;
-            dr = fetchRootReferral(tf, domain, root, refServerName);
-            links = cacheRootReferral(tf, domain, root, roots, dr, links);
+        else {
+            tf.getMetrics().cacheAccess(MetricsCollector.CACHE_DFS_ROOT, false);
+            String key = "root:" + domain + "\\" + root;
+            Object lock = getLoadLock(key);
+            try {
+                synchronized ( lock ) {
+                    links = roots.get(root);
+                    if ( links == null || links.isExpired(System.currentTimeMillis()) ) {
+                        if ( links != null && log.isDebugEnabled() ) {
+                            log.debug("Removing expired " + links.map);
+                        }
+                        log.trace("Loadings roots");
+                        links = loadRootReferral(tf, domain, root, roots, false);
+                    }
+                }
+            }
+            finally {
+                releaseLoadLock(key, lock);
+            }
         }
-        else if ( links instanceof NegativeCacheEntry ) {
+
+        if ( links instanceof NegativeCacheEntry ) {
             links = null;
         }
-        else {
+        else if ( links != null ) {
             dr = links.map.get("\\");
         }
 
@@ -515,34 +743,54 @@ public class DfsImpl implements DfsResolver {
     }
 
 
+    /**
+     * Fetch and cache the root referral, a failed background refresh keeps the previous entry
+     * 
+     * @return the cached entry, null if no root referral was found
+     */
+    private CacheEntry<DfsReferralDataInternal> loadRootReferral ( CIFSContext tf, String domain, String root,
+            Map<String, CacheEntry<DfsReferralDataInternal>> roots, boolean background ) throws SmbAuthException {
+        CacheEntry<DfsReferralDataInternal> previous = roots.get(root);
+        DfsReferralDataInternal dr = fetchRootReferral(tf, domain, root, domain);
+        if ( dr == null && background && previous != null && ! ( previous instanceof NegativeCacheEntry ) ) {
+            return previous;
+        }
+        return cacheRootReferral(tf, domain, root, roots, dr, previous);
+    }
+
+
     /**
      * @param tf
      * @param domain
      * @param root
      * @param roots
      * @param dr
-     * @param links
+     * @param previous
+     *            previously cached entry, its link referrals are carried over
      * @return
      */
     private static CacheEntry<DfsReferralDataInternal> cacheRootReferral ( CIFSContext tf, String domain, String root,
-            Map<String, CacheEntry<DfsReferralDataInternal>> roots, DfsReferralDataInternal dr, CacheEntry<DfsReferralDataInternal> links ) {
+            Map<String, CacheEntry<DfsReferralDataInternal>> roots, DfsReferralDataInternal dr, CacheEntry<DfsReferralDataInternal> previous ) {
+        CacheEntry<DfsReferralDataInternal> links = null;
         if ( dr != null ) {
             links = new CacheEntry<>(tf.getConfig().getDfsTtl());
+            if ( previous != null && ! ( previous instanceof NegativeCacheEntry ) ) {
+                // links expire on their own
+                for ( Entry<String, DfsReferralDataInternal> e : previous.map.entrySet() ) {
+                    if ( !"\\".equals(e.getKey()) ) {
+                        links.map.put(e.getKey(), e.getValue());
+                    }
+                }
+            }
             links.map.put("\\", dr);
-            DfsReferralDataInternal tmp = dr;
-            do {
-                /*
-                 * Store references to the map and key so that
-                 * SmbFile.resolveDfs can re-insert the dr list with
-                 * the dr that was successful so that subsequent
-                 * attempts to resolve DFS use the last successful
-                 * referral first.
-                 */
-                tmp.setCacheMap(links.map);
-                tmp.setKey("\\");
-                tmp = tmp.next();
-            }
-            while ( tmp != dr );
+            /*
+             * Store references to the map and key so that
+             * SmbFile.resolveDfs can re-insert the dr list with
+             * the dr that was successful so that subsequent
+             * attempts to resolve DFS use the last successful
+             * referral first.
+             */
+            setCacheMap(dr, links.map, "\\");
 
             if ( log.isDebugEnabled() ) {
                 log.debug("Have referral " + dr);
@@ -557,6 +805,17 @@ public class DfsImpl implements DfsResolver {
     }
 
 
+    private static void setCacheMap ( DfsReferralDataInternal dr, Map<String, DfsReferralDataInternal> map, String key ) {
+        DfsReferralDataInternal tmp = dr;
+        do {
+            tmp.setCacheMap(map);
+            tmp.setKey(key);
+            tmp = tmp.next();
+        }
+        while ( tmp != dr );
+    }
+
+
     /**
      * @param tf
      * @param domain
@@ -565,7 +824,7 @@ public class DfsImpl implements DfsResolver {
      * @return
      * @throws SmbAuthException
      */
-    private DfsReferralDataInternal fetchRootReferral ( CIFSContext tf, String domain, String root, String refServerName ) throws SmbAuthException {
+    DfsReferralDataInternal fetchRootReferral ( CIFSContext tf, String domain, String root, String refServerName ) throws SmbAuthException {
         DfsReferralDataInternal dr;
         try ( SmbTransport dc = getDc(tf, domain) ) {
             if ( dc == null ) {
@@ -618,8 +877,8 @@ public class DfsImpl implements DfsResolver {
      * @return
      * @throws SmbAuthException
      */
-    private DfsReferralDataInternal getLinkReferral ( CIFSContext tf, String domain, String root, String path, DfsReferralDataInternal rootDr,
-            long now, CacheEntry<DfsReferralDataInternal> links ) throws SmbAuthException {
+    private DfsReferralDataInternal getLinkReferral ( final CIFSContext tf, final String domain, final String root, String path,
+            final DfsReferralDataInternal rootDr, long now, final CacheEntry<DfsReferralDataInternal> links ) throws SmbAuthException {
         DfsReferralDataInternal dr = rootDr;
         String link;
 
@@ -671,48 +930,122 @@ public class DfsImpl implements DfsResolver {
             if ( log.isTraceEnabled() ) {
                 log.trace("Expiring links " + link);
             }
-            links.map.remove(link);
+            links.map.remove(link, dr);
             dr = null;
         }
+        else if ( dr != null && !"\\".equals(link) && now > dr.getExpiration() - tf.getConfig().getDfsTtl() * 250L ) {
+            final String refreshLink = link;
+            refreshAsync(tf, "link:" + domain + "\\" + root + link, new Refresh() {
+
+                @Override
+                public void run () throws SmbAuthException {
+                    loadLinkReferral(tf, domain, root, refreshLink, rootDr, links);
+                }
+            });
+        }
 
         if ( dr == null ) {
-            if ( tf.getConfig().isDfsConvertToFQDN()) {
-                rootDr.fixupDomain(domain);
+            String key = path != null ? path : "\\";
+            Long miss = links.misses.get(key);
+            if ( miss != null ) {
+                if ( now <= miss ) {
+                    if ( log.isTraceEnabled() ) {
+                        log.trace("Have negative cache entry for " + key);
+                    }
+                    tf.getMetrics().cacheAccess(MetricsCollector.CACHE_DFS_LINK, true);
+                    return null;
+                }
+                links.misses.remove(key, miss);
             }
+            tf.getMetrics().cacheAccess(MetricsCollector.CACHE_DFS_LINK, false);
 
-            try ( SmbTransportInternal trans = getReferralTransport(tf, rootDr) ) {
-                if ( trans == null )
-                    return null;
+            String lockKey = "link:" + domain + "\\" + root + key;
+            Object lock = getLoadLock(lockKey);
+            try {
+                synchronized ( lock ) {
+                    // may have been loaded by another thread in the meantime
+                    dr = links.map.get(link);
+                    if ( dr == null || System.currentTimeMillis() > dr.getExpiration() || dr.getLink() == null || !key.startsWith(dr.getLink()) ) {
+                        if ( links.misses.containsKey(key) ) {
+                            return null;
+                        }
+                        dr = loadLinkReferral(tf, domain, root, path, rootDr, links);
+                        if ( dr == null ) {
+                            links.misses.put(key, System.currentTimeMillis() + tf.getConfig().getDfsTtl() * 1000L);
+                        }
+                    }
+                }
+            }
+            finally {
+                releaseLoadLock(lockKey, lock);
+            }
+        }
+        else {
+            tf.getMetrics().cacheAccess(MetricsCollector.CACHE_DFS_LINK, true);
+            if ( log.isTraceEnabled() ) {
+                log.trace("Have cached referral for " + dr.getLink() + " " + dr);
+            }
+        }
+        return dr;
+    }
 
-                dr = getReferral(tf, trans, domain, domain, trans.getRemoteHostName(), root, path);
-                if ( dr != null ) {
 
-                    if ( tf.getConfig().isDfsConvertToFQDN() && dr instanceof DfsReferralDataImpl ) {
-                        ( (DfsReferralDataImpl) dr ).fixupDomain(domain);
-                    }
+    private DfsReferralDataInternal loadLinkReferral ( CIFSContext tf, String domain, String root, String path, DfsReferralDataInternal rootDr,
+            CacheEntry<DfsReferralDataInternal> links ) throws SmbAuthException {
+        DfsReferralDataInternal dr = fetchLinkReferral(tf, domain, root, path, rootDr);
+        if ( dr != null ) {
+            links.map.put(dr.getLink(), dr);
+        }
+        else {
+            log.debug("No referral found for " + path);
+        }
+        return dr;
+    }
 
-                    dr.stripPathConsumed(1 + domain.length() + 1 + root.length());
 
-                    if ( dr.getPathConsumed() > ( path != null ? path.length() : 0 ) ) {
-                        log.error("Consumed more than we provided");
-                    }
+    /**
+     * Request the referral for a link below a domain based root
+     * 
+     * @param tf
+     * @param domain
+     * @param root
+     * @param path
+     * @param rootDr
+     *            root referral
+     * @return the link referral, with the link set, null if there is none
+     * @throws SmbAuthException
+     */
+    DfsReferralDataInternal fetchLinkReferral ( CIFSContext tf, String domain, String root, String path, DfsReferralDataInternal rootDr )
+            throws SmbAuthException {
+        if ( tf.getConfig().isDfsConvertToFQDN() ) {
+            rootDr.fixupDomain(domain);
+        }
 
-                    link = path != null && dr.getPathConsumed() > 0 ? path.substring(0, dr.getPathConsumed()) : "\\";
-                    dr.setLink(link);
-                    if ( log.isTraceEnabled() ) {
-                        log.trace("Have referral " + dr);
-                    }
-                    links.map.put(link, dr);
+        try ( SmbTransportInternal trans = getReferralTransport(tf, rootDr) ) {
+            if ( trans == null )
+                return null;
+
+            DfsReferralDataInternal dr = getReferral(tf, trans, domain, domain, trans.getRemoteHostName(), root, path);
+            if ( dr != null ) {
+
+                if ( tf.getConfig().isDfsConvertToFQDN() && dr instanceof DfsReferralDataImpl ) {
+                    ( (DfsReferralDataImpl) dr ).fixupDomain(domain);
                 }
-                else {
-                    log.debug("No referral found for " + link);
+
+                dr.stripPathConsumed(1 + domain.length() + 1 + root.length());
+
+                if ( dr.getPathConsumed() > ( path != null ? path.length() : 0 ) ) {
+                    log.error("Consumed more than we provided");
+                }
+
+                String link = path != null && dr.getPathConsumed() > 0 ? path.substring(0, dr.getPathConsumed()) : "\\";
+                dr.setLink(link);
+                if ( log.isTraceEnabled() ) {
+                    log.trace("Have referral " + dr);
                 }
             }
+            return dr;
         }
-        else if ( log.isTraceEnabled() ) {
-            log.trace("Have cached referral for " + dr.getLink() + " " + dr);
-        }
-        return dr;
     }
 
 
@@ -779,7 +1112,7 @@ public class DfsImpl implements DfsResolver {
 
 
     @Override
-    public synchronized void cache ( CIFSContext tc, String path, DfsReferralData dr ) {
+    public void cache ( CIFSContext tc, String path, DfsReferralData dr ) {
         if ( tc.getConfig().isDfsDisabled() || ! ( dr instanceof DfsReferralDataInternal ) ) {
             return;
         }
@@ -825,13 +1158,73 @@ public class DfsImpl implements DfsResolver {
             log.debug("Key is " + key);
         }
 
-        CacheEntry<DfsReferralDataInternal> refs = this.referrals;
+        /*
+         * The referral passed in is not shared yet, the only shared state is the standalone referral cache. The put
+         * happens under the same lock that replaces an expiring cache, so that it cannot go to a map that was just
+         * dropped.
+         */
         synchronized ( this.referralsLock ) {
+            CacheEntry<DfsReferralDataInternal> refs = this.referrals;
             if ( refs == null || ( System.currentTimeMillis() + 10000 ) > refs.expiration ) {
                 refs = new CacheEntry<>(tc.getConfig().getDfsTtl());
             }
             this.referrals = refs;
+            refs.map.put(key, dri);
         }
-        refs.map.put(key, dri);
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see jcifs.DfsResolver#orderTargets(jcifs.CIFSContext, jcifs.DfsReferralData)
+     */
+    @Override
+    public List<DfsReferralData> orderTargets ( CIFSContext tc, DfsReferralData dr ) {
+        return this.targetTracker.orderTargets(tc, dr);
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see jcifs.DfsResolver#targetConnected(java.lang.String, long)
+     */
+    @Override
+    public void targetConnected ( String server, long latency ) {
+        this.targetTracker.connected(server, latency);
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see jcifs.DfsResolver#targetFailed(jcifs.CIFSContext, java.lang.String)
+     */
+    @Override
+    public void targetFailed ( CIFSContext tc, String server ) {
+        this.targetTracker.failed(tc, server);
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see jcifs.DfsResolver#requestCompleted(java.lang.String, long)
+     */
+    @Override
+    public void requestCompleted ( String server, long latency ) {
+        this.targetTracker.requestCompleted(server, latency);
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see jcifs.DfsResolver#getTargetStatistics()
+     */
+    @Override
+    public Collection<DfsTargetStatistics> getTargetStatistics () {
+        return this.targetTracker.getStatistics();
     }
 }
@@ -0,0 +1,305 @@
+/*
+ * © 2026 agent <agent@local>
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package jcifs.smb;
+
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jcifs.CIFSContext;
+import jcifs.DfsReferralData;
+import jcifs.DfsTargetStatistics;
+
+
+/**
+ * Tracks latency and failures of DFS targets to choose the preferred target of a referral
+ * 
+ * Targets that failed within the cooldown period are ordered last. The others are, if enabled, ordered by
+ * their smoothed connect latency, targets without any measurement keep their referral position and are probed in
+ * the background so that a faster target is discovered even if an earlier one works.
+ * 
+ * Request latency is only tracked for statistics: it includes server processing time and transfer sizes and is only
+ * available for targets that have been used, so it cannot be compared with the latency of the other targets.
+ * 
+ * @author agent
+ *
+ */
+class DfsTargetTracker {
+
+    private static final Logger log = LoggerFactory.getLogger(DfsTargetTracker.class);
+
+    private final ConcurrentMap<String, TargetStats> targets = new ConcurrentHashMap<>();
+    private final Set<String> probing = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    List<DfsReferralData> orderTargets ( CIFSContext tc, DfsReferralData dr ) {
+        final List<DfsReferralData> order = new ArrayList<>();
+        if ( dr == null ) {
+            return order;
+        }
+        DfsReferralData cur = dr;
+        do {
+            order.add(cur);
+            cur = cur.next();
+        }
+        while ( cur != dr );
+
+        if ( order.size() == 1 ) {
+            return order;
+        }
+
+        boolean preferLatency = tc.getConfig().isDfsPreferLowLatency();
+        long now = System.currentTimeMillis();
+        // snapshot, the statistics may change while sorting
+        List<TargetOrder> keys = new ArrayList<>(order.size());
+        boolean haveUnmeasured = false;
+        for ( int i = 0; i < order.size(); i++ ) {
+            DfsReferralData t = order.get(i);
+            TargetStats s = getStats(t.getServer(), false);
+            long latency = s != null ? s.getLatency() : -1;
+            if ( latency < 0 ) {
+                haveUnmeasured = true;
+                if ( preferLatency ) {
+                    probe(tc, t.getServer());
+                }
+            }
+            keys.add(new TargetOrder(t, i, s == null || s.isAvailable(now), latency));
+        }
+
+        final boolean byLatency = preferLatency && !haveUnmeasured;
+        Collections.sort(keys, new Comparator<TargetOrder>() {
+
+            @Override
+            public int compare ( TargetOrder o1, TargetOrder o2 ) {
+                if ( o1.available != o2.available ) {
+                    return o1.available ? -1 : 1;
+                }
+                if ( byLatency ) {
+                    int c = Long.compare(o1.latency, o2.latency);
+                    if ( c != 0 ) {
+                        return c;
+                    }
+                }
+                return Integer.compare(o1.index, o2.index);
+            }
+        });
+
+        order.clear();
+        for ( TargetOrder k : keys ) {
+            order.add(k.target);
+        }
+
+        if ( log.isDebugEnabled() ) {
+            log.debug("Target order for " + dr.getPath() + ": " + order);
+        }
+        return order;
+    }
+
+
+    void connected ( String server, long latency ) {
+        TargetStats s = getStats(server, true);
+        s.successes.incrementAndGet();
+        if ( latency >= 0 ) {
+            smooth(s.connectLatency, latency);
+        }
+        s.cooldownUntil = 0;
+    }
+
+
+    void failed ( CIFSContext tc, String server ) {
+        TargetStats s = getStats(server, true);
+        s.failures.incrementAndGet();
+        s.cooldownUntil = System.currentTimeMillis() + tc.getConfig().getDfsTargetCooldown();
+        if ( log.isDebugEnabled() ) {
+            log.debug("Target " + server + " failed, cooling down");
+        }
+    }
+
+
+    void requestCompleted ( String server, long latency ) {
+        TargetStats s = getStats(server, false);
+        if ( s != null ) {
+            smooth(s.requestLatency, latency);
+        }
+    }
+
+
+    Collection<DfsTargetStatistics> getStatistics () {
+        return Collections.<DfsTargetStatistics> unmodifiableCollection(new ArrayList<>(this.targets.values()));
+    }
+
+
+    private void probe ( final CIFSContext tc, final String server ) {
+        if ( server == null || server.isEmpty() || !this.probing.add(server) ) {
+            return;
+        }
+        try {
+            tc.getExecutor().execute(new Runnable() {
+
+                @Override
+                public void run () {
+                    try ( SmbTransportImpl trans = tc.getTransportPool().getSmbTransport(tc, server, 0, false, false)
+                            .unwrap(SmbTransportImpl.class) ) {
+                        trans.ensureConnected();
+                        connected(server, trans.takeConnectLatency());
+                    }
+                    catch ( Exception e ) {
+                        log.debug("Probing DFS target " + server + " failed", e);
+                        failed(tc, server);
+                    }
+                    finally {
+                        DfsTargetTracker.this.probing.remove(server);
+                    }
+                }
+            });
+        }
+        catch ( RuntimeException e ) {
+            this.probing.remove(server);
+            log.warn("Failed to schedule probe", e);
+        }
+    }
+
+
+    private TargetStats getStats ( String server, boolean create ) {
+        if ( server == null ) {
+            return null;
+        }
+        String key = server.toLowerCase(Locale.ROOT);
+        TargetStats s = this.targets.get(key);
+        if ( s == null && create ) {
+            s = new TargetStats(key);
+            TargetStats old = this.targets.putIfAbsent(key, s);
+            if ( old != null ) {
+                s = old;
+            }
+        }
+        return s;
+    }
+
+
+    private static void smooth ( AtomicLong value, long sample ) {
+        long old;
+        long upd;
+        do {
+            old = value.get();
+            // exponentially weighted, new samples count 1/4
+            upd = old < 0 ? sample : ( old * 3 + sample ) / 4;
+        }
+        while ( !value.compareAndSet(old, upd) );
+    }
+
+    private static final class TargetOrder {
+
+        final DfsReferralData target;
+        final int index;
+        final boolean available;
+        final long latency;
+
+
+        TargetOrder ( DfsReferralData target, int index, boolean available, long latency ) {
+            this.target = target;
+            this.index = index;
+            this.available = available;
+            this.latency = latency;
+        }
+    }
+
+    private static final class TargetStats implements DfsTargetStatistics {
+
+        private final String server;
+        final AtomicLong successes = new AtomicLong();
+        final AtomicLong failures = new AtomicLong();
+        final AtomicLong connectLatency = new AtomicLong(-1);
+        final AtomicLong requestLatency = new AtomicLong(-1);
+        volatile long cooldownUntil;
+
+
+        TargetStats ( String server ) {
+            this.server = server;
+        }
+
+
+        long getLatency () {
+            return this.connectLatency.get();
+        }
+
+
+        boolean isAvailable ( long now ) {
+            return now >= this.cooldownUntil;
+        }
+
+
+        @Override
+        public String getServer () {
+            return this.server;
+        }
+
+
+        @Override
+        public long getConnectLatency () {
+            return this.connectLatency.get();
+        }
+
+
+        @Override
+        public long getRequestLatency () {
+            return this.requestLatency.get();
+        }
+
+
+        @Override
+        public long getSuccessCount () {
+            return this.successes.get();
+        }
+
+
+        @Override
+        public long getFailureCount () {
+            return this.failures.get();
+        }
+
+
+        @Override
+        public boolean isAvailable () {
+            return isAvailable(System.currentTimeMillis());
+        }
+
+
+        @Override
+        public String toString () {
+            return String.format(
+                "DfsTarget[server=%s,connectLatency=%d,requestLatency=%d,successes=%d,failures=%d,available=%s]",
+                this.server,
+                this.connectLatency.get(),
+                this.requestLatency.get(),
+                this.successes.get(),
+                this.failures.get(),
+                isAvailable());
+        }
+    }
+}
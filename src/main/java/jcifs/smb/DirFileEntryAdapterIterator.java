@@ -24,6 +24,8 @@ import jcifs.CloseableIterator;
 import jcifs.ResourceFilter;
 import jcifs.SmbConstants;
 import jcifs.SmbResource;
+import jcifs.internal.fscc.FileIdFullDirectoryInfo;
+import jcifs.internal.fscc.FileNamesInfo;
 
 
 class DirFileEntryAdapterIterator extends FileEntryAdapterIterator {
@@ -45,7 +47,11 @@ class DirFileEntryAdapterIterator extends FileEntryAdapterIterator {
      */
     @Override
     protected SmbResource adapt ( FileEntry e ) throws MalformedURLException {
-        return new SmbFile(
+        if ( e instanceof FileNamesInfo ) {
+            // no attributes available, these need to be loaded on demand
+            return new SmbFile(getParent(), e.getName(), false, SmbConstants.TYPE_FILESYSTEM, 0, 0L, 0L, 0L, 0L);
+        }
+        SmbFile f = new SmbFile(
             getParent(),
             e.getName(),
             true,
@@ -55,5 +61,10 @@ class DirFileEntryAdapterIterator extends FileEntryAdapterIterator {
             e.lastModified(),
             e.lastAccess(),
             e.length());
+        if ( e instanceof FileIdFullDirectoryInfo ) {
+            f.setFileIndex( ( (FileIdFullDirectoryInfo) e ).getFileId());
+        }
+        f.cacheMetadata();
+        return f;
     }
 }
\ No newline at end of file
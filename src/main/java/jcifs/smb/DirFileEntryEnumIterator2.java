@@ -18,13 +18,20 @@
 package jcifs.smb;
 
 
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import jcifs.CIFSException;
+import jcifs.DirectoryInfoClass;
 import jcifs.ResourceNameFilter;
 import jcifs.SmbConstants;
 import jcifs.SmbResource;
+import jcifs.internal.smb2.Smb2Constants;
 import jcifs.internal.smb2.create.Smb2CloseRequest;
 import jcifs.internal.smb2.create.Smb2CreateRequest;
 import jcifs.internal.smb2.create.Smb2CreateResponse;
@@ -40,8 +47,13 @@ public class DirFileEntryEnumIterator2 extends DirFileEntryEnumIteratorBase {
 
     private static final Logger log = LoggerFactory.getLogger(DirFileEntryEnumIterator2.class);
 
+    // these are initialized in open(), which is called from the super constructor
     private byte[] fileId;
     private Smb2QueryDirectoryResponse response;
+    private byte infoClass;
+    private int outputBufferLength;
+    private boolean prefetchEnabled;
+    private Future<Smb2QueryDirectoryResponse> prefetch;
 
 
     /**
@@ -54,7 +66,37 @@ public class DirFileEntryEnumIterator2 extends DirFileEntryEnumIteratorBase {
      */
     public DirFileEntryEnumIterator2 ( SmbTreeHandleImpl th, SmbResource parent, String wildcard, ResourceNameFilter filter, int searchAttributes )
             throws CIFSException {
-        super(th, parent, wildcard, filter, searchAttributes);
+        this(th, parent, wildcard, filter, searchAttributes, DirectoryInfoClass.BOTH_DIRECTORY_INFO);
+    }
+
+
+    /**
+     * @param th
+     * @param parent
+     * @param wildcard
+     * @param filter
+     * @param searchAttributes
+     * @param infoClass
+     *            file information class to request
+     * @throws CIFSException
+     */
+    public DirFileEntryEnumIterator2 ( SmbTreeHandleImpl th, SmbResource parent, String wildcard, ResourceNameFilter filter, int searchAttributes,
+            DirectoryInfoClass infoClass ) throws CIFSException {
+        super(th, parent, wildcard, filter, searchAttributes, infoClass);
+    }
+
+
+    private static byte toFileInformationClass ( DirectoryInfoClass infoClass ) {
+        switch ( infoClass ) {
+        case NAMES_INFO:
+            return Smb2QueryDirectoryRequest.FILE_NAMES_INFO;
+        case ID_FULL_DIRECTORY_INFO:
+            return Smb2QueryDirectoryRequest.FILE_ID_FULL_DIRECTORY_INFO;
+        case ID_BOTH_DIRECTORY_INFO:
+            return Smb2QueryDirectoryRequest.FILE_ID_BOTH_DIRECTORY_INFO;
+        default:
+            return Smb2QueryDirectoryRequest.FILE_BOTH_DIRECTORY_INFO;
+        }
     }
 
 
@@ -88,8 +130,13 @@ public class DirFileEntryEnumIterator2 extends DirFileEntryEnumIteratorBase {
         Smb2CreateRequest create = new Smb2CreateRequest(th.getConfig(), uncPath);
         create.setCreateOptions(Smb2CreateRequest.FILE_DIRECTORY_FILE);
         create.setDesiredAccess(SmbConstants.FILE_READ_DATA | SmbConstants.FILE_READ_ATTRIBUTES);
+        this.outputBufferLength = getOutputBufferLength(th);
+        this.prefetchEnabled = th.getConfig().isListPrefetch();
+        this.infoClass = toFileInformationClass(getInfoClass());
         Smb2QueryDirectoryRequest query = new Smb2QueryDirectoryRequest(th.getConfig());
+        query.setFileInformationClass(this.infoClass);
         query.setFileName(getWildcard());
+        query.setOutputBufferLength(this.outputBufferLength);
         create.chain(query);
         Smb2CreateResponse createResp;
         try {
@@ -118,6 +165,7 @@ public class DirFileEntryEnumIterator2 extends DirFileEntryEnumIteratorBase {
         }
         this.fileId = createResp.getFileId();
         this.response = query.getResponse();
+        startPrefetch();
         FileEntry n = advance(false);
         if ( n == null ) {
             doClose();
@@ -126,35 +174,129 @@ public class DirFileEntryEnumIterator2 extends DirFileEntryEnumIteratorBase {
     }
 
 
+    /**
+     * Determine the output buffer size to request
+     * 
+     * Bounded by the configured list size and the size of our receive buffers, sizes exceeding a
+     * single credit are only used if the server supports multi-credit operations (up to its maximum transaction size).
+     * That requires raising the buffer sizes above their defaults and enabling LARGE_MTU, see
+     * {@link jcifs.Configuration#isLargeMtuEnabled()}.
+     * 
+     * @param th
+     * @return the output buffer length
+     * @throws CIFSException
+     */
+    private static int getOutputBufferLength ( SmbTreeHandleImpl th ) throws CIFSException {
+        int size = Math.min(th.getConfig().getMaximumBufferSize(), th.getConfig().getListSize());
+        if ( size > Smb2Constants.SMB2_CREDIT_PAYLOAD_SIZE ) {
+            if ( th.hasCapability(Smb2Constants.SMB2_GLOBAL_CAP_LARGE_MTU) ) {
+                size = Math.max(Smb2Constants.SMB2_CREDIT_PAYLOAD_SIZE, Math.min(size, th.getMaximumBufferSize()));
+            }
+            else {
+                size = Smb2Constants.SMB2_CREDIT_PAYLOAD_SIZE;
+            }
+        }
+        return ( size - Smb2QueryDirectoryResponse.OVERHEAD ) & ~0x7;
+    }
+
+
     /**
      * {@inheritDoc}
      *
      * @see jcifs.smb.DirFileEntryEnumIteratorBase#fetchMore()
      */
-    @SuppressWarnings ( "resource" )
     @Override
     protected boolean fetchMore () throws CIFSException {
-        FileEntry[] results = this.response.getResults();
+        Smb2QueryDirectoryResponse r;
+        if ( this.prefetch != null ) {
+            r = awaitPrefetch();
+        }
+        else {
+            r = queryNext(this.response.getResults());
+        }
+
+        if ( r == null ) {
+            return false;
+        }
+        this.response = r;
+        startPrefetch();
+        return true;
+    }
+
+
+    /**
+     * Request the next page in the background, if enabled
+     */
+    private void startPrefetch () {
+        final FileEntry[] results = this.response.getResults();
+        if ( !this.prefetchEnabled || results == null || results.length == 0 ) {
+            return;
+        }
+        try {
+            this.prefetch = getParent().getContext().getExecutor().submit(new Callable<Smb2QueryDirectoryResponse>() {
+
+                @Override
+                public Smb2QueryDirectoryResponse call () throws CIFSException {
+                    return queryNext(results);
+                }
+            });
+        }
+        catch ( RejectedExecutionException e ) {
+            log.debug("Context is closed, not prefetching", e);
+        }
+    }
+
+
+    private Smb2QueryDirectoryResponse awaitPrefetch () throws CIFSException {
+        Future<Smb2QueryDirectoryResponse> f = this.prefetch;
+        this.prefetch = null;
+        try {
+            return f.get();
+        }
+        catch ( InterruptedException e ) {
+            f.cancel(false);
+            Thread.currentThread().interrupt();
+            throw new CIFSException("Interrupted while waiting for listing", e);
+        }
+        catch ( ExecutionException e ) {
+            Throwable cause = e.getCause();
+            if ( cause instanceof CIFSException ) {
+                throw (CIFSException) cause;
+            }
+            throw new CIFSException("Failed to fetch listing", cause);
+        }
+    }
+
+
+    /**
+     * @param results
+     *            the previous page
+     * @return the next page, null if the listing is complete
+     * @throws CIFSException
+     */
+    @SuppressWarnings ( "resource" )
+    private Smb2QueryDirectoryResponse queryNext ( FileEntry[] results ) throws CIFSException {
         SmbTreeHandleImpl th = getTreeHandle();
         Smb2QueryDirectoryRequest query = new Smb2QueryDirectoryRequest(th.getConfig(), this.fileId);
+        query.setFileInformationClass(this.infoClass);
         query.setFileName(this.getWildcard());
         query.setFileIndex(results[ results.length - 1 ].getFileIndex());
         query.setQueryFlags(Smb2QueryDirectoryRequest.SMB2_INDEX_SPECIFIED);
+        query.setOutputBufferLength(this.outputBufferLength);
         try {
             Smb2QueryDirectoryResponse r = th.send(query);
             if ( r.getStatus() == NtStatus.NT_STATUS_NO_MORE_FILES ) {
-                return false;
+                return null;
             }
-            this.response = r;
+            return r;
         }
         catch ( SmbException e ) {
             if ( e.getNtStatus() == NtStatus.NT_STATUS_NO_MORE_FILES ) {
                 log.debug("End of listing", e);
-                return false;
+                return null;
             }
             throw e;
         }
-        return true;
     }
 
 
@@ -174,6 +316,20 @@ public class DirFileEntryEnumIterator2 extends DirFileEntryEnumIteratorBase {
      */
     @Override
     protected void doCloseInternal () throws CIFSException {
+        Future<Smb2QueryDirectoryResponse> f = this.prefetch;
+        if ( f != null ) {
+            // the handle must stay open until an outstanding query has completed
+            this.prefetch = null;
+            try {
+                f.get();
+            }
+            catch ( InterruptedException e ) {
+                Thread.currentThread().interrupt();
+            }
+            catch ( ExecutionException e ) {
+                log.debug("Prefetch failed", e);
+            }
+        }
         try {
             @SuppressWarnings ( "resource" )
             SmbTreeHandleImpl th = getTreeHandle();
@@ -23,6 +23,7 @@ import org.slf4j.LoggerFactory;
 
 import jcifs.CIFSException;
 import jcifs.CloseableIterator;
+import jcifs.DirectoryInfoClass;
 import jcifs.ResourceNameFilter;
 import jcifs.SmbResource;
 
@@ -40,6 +41,7 @@ public abstract class DirFileEntryEnumIteratorBase implements CloseableIterator<
     private final SmbResource parent;
     private final String wildcard;
     private final int searchAttributes;
+    private final DirectoryInfoClass infoClass;
     private FileEntry next;
     private int ridx;
 
@@ -57,7 +59,25 @@ public abstract class DirFileEntryEnumIteratorBase implements CloseableIterator<
      */
     public DirFileEntryEnumIteratorBase ( SmbTreeHandleImpl th, SmbResource parent, String wildcard, ResourceNameFilter filter, int searchAttributes )
             throws CIFSException {
+        this(th, parent, wildcard, filter, searchAttributes, DirectoryInfoClass.BOTH_DIRECTORY_INFO);
+    }
+
+
+    /**
+     * @param th
+     * @param parent
+     * @param wildcard
+     * @param filter
+     * @param searchAttributes
+     * @param infoClass
+     *            requested information class, implementations may ignore this
+     * @throws CIFSException
+     * 
+     */
+    public DirFileEntryEnumIteratorBase ( SmbTreeHandleImpl th, SmbResource parent, String wildcard, ResourceNameFilter filter, int searchAttributes,
+            DirectoryInfoClass infoClass ) throws CIFSException {
         this.parent = parent;
+        this.infoClass = infoClass;
         this.wildcard = wildcard;
         this.nameFilter = filter;
         this.searchAttributes = searchAttributes;
@@ -93,6 +113,14 @@ public abstract class DirFileEntryEnumIteratorBase implements CloseableIterator<
     }
 
 
+    /**
+     * @return the requested information class
+     */
+    public final DirectoryInfoClass getInfoClass () {
+        return this.infoClass;
+    }
+
+
     /**
      * @return the wildcard
      */
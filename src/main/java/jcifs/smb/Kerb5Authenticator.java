@@ -375,15 +375,21 @@ public class Kerb5Authenticator extends NtlmPasswordAuthenticator {
 
 
     private SpnegoContext createContext ( CIFSContext tc, String targetDomain, String host ) throws GSSException {
-        return new SpnegoContext(
-            tc.getConfig(),
-            new Kerb5Context(
-                host,
-                this.service,
-                this.user,
-                this.userLifetime,
-                this.contextLifetime,
-                targetDomain != null ? targetDomain.toUpperCase(Locale.ROOT) : null));
+        Kerb5Context ctx = new Kerb5Context(
+            host,
+            this.service,
+            this.user,
+            this.userLifetime,
+            this.contextLifetime,
+            targetDomain != null ? targetDomain.toUpperCase(Locale.ROOT) : null);
+
+        int margin = tc.getConfig().getKerberosTicketRenewalMargin();
+        Subject s = getSubject();
+        if ( margin >= 0 && s != null ) {
+            Kerb5TicketCache cache = Kerb5TicketCache.getInstance();
+            ctx.setTicketCache(cache, cache.prepare(s, this.service, host, margin * 1000L));
+        }
+        return new SpnegoContext(tc.getConfig(), ctx);
     }
 
 
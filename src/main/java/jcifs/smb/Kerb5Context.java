@@ -20,6 +20,8 @@ package jcifs.smb;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.security.Key;
+import java.security.PrivilegedActionException;
+import java.security.PrivilegedExceptionAction;
 
 import javax.security.auth.Subject;
 import javax.security.auth.kerberos.KerberosTicket;
@@ -78,6 +80,9 @@ class Kerb5Context implements SSPContext {
     private final GSSContext gssContext;
     private final GSSName clientName;
     private final GSSName serviceName;
+    private Kerb5TicketCache ticketCache;
+    private Subject subject;
+    private long expiration = -1;
 
 
     Kerb5Context ( String host, String service, String name, int userLifetime, int contextLifetime, String realm ) throws GSSException {
@@ -291,27 +296,89 @@ class Kerb5Context implements SSPContext {
     }
 
 
+    /**
+     * Remember the service ticket used once the context is established
+     * 
+     * @param cache
+     * @param s
+     *            subject to establish the context with, may be a private copy of the caller's subject
+     */
+    void setTicketCache ( Kerb5TicketCache cache, Subject s ) {
+        this.ticketCache = cache;
+        this.subject = s;
+    }
+
+
     @Override
-    public byte[] initSecContext ( byte[] token, int off, int len ) throws SmbException {
+    public byte[] initSecContext ( final byte[] token, final int off, final int len ) throws SmbException {
+        byte[] out;
         try {
-            return this.gssContext.initSecContext(token, off, len);
+            if ( this.subject != null ) {
+                out = Subject.doAs(this.subject, new PrivilegedExceptionAction<byte[]>() {
+
+                    @Override
+                    public byte[] run () throws GSSException {
+                        return Kerb5Context.this.gssContext.initSecContext(token, off, len);
+                    }
+                });
+            }
+            else {
+                out = this.gssContext.initSecContext(token, off, len);
+            }
+        }
+        catch ( PrivilegedActionException e ) {
+            throw new SmbAuthException("GSSAPI mechanism failed", e.getException());
         }
         catch ( GSSException e ) {
             throw new SmbAuthException("GSSAPI mechanism failed", e);
         }
+
+        if ( this.expiration < 0 && this.gssContext.isEstablished() ) {
+            int lifetime = this.gssContext.getLifetime();
+            if ( lifetime > 0 && lifetime != GSSContext.INDEFINITE_LIFETIME ) {
+                this.expiration = System.currentTimeMillis() + lifetime * 1000L;
+            }
+        }
+
+        if ( this.ticketCache != null && this.gssContext.isEstablished() ) {
+            try {
+                KerberosTicket ticket = searchServiceTicket(this.subject);
+                if ( ticket != null ) {
+                    this.ticketCache.store(ticket);
+                }
+            }
+            catch ( GSSException e ) {
+                log.debug("Failed to locate service ticket", e);
+            }
+        }
+        return out;
+    }
+
+
+    /**
+     * @return time at which the established context, i.e. the service ticket, expires, null if unknown
+     */
+    Long getExpiration () {
+        return this.expiration > 0 ? this.expiration : null;
+    }
+
+
+    Key searchSessionKey ( Subject s ) throws GSSException {
+        KerberosTicket ticket = searchServiceTicket(s);
+        return ticket != null ? ticket.getSessionKey() : null;
     }
 
 
-    Key searchSessionKey ( Subject subject ) throws GSSException {
+    private KerberosTicket searchServiceTicket ( Subject s ) throws GSSException {
         MIEName src = new MIEName(this.gssContext.getSrcName().export());
         MIEName targ = new MIEName(this.gssContext.getTargName().export());
 
         ASN1ObjectIdentifier mech = ASN1ObjectIdentifier.getInstance(this.gssContext.getMech().getDER());
-        for ( KerberosTicket ticket : subject.getPrivateCredentials(KerberosTicket.class) ) {
+        for ( KerberosTicket ticket : s.getPrivateCredentials(KerberosTicket.class) ) {
             MIEName client = new MIEName(mech, ticket.getClient().getName());
             MIEName server = new MIEName(mech, ticket.getServer().getName());
             if ( src.equals(client) && targ.equals(server) ) {
-                return ticket.getSessionKey();
+                return ticket;
             }
         }
         return null;
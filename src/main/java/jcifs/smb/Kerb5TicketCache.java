@@ -0,0 +1,220 @@
+/*
+ * © 2026 agent <agent@local>
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package jcifs.smb;
+
+
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.security.auth.Subject;
+import javax.security.auth.kerberos.KerberosTicket;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Shares kerberos service tickets between subjects authenticating as the same principal
+ * 
+ * The JRE kerberos implementation stores service tickets in the subject it was invoked with, so every separately
+ * logged in subject fetches its own ticket from the KDC. Tickets obtained by one subject are remembered here,
+ * keyed by client principal and service principal, and offered to other subjects for the same client.
+ * 
+ * A cached ticket is only served to a subject that itself holds a current ticket granting ticket for that client,
+ * i.e. one that could obtain the service ticket from the KDC anyway. The caller's subject is never modified, the
+ * context is established with a private copy of it that holds the cached ticket instead of ones about to expire.
+ * 
+ * GSS security contexts themselves cannot be shared, each session setup needs a fresh authenticator.
+ * 
+ * @author agent
+ */
+final class Kerb5TicketCache {
+
+    private static final Logger log = LoggerFactory.getLogger(Kerb5TicketCache.class);
+
+    private static final int MAX_ENTRIES = 1000;
+
+    private static final Kerb5TicketCache INSTANCE = new Kerb5TicketCache();
+
+    private final ConcurrentMap<TicketKey, KerberosTicket> tickets = new ConcurrentHashMap<>();
+
+
+    /**
+     * @return the shared ticket cache
+     */
+    static Kerb5TicketCache getInstance () {
+        return INSTANCE;
+    }
+
+
+    /**
+     * Determine the subject to establish a context to the given service with
+     * 
+     * If the subject lacks a usable ticket for the service, but a cached one is available and the subject holds a
+     * valid ticket granting ticket for the same client, a copy of the subject holding the cached ticket is
+     * returned. Tickets expiring within the margin are left out of that copy, so that a new one is requested.
+     * 
+     * @param subject
+     * @param service
+     * @param host
+     * @param margin
+     *            time before expiration in milliseconds after which a ticket is no longer used
+     * @return the subject to use, either <tt>subject</tt> itself or a private copy
+     */
+    Subject prepare ( Subject subject, String service, String host, long margin ) {
+        String spn = toServiceKey(service + "/" + host);
+        long now = System.currentTimeMillis();
+        long limit = now + margin;
+        Set<Object> creds = subject.getPrivateCredentials(Object.class);
+        boolean expiring = false;
+        for ( KerberosTicket t : subject.getPrivateCredentials(KerberosTicket.class) ) {
+            if ( !spn.equals(toServiceKey(t.getServer().getName())) ) {
+                continue;
+            }
+            if ( isUsable(t, limit) ) {
+                return subject;
+            }
+            if ( log.isDebugEnabled() ) {
+                log.debug("Not using service ticket about to expire " + t.getServer() + " " + t.getEndTime());
+            }
+            creds.remove(t);
+            this.tickets.remove(new TicketKey(t.getClient().getName(), spn), t);
+            expiring = true;
+        }
+
+        KerberosTicket cached = lookup(subject, spn, now, limit);
+        if ( cached != null ) {
+            if ( log.isDebugEnabled() ) {
+                log.debug("Using cached service ticket for " + cached.getServer() + " valid until " + cached.getEndTime());
+            }
+            creds.add(cached);
+        }
+        else if ( !expiring ) {
+            return subject;
+        }
+        return new Subject(false, subject.getPrincipals(), subject.getPublicCredentials(Object.class), creds);
+    }
+
+
+    private KerberosTicket lookup ( Subject subject, String spn, long now, long limit ) {
+        for ( KerberosTicket tgt : subject.getPrivateCredentials(KerberosTicket.class) ) {
+            if ( !isTicketGrantingTicket(tgt) || !isUsable(tgt, now) ) {
+                continue;
+            }
+            TicketKey key = new TicketKey(tgt.getClient().getName(), spn);
+            KerberosTicket cached = this.tickets.get(key);
+            if ( cached == null ) {
+                continue;
+            }
+            if ( !isUsable(cached, limit) ) {
+                this.tickets.remove(key, cached);
+                continue;
+            }
+            return cached;
+        }
+        return null;
+    }
+
+
+    /**
+     * @param ticket
+     *            service ticket to remember
+     */
+    void store ( KerberosTicket ticket ) {
+        if ( ticket.isDestroyed() || isTicketGrantingTicket(ticket) ) {
+            return;
+        }
+        TicketKey key = new TicketKey(ticket.getClient().getName(), toServiceKey(ticket.getServer().getName()));
+        if ( ticket.equals(this.tickets.put(key, ticket)) ) {
+            return;
+        }
+        if ( log.isTraceEnabled() ) {
+            log.trace("Caching service ticket for " + ticket.getServer() + " valid until " + ticket.getEndTime());
+        }
+        if ( this.tickets.size() > MAX_ENTRIES ) {
+            purge();
+        }
+    }
+
+
+    private void purge () {
+        long now = System.currentTimeMillis();
+        Iterator<Entry<TicketKey, KerberosTicket>> it = this.tickets.entrySet().iterator();
+        while ( it.hasNext() ) {
+            if ( !isUsable(it.next().getValue(), now) ) {
+                it.remove();
+            }
+        }
+        it = this.tickets.entrySet().iterator();
+        while ( this.tickets.size() > MAX_ENTRIES && it.hasNext() ) {
+            it.next();
+            it.remove();
+        }
+    }
+
+
+    private static boolean isUsable ( KerberosTicket t, long limit ) {
+        return !t.isDestroyed() && t.getEndTime() != null && t.getEndTime().getTime() > limit;
+    }
+
+
+    private static boolean isTicketGrantingTicket ( KerberosTicket t ) {
+        return t.getServer().getName().startsWith("krbtgt/");
+    }
+
+
+    private static String toServiceKey ( String principal ) {
+        int realmSep = principal.lastIndexOf('@');
+        if ( realmSep >= 0 ) {
+            principal = principal.substring(0, realmSep);
+        }
+        return principal.toLowerCase(Locale.ROOT);
+    }
+
+    private static final class TicketKey {
+
+        private final String client;
+        private final String service;
+
+
+        TicketKey ( String client, String service ) {
+            this.client = client;
+            this.service = service;
+        }
+
+
+        @Override
+        public int hashCode () {
+            return 31 * this.client.hashCode() + this.service.hashCode();
+        }
+
+
+        @Override
+        public boolean equals ( Object obj ) {
+            if ( ! ( obj instanceof TicketKey ) ) {
+                return false;
+            }
+            TicketKey o = (TicketKey) obj;
+            return this.client.equals(o.client) && this.service.equals(o.service);
+        }
+    }
+}
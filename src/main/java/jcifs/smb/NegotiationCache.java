@@ -0,0 +1,122 @@
+/*
+ * © 2026 agent <agent@local>
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package jcifs.smb;
+
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jcifs.DialectVersion;
+
+
+/**
+ * Remembers the outcome of SMB2 negotiations per server endpoint
+ * 
+ * Servers that are known to speak SMB2 are negotiated with directly, saving the round trip for the SMB1
+ * multi-protocol negotiate. The negotiated parameters are not reused, the direct negotiation still
+ * runs the full dialect selection and is subject to the regular secure negotiate validation.
+ * 
+ * Negotiating a lower dialect with a remembered endpoint is logged and replaces the remembered result, or, if
+ * configured, fails so that a downgrade cannot happen through a renegotiation.
+ * 
+ * @author agent
+ *
+ */
+class NegotiationCache {
+
+    private static final Logger log = LoggerFactory.getLogger(NegotiationCache.class);
+
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+
+    /**
+     * @param host
+     * @param port
+     * @return whether the endpoint is known to speak SMB2
+     */
+    boolean isKnownSMB2 ( String host, int port ) {
+        return get(key(host, port)) != null;
+    }
+
+
+    /**
+     * Record the result of a negotiation
+     * 
+     * @param host
+     * @param port
+     * @param dialect
+     *            negotiated dialect
+     * @param ttl
+     *            time to live in milliseconds
+     * @param rejectDowngrade
+     *            whether to fail instead of replacing the entry if a lower dialect was negotiated
+     * @throws SmbException
+     *             if downgrades are rejected and the dialect is lower than the one previously negotiated with the
+     *             endpoint
+     */
+    void update ( String host, int port, DialectVersion dialect, long ttl, boolean rejectDowngrade ) throws SmbException {
+        String key = key(host, port);
+        Entry old = get(key);
+        if ( old != null && !dialect.atLeast(old.dialect) ) {
+            String msg = "Server " + key + " negotiated " + dialect + " but previously negotiated " + old.dialect;
+            if ( rejectDowngrade ) {
+                throw new SmbException(msg);
+            }
+            log.warn(msg);
+        }
+        if ( dialect.isSMB2() ) {
+            this.entries.put(key, new Entry(dialect, System.currentTimeMillis() + ttl));
+        }
+        else if ( old != null ) {
+            this.entries.remove(key, old);
+        }
+    }
+
+
+    private Entry get ( String key ) {
+        Entry e = this.entries.get(key);
+        if ( e == null ) {
+            return null;
+        }
+        if ( e.expiration < System.currentTimeMillis() ) {
+            this.entries.remove(key, e);
+            return null;
+        }
+        return e;
+    }
+
+
+    private static String key ( String host, int port ) {
+        return host + ':' + port;
+    }
+
+    private static final class Entry {
+
+        final DialectVersion dialect;
+        final long expiration;
+
+
+        Entry ( DialectVersion dialect, long expiration ) {
+            this.dialect = dialect;
+            this.expiration = expiration;
+        }
+    }
+}
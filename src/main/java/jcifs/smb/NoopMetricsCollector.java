@@ -0,0 +1,67 @@
+/*
+ * © 2026 agent <agent@local>
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package jcifs.smb;
+
+
+import jcifs.MetricsCollector;
+
+
+/**
+ * Metrics collector that discards all measurements
+ * 
+ * Can be extended by collectors only interested in some of the measurements.
+ * 
+ * @author agent
+ *
+ */
+public class NoopMetricsCollector implements MetricsCollector {
+
+    /**
+     * Shared instance
+     */
+    public static final MetricsCollector INSTANCE = new NoopMetricsCollector();
+
+
+    @Override
+    public void requestStarted ( String command ) {}
+
+
+    @Override
+    public void requestCompleted ( String command, long durationNanos, boolean success ) {}
+
+
+    @Override
+    public void bytesSent ( int bytes ) {}
+
+
+    @Override
+    public void bytesReceived ( int bytes ) {}
+
+
+    @Override
+    public void creditsStarved ( long waitNanos, boolean acquired ) {}
+
+
+    @Override
+    public void retried ( String operation ) {}
+
+
+    @Override
+    public void cacheAccess ( String cache, boolean hit ) {}
+
+}
@@ -20,12 +20,30 @@ package jcifs.smb;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import jcifs.CIFSContext;
 import jcifs.CIFSException;
+import jcifs.Credentials;
+import jcifs.MetricsCollector;
 import jcifs.SidResolver;
 import jcifs.dcerpc.DcerpcHandle;
 import jcifs.dcerpc.UnicodeString;
@@ -47,18 +65,38 @@ import jcifs.dcerpc.msrpc.samr;
 /**
  * Internal use only: SID resolver cache
  * 
+ * Resolved names are kept in a size bounded cache with a time to live, lookups do not lock. Concurrent lookups
+ * of the same SIDs are coalesced so that only one thread queries the authority for them, and the LSA pipe and policy
+ * handle used for name lookups are pooled per authority server and credentials.
+ * 
  * @author mbechler
  * @internal
  */
 public class SIDCacheImpl implements SidResolver {
 
-    private Map<SID, SID> sidCache = new HashMap<>();
+    private static final Logger log = LoggerFactory.getLogger(SIDCacheImpl.class);
+
+    private static final int MAX_IDLE_CONNECTIONS = 2;
+    private static final long CONNECTION_IDLE_TIMEOUT = 30000L;
+
+    private final ConcurrentMap<SID, CachedName> sidCache = new ConcurrentHashMap<>();
+    private final ConcurrentMap<LookupKey, PendingLookup> pending = new ConcurrentHashMap<>();
+    private final ConcurrentMap<PoolKey, Deque<LsaConnection>> connections = new ConcurrentHashMap<>();
+    private final ReentrantLock evictLock = new ReentrantLock();
+    private final AtomicBoolean reaperScheduled = new AtomicBoolean();
+    private final CIFSContext context;
+    private final int maxSize;
+    private final long ttl;
 
 
     /**
      * @param baseContext
      */
-    public SIDCacheImpl ( CIFSContext baseContext ) {}
+    public SIDCacheImpl ( CIFSContext baseContext ) {
+        this.context = baseContext;
+        this.maxSize = baseContext.getConfig().getSidCacheSize();
+        this.ttl = baseContext.getConfig().getSidCacheTtl() * 1000L;
+    }
 
 
     void resolveSids ( DcerpcHandle handle, LsaPolicyHandle policyHandle, jcifs.SID[] sids ) throws IOException {
@@ -98,50 +136,292 @@ public class SIDCacheImpl implements SidResolver {
 
 
     void resolveSids0 ( String authorityServerName, CIFSContext tc, jcifs.SID[] sids ) throws CIFSException {
-        synchronized ( this.sidCache ) {
-            try ( DcerpcHandle handle = DcerpcHandle.getHandle("ncacn_np:" + authorityServerName + "[\\PIPE\\lsarpc]", tc) ) {
-                String server = authorityServerName;
-                int dot = server.indexOf('.');
-                if ( dot > 0 && Character.isDigit(server.charAt(0)) == false )
-                    server = server.substring(0, dot);
-                try ( LsaPolicyHandle policyHandle = new LsaPolicyHandle(handle, "\\\\" + server, 0x00000800) ) {
-                    resolveSids(handle, policyHandle, sids);
-                }
+        PoolKey key = new PoolKey(authorityServerName, tc.getCredentials());
+        LsaConnection conn = acquireConnection(key);
+        boolean reused = conn != null;
+        try {
+            if ( conn == null ) {
+                conn = openConnection(authorityServerName, tc);
+            }
+            try {
+                resolveSids(conn.handle, conn.policyHandle, sids);
             }
             catch ( IOException e ) {
-                throw new CIFSException("Failed to resolve SIDs", e);
+                conn.close();
+                conn = null;
+                if ( !reused ) {
+                    throw e;
+                }
+                // the pooled connection may have gone stale, retry once with a fresh one
+                log.debug("Lookup on pooled LSA connection failed, retrying", e);
+                conn = openConnection(authorityServerName, tc);
+                resolveSids(conn.handle, conn.policyHandle, sids);
+            }
+            releaseConnection(key, conn);
+            conn = null;
+        }
+        catch ( IOException e ) {
+            if ( conn != null ) {
+                conn.close();
             }
+            throw new CIFSException("Failed to resolve SIDs", e);
         }
     }
 
 
-    @Override
-    public void resolveSids ( CIFSContext tc, String authorityServerName, jcifs.SID[] sids, int offset, int length ) throws CIFSException {
-        ArrayList<SID> list = new ArrayList<>(sids.length);
-        int si;
-
-        synchronized ( this.sidCache ) {
-            for ( si = 0; si < length; si++ ) {
-                SID s = sids[ offset + si ].unwrap(SID.class);
-                SID sid = this.sidCache.get(s);
-                if ( sid != null ) {
-                    s.type = sid.type;
-                    s.domainName = sid.domainName;
-                    s.acctName = sid.acctName;
+    private static LsaConnection openConnection ( String authorityServerName, CIFSContext tc ) throws IOException {
+        DcerpcHandle handle = DcerpcHandle.getHandle("ncacn_np:" + authorityServerName + "[\\PIPE\\lsarpc]", tc);
+        try {
+            String server = authorityServerName;
+            int dot = server.indexOf('.');
+            if ( dot > 0 && Character.isDigit(server.charAt(0)) == false )
+                server = server.substring(0, dot);
+            return new LsaConnection(handle, new LsaPolicyHandle(handle, "\\\\" + server, 0x00000800));
+        }
+        catch ( IOException | RuntimeException e ) {
+            handle.close();
+            throw e;
+        }
+    }
+
+
+    private LsaConnection acquireConnection ( PoolKey key ) {
+        Deque<LsaConnection> idle = this.connections.get(key);
+        if ( idle == null ) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        LsaConnection c;
+        while ( ( c = idle.pollFirst() ) != null ) {
+            if ( now - c.lastUsed < CONNECTION_IDLE_TIMEOUT ) {
+                return c;
+            }
+            c.close();
+        }
+        return null;
+    }
+
+
+    private void releaseConnection ( PoolKey key, LsaConnection conn ) {
+        conn.lastUsed = System.currentTimeMillis();
+        Deque<LsaConnection> idle = this.connections.get(key);
+        if ( idle == null ) {
+            idle = new ConcurrentLinkedDeque<>();
+            Deque<LsaConnection> old = this.connections.putIfAbsent(key, idle);
+            if ( old != null ) {
+                idle = old;
+            }
+        }
+        if ( idle.size() >= MAX_IDLE_CONNECTIONS ) {
+            conn.close();
+            return;
+        }
+        idle.offerFirst(conn);
+        scheduleReaper();
+    }
+
+
+    private void scheduleReaper () {
+        if ( !this.reaperScheduled.compareAndSet(false, true) ) {
+            return;
+        }
+        try {
+            this.context.getScheduler().schedule(new Runnable() {
+
+                @Override
+                public void run () {
+                    // closing connections performs I/O, keep the scheduler thread free
+                    reap();
+                }
+            }, CONNECTION_IDLE_TIMEOUT, TimeUnit.MILLISECONDS);
+        }
+        catch ( RejectedExecutionException e ) {
+            log.debug("Context is closed", e);
+            this.reaperScheduled.set(false);
+        }
+    }
+
+
+    private void reap () {
+        try {
+            this.context.getExecutor().execute(new Runnable() {
+
+                @Override
+                public void run () {
+                    SIDCacheImpl.this.reaperScheduled.set(false);
+                    if ( closeIdleConnections() ) {
+                        scheduleReaper();
+                    }
+                }
+            });
+        }
+        catch ( RejectedExecutionException e ) {
+            log.debug("Context is closed", e);
+            this.reaperScheduled.set(false);
+        }
+    }
+
+
+    /**
+     * Close pooled connections that have been idle for too long, so that they do not keep the transport alive
+     * 
+     * @return whether connections remain in the pool
+     */
+    boolean closeIdleConnections () {
+        long now = System.currentTimeMillis();
+        boolean remaining = false;
+        for ( Deque<LsaConnection> idle : this.connections.values() ) {
+            Iterator<LsaConnection> it = idle.iterator();
+            while ( it.hasNext() ) {
+                LsaConnection c = it.next();
+                if ( now - c.lastUsed >= CONNECTION_IDLE_TIMEOUT && idle.removeFirstOccurrence(c) ) {
+                    c.close();
                 }
                 else {
-                    list.add(s);
+                    remaining = true;
                 }
             }
+        }
+        return remaining;
+    }
+
+
+    @Override
+    public void resolveSids ( CIFSContext tc, String authorityServerName, jcifs.SID[] sids, int offset, int length ) throws CIFSException {
+        long now = System.currentTimeMillis();
+        MetricsCollector metrics = tc.getMetrics();
+        List<SID> missing = null;
+        for ( int si = 0; si < length; si++ ) {
+            SID s = sids[ offset + si ].unwrap(SID.class);
+            CachedName cached = this.sidCache.get(s);
+            if ( cached != null && cached.expiration > now ) {
+                cached.lastAccess = now;
+                cached.apply(s);
+                metrics.cacheAccess(MetricsCollector.CACHE_SID, true);
+                continue;
+            }
+            metrics.cacheAccess(MetricsCollector.CACHE_SID, false);
+            if ( cached != null ) {
+                this.sidCache.remove(s, cached);
+            }
+            if ( missing == null ) {
+                missing = new ArrayList<>(length - si);
+            }
+            missing.add(s);
+        }
 
-            if ( list.size() > 0 ) {
-                SID[] resolved = list.toArray(new SID[list.size()]);
+        if ( missing == null ) {
+            return;
+        }
+
+        // coalesce with lookups already in progress for the same SIDs
+        List<SID> own = new ArrayList<>(missing.size());
+        Map<LookupKey, PendingLookup> registered = new HashMap<>();
+        List<SID> waitFor = null;
+        List<PendingLookup> waitOn = null;
+        for ( SID s : missing ) {
+            LookupKey key = new LookupKey(authorityServerName, s);
+            PendingLookup p = new PendingLookup();
+            PendingLookup existing = this.pending.putIfAbsent(key, p);
+            if ( existing == null ) {
+                own.add(s);
+                registered.put(key, p);
+            }
+            else {
+                if ( waitFor == null ) {
+                    waitFor = new ArrayList<>();
+                    waitOn = new ArrayList<>();
+                }
+                waitFor.add(s);
+                waitOn.add(existing);
+            }
+        }
+
+        if ( !own.isEmpty() ) {
+            Throwable failure = null;
+            try {
+                SID[] resolved = own.toArray(new SID[own.size()]);
                 resolveSids0(authorityServerName, tc, resolved);
-                for ( si = 0; si < resolved.length; si++ ) {
-                    this.sidCache.put(resolved[ si ], resolved[ si ]);
+                long expiration = System.currentTimeMillis() + this.ttl;
+                for ( SID s : resolved ) {
+                    CachedName c = new CachedName(s, expiration);
+                    this.sidCache.put(s, c);
+                    registered.get(new LookupKey(authorityServerName, s)).complete(c, null);
+                }
+                evict();
+            }
+            catch ( CIFSException | RuntimeException | Error e ) {
+                failure = e;
+                throw e;
+            }
+            finally {
+                // waiters must never be left blocking, whatever ended the lookup
+                CIFSException ce = failure instanceof CIFSException ? (CIFSException) failure
+                        : new CIFSException("Failed to resolve SIDs", failure);
+                for ( Map.Entry<LookupKey, PendingLookup> e : registered.entrySet() ) {
+                    e.getValue().complete(null, ce);
+                    this.pending.remove(e.getKey(), e.getValue());
                 }
             }
         }
+
+        if ( waitFor != null ) {
+            for ( int i = 0; i < waitFor.size(); i++ ) {
+                waitOn.get(i).await().apply(waitFor.get(i));
+            }
+        }
+    }
+
+
+    private void evict () {
+        if ( this.sidCache.size() <= this.maxSize || !this.evictLock.tryLock() ) {
+            return;
+        }
+        try {
+            long now = System.currentTimeMillis();
+            List<Map.Entry<SID, CachedName>> entries = new ArrayList<>(this.sidCache.entrySet());
+            int remove = entries.size() - this.maxSize;
+            // shrink a bit further so that eviction does not run on every insert
+            remove += this.maxSize / 10;
+            Iterator<Map.Entry<SID, CachedName>> it = entries.iterator();
+            while ( it.hasNext() && remove > 0 ) {
+                Map.Entry<SID, CachedName> e = it.next();
+                if ( e.getValue().expiration <= now ) {
+                    this.sidCache.remove(e.getKey(), e.getValue());
+                    it.remove();
+                    remove--;
+                }
+            }
+            if ( remove <= 0 ) {
+                return;
+            }
+            final Map<Map.Entry<SID, CachedName>, Long> accessed = new IdentityHashMap<>();
+            for ( Map.Entry<SID, CachedName> e : entries ) {
+                accessed.put(e, e.getValue().lastAccess);
+            }
+            Collections.sort(entries, new Comparator<Map.Entry<SID, CachedName>>() {
+
+                @Override
+                public int compare ( Map.Entry<SID, CachedName> o1, Map.Entry<SID, CachedName> o2 ) {
+                    return Long.compare(accessed.get(o1), accessed.get(o2));
+                }
+            });
+            for ( int i = 0; i < remove && i < entries.size(); i++ ) {
+                Map.Entry<SID, CachedName> e = entries.get(i);
+                this.sidCache.remove(e.getKey(), e.getValue());
+            }
+        }
+        finally {
+            this.evictLock.unlock();
+        }
+    }
+
+
+    /**
+     * @return number of cached SIDs
+     */
+    int getCacheSize () {
+        return this.sidCache.size();
     }
 
 
@@ -150,8 +430,9 @@ public class SIDCacheImpl implements SidResolver {
      * <p>
      * This method will attempt
      * to resolve SIDs using a cache and cache the results of any SIDs that
-     * required resolving with the authority. SID cache entries are currently not
-     * expired because under normal circumstances SID information never changes.
+     * required resolving with the authority. SID cache entries expire after
+     * {@link jcifs.Configuration#getSidCacheTtl()} and the least recently used entries are evicted
+     * when the cache grows beyond {@link jcifs.Configuration#getSidCacheSize()}.
      *
      * @param authorityServerName
      *            The hostname of the server that should be queried. For maximum efficiency this should be the hostname
@@ -167,31 +448,7 @@ public class SIDCacheImpl implements SidResolver {
      */
     @Override
     public void resolveSids ( CIFSContext tc, String authorityServerName, jcifs.SID[] sids ) throws CIFSException {
-        ArrayList<SID> list = new ArrayList<>(sids.length);
-        int si;
-
-        synchronized ( this.sidCache ) {
-            for ( si = 0; si < sids.length; si++ ) {
-                SID s = sids[ si ].unwrap(SID.class);
-                SID sid = this.sidCache.get(s);
-                if ( sid != null ) {
-                    s.type = sid.type;
-                    s.domainName = sid.domainName;
-                    s.acctName = sid.acctName;
-                }
-                else {
-                    list.add(s);
-                }
-            }
-
-            if ( list.size() > 0 ) {
-                SID[] resolved = list.toArray(new SID[list.size()]);
-                resolveSids0(authorityServerName, tc, resolved);
-                for ( si = 0; si < resolved.length; si++ ) {
-                    this.sidCache.put(resolved[ si ], resolved[ si ]);
-                }
-            }
-        }
+        resolveSids(tc, authorityServerName, sids, 0, sids.length);
     }
 
 
@@ -200,21 +457,19 @@ public class SIDCacheImpl implements SidResolver {
         lsarpc.LsarDomainInfo info = new lsarpc.LsarDomainInfo();
         MsrpcQueryInformationPolicy rpc;
 
-        synchronized ( this.sidCache ) {
-            try ( DcerpcHandle handle = DcerpcHandle.getHandle("ncacn_np:" + server + "[\\PIPE\\lsarpc]", tc) ) {
-                // NetApp doesn't like the 'generic' access mask values
-                try ( LsaPolicyHandle policyHandle = new LsaPolicyHandle(handle, null, 0x00000001) ) {
-                    rpc = new MsrpcQueryInformationPolicy(policyHandle, (short) lsarpc.POLICY_INFO_ACCOUNT_DOMAIN, info);
-                    handle.sendrecv(rpc);
-                    if ( rpc.retval != 0 )
-                        throw new SmbException(rpc.retval, false);
-                }
-
-                return new SID(info.sid, jcifs.SID.SID_TYPE_DOMAIN, ( new UnicodeString(info.name, false) ).toString(), null, false);
-            }
-            catch ( IOException e ) {
-                throw new CIFSException("Failed to get SID from server", e);
+        try ( DcerpcHandle handle = DcerpcHandle.getHandle("ncacn_np:" + server + "[\\PIPE\\lsarpc]", tc) ) {
+            // NetApp doesn't like the 'generic' access mask values
+            try ( LsaPolicyHandle policyHandle = new LsaPolicyHandle(handle, null, 0x00000001) ) {
+                rpc = new MsrpcQueryInformationPolicy(policyHandle, (short) lsarpc.POLICY_INFO_ACCOUNT_DOMAIN, info);
+                handle.sendrecv(rpc);
+                if ( rpc.retval != 0 )
+                    throw new SmbException(rpc.retval, false);
             }
+
+            return new SID(info.sid, jcifs.SID.SID_TYPE_DOMAIN, ( new UnicodeString(info.name, false) ).toString(), null, false);
+        }
+        catch ( IOException e ) {
+            throw new CIFSException("Failed to get SID from server", e);
         }
     }
 
@@ -224,35 +479,33 @@ public class SIDCacheImpl implements SidResolver {
         lsarpc.LsarSidArray sidarray = new lsarpc.LsarSidArray();
         MsrpcGetMembersInAlias rpc = null;
 
-        synchronized ( this.sidCache ) {
-            try ( DcerpcHandle handle = DcerpcHandle.getHandle("ncacn_np:" + authorityServerName + "[\\PIPE\\samr]", tc) ) {
-                SamrPolicyHandle policyHandle = new SamrPolicyHandle(handle, authorityServerName, 0x00000030);
-                SamrDomainHandle domainHandle = new SamrDomainHandle(handle, policyHandle, 0x00000200, domsid.unwrap(sid_t.class));
-                try ( SamrAliasHandle aliasHandle = new SamrAliasHandle(handle, domainHandle, 0x0002000c, rid) ) {
-                    rpc = new MsrpcGetMembersInAlias(aliasHandle, sidarray);
-                    handle.sendrecv(rpc);
-                    if ( rpc.retval != 0 )
-                        throw new SmbException(rpc.retval, false);
-                    SID[] sids = new SID[rpc.sids.num_sids];
-
-                    String origin_server = handle.getServer();
-                    CIFSContext origin_ctx = handle.getTransportContext();
-
-                    for ( int i = 0; i < sids.length; i++ ) {
-                        sids[ i ] = new SID(rpc.sids.sids[ i ].sid, 0, null, null, false);
-                        sids[ i ].origin_server = origin_server;
-                        sids[ i ].origin_ctx = origin_ctx;
-                    }
-                    if ( sids.length > 0 && ( flags & SID.SID_FLAG_RESOLVE_SIDS ) != 0 ) {
-                        resolveSids(origin_ctx, origin_server, sids);
-                    }
-                    return sids;
+        try ( DcerpcHandle handle = DcerpcHandle.getHandle("ncacn_np:" + authorityServerName + "[\\PIPE\\samr]", tc) ) {
+            SamrPolicyHandle policyHandle = new SamrPolicyHandle(handle, authorityServerName, 0x00000030);
+            SamrDomainHandle domainHandle = new SamrDomainHandle(handle, policyHandle, 0x00000200, domsid.unwrap(sid_t.class));
+            try ( SamrAliasHandle aliasHandle = new SamrAliasHandle(handle, domainHandle, 0x0002000c, rid) ) {
+                rpc = new MsrpcGetMembersInAlias(aliasHandle, sidarray);
+                handle.sendrecv(rpc);
+                if ( rpc.retval != 0 )
+                    throw new SmbException(rpc.retval, false);
+                SID[] sids = new SID[rpc.sids.num_sids];
+
+                String origin_server = handle.getServer();
+                CIFSContext origin_ctx = handle.getTransportContext();
+
+                for ( int i = 0; i < sids.length; i++ ) {
+                    sids[ i ] = new SID(rpc.sids.sids[ i ].sid, 0, null, null, false);
+                    sids[ i ].origin_server = origin_server;
+                    sids[ i ].origin_ctx = origin_ctx;
                 }
-            }
-            catch ( IOException e ) {
-                throw new CIFSException("Failed to get group member SIDs", e);
+                if ( sids.length > 0 && ( flags & SID.SID_FLAG_RESOLVE_SIDS ) != 0 ) {
+                    resolveSids(origin_ctx, origin_server, sids);
+                }
+                return sids;
             }
         }
+        catch ( IOException e ) {
+            throw new CIFSException("Failed to get group member SIDs", e);
+        }
 
     }
 
@@ -266,44 +519,188 @@ public class SIDCacheImpl implements SidResolver {
     @Override
     public Map<jcifs.SID, List<jcifs.SID>> getLocalGroupsMap ( CIFSContext tc, String authorityServerName, int flags ) throws CIFSException {
         SID domSid = getServerSid(tc, authorityServerName);
-        synchronized ( this.sidCache ) {
-            try ( DcerpcHandle handle = DcerpcHandle.getHandle("ncacn_np:" + authorityServerName + "[\\PIPE\\samr]", tc) ) {
-                samr.SamrSamArray sam = new samr.SamrSamArray();
-                try ( SamrPolicyHandle policyHandle = new SamrPolicyHandle(handle, authorityServerName, 0x02000000);
-                      SamrDomainHandle domainHandle = new SamrDomainHandle(handle, policyHandle, 0x02000000, domSid) ) {
-                    MsrpcEnumerateAliasesInDomain rpc = new MsrpcEnumerateAliasesInDomain(domainHandle, 0xFFFF, sam);
-                    handle.sendrecv(rpc);
-                    if ( rpc.retval != 0 ) {
-                        throw new SmbException(rpc.retval, false);
-                    }
+        try ( DcerpcHandle handle = DcerpcHandle.getHandle("ncacn_np:" + authorityServerName + "[\\PIPE\\samr]", tc) ) {
+            samr.SamrSamArray sam = new samr.SamrSamArray();
+            try ( SamrPolicyHandle policyHandle = new SamrPolicyHandle(handle, authorityServerName, 0x02000000);
+                  SamrDomainHandle domainHandle = new SamrDomainHandle(handle, policyHandle, 0x02000000, domSid) ) {
+                MsrpcEnumerateAliasesInDomain rpc = new MsrpcEnumerateAliasesInDomain(domainHandle, 0xFFFF, sam);
+                handle.sendrecv(rpc);
+                if ( rpc.retval != 0 ) {
+                    throw new SmbException(rpc.retval, false);
+                }
+
+                Map<jcifs.SID, List<jcifs.SID>> map = new HashMap<>();
+
+                for ( int ei = 0; ei < rpc.sam.count; ei++ ) {
+                    samr.SamrSamEntry entry = rpc.sam.entries[ ei ];
 
-                    Map<jcifs.SID, List<jcifs.SID>> map = new HashMap<>();
-
-                    for ( int ei = 0; ei < rpc.sam.count; ei++ ) {
-                        samr.SamrSamEntry entry = rpc.sam.entries[ ei ];
-
-                        SID[] mems = getGroupMemberSids(tc, authorityServerName, domSid, entry.idx, flags);
-                        SID groupSid = new SID(domSid, entry.idx);
-                        groupSid.type = jcifs.SID.SID_TYPE_ALIAS;
-                        groupSid.domainName = domSid.getDomainName();
-                        groupSid.acctName = ( new UnicodeString(entry.name, false) ).toString();
-
-                        for ( int mi = 0; mi < mems.length; mi++ ) {
-                            List<jcifs.SID> groups = map.get(mems[ mi ]);
-                            if ( groups == null ) {
-                                groups = new ArrayList<>();
-                                map.put(mems[ mi ], groups);
-                            }
-                            if ( !groups.contains(groupSid) )
-                                groups.add(groupSid);
+                    SID[] mems = getGroupMemberSids(tc, authorityServerName, domSid, entry.idx, flags);
+                    SID groupSid = new SID(domSid, entry.idx);
+                    groupSid.type = jcifs.SID.SID_TYPE_ALIAS;
+                    groupSid.domainName = domSid.getDomainName();
+                    groupSid.acctName = ( new UnicodeString(entry.name, false) ).toString();
+
+                    for ( int mi = 0; mi < mems.length; mi++ ) {
+                        List<jcifs.SID> groups = map.get(mems[ mi ]);
+                        if ( groups == null ) {
+                            groups = new ArrayList<>();
+                            map.put(mems[ mi ], groups);
                         }
+                        if ( !groups.contains(groupSid) )
+                            groups.add(groupSid);
                     }
-
-                    return map;
                 }
+
+                return map;
+            }
+        }
+        catch ( IOException e ) {
+            throw new CIFSException("Failed to resolve groups", e);
+        }
+    }
+
+
+    private static final class CachedName {
+
+        final int type;
+        final String domainName;
+        final String acctName;
+        final long expiration;
+        volatile long lastAccess;
+
+
+        CachedName ( SID sid, long expiration ) {
+            this.type = sid.type;
+            this.domainName = sid.domainName;
+            this.acctName = sid.acctName;
+            this.expiration = expiration;
+            this.lastAccess = System.currentTimeMillis();
+        }
+
+
+        void apply ( SID sid ) {
+            sid.type = this.type;
+            sid.domainName = this.domainName;
+            sid.acctName = this.acctName;
+        }
+    }
+
+    private static final class PendingLookup {
+
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile CachedName result;
+        private volatile CIFSException error;
+
+
+        /**
+         * Only the first completion counts
+         */
+        void complete ( CachedName r, CIFSException e ) {
+            if ( this.done.getCount() == 0 ) {
+                return;
+            }
+            this.result = r;
+            this.error = e;
+            this.done.countDown();
+        }
+
+
+        CachedName await () throws CIFSException {
+            try {
+                this.done.await();
+            }
+            catch ( InterruptedException e ) {
+                Thread.currentThread().interrupt();
+                throw new CIFSException("Interrupted while waiting for SID lookup", e);
+            }
+            if ( this.error != null ) {
+                throw new CIFSException("SID lookup failed", this.error);
+            }
+            return this.result;
+        }
+    }
+
+    private static final class LookupKey {
+
+        private final String authority;
+        private final SID sid;
+
+
+        LookupKey ( String authority, SID sid ) {
+            this.authority = authority;
+            this.sid = sid;
+        }
+
+
+        @Override
+        public int hashCode () {
+            return 31 * this.authority.hashCode() + this.sid.hashCode();
+        }
+
+
+        @Override
+        public boolean equals ( Object obj ) {
+            if ( !( obj instanceof LookupKey ) ) {
+                return false;
+            }
+            LookupKey o = (LookupKey) obj;
+            return this.authority.equals(o.authority) && this.sid.equals(o.sid);
+        }
+    }
+
+    private static final class PoolKey {
+
+        private final String authority;
+        private final Credentials credentials;
+
+
+        PoolKey ( String authority, Credentials credentials ) {
+            this.authority = authority;
+            this.credentials = credentials;
+        }
+
+
+        @Override
+        public int hashCode () {
+            return 31 * this.authority.hashCode() + System.identityHashCode(this.credentials);
+        }
+
+
+        @Override
+        public boolean equals ( Object obj ) {
+            if ( !( obj instanceof PoolKey ) ) {
+                return false;
+            }
+            PoolKey o = (PoolKey) obj;
+            return this.authority.equals(o.authority) && this.credentials == o.credentials;
+        }
+    }
+
+    private static final class LsaConnection {
+
+        final DcerpcHandle handle;
+        final LsaPolicyHandle policyHandle;
+        volatile long lastUsed;
+
+
+        LsaConnection ( DcerpcHandle handle, LsaPolicyHandle policyHandle ) {
+            this.handle = handle;
+            this.policyHandle = policyHandle;
+        }
+
+
+        void close () {
+            try {
+                this.policyHandle.close();
+            }
+            catch ( IOException e ) {
+                log.debug("Failed to close policy handle", e);
+            }
+            try {
+                this.handle.close();
             }
             catch ( IOException e ) {
-                throw new CIFSException("Failed to resolve groups", e);
+                log.debug("Failed to close LSA handle", e);
             }
         }
     }
@@ -18,22 +18,42 @@
 package jcifs.smb;
 
 
+import java.io.File;
 import java.io.IOException;
-import java.net.MalformedURLException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.OpenOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import jcifs.CIFSException;
-import jcifs.CloseableIterator;
+import jcifs.Configuration;
 import jcifs.SmbConstants;
-import jcifs.SmbResource;
 import jcifs.internal.fscc.FileBasicInfo;
+import jcifs.internal.fscc.FileEndOfFileInformation;
 import jcifs.internal.smb1.com.SmbComSetInformation;
 import jcifs.internal.smb1.com.SmbComSetInformationResponse;
 import jcifs.internal.smb1.trans2.Trans2SetFileInformation;
 import jcifs.internal.smb1.trans2.Trans2SetFileInformationResponse;
+import jcifs.internal.smb2.create.Smb2CreateRequest;
 import jcifs.internal.smb2.info.Smb2SetInfoRequest;
+import jcifs.internal.smb2.ioctl.DuplicateExtentsData;
+import jcifs.internal.smb2.ioctl.FileAllocatedRange;
+import jcifs.internal.smb2.ioctl.QueryAllocatedRangesResponse;
 import jcifs.internal.smb2.ioctl.Smb2IoctlRequest;
 import jcifs.internal.smb2.ioctl.Smb2IoctlResponse;
 import jcifs.internal.smb2.ioctl.SrvCopyChunkCopyResponse;
@@ -50,6 +70,13 @@ final class SmbCopyUtil {
 
     private static final Logger log = LoggerFactory.getLogger(SmbCopyUtil.class);
 
+    // start with some reasonably safe defaults, the server will tell us if it does not like them
+    private static final CopyChunkLimits DEFAULT_COPY_CHUNK_LIMITS = new CopyChunkLimits(256, 1024 * 1024, 16 * 1024 * 1024);
+
+    private static final int COPY_CHUNK_IN_FLIGHT = 4;
+
+    private static final long DUPLICATE_EXTENTS_MAX = 1024L * 1024 * 1024;
+
 
     /**
      * 
@@ -57,6 +84,35 @@ final class SmbCopyUtil {
     private SmbCopyUtil () {}
 
 
+    /**
+     * Check that a copy operation is valid
+     * 
+     * @param src
+     * @param dest
+     * @throws CIFSException
+     */
+    static void checkCopy ( SmbFile src, SmbFile dest ) throws CIFSException {
+        if ( !src.exists() ) {
+            throw new SmbException(NtStatus.NT_STATUS_OBJECT_NAME_NOT_FOUND, null);
+        }
+
+        /*
+         * Should be able to copy an entire share actually
+         */
+        if ( src.getLocator().getShare() == null || dest.getLocator().getShare() == null ) {
+            throw new SmbException("Invalid operation for workgroups or servers");
+        }
+
+        /*
+         * It is invalid for the source path to be a child of the destination
+         * path or visa versa.
+         */
+        if ( src.fileLocator.overlaps(dest.getLocator()) ) {
+            throw new SmbException("Source and destination paths overlap.");
+        }
+    }
+
+
     /**
      * @param dest
      * @return
@@ -108,7 +164,7 @@ final class SmbCopyUtil {
 
         if ( sh.isSMB2() && dh.isSMB2() && sh.isSameTree(dh) ) {
             try {
-                serverSideCopy(src, dest, sh, dh, false);
+                serverSideCopy(src, dest, sh, dh, false, false);
                 return;
             }
             catch ( SmbUnsupportedOperationException e ) {
@@ -166,22 +222,7 @@ final class SmbCopyUtil {
                     log.debug(String.format("Copied a total of %d bytes", off));
                 }
 
-                if ( dh.isSMB2() ) {
-                    Smb2SetInfoRequest req = new Smb2SetInfoRequest(dh.getConfig(), dfd.getFileId());
-                    req.setFileInformation(new FileBasicInfo(ctime, atime, mtime, 0L, attrs));
-                    dh.send(req);
-                }
-                else if ( dh.hasCapability(SmbConstants.CAP_NT_SMBS) ) {
-                    // use the open file descriptor
-                    dh.send(
-                        new Trans2SetFileInformation(dh.getConfig(), dfd.getFid(), attrs, ctime, mtime, atime),
-                        new Trans2SetFileInformationResponse(dh.getConfig()));
-                }
-                else {
-                    dh.send(
-                        new SmbComSetInformation(dh.getConfig(), dest.getUncPath(), attrs, mtime),
-                        new SmbComSetInformationResponse(dh.getConfig()));
-                }
+                setTargetInformation(dest, dfd, dh, attrs, ctime, mtime, atime);
             }
         }
         catch ( IOException se ) {
@@ -193,26 +234,270 @@ final class SmbCopyUtil {
     }
 
 
+    /**
+     * Copy a single file, reading and writing on the calling thread
+     * 
+     * Used by the concurrent copy engine, where parallelism is achieved by copying multiple files at once.
+     * 
+     * @param src
+     * @param dest
+     * @param b
+     *            transfer buffer
+     * @param sh
+     * @param dh
+     * @param sparse
+     *            whether to only transfer the allocated ranges of the source, recreating holes on the target
+     * @return number of bytes copied, for sparse copies only the data in allocated ranges counts
+     * @throws CIFSException
+     */
+    static long copyFile ( SmbFile src, SmbFile dest, byte[] b, SmbTreeHandleImpl sh, SmbTreeHandleImpl dh, boolean sparse )
+            throws CIFSException {
+        if ( sh.isSMB2() && dh.isSMB2() && sh.isSameTree(dh) ) {
+            try {
+                return serverSideCopy(src, dest, sh, dh, false, sparse);
+            }
+            catch ( SmbUnsupportedOperationException e ) {
+                log.debug("Server side copy not supported, falling back to normal copying", e);
+            }
+        }
+
+        try ( SmbFileHandleImpl sfd = src.openUnshared(0, SmbConstants.O_RDONLY, SmbConstants.FILE_SHARE_READ, SmbConstants.ATTR_NORMAL, 0);
+              SmbFileInputStream fis = new SmbFileInputStream(src, sh, sfd) ) {
+            int attrs = src.getAttributes();
+            long size = sfd.getInitialSize();
+            List<FileAllocatedRange> ranges = null;
+            if ( sparse && sh.isSMB2() && dh.isSMB2() ) {
+                ranges = queryAllocatedRanges(sh, sfd.getFileId(), size);
+            }
+
+            try ( SmbFileHandleImpl dfd = openCopyTargetFile(dest, attrs, false);
+                  SmbFileOutputStream fos = new SmbFileOutputStream(
+                      dest,
+                      dh,
+                      dfd,
+                      SmbConstants.O_CREAT | SmbConstants.O_WRONLY | SmbConstants.O_TRUNC,
+                      SmbConstants.FILE_WRITE_DATA | SmbConstants.FILE_WRITE_ATTRIBUTES,
+                      SmbConstants.FILE_NO_SHARE) ) {
+                long off = 0L;
+                int read;
+                if ( ranges != null && !isFullyAllocated(ranges, size) ) {
+                    // the target was truncated, so everything not written remains a hole
+                    setSparse(dh, dfd.getFileId());
+                    setEndOfFile(dh, dfd.getFileId(), size);
+                    long pos = 0;
+                    for ( FileAllocatedRange r : ranges ) {
+                        fis.skip(r.getOffset() - pos);
+                        fos.seek(r.getOffset());
+                        pos = r.getOffset();
+                        long remain = r.getLength();
+                        while ( remain > 0 && ( read = fis.read(b, 0, (int) Math.min(b.length, remain)) ) > 0 ) {
+                            fos.write(b, 0, read);
+                            remain -= read;
+                            pos += read;
+                            off += read;
+                        }
+                    }
+                    if ( log.isDebugEnabled() ) {
+                        log.debug(String.format("Transferred %d of %d bytes in %d allocated ranges", off, size, ranges.size()));
+                    }
+                }
+                else {
+                    while ( ( read = fis.read(b) ) > 0 ) {
+                        fos.write(b, 0, read);
+                        off += read;
+                    }
+                }
+                setTargetInformation(dest, dfd, dh, attrs, src.createTime(), src.lastModified(), src.lastAccess());
+                return off;
+            }
+        }
+        catch ( IOException se ) {
+            throw new SmbException("Failed to copy file from [" + src.toString() + "] to [" + dest.toString() + "]", se);
+        }
+    }
+
+
+    /**
+     * Download a file to the local file system
+     * 
+     * @param src
+     * @param sh
+     * @param target
+     * @param b
+     *            transfer buffer
+     * @param sparse
+     *            whether to only transfer the allocated ranges of the source, leaving holes in the local file
+     * @return the file size
+     * @throws CIFSException
+     */
+    static long download ( SmbFile src, SmbTreeHandleImpl sh, File target, byte[] b, boolean sparse ) throws CIFSException {
+        Set<OpenOption> options = new HashSet<>();
+        options.add(StandardOpenOption.CREATE);
+        options.add(StandardOpenOption.WRITE);
+        options.add(StandardOpenOption.TRUNCATE_EXISTING);
+        if ( sparse ) {
+            // only a hint, file systems creating holes on their own ignore it
+            options.add(StandardOpenOption.SPARSE);
+        }
+
+        try ( SmbFileHandleImpl sfd = src.openUnshared(0, SmbConstants.O_RDONLY, SmbConstants.FILE_SHARE_READ, SmbConstants.ATTR_NORMAL, 0);
+              SmbFileInputStream fis = new SmbFileInputStream(src, sh, sfd);
+              SeekableByteChannel ch = Files.newByteChannel(target.toPath(), options) ) {
+            long size = sfd.getInitialSize();
+            List<FileAllocatedRange> ranges = null;
+            if ( sparse && sh.isSMB2() ) {
+                ranges = queryAllocatedRanges(sh, sfd.getFileId(), size);
+            }
+            if ( ranges == null ) {
+                ranges = Collections.singletonList(new FileAllocatedRange(0, size));
+            }
+
+            long pos = 0;
+            for ( FileAllocatedRange r : ranges ) {
+                fis.skip(r.getOffset() - pos);
+                ch.position(r.getOffset());
+                pos = r.getOffset();
+                long remain = r.getLength();
+                int read;
+                while ( remain > 0 && ( read = fis.read(b, 0, (int) Math.min(b.length, remain)) ) > 0 ) {
+                    ByteBuffer buf = ByteBuffer.wrap(b, 0, read);
+                    while ( buf.hasRemaining() ) {
+                        ch.write(buf);
+                    }
+                    remain -= read;
+                    pos += read;
+                }
+            }
+
+            if ( ch.size() < size ) {
+                // trailing hole, extend the file
+                ch.position(size - 1);
+                ch.write(ByteBuffer.wrap(new byte[1]));
+            }
+            return size;
+        }
+        catch ( IOException e ) {
+            throw new SmbException("Failed to download [" + src.toString() + "] to " + target, e);
+        }
+    }
+
+
+    /**
+     * @param th
+     * @param fileId
+     * @param size
+     * @return the allocated ranges of the file, null if the server does not support querying them
+     * @throws CIFSException
+     */
+    static List<FileAllocatedRange> queryAllocatedRanges ( SmbTreeHandleImpl th, byte[] fileId, long size ) throws CIFSException {
+        List<FileAllocatedRange> ranges = new ArrayList<>();
+        long off = 0;
+        while ( off < size ) {
+            Smb2IoctlRequest req = new Smb2IoctlRequest(th.getConfig(), Smb2IoctlRequest.FSCTL_QUERY_ALLOCATED_RANGES, fileId);
+            req.setFlags(Smb2IoctlRequest.SMB2_O_IOCTL_IS_FSCTL);
+            req.setInputData(new FileAllocatedRange(off, size - off));
+            Smb2IoctlResponse resp;
+            try {
+                resp = th.send(req, RequestParam.NO_RETRY);
+            }
+            catch ( SmbUnsupportedOperationException e ) {
+                log.debug("Querying allocated ranges is not supported", e);
+                return null;
+            }
+
+            FileAllocatedRange[] r = resp.getOutputData(QueryAllocatedRangesResponse.class).getRanges();
+            for ( FileAllocatedRange range : r ) {
+                if ( range.getOffset() >= size ) {
+                    break;
+                }
+                ranges.add(new FileAllocatedRange(range.getOffset(), Math.min(range.getLength(), size - range.getOffset())));
+            }
+
+            if ( resp.getStatus() != NtStatus.NT_STATUS_BUFFER_OVERFLOW || r.length == 0 ) {
+                break;
+            }
+            // more ranges than fit into the response, continue after the last one
+            FileAllocatedRange last = r[ r.length - 1 ];
+            off = last.getOffset() + last.getLength();
+        }
+        return ranges;
+    }
+
+
+    private static boolean isFullyAllocated ( List<FileAllocatedRange> ranges, long size ) {
+        return ranges.size() == 1 && ranges.get(0).getOffset() == 0 && ranges.get(0).getLength() >= size;
+    }
+
+
+    private static void setSparse ( SmbTreeHandleImpl th, byte[] fileId ) throws CIFSException {
+        Smb2IoctlRequest req = new Smb2IoctlRequest(th.getConfig(), Smb2IoctlRequest.FSCTL_SET_SPARSE, fileId);
+        req.setFlags(Smb2IoctlRequest.SMB2_O_IOCTL_IS_FSCTL);
+        req.setMaxOutputResponse(0);
+        try {
+            th.send(req, RequestParam.NO_RETRY);
+        }
+        catch ( SmbUnsupportedOperationException e ) {
+            // data is still correct, the holes just get allocated
+            log.debug("Cannot mark target sparse", e);
+        }
+    }
+
+
+    private static void setEndOfFile ( SmbTreeHandleImpl th, byte[] fileId, long size ) throws CIFSException {
+        Smb2SetInfoRequest eof = new Smb2SetInfoRequest(th.getConfig(), fileId);
+        eof.setFileInformation(new FileEndOfFileInformation(size));
+        th.send(eof, RequestParam.NO_RETRY);
+    }
+
+
+    private static void setTargetInformation ( SmbFile dest, SmbFileHandleImpl dfd, SmbTreeHandleImpl dh, int attrs, long ctime, long mtime,
+            long atime ) throws CIFSException {
+        if ( dh.isSMB2() ) {
+            Smb2SetInfoRequest req = new Smb2SetInfoRequest(dh.getConfig(), dfd.getFileId());
+            req.setFileInformation(new FileBasicInfo(ctime, atime, mtime, 0L, attrs));
+            dh.send(req);
+        }
+        else if ( dh.hasCapability(SmbConstants.CAP_NT_SMBS) ) {
+            // use the open file descriptor
+            dh.send(
+                new Trans2SetFileInformation(dh.getConfig(), dfd.getFid(), attrs, ctime, mtime, atime),
+                new Trans2SetFileInformationResponse(dh.getConfig()));
+        }
+        else {
+            dh.send(
+                new SmbComSetInformation(dh.getConfig(), dest.getUncPath(), attrs, mtime),
+                new SmbComSetInformationResponse(dh.getConfig()));
+        }
+    }
+
+
     /**
      * @param src
      * @param dest
      * @param sh
      * @param dh
+     * @return number of bytes copied, for sparse copies only the data in allocated ranges counts
      * @throws SmbException
      */
-    @SuppressWarnings ( "resource" )
-    private static void serverSideCopy ( SmbFile src, SmbFile dest, SmbTreeHandleImpl sh, SmbTreeHandleImpl dh, boolean write ) throws CIFSException {
+    private static long serverSideCopy ( SmbFile src, SmbFile dest, SmbTreeHandleImpl sh, SmbTreeHandleImpl dh, boolean write, boolean sparse )
+            throws CIFSException {
         log.debug("Trying server side copy");
         SmbFileHandleImpl dfd = null;
         try {
-            long size;
-            byte[] resumeKey;
-
             // despite there being a resume key, we still need an open file descriptor?
             try ( SmbFileHandleImpl sfd = src.openUnshared(0, SmbConstants.O_RDONLY, SmbConstants.FILE_SHARE_READ, SmbConstants.ATTR_NORMAL, 0) ) {
-                if ( sfd.getInitialSize() == 0 ) {
+                long size = sfd.getInitialSize();
+                if ( size == 0 ) {
                     try ( SmbFileHandleImpl edfd = openCopyTargetFile(dest, src.getAttributes(), !write) ) {
-                        return;
+                        return 0;
+                    }
+                }
+
+                SmbTreeImpl tree = dh.getTree();
+                if ( !write && tree != null && !tree.isDuplicateExtentsUnsupported() ) {
+                    dfd = openCopyTargetFile(dest, src.getAttributes(), true);
+                    if ( duplicateExtents(new TreeCopyTarget(dh, dfd, tree), sfd.getFileId(), size) ) {
+                        return size;
                     }
                 }
 
@@ -220,92 +505,27 @@ final class SmbCopyUtil {
                 resumeReq.setFlags(Smb2IoctlRequest.SMB2_O_IOCTL_IS_FSCTL);
                 Smb2IoctlResponse resumeResp = sh.send(resumeReq);
                 SrvRequestResumeKeyResponse rkresp = resumeResp.getOutputData(SrvRequestResumeKeyResponse.class);
-                size = sfd.getInitialSize();
-                resumeKey = rkresp.getResumeKey();
-
-                // start with some reasonably safe defaults, the server will till us if it does not like it
-                // can we resume this if we loose the file descriptor?
-
-                int maxChunks = 256;
-                int maxChunkSize = 1024 * 1024;
-                int byteLimit = 16 * 1024 * 1024;
-                boolean retry = false;
-                do {
-                    long ooff = 0;
-                    while ( ooff < size ) {
-                        long wsize = size - ooff;
-                        if ( wsize > byteLimit ) {
-                            wsize = byteLimit;
-                        }
+                byte[] resumeKey = rkresp.getResumeKey();
 
-                        int chunks = (int) ( wsize / maxChunkSize );
-                        int lastChunkSize;
-                        if ( chunks + 1 > maxChunks ) {
-                            chunks = maxChunks;
-                            lastChunkSize = maxChunkSize;
-                        }
-                        else {
-                            lastChunkSize = (int) ( wsize % maxChunkSize );
-                            if ( lastChunkSize != 0 ) {
-                                chunks++;
-                            }
-                            else {
-                                lastChunkSize = maxChunkSize;
-                            }
-                        }
-
-                        SrvCopychunk[] chunkInfo = new SrvCopychunk[chunks];
-                        long ioff = 0;
-                        for ( int i = 0; i < chunks; i++ ) {
-                            long absoff = ooff + ioff;
-                            int csize = i == chunks - 1 ? lastChunkSize : maxChunkSize;
-                            chunkInfo[ i ] = new SrvCopychunk(absoff, absoff, csize);
-                            ioff += maxChunkSize;
-                        }
-
-                        if ( dfd == null || !dfd.isValid() ) {
-                            // don't reopen the file for every round if it's not necessary, keep the lock
-                            dfd = openCopyTargetFile(dest, src.getAttributes(), !write);
-                        }
+                if ( dfd == null ) {
+                    // keep the target open for all requests, the lock is held until we are done
+                    dfd = openCopyTargetFile(dest, src.getAttributes(), !write);
+                }
 
-                        // FSCTL_SRV_COPYCHUNK_WRITE allows to open the file for writing only, FSCTL_SRV_COPYCHUNK also
-                        // needs read access
-                        Smb2IoctlRequest copy = new Smb2IoctlRequest(
-                            sh.getConfig(),
-                            write ? Smb2IoctlRequest.FSCTL_SRV_COPYCHUNK_WRITE : Smb2IoctlRequest.FSCTL_SRV_COPYCHUNK,
-                            dfd.getFileId());
-                        copy.setFlags(Smb2IoctlRequest.SMB2_O_IOCTL_IS_FSCTL);
-                        copy.setInputData(new SrvCopychunkCopy(resumeKey, chunkInfo));
-
-                        try {
-                            SrvCopyChunkCopyResponse r = dh.send(copy, RequestParam.NO_RETRY).getOutputData(SrvCopyChunkCopyResponse.class);
-                            if ( log.isDebugEnabled() ) {
-                                log.debug(
-                                    String.format(
-                                        "Wrote %d bytes (%d chunks, last partial write %d)",
-                                        r.getTotalBytesWritten(),
-                                        r.getChunksWritten(),
-                                        r.getChunkBytesWritten()));
-                            }
-                            ooff += r.getTotalBytesWritten();
-                        }
-                        catch ( SmbException e ) {
-                            Smb2IoctlResponse response = copy.getResponse();
-                            if ( !retry && response.isReceived() && !response.isError()
-                                    && response.getStatus() == NtStatus.NT_STATUS_INVALID_PARAMETER ) {
-                                retry = true;
-                                SrvCopyChunkCopyResponse outputData = response.getOutputData(SrvCopyChunkCopyResponse.class);
-                                maxChunks = outputData.getChunksWritten();
-                                maxChunkSize = outputData.getChunkBytesWritten();
-                                byteLimit = outputData.getTotalBytesWritten();
-                                continue;
-                            }
-                            throw e;
-                        }
+                CopyTarget target = new TreeCopyTarget(dh, dfd, tree);
+                List<FileAllocatedRange> ranges = sparse ? queryAllocatedRanges(sh, sfd.getFileId(), size) : null;
+                if ( ranges != null && !isFullyAllocated(ranges, size) ) {
+                    setSparse(dh, dfd.getFileId());
+                    setEndOfFile(dh, dfd.getFileId(), size);
+                    long copied = 0;
+                    for ( FileAllocatedRange r : ranges ) {
+                        copyChunks(dest.getContext().getExecutor(), target, resumeKey, r.getOffset(), r.getOffset() + r.getLength(), write);
+                        copied += r.getLength();
                     }
-                    break;
+                    return copied;
                 }
-                while ( retry );
+                copyChunks(dest.getContext().getExecutor(), target, resumeKey, 0, size, write);
+                return size;
             }
         }
         catch ( SmbUnsupportedOperationException e ) {
@@ -323,70 +543,383 @@ final class SmbCopyUtil {
 
 
     /**
-     * @param dest
-     * @param b
-     * @param bsize
-     * @param w
-     * @param dh
-     * @param sh
-     * @param req
-     * @param resp
-     * @throws SmbException
+     * Try to clone the source file's blocks into the target (e.g. on ReFS)
+     * 
+     * @return whether the copy was completed by block cloning
+     */
+    static boolean duplicateExtents ( CopyTarget target, byte[] srcFileId, long size ) throws CIFSException {
+        try {
+            // the target must already have the full size
+            target.setEndOfFile(size);
+
+            long off = 0;
+            while ( off < size ) {
+                long count = Math.min(size - off, DUPLICATE_EXTENTS_MAX);
+                Smb2IoctlRequest dup = new Smb2IoctlRequest(target.getConfig(), Smb2IoctlRequest.FSCTL_DUPLICATE_EXTENTS_TO_FILE, target.getFileId());
+                dup.setFlags(Smb2IoctlRequest.SMB2_O_IOCTL_IS_FSCTL);
+                dup.setMaxOutputResponse(0);
+                dup.setInputData(new DuplicateExtentsData(srcFileId, off, off, count));
+                Smb2IoctlResponse resp = target.ioctl(dup);
+                if ( resp.getStatus() != NtStatus.NT_STATUS_OK ) {
+                    throw new SmbException(resp.getStatus(), null);
+                }
+                off += count;
+            }
+            if ( log.isDebugEnabled() ) {
+                log.debug(String.format("Cloned %d bytes", size));
+            }
+            return true;
+        }
+        catch ( SmbUnsupportedOperationException e ) {
+            log.debug("Block cloning not supported on tree, using copychunk", e);
+            target.markDuplicateExtentsUnsupported();
+        }
+        catch ( SmbException e ) {
+            log.debug("Block cloning failed, using copychunk", e);
+        }
+        return false;
+    }
+
+
+    /**
+     * Copy a range using copychunk requests, up to {@link #COPY_CHUNK_IN_FLIGHT} requests for disjoint parts of the range
+     * are sent concurrently
+     * 
+     * @param executor
+     * @param target
+     * @param resumeKey
+     *            resume key of the source file
+     * @param start
+     * @param end
+     * @param write
+     *            whether the target is opened for writing only
+     * @throws CIFSException
      */
-    static void copyDir ( SmbFile src, SmbFile dest, byte[][] b, int bsize, WriterThread w, SmbTreeHandleImpl sh, SmbTreeHandleImpl dh )
+    static void copyChunks ( ExecutorService executor, final CopyTarget target, final byte[] resumeKey, long start, long end, final boolean write )
             throws CIFSException {
-        String path = dest.getLocator().getUNCPath();
-        if ( path.length() > 1 ) {
-            try {
-                dest.mkdir();
-                if ( dh.hasCapability(SmbConstants.CAP_NT_SMBS) ) {
-                    dest.setPathInformation(src.getAttributes(), src.createTime(), src.lastModified(), src.lastAccess());
+        CopyChunkLimits limits = target.getCopyChunkLimits();
+        long off = start;
+        if ( limits == null ) {
+            // copy the first range on our own, learning the limits the server accepts
+            limits = DEFAULT_COPY_CHUNK_LIMITS;
+            long len = Math.min(end - off, limits.getRequestSize());
+            copyChunkRange(target, resumeKey, write, off, len);
+            off += len;
+        }
+
+        // remaining ranges do not overlap, so they can be processed concurrently
+        Deque<Future<Long>> inFlight = new ArrayDeque<>();
+        try {
+            while ( off < end || !inFlight.isEmpty() ) {
+                while ( off < end && inFlight.size() < COPY_CHUNK_IN_FLIGHT ) {
+                    CopyChunkLimits cur = target.getCopyChunkLimits() != null ? target.getCopyChunkLimits() : limits;
+                    final long roff = off;
+                    final long rlen = Math.min(end - off, cur.getRequestSize());
+                    inFlight.add(executor.submit(new Callable<Long>() {
+
+                        @Override
+                        public Long call () throws CIFSException {
+                            return copyChunkRange(target, resumeKey, write, roff, rlen);
+                        }
+                    }));
+                    off += rlen;
                 }
-                else {
-                    dest.setPathInformation(src.getAttributes(), 0L, src.lastModified(), 0L);
+                await(inFlight.poll());
+            }
+        }
+        finally {
+            // the target handle is closed by the caller, wait for everything outstanding
+            Future<Long> f;
+            while ( ( f = inFlight.poll() ) != null ) {
+                try {
+                    f.get();
+                }
+                catch ( Exception e ) {
+                    log.trace("Failed to copy range", e);
                 }
             }
-            catch ( SmbUnsupportedOperationException e ) {
-                if ( src.getContext().getConfig().isIgnoreCopyToException() ) {
-                    log.warn("Failed to set file attributes on " + path, e);
+        }
+    }
+
+
+    private static void await ( Future<Long> f ) throws CIFSException {
+        try {
+            f.get();
+        }
+        catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            throw new SmbException("Interrupted during server side copy", e);
+        }
+        catch ( ExecutionException e ) {
+            if ( e.getCause() instanceof CIFSException ) {
+                throw (CIFSException) e.getCause();
+            }
+            throw new SmbException("Server side copy failed", e.getCause());
+        }
+    }
+
+
+    private static long copyChunkRange ( CopyTarget target, byte[] resumeKey, boolean write, long off, long len ) throws CIFSException {
+        long done = 0;
+        boolean retry = false;
+        while ( done < len ) {
+            CopyChunkLimits limits = target.getCopyChunkLimits() != null ? target.getCopyChunkLimits() : DEFAULT_COPY_CHUNK_LIMITS;
+            long wsize = Math.min(len - done, limits.getRequestSize());
+            int chunks = (int) ( ( wsize + limits.maxChunkSize - 1 ) / limits.maxChunkSize );
+            SrvCopychunk[] chunkInfo = new SrvCopychunk[chunks];
+            long coff = off + done;
+            for ( int i = 0; i < chunks; i++ ) {
+                int csize = (int) Math.min(limits.maxChunkSize, wsize - (long) i * limits.maxChunkSize);
+                chunkInfo[ i ] = new SrvCopychunk(coff, coff, csize);
+                coff += csize;
+            }
+
+            // FSCTL_SRV_COPYCHUNK_WRITE allows to open the file for writing only, FSCTL_SRV_COPYCHUNK also
+            // needs read access
+            Smb2IoctlRequest copy = new Smb2IoctlRequest(
+                target.getConfig(),
+                write ? Smb2IoctlRequest.FSCTL_SRV_COPYCHUNK_WRITE : Smb2IoctlRequest.FSCTL_SRV_COPYCHUNK,
+                target.getFileId());
+            copy.setFlags(Smb2IoctlRequest.SMB2_O_IOCTL_IS_FSCTL);
+            copy.setInputData(new SrvCopychunkCopy(resumeKey, chunkInfo));
+
+            try {
+                SrvCopyChunkCopyResponse r = target.ioctl(copy).getOutputData(SrvCopyChunkCopyResponse.class);
+                if ( log.isDebugEnabled() ) {
+                    log.debug(
+                        String.format(
+                            "Wrote %d bytes at %d (%d chunks, last partial write %d)",
+                            r.getTotalBytesWritten(),
+                            off + done,
+                            r.getChunksWritten(),
+                            r.getChunkBytesWritten()));
                 }
-                else {
-                    throw e;
+                if ( r.getTotalBytesWritten() <= 0 ) {
+                    throw new SmbException("Server side copy did not make progress");
+                }
+                done += r.getTotalBytesWritten();
+                if ( target.getCopyChunkLimits() == null ) {
+                    target.setCopyChunkLimits(limits);
                 }
             }
-            catch ( SmbException se ) {
-                log.trace("copyTo0", se);
-                if ( se.getNtStatus() != NtStatus.NT_STATUS_ACCESS_DENIED && se.getNtStatus() != NtStatus.NT_STATUS_OBJECT_NAME_COLLISION ) {
-                    throw se;
+            catch ( SmbException e ) {
+                Smb2IoctlResponse response = copy.getResponse();
+                if ( !retry && response.isReceived() && !response.isError() && response.getStatus() == NtStatus.NT_STATUS_INVALID_PARAMETER ) {
+                    // the server tells us the limits it is willing to accept
+                    retry = true;
+                    SrvCopyChunkCopyResponse outputData = response.getOutputData(SrvCopyChunkCopyResponse.class);
+                    CopyChunkLimits learned = new CopyChunkLimits(
+                        outputData.getChunksWritten(),
+                        outputData.getChunkBytesWritten(),
+                        outputData.getTotalBytesWritten());
+                    target.setCopyChunkLimits(learned);
+                    continue;
                 }
+                throw e;
             }
         }
+        return done;
+    }
 
-        try ( CloseableIterator<SmbResource> it = SmbEnumerationUtil
-                .doEnum(src, "*", SmbConstants.ATTR_DIRECTORY | SmbConstants.ATTR_HIDDEN | SmbConstants.ATTR_SYSTEM, null, null) ) {
-            while ( it.hasNext() ) {
-                try ( SmbResource r = it.next() ) {
-                    try ( SmbFile ndest = new SmbFile(
-                        dest,
-                        r.getLocator().getName(),
-                        true,
-                        r.getLocator().getType(),
-                        r.getAttributes(),
-                        r.createTime(),
-                        r.lastModified(),
-                        r.lastAccess(),
-                        r.length()) ) {
-
-                        if ( r instanceof SmbFile ) {
-                            ( (SmbFile) r ).copyRecursive(ndest, b, bsize, w, sh, dh);
-                        }
+    /**
+     * Copychunk limits accepted by a server
+     */
+    static final class CopyChunkLimits {
 
-                    }
+        final int maxChunks;
+        final int maxChunkSize;
+        final int byteLimit;
+
+
+        CopyChunkLimits ( int maxChunks, int maxChunkSize, int byteLimit ) {
+            this.maxChunks = Math.max(1, maxChunks);
+            this.maxChunkSize = Math.max(1, maxChunkSize);
+            this.byteLimit = Math.max(1, byteLimit);
+        }
+
+
+        long getRequestSize () {
+            return Math.min(this.byteLimit, (long) this.maxChunks * this.maxChunkSize);
+        }
+    }
+
+    /**
+     * Target file of a server side copy
+     */
+    interface CopyTarget {
+
+        /**
+         * @return the configuration
+         */
+        Configuration getConfig ();
+
+
+        /**
+         * @return the target file id
+         * @throws CIFSException
+         */
+        byte[] getFileId () throws CIFSException;
+
+
+        /**
+         * Send an ioctl request, without retrying
+         * 
+         * @param req
+         * @return the response
+         * @throws CIFSException
+         */
+        Smb2IoctlResponse ioctl ( Smb2IoctlRequest req ) throws CIFSException;
+
+
+        /**
+         * @param size
+         *            new end of file
+         * @throws CIFSException
+         */
+        void setEndOfFile ( long size ) throws CIFSException;
+
+
+        /**
+         * @return the copychunk limits learned for the target's tree, null if not yet known
+         */
+        CopyChunkLimits getCopyChunkLimits ();
+
+
+        /**
+         * @param limits
+         *            copychunk limits accepted by the server
+         */
+        void setCopyChunkLimits ( CopyChunkLimits limits );
+
+
+        /**
+         * Remember that the server does not support block cloning for the target's tree
+         */
+        void markDuplicateExtentsUnsupported ();
+    }
+
+    /**
+     * Copy target on an open file handle, learned server behavior is kept on the tree
+     */
+    static final class TreeCopyTarget implements CopyTarget {
+
+        private final SmbTreeHandleImpl dh;
+        private final SmbFileHandleImpl dfd;
+        private final SmbTreeImpl tree;
+
+
+        /**
+         * @param dh
+         * @param dfd
+         * @param tree
+         *            may be null
+         */
+        TreeCopyTarget ( SmbTreeHandleImpl dh, SmbFileHandleImpl dfd, SmbTreeImpl tree ) {
+            this.dh = dh;
+            this.dfd = dfd;
+            this.tree = tree;
+        }
+
+
+        @Override
+        public Configuration getConfig () {
+            return this.dh.getConfig();
+        }
+
+
+        @Override
+        public byte[] getFileId () throws CIFSException {
+            return this.dfd.getFileId();
+        }
+
+
+        @Override
+        public Smb2IoctlResponse ioctl ( Smb2IoctlRequest req ) throws CIFSException {
+            return this.dh.send(req, RequestParam.NO_RETRY);
+        }
+
+
+        @Override
+        public void setEndOfFile ( long size ) throws CIFSException {
+            SmbCopyUtil.setEndOfFile(this.dh, this.dfd.getFileId(), size);
+        }
+
+
+        @Override
+        public CopyChunkLimits getCopyChunkLimits () {
+            return this.tree != null ? this.tree.getCopyChunkLimits() : null;
+        }
+
+
+        @Override
+        public void setCopyChunkLimits ( CopyChunkLimits limits ) {
+            if ( this.tree != null ) {
+                this.tree.setCopyChunkLimits(limits);
+            }
+        }
+
+
+        @Override
+        public void markDuplicateExtentsUnsupported () {
+            if ( this.tree != null ) {
+                this.tree.markDuplicateExtentsUnsupported();
+            }
+        }
+    }
+
+
+    /**
+     * Create the target directory and apply the source's attributes and times
+     * 
+     * With SMB2 the create, attribute update and close are sent as a single compound request.
+     * 
+     * @param src
+     * @param dest
+     * @param dh
+     * @throws CIFSException
+     */
+    static void createDirectory ( SmbFile src, SmbFile dest, SmbTreeHandleImpl dh ) throws CIFSException {
+        String path = dest.getLocator().getUNCPath();
+        if ( path.length() <= 1 ) {
+            return;
+        }
+        try {
+            if ( dh.isSMB2() ) {
+                Smb2SetInfoRequest req = new Smb2SetInfoRequest(dh.getConfig());
+                req.setFileInformation(
+                    new FileBasicInfo(src.createTime(), src.lastAccess(), src.lastModified(), 0L, src.getAttributes() | SmbConstants.ATTR_DIRECTORY));
+                dest.withOpen(
+                    dh,
+                    Smb2CreateRequest.FILE_CREATE,
+                    Smb2CreateRequest.FILE_DIRECTORY_FILE,
+                    SmbConstants.ATTR_DIRECTORY,
+                    SmbConstants.FILE_READ_ATTRIBUTES | SmbConstants.FILE_WRITE_ATTRIBUTES,
+                    SmbConstants.FILE_SHARE_READ | SmbConstants.FILE_SHARE_WRITE,
+                    req);
+            }
+            else {
+                dest.mkdir();
+                if ( dh.hasCapability(SmbConstants.CAP_NT_SMBS) ) {
+                    dest.setPathInformation(src.getAttributes(), src.createTime(), src.lastModified(), src.lastAccess());
                 }
+                else {
+                    dest.setPathInformation(src.getAttributes(), 0L, src.lastModified(), 0L);
+                }
+            }
+        }
+        catch ( SmbUnsupportedOperationException e ) {
+            if ( src.getContext().getConfig().isIgnoreCopyToException() ) {
+                log.warn("Failed to set file attributes on " + path, e);
+            }
+            else {
+                throw e;
             }
         }
-        catch ( MalformedURLException mue ) {
-            throw new SmbException(src.getURL().toString(), mue);
+        catch ( SmbException se ) {
+            log.trace("copyTo0", se);
+            if ( se.getNtStatus() != NtStatus.NT_STATUS_ACCESS_DENIED && se.getNtStatus() != NtStatus.NT_STATUS_OBJECT_NAME_COLLISION ) {
+                throw se;
+            }
         }
     }
 
@@ -0,0 +1,342 @@
+/*
+ * © 2026 agent <agent@local>
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package jcifs.smb;
+
+
+import java.net.MalformedURLException;
+import java.net.UnknownHostException;
+import java.util.List;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jcifs.CIFSException;
+import jcifs.FileNotifyInformation;
+import jcifs.SmbWatchListener;
+import jcifs.SmbWatchRegistration;
+
+
+/**
+ * In-memory listing of a directory that is kept up to date through change notifications
+ * 
+ * Once a change notify request is outstanding for the directory the cache performs an initial enumeration
+ * and then applies the returned add/remove/modify/rename records to the cached entries, re-querying only the
+ * affected children. If the server signals that the changes did not fit the notify buffer
+ * (<tt>STATUS_NOTIFY_ENUM_DIR</tt>) the directory is enumerated again. The watch is a regular continuous watch
+ * ({@link SmbFile#watch(int, boolean, SmbWatchListener)}), so it occupies one thread of the context's executor while
+ * the cache is active.
+ * 
+ * Repeated calls to {@link #listFiles()} are served from memory without contacting the server. If the watch
+ * breaks (e.g. because the tree was disconnected) listing falls back to enumerating the directory and the watch is
+ * restarted.
+ * 
+ * Usage:
+ * 
+ * <pre>
+ * try ( SmbDirectoryCache cache = new SmbDirectoryCache(dir) ) {
+ *     cache.start();
+ *     SmbFile[] children = cache.listFiles();
+ * }
+ * </pre>
+ * 
+ * @author agent
+ *
+ */
+public class SmbDirectoryCache implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(SmbDirectoryCache.class);
+
+    /**
+     * Notification filter used for the watch
+     */
+    public static final int WATCH_FILTER = FileNotifyInformation.FILE_NOTIFY_CHANGE_NAME | FileNotifyInformation.FILE_NOTIFY_CHANGE_ATTRIBUTES
+            | FileNotifyInformation.FILE_NOTIFY_CHANGE_SIZE | FileNotifyInformation.FILE_NOTIFY_CHANGE_LAST_WRITE
+            | FileNotifyInformation.FILE_NOTIFY_CHANGE_CREATION;
+
+    private final SmbFile directory;
+    private final ConcurrentNavigableMap<String, SmbFile> entries = new ConcurrentSkipListMap<>(String.CASE_INSENSITIVE_ORDER);
+
+    private SmbWatchRegistration watch;
+    private volatile boolean valid;
+    private volatile boolean closed;
+    private final AtomicLong rescans = new AtomicLong();
+    private final AtomicLong updates = new AtomicLong();
+
+
+    /**
+     * @param directory
+     *            directory to cache, must be a directory
+     */
+    public SmbDirectoryCache ( SmbFile directory ) {
+        this.directory = directory;
+    }
+
+
+    /**
+     * Perform the initial enumeration and start watching for changes
+     * 
+     * @throws CIFSException
+     */
+    public synchronized void start () throws CIFSException {
+        if ( this.closed ) {
+            throw new SmbException("Directory cache is closed");
+        }
+        if ( this.valid ) {
+            return;
+        }
+
+        SmbWatchHandleImpl h = this.directory.openWatch(WATCH_FILTER, false);
+        WatchListener l = new WatchListener();
+        SmbWatchRegistrationImpl reg = new SmbWatchRegistrationImpl(this.directory.getContext(), h, l);
+        l.registration = reg;
+        this.watch = reg;
+        try {
+            // the first notify request must have been sent before enumerating, otherwise changes in between are lost.
+            // changes reported meanwhile are applied after the enumeration, as delivery synchronizes on this cache
+            reg.start().awaitArmed();
+            rescan();
+        }
+        catch ( CIFSException e ) {
+            this.watch = null;
+            reg.close();
+            throw e;
+        }
+        this.valid = true;
+    }
+
+
+    /**
+     * 
+     * @return the cached directory
+     */
+    public SmbFile getDirectory () {
+        return this.directory;
+    }
+
+
+    /**
+     * @return whether the cached listing is currently maintained by an active watch
+     */
+    public boolean isValid () {
+        return this.valid;
+    }
+
+
+    /**
+     * @return number of full enumerations performed
+     */
+    public long getRescanCount () {
+        return this.rescans.get();
+    }
+
+
+    /**
+     * @return number of incremental updates applied
+     */
+    public long getUpdateCount () {
+        return this.updates.get();
+    }
+
+
+    /**
+     * List the directory's children
+     * 
+     * Served from memory while the watch is active, otherwise the directory is enumerated and
+     * the watch is restarted.
+     * 
+     * @return the directory's children
+     * @throws CIFSException
+     */
+    public SmbFile[] listFiles () throws CIFSException {
+        if ( !this.valid && !this.closed ) {
+            start();
+        }
+        return this.entries.values().toArray(new SmbFile[0]);
+    }
+
+
+    /**
+     * Lookup a child entry
+     * 
+     * @param name
+     *            child name
+     * @return the cached child, null if it does not exist
+     * @throws CIFSException
+     */
+    public SmbFile get ( String name ) throws CIFSException {
+        if ( !this.valid && !this.closed ) {
+            start();
+        }
+        return this.entries.get(stripSlash(name));
+    }
+
+
+    /**
+     * Stop watching and drop the cached entries
+     * 
+     * {@inheritDoc}
+     *
+     * @see java.lang.AutoCloseable#close()
+     */
+    @Override
+    public synchronized void close () throws CIFSException {
+        this.closed = true;
+        this.valid = false;
+        this.entries.clear();
+        if ( this.watch != null ) {
+            SmbWatchRegistration w = this.watch;
+            this.watch = null;
+            w.close();
+        }
+    }
+
+
+    private synchronized void changed ( SmbWatchRegistration w, List<FileNotifyInformation> changes ) {
+        if ( this.closed ) {
+            return;
+        }
+        try {
+            if ( changes.isEmpty() ) {
+                log.debug("Notify buffer overflowed, rescanning {}", this.directory);
+                rescan();
+                return;
+            }
+            for ( FileNotifyInformation change : changes ) {
+                apply(change);
+            }
+        }
+        catch ( CIFSException e ) {
+            log.debug("Failed to apply changes to " + this.directory, e);
+            invalidate(w);
+        }
+    }
+
+
+    private synchronized void invalidate ( SmbWatchRegistration w ) {
+        if ( this.watch != w ) {
+            return;
+        }
+        this.valid = false;
+        this.watch = null;
+        try {
+            w.close();
+        }
+        catch ( CIFSException e ) {
+            log.debug("Failed to close watch", e);
+        }
+    }
+
+
+    private void rescan () throws CIFSException {
+        ConcurrentNavigableMap<String, SmbFile> current = new ConcurrentSkipListMap<>(String.CASE_INSENSITIVE_ORDER);
+        for ( SmbFile f : this.directory.listFiles() ) {
+            current.put(stripSlash(f.getName()), f);
+        }
+        this.entries.keySet().retainAll(current.keySet());
+        this.entries.putAll(current);
+        this.rescans.incrementAndGet();
+    }
+
+
+    private void apply ( FileNotifyInformation change ) throws CIFSException {
+        String name = change.getFileName();
+        if ( log.isTraceEnabled() ) {
+            log.trace("Applying " + change + " to " + this.directory);
+        }
+        switch ( change.getAction() ) {
+        case FileNotifyInformation.FILE_ACTION_REMOVED:
+        case FileNotifyInformation.FILE_ACTION_REMOVED_BY_DELETE:
+        case FileNotifyInformation.FILE_ACTION_RENAMED_OLD_NAME:
+            this.entries.remove(name);
+            break;
+        case FileNotifyInformation.FILE_ACTION_ADDED:
+        case FileNotifyInformation.FILE_ACTION_MODIFIED:
+        case FileNotifyInformation.FILE_ACTION_RENAMED_NEW_NAME:
+            refresh(name);
+            break;
+        default:
+            // stream changes do not affect the listing
+            return;
+        }
+        this.updates.incrementAndGet();
+    }
+
+
+    private void refresh ( String name ) throws CIFSException {
+        try {
+            SmbFile f = new SmbFile(this.directory, name);
+            // the notification is newer than anything in the shared metadata cache
+            f.clearAttributeCache();
+            if ( !f.exists() ) {
+                // already gone again, a later record will tell
+                this.entries.remove(name);
+                return;
+            }
+            if ( f.isDirectory() ) {
+                f = new SmbFile(this.directory, name + "/");
+                f.exists();
+            }
+            this.entries.put(name, f);
+        }
+        catch ( MalformedURLException | UnknownHostException e ) {
+            throw new SmbException("Failed to resolve " + name, e);
+        }
+    }
+
+
+    private static String stripSlash ( String name ) {
+        if ( name.endsWith("/") ) {
+            return name.substring(0, name.length() - 1);
+        }
+        return name;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString () {
+        return "SmbDirectoryCache[" + this.directory + ",valid=" + this.valid + ",entries=" + this.entries.size() + "]";
+    }
+
+    private final class WatchListener implements SmbWatchListener {
+
+        SmbWatchRegistration registration;
+
+
+        @Override
+        public void changed ( List<FileNotifyInformation> changes ) {
+            SmbDirectoryCache.this.changed(this.registration, changes);
+        }
+
+
+        @Override
+        public void failed ( CIFSException e ) {
+            if ( !SmbDirectoryCache.this.closed ) {
+                log.debug("Watch failed for " + SmbDirectoryCache.this.directory, e);
+            }
+            invalidate(this.registration);
+        }
+    }
+}
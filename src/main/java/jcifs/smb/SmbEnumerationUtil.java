@@ -34,6 +34,7 @@ import jcifs.Address;
 import jcifs.CIFSContext;
 import jcifs.CIFSException;
 import jcifs.CloseableIterator;
+import jcifs.DirectoryInfoClass;
 import jcifs.ResourceFilter;
 import jcifs.ResourceNameFilter;
 import jcifs.SmbConstants;
@@ -174,9 +175,15 @@ final class SmbEnumerationUtil {
     }
 
 
-    @SuppressWarnings ( "resource" )
     static CloseableIterator<SmbResource> doEnum ( SmbFile parent, String wildcard, int searchAttributes, ResourceNameFilter fnf, ResourceFilter ff )
             throws CIFSException {
+        return doEnum(parent, wildcard, searchAttributes, fnf, ff, DirectoryInfoClass.BOTH_DIRECTORY_INFO);
+    }
+
+
+    @SuppressWarnings ( "resource" )
+    static CloseableIterator<SmbResource> doEnum ( SmbFile parent, String wildcard, int searchAttributes, ResourceNameFilter fnf, ResourceFilter ff,
+            DirectoryInfoClass infoClass ) throws CIFSException {
         DosFileFilter dff = unwrapDOSFilter(ff);
         if ( dff != null ) {
             if ( dff.wildcard != null )
@@ -220,7 +227,10 @@ final class SmbEnumerationUtil {
 
         try ( SmbTreeHandleImpl th = parent.ensureTreeConnected() ) {
             if ( th.isSMB2() ) {
-                return new DirFileEntryAdapterIterator(parent, new DirFileEntryEnumIterator2(th, parent, wildcard, fnf, searchAttributes), ff);
+                return new DirFileEntryAdapterIterator(
+                    parent,
+                    new DirFileEntryEnumIterator2(th, parent, wildcard, fnf, searchAttributes, infoClass),
+                    ff);
             }
             return new DirFileEntryAdapterIterator(parent, new DirFileEntryEnumIterator1(th, parent, wildcard, fnf, searchAttributes), ff);
         }
@@ -19,6 +19,7 @@
 package jcifs.smb;
 
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -35,6 +36,7 @@ import jcifs.CIFSContext;
 import jcifs.CIFSException;
 import jcifs.CloseableIterator;
 import jcifs.Configuration;
+import jcifs.DirectoryInfoClass;
 import jcifs.ResourceFilter;
 import jcifs.ResourceNameFilter;
 import jcifs.SmbConstants;
@@ -43,6 +45,8 @@ import jcifs.SmbResource;
 import jcifs.SmbResourceLocator;
 import jcifs.SmbTreeHandle;
 import jcifs.SmbWatchHandle;
+import jcifs.SmbWatchListener;
+import jcifs.SmbWatchRegistration;
 import jcifs.context.SingletonContext;
 import jcifs.dcerpc.DcerpcHandle;
 import jcifs.dcerpc.msrpc.MsrpcShareGetInfo;
@@ -364,6 +368,7 @@ public class SmbFile extends URLConnection implements SmbResource, SmbConstants
     private long size;
     private long sizeExpiration;
     private boolean isExists;
+    private long fileIndex;
 
     private CIFSContext transportContext;
     private SmbTreeConnection treeConnection;
@@ -741,6 +746,9 @@ public class SmbFile extends URLConnection implements SmbResource, SmbConstants
             }
 
             this.isExists = true;
+            if ( haveSize && haveAttributes ) {
+                cacheMetadata();
+            }
             return fh;
         }
     }
@@ -861,6 +869,9 @@ public class SmbFile extends URLConnection implements SmbResource, SmbConstants
                         // treeConnect is good enough, but we need to do this after resolving DFS
                         try ( SmbTreeHandleImpl th2 = ensureTreeConnected() ) {}
                     }
+                    else if ( loadCachedMetadata() ) {
+                        return true;
+                    }
                     else {
                         queryPath(th, this.fileLocator.getUNCPath(), FileInformation.FILE_BASIC_INFO);
                     }
@@ -1033,7 +1044,20 @@ public class SmbFile extends URLConnection implements SmbResource, SmbConstants
 
     @Override
     public SmbWatchHandle watch ( int filter, boolean recursive ) throws CIFSException {
+        return openWatch(filter, recursive);
+    }
+
+
+    @Override
+    public SmbWatchRegistration watch ( int filter, boolean recursive, SmbWatchListener listener ) throws CIFSException {
+        if ( listener == null ) {
+            throw new IllegalArgumentException("listener must not be null");
+        }
+        return new SmbWatchRegistrationImpl(getContext(), openWatch(filter, recursive), listener).start();
+    }
+
 
+    SmbWatchHandleImpl openWatch ( int filter, boolean recursive ) throws CIFSException {
         if ( filter == 0 ) {
             throw new IllegalArgumentException("filter must not be 0");
         }
@@ -1312,6 +1336,12 @@ public class SmbFile extends URLConnection implements SmbResource, SmbConstants
     }
 
 
+    @Override
+    public CloseableIterator<SmbResource> children ( String wildcard, DirectoryInfoClass infoClass ) throws CIFSException {
+        return SmbEnumerationUtil.doEnum(this, wildcard, ATTR_DIRECTORY | ATTR_HIDDEN | ATTR_SYSTEM, null, null, infoClass);
+    }
+
+
     @Override
     public void renameTo ( SmbResource d ) throws SmbException {
         renameTo(d, false);
@@ -1369,6 +1399,8 @@ public class SmbFile extends URLConnection implements SmbResource, SmbConstants
             }
 
             this.attrExpiration = this.sizeExpiration = 0;
+            invalidateMetadata(true);
+            dest.invalidateMetadata(true);
         }
         catch ( CIFSException e ) {
             throw SmbException.wrap(e);
@@ -1376,24 +1408,59 @@ public class SmbFile extends URLConnection implements SmbResource, SmbConstants
     }
 
 
-    void copyRecursive ( SmbFile dest, byte[][] b, int bsize, WriterThread w, SmbTreeHandleImpl sh, SmbTreeHandleImpl dh ) throws CIFSException {
-        if ( isDirectory() ) {
-            SmbCopyUtil.copyDir(this, dest, b, bsize, w, sh, dh);
-        }
-        else {
-            SmbCopyUtil.copyFile(this, dest, b, bsize, w, sh, dh);
-        }
-
-        dest.clearAttributeCache();
-    }
-
-
     /**
      * 
      */
     void clearAttributeCache () {
         this.attrExpiration = 0;
         this.sizeExpiration = 0;
+        invalidateMetadata(false);
+    }
+
+
+    private SmbMetadataCache getMetadataCache () {
+        if ( this.fileLocator.isRootOrShare() ) {
+            return null;
+        }
+        SmbTreeImpl t = this.treeConnection.getConnectedTree();
+        return t != null ? t.getMetadataCache() : null;
+    }
+
+
+    /**
+     * Share the currently loaded attributes with other resources for the same path
+     */
+    void cacheMetadata () {
+        SmbMetadataCache cache = getMetadataCache();
+        if ( cache != null ) {
+            cache.put(getUncPath(), this.attributes, this.createTime, this.lastModified, this.lastAccess, this.size);
+        }
+    }
+
+
+    private boolean loadCachedMetadata () {
+        SmbMetadataCache cache = getMetadataCache();
+        SmbMetadataCache.CachedMetadata e = cache != null ? cache.get(getUncPath()) : null;
+        if ( e == null ) {
+            return false;
+        }
+        log.trace("Using shared cached attributes");
+        this.isExists = true;
+        this.attributes = e.attributes;
+        this.createTime = e.createTime;
+        this.lastModified = e.lastModified;
+        this.lastAccess = e.lastAccess;
+        this.size = e.size;
+        this.attrExpiration = this.sizeExpiration = e.expiration;
+        return true;
+    }
+
+
+    private void invalidateMetadata ( boolean children ) {
+        SmbMetadataCache cache = getMetadataCache();
+        if ( cache != null ) {
+            cache.invalidate(getUncPath(), children);
+        }
     }
 
 
@@ -1405,23 +1472,15 @@ public class SmbFile extends URLConnection implements SmbResource, SmbConstants
         SmbFile dest = (SmbFile) d;
         try ( SmbTreeHandleImpl sh = ensureTreeConnected();
               SmbTreeHandleImpl dh = dest.ensureTreeConnected() ) {
-            if ( !exists() ) {
-                throw new SmbException(NtStatus.NT_STATUS_OBJECT_NAME_NOT_FOUND, null);
-            }
-
-            /*
-             * Should be able to copy an entire share actually
-             */
-            if ( this.fileLocator.getShare() == null || dest.getLocator().getShare() == null ) {
-                throw new SmbException("Invalid operation for workgroups or servers");
-            }
+            SmbCopyUtil.checkCopy(this, dest);
 
-            /*
-             * It is invalid for the source path to be a child of the destination
-             * path or visa versa.
-             */
-            if ( this.fileLocator.overlaps(dest.getLocator()) ) {
-                throw new SmbException("Source and destination paths overlap.");
+            if ( isDirectory() ) {
+                SmbTreeCopier copier = new SmbTreeCopier(this, dest);
+                copier.setFailFast(!getContext().getConfig().isIgnoreCopyToException());
+                for ( SmbTreeCopier.Failure f : copier.copy(this, dest, sh, dh).getFailures() ) {
+                    log.warn("Copy failed for " + f.getSource().getLocator().getURL(), f.getException());
+                }
+                return;
             }
 
             WriterThread w = new WriterThread();
@@ -1432,7 +1491,8 @@ public class SmbFile extends URLConnection implements SmbResource, SmbConstants
                 // use commonly acceptable buffer size
                 int bsize = Math.min(sh.getReceiveBufferSize() - 70, dh.getSendBufferSize() - 70);
                 byte[][] b = new byte[2][bsize];
-                copyRecursive(dest, b, bsize, w, sh, dh);
+                SmbCopyUtil.copyFile(this, dest, b, bsize, w, sh, dh);
+                dest.clearAttributeCache();
             }
             finally {
                 w.write(null, -1, null);
@@ -1451,6 +1511,29 @@ public class SmbFile extends URLConnection implements SmbResource, SmbConstants
     }
 
 
+    /**
+     * Download the contents of this file to the local file system
+     * 
+     * In sparse mode only the ranges allocated on the server are transferred, the holes in between
+     * are left unwritten in the local file.
+     * 
+     * @param target
+     *            local file, replaced if it exists
+     * @param sparse
+     *            whether to only transfer allocated ranges
+     * @return the size of the file
+     * @throws SmbException
+     */
+    public long downloadTo ( File target, boolean sparse ) throws SmbException {
+        try ( SmbTreeHandleImpl th = ensureTreeConnected() ) {
+            return SmbCopyUtil.download(this, th, target, new byte[th.getReceiveBufferSize() - 70], sparse);
+        }
+        catch ( CIFSException e ) {
+            throw SmbException.wrap(e);
+        }
+    }
+
+
     @Override
     public void delete () throws SmbException {
         try {
@@ -1542,6 +1625,7 @@ public class SmbFile extends URLConnection implements SmbResource, SmbConstants
                 }
             }
             this.attrExpiration = this.sizeExpiration = 0;
+            invalidateMetadata(true);
         }
 
     }
@@ -1559,6 +1643,9 @@ public class SmbFile extends URLConnection implements SmbResource, SmbConstants
                 this.size = fetchAllocationInfo(th).getCapacity();
             }
             else if ( !this.fileLocator.isRoot() && t != TYPE_NAMED_PIPE ) {
+                if ( loadCachedMetadata() ) {
+                    return this.size;
+                }
                 queryPath(th, this.fileLocator.getUNCPath(), FileInformation.FILE_STANDARD_INFO);
             }
             else {
@@ -1779,6 +1866,7 @@ public class SmbFile extends URLConnection implements SmbResource, SmbConstants
 
             this.size = info.getSize();
             this.sizeExpiration = System.currentTimeMillis() + th.getConfig().getAttributeCacheTimeout();
+            cacheMetadata();
             return (T) createResp.getNextResponse();
         }
         catch (
@@ -1862,6 +1950,7 @@ public class SmbFile extends URLConnection implements SmbResource, SmbConstants
             }
 
             this.attrExpiration = 0;
+            invalidateMetadata(false);
         }
     }
 
@@ -2226,8 +2315,20 @@ public class SmbFile extends URLConnection implements SmbResource, SmbConstants
     }
 
 
+    /**
+     * @param fileIndex
+     *            server file id obtained from a listing
+     */
+    void setFileIndex ( long fileIndex ) {
+        this.fileIndex = fileIndex;
+    }
+
+
     @Override
     public long fileIndex () throws SmbException {
+        if ( this.fileIndex != 0 ) {
+            return this.fileIndex;
+        }
 
         try ( SmbTreeHandleImpl th = ensureTreeConnected() ) {
 
@@ -26,6 +26,7 @@ import org.slf4j.LoggerFactory;
 
 import jcifs.CIFSException;
 import jcifs.Configuration;
+import jcifs.SmbConstants;
 import jcifs.SmbFileHandle;
 import jcifs.internal.smb1.com.SmbComBlankResponse;
 import jcifs.internal.smb1.com.SmbComClose;
@@ -41,6 +42,9 @@ class SmbFileHandleImpl implements SmbFileHandle {
 
     private static final Logger log = LoggerFactory.getLogger(SmbFileHandleImpl.class);
 
+    private static final int WRITE_ACCESS = SmbConstants.FILE_WRITE_DATA | SmbConstants.FILE_APPEND_DATA | SmbConstants.FILE_WRITE_ATTRIBUTES
+            | SmbConstants.DELETE | SmbConstants.GENERIC_WRITE | SmbConstants.GENERIC_ALL;
+
     private final Configuration cfg;
     private final int fid;
     private final byte[] fileId;
@@ -212,6 +216,14 @@ class SmbFileHandleImpl implements SmbFileHandle {
             }
         }
         finally {
+            if ( t != null && ( this.access & WRITE_ACCESS ) != 0 ) {
+                // size and times may have changed through this handle
+                SmbTreeImpl tree = t.getTree();
+                SmbMetadataCache cache = tree != null ? tree.getMetadataCache() : null;
+                if ( cache != null ) {
+                    cache.invalidate(this.unc, false);
+                }
+            }
             this.open = false;
             if ( t != null ) {
                 // release tree usage
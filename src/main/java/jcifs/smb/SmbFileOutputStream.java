@@ -256,6 +256,15 @@ public class SmbFileOutputStream extends OutputStream {
     }
 
 
+    /**
+     * @param pos
+     *            file offset the next write will go to
+     */
+    void seek ( long pos ) {
+        this.fp = pos;
+    }
+
+
     protected synchronized SmbFileHandleImpl ensureOpen () throws CIFSException {
         if ( !isOpen() ) {
             // one extra acquire to keep this open till the stream is released
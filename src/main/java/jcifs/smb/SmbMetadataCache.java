@@ -0,0 +1,156 @@
+/*
+ * © 2026 agent <agent@local>
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package jcifs.smb;
+
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+
+/**
+ * Bounded cache of file metadata shared by all resources on a tree
+ * 
+ * Entries expire after the attribute cache timeout, the least recently used entries are evicted
+ * if the cache grows beyond its maximum size. Only positive results are cached.
+ * 
+ * Paths are compared case-insensitively, as they are by the server.
+ * 
+ * @author agent
+ *
+ */
+final class SmbMetadataCache {
+
+    private final long ttl;
+    private final Map<String, CachedMetadata> entries;
+
+
+    /**
+     * @param maxSize
+     *            maximum number of entries
+     * @param ttl
+     *            time entries remain valid
+     */
+    SmbMetadataCache ( final int maxSize, long ttl ) {
+        this.ttl = ttl;
+        this.entries = new LinkedHashMap<String, CachedMetadata>(16, 0.75f, true) {
+
+            private static final long serialVersionUID = 1L;
+
+
+            @Override
+            protected boolean removeEldestEntry ( Map.Entry<String, CachedMetadata> eldest ) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+
+    /**
+     * @param path
+     * @return cached metadata, null if not cached or expired
+     */
+    synchronized CachedMetadata get ( String path ) {
+        String key = normalize(path);
+        CachedMetadata e = this.entries.get(key);
+        if ( e != null && e.expiration <= System.currentTimeMillis() ) {
+            this.entries.remove(key);
+            return null;
+        }
+        return e;
+    }
+
+
+    /**
+     * @param path
+     * @param attributes
+     * @param createTime
+     * @param lastModified
+     * @param lastAccess
+     * @param size
+     */
+    synchronized void put ( String path, int attributes, long createTime, long lastModified, long lastAccess, long size ) {
+        this.entries.put(
+            normalize(path),
+            new CachedMetadata(attributes, createTime, lastModified, lastAccess, size, System.currentTimeMillis() + this.ttl));
+    }
+
+
+    /**
+     * Remove the entry for a path
+     * 
+     * @param path
+     * @param children
+     *            whether to also remove all entries below the path
+     */
+    synchronized void invalidate ( String path, boolean children ) {
+        String key = normalize(path);
+        this.entries.remove(key);
+        if ( children ) {
+            String prefix = key + '\\';
+            Iterator<String> it = this.entries.keySet().iterator();
+            while ( it.hasNext() ) {
+                if ( it.next().startsWith(prefix) ) {
+                    it.remove();
+                }
+            }
+        }
+    }
+
+
+    /**
+     * @return number of entries currently cached
+     */
+    synchronized int size () {
+        return this.entries.size();
+    }
+
+
+    private static String normalize ( String path ) {
+        int len = path.length();
+        while ( len > 1 && path.charAt(len - 1) == '\\' ) {
+            len--;
+        }
+        String p = path.substring(0, len).toLowerCase(Locale.ROOT);
+        if ( len == 0 || p.charAt(0) != '\\' ) {
+            return '\\' + p;
+        }
+        return p;
+    }
+
+    static final class CachedMetadata {
+
+        final int attributes;
+        final long createTime;
+        final long lastModified;
+        final long lastAccess;
+        final long size;
+        final long expiration;
+
+
+        CachedMetadata ( int attributes, long createTime, long lastModified, long lastAccess, long size, long expiration ) {
+            this.attributes = attributes;
+            this.createTime = createTime;
+            this.lastModified = lastModified;
+            this.lastAccess = lastAccess;
+            this.size = size;
+            this.expiration = expiration;
+        }
+    }
+}
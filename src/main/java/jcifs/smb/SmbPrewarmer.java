@@ -0,0 +1,261 @@
+/*
+ * © 2026 agent <agent@local>
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package jcifs.smb;
+
+
+import java.net.MalformedURLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jcifs.CIFSContext;
+import jcifs.CIFSException;
+import jcifs.PrewarmHandle;
+import jcifs.SmbTreeHandle;
+
+
+/**
+ * Keeps transports, sessions and tree connections to a set of shares established
+ * 
+ * Name resolution, connecting, negotiation, session setup and tree connect are performed up front, for all shares
+ * in parallel. The tree handles are held so that the connections are not subject to idle timeouts, and lost
+ * connections can be re-established in the background.
+ * 
+ * <pre>
+ * try ( PrewarmHandle h = SmbPrewarmer.prewarm(ctx, Arrays.asList("smb://server/share/"), 60000) ) {
+ *     ...
+ * }
+ * </pre>
+ * 
+ * @author agent
+ */
+public class SmbPrewarmer implements PrewarmHandle {
+
+    private static final Logger log = LoggerFactory.getLogger(SmbPrewarmer.class);
+
+    private final CIFSContext context;
+    private final List<Root> roots;
+    private volatile boolean warm;
+    private volatile boolean closed;
+    private ScheduledFuture<?> refreshTask;
+
+
+    /**
+     * @param tc
+     *            context to connect with
+     * @param urls
+     *            SMB URLs of the shares to connect to
+     * @throws CIFSException
+     *             if an URL is invalid
+     */
+    public SmbPrewarmer ( CIFSContext tc, Collection<String> urls ) throws CIFSException {
+        this.context = tc;
+        this.roots = new ArrayList<>(urls.size());
+        for ( String url : urls ) {
+            try {
+                this.roots.add(new Root(new SmbFile(url, tc)));
+            }
+            catch ( MalformedURLException e ) {
+                throw new CIFSException("Invalid URL " + url, e);
+            }
+        }
+    }
+
+
+    /**
+     * Establish connections to the given shares ahead of time
+     * 
+     * @param tc
+     *            context to connect with
+     * @param urls
+     *            SMB URLs of the shares to connect to
+     * @param refreshInterval
+     *            interval in milliseconds in which lost connections are re-established in the background, 0 to
+     *            disable
+     * @return handle for the established connections, holding them until closed
+     * @throws CIFSException
+     *             if an URL is invalid
+     */
+    public static PrewarmHandle prewarm ( CIFSContext tc, Collection<String> urls, long refreshInterval ) throws CIFSException {
+        return new SmbPrewarmer(tc, urls).start(refreshInterval);
+    }
+
+
+    /**
+     * Connect all shares and optionally start background refreshing
+     * 
+     * @param refreshInterval
+     *            interval in milliseconds in which lost connections are re-established, 0 to disable
+     * @return this handle
+     */
+    public SmbPrewarmer start ( long refreshInterval ) {
+        refresh();
+        if ( refreshInterval > 0 ) {
+            synchronized ( this ) {
+                if ( !this.closed ) {
+                    this.refreshTask = this.context.getScheduler().scheduleWithFixedDelay(new Runnable() {
+
+                        @Override
+                        public void run () {
+                            // connecting blocks, keep the scheduler thread free
+                            SmbPrewarmer.this.context.getExecutor().execute(new Runnable() {
+
+                                @Override
+                                public void run () {
+                                    refresh();
+                                }
+                            });
+                        }
+                    }, refreshInterval, refreshInterval, TimeUnit.MILLISECONDS);
+                }
+            }
+        }
+        return this;
+    }
+
+
+    @Override
+    public boolean isWarm () {
+        return this.warm;
+    }
+
+
+    @Override
+    public boolean refresh () {
+        if ( this.closed ) {
+            return false;
+        }
+
+        List<Future<Boolean>> futures = new ArrayList<>(this.roots.size());
+        try {
+            for ( final Root r : this.roots ) {
+                futures.add(this.context.getExecutor().submit(new Callable<Boolean>() {
+
+                    @Override
+                    public Boolean call () {
+                        return r.ensureConnected();
+                    }
+                }));
+            }
+        }
+        catch ( RejectedExecutionException e ) {
+            log.debug("Context is closed", e);
+            for ( Future<Boolean> f : futures ) {
+                f.cancel(false);
+            }
+            this.warm = false;
+            return false;
+        }
+
+        boolean all = true;
+        for ( Future<Boolean> f : futures ) {
+            try {
+                all &= f.get();
+            }
+            catch ( InterruptedException e ) {
+                Thread.currentThread().interrupt();
+                all = false;
+                break;
+            }
+            catch ( ExecutionException e ) {
+                log.debug("Prewarm task failed", e);
+                all = false;
+            }
+        }
+        this.warm = all && !this.closed;
+        return this.warm;
+    }
+
+
+    @Override
+    public void close () throws CIFSException {
+        synchronized ( this ) {
+            this.closed = true;
+            if ( this.refreshTask != null ) {
+                this.refreshTask.cancel(false);
+                this.refreshTask = null;
+            }
+        }
+        this.warm = false;
+        for ( Root r : this.roots ) {
+            r.release();
+        }
+    }
+
+    private final class Root {
+
+        private final SmbFile file;
+        private SmbTreeHandle handle;
+
+
+        Root ( SmbFile file ) {
+            this.file = file;
+        }
+
+
+        synchronized boolean ensureConnected () {
+            if ( SmbPrewarmer.this.closed ) {
+                return false;
+            }
+            if ( this.handle != null && this.handle.isConnected() ) {
+                return true;
+            }
+            releaseHandle();
+            try {
+                this.handle = this.file.getTreeHandle();
+                if ( log.isDebugEnabled() ) {
+                    log.debug("Prewarmed " + this.file.getLocator().getURL());
+                }
+                return true;
+            }
+            catch ( CIFSException e ) {
+                log.warn("Failed to prewarm connection to " + this.file.getLocator().getURL(), e);
+                return false;
+            }
+        }
+
+
+        synchronized void release () {
+            releaseHandle();
+            this.file.close();
+        }
+
+
+        private void releaseHandle () {
+            if ( this.handle == null ) {
+                return;
+            }
+            try {
+                this.handle.close();
+            }
+            catch ( CIFSException e ) {
+                log.debug("Failed to release tree handle", e);
+            }
+            this.handle = null;
+        }
+    }
+}
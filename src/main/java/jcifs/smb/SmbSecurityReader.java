@@ -0,0 +1,418 @@
+/*
+ * © 2026 agent <agent@local>
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package jcifs.smb;
+
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jcifs.CIFSContext;
+import jcifs.CIFSException;
+import jcifs.SmbResource;
+import jcifs.internal.dtyp.ACE;
+import jcifs.internal.dtyp.SecurityDescriptor;
+import jcifs.internal.dtyp.SecurityInfo;
+
+
+/**
+ * Retrieves the ACLs of many files at once
+ * 
+ * Security descriptors are queried with several requests in flight. SIDs are deduplicated across all
+ * ACEs and resolved with as few lookups as possible. Since most files in a tree share identical ACLs, descriptors are
+ * cached by their ACE contents: each file's descriptor is still decoded, but SIDs of a known ACL are not resolved again
+ * and returned ACE arrays are shared between files with the same ACL.
+ * 
+ * A reader instance may be reused for multiple calls to share the descriptor cache.
+ * 
+ * <pre>
+ * SmbSecurityReader reader = new SmbSecurityReader();
+ * SmbSecurityReader.Result r = reader.getSecurity(files);
+ * for ( SmbResource f : files ) {
+ *     ACE[] aces = r.getAces(f);
+ * }
+ * </pre>
+ * 
+ * @author agent
+ *
+ */
+public class SmbSecurityReader {
+
+    private static final Logger log = LoggerFactory.getLogger(SmbSecurityReader.class);
+
+    private static final int SID_BATCH_SIZE = 64;
+
+    private final boolean resolveSids;
+    private final int maxCachedDescriptors;
+    private final Map<DescriptorKey, CachedAcl> descriptors;
+    private int maxInFlight = 8;
+
+
+    /**
+     * Reader resolving SIDs and caching up to 4096 distinct descriptors
+     */
+    public SmbSecurityReader () {
+        this(true, 4096);
+    }
+
+
+    /**
+     * @param resolveSids
+     *            whether to resolve the SIDs of the returned ACEs
+     * @param maxCachedDescriptors
+     *            maximum number of distinct descriptors to cache
+     */
+    public SmbSecurityReader ( boolean resolveSids, int maxCachedDescriptors ) {
+        this.resolveSids = resolveSids;
+        this.maxCachedDescriptors = maxCachedDescriptors;
+        this.descriptors = new LinkedHashMap<DescriptorKey, CachedAcl>(16, 0.75f, true) {
+
+            private static final long serialVersionUID = 1L;
+
+
+            @Override
+            protected boolean removeEldestEntry ( Map.Entry<DescriptorKey, CachedAcl> eldest ) {
+                return size() > SmbSecurityReader.this.maxCachedDescriptors;
+            }
+        };
+    }
+
+
+    /**
+     * @param maxInFlight
+     *            maximum number of security queries in flight at the same time (default 8)
+     */
+    public void setMaxInFlight ( int maxInFlight ) {
+        if ( maxInFlight <= 0 ) {
+            throw new IllegalArgumentException("Maximum in-flight requests must be positive");
+        }
+        this.maxInFlight = maxInFlight;
+    }
+
+
+    /**
+     * @return number of distinct descriptors currently cached
+     */
+    public int getCachedDescriptorCount () {
+        synchronized ( this.descriptors ) {
+            return this.descriptors.size();
+        }
+    }
+
+
+    /**
+     * Fetch the DACLs of the given resources
+     * 
+     * Failures to query individual resources do not abort the operation, they are reported in the result.
+     * 
+     * @param resources
+     * @return the resources' ACLs
+     * @throws CIFSException
+     *             if SID resolution fails or the operation is interrupted
+     */
+    public Result getSecurity ( Collection<? extends SmbResource> resources ) throws CIFSException {
+        final Semaphore inFlight = new Semaphore(this.maxInFlight);
+        Map<SmbResource, Future<CachedAcl>> futures = new LinkedHashMap<>();
+        try {
+            for ( SmbResource r : resources ) {
+                if ( ! ( r instanceof SmbFile ) ) {
+                    throw new SmbException("Invalid resource " + r);
+                }
+                final SmbFile f = (SmbFile) r;
+                inFlight.acquire();
+                try {
+                    futures.put(r, f.getContext().getExecutor().submit(new Callable<CachedAcl>() {
+
+                        @Override
+                        public CachedAcl call () throws Exception {
+                            try {
+                                return query(f);
+                            }
+                            finally {
+                                inFlight.release();
+                            }
+                        }
+                    }));
+                }
+                catch ( RuntimeException e ) {
+                    inFlight.release();
+                    throw e;
+                }
+            }
+
+            Map<SmbResource, CachedAcl> acls = new LinkedHashMap<>();
+            Map<SmbResource, CIFSException> failures = new LinkedHashMap<>();
+            for ( Map.Entry<SmbResource, Future<CachedAcl>> e : futures.entrySet() ) {
+                try {
+                    acls.put(e.getKey(), e.getValue().get());
+                }
+                catch ( ExecutionException ex ) {
+                    failures.put(e.getKey(), toCIFSException(ex.getCause()));
+                }
+            }
+
+            resolve(acls);
+
+            Map<SmbResource, ACE[]> aces = new LinkedHashMap<>();
+            for ( Map.Entry<SmbResource, CachedAcl> e : acls.entrySet() ) {
+                aces.put(e.getKey(), e.getValue().aces);
+            }
+            return new Result(aces, failures);
+        }
+        catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            for ( Future<CachedAcl> f : futures.values() ) {
+                f.cancel(true);
+            }
+            throw new SmbException("Interrupted while querying security descriptors", e);
+        }
+    }
+
+
+    CachedAcl query ( SmbFile f ) throws CIFSException {
+        SecurityDescriptor desc;
+        try ( SmbTreeHandleImpl th = f.ensureTreeConnected() ) {
+            desc = f.querySecurity(th, SecurityInfo.DACL_SECURITY_INFO);
+        }
+
+        DescriptorKey key = new DescriptorKey(f.getLocator().getServerWithDfs(), desc.getAces());
+        synchronized ( this.descriptors ) {
+            CachedAcl cached = this.descriptors.get(key);
+            if ( cached != null ) {
+                return cached;
+            }
+            cached = new CachedAcl(key, f.getContext(), desc.getAces());
+            this.descriptors.put(key, cached);
+            return cached;
+        }
+    }
+
+
+    private void resolve ( Map<SmbResource, CachedAcl> acls ) throws CIFSException {
+        // group descriptors that still need their SIDs processed by authority server
+        Map<String, List<CachedAcl>> byServer = new HashMap<>();
+        Map<CachedAcl, Boolean> seen = new IdentityHashMap<>();
+        for ( CachedAcl acl : acls.values() ) {
+            if ( acl.resolved || acl.aces == null || seen.put(acl, Boolean.TRUE) != null ) {
+                continue;
+            }
+            List<CachedAcl> l = byServer.get(acl.key.server);
+            if ( l == null ) {
+                l = new ArrayList<>();
+                byServer.put(acl.key.server, l);
+            }
+            l.add(acl);
+        }
+
+        for ( Map.Entry<String, List<CachedAcl>> e : byServer.entrySet() ) {
+            String server = e.getKey();
+            List<CachedAcl> pending = e.getValue();
+            try {
+                resolve(server, pending.get(0).context, pending);
+            }
+            catch ( CIFSException | RuntimeException ex ) {
+                synchronized ( this.descriptors ) {
+                    for ( CachedAcl acl : pending ) {
+                        this.descriptors.remove(acl.key);
+                    }
+                }
+                throw ex;
+            }
+            for ( CachedAcl acl : pending ) {
+                acl.resolved = true;
+            }
+        }
+    }
+
+
+    private void resolve ( String server, CIFSContext tc, List<CachedAcl> pending ) throws CIFSException {
+        if ( !this.resolveSids ) {
+            for ( CachedAcl acl : pending ) {
+                for ( ACE ace : acl.aces ) {
+                    ace.getSID().initContext(server, tc);
+                }
+            }
+            return;
+        }
+
+        Map<SID, SID> unique = new LinkedHashMap<>();
+        List<SID> all = new ArrayList<>();
+        for ( CachedAcl acl : pending ) {
+            for ( ACE ace : acl.aces ) {
+                SID sid = ace.getSID();
+                all.add(sid);
+                if ( !unique.containsKey(sid) ) {
+                    unique.put(sid, sid);
+                }
+            }
+        }
+
+        SID[] sids = unique.keySet().toArray(new SID[unique.size()]);
+        if ( log.isDebugEnabled() ) {
+            log.debug(String.format("Resolving %d distinct SIDs of %d ACEs in %d descriptors", sids.length, all.size(), pending.size()));
+        }
+        for ( int off = 0; off < sids.length; off += SID_BATCH_SIZE ) {
+            tc.getSIDResolver().resolveSids(tc, server, sids, off, Math.min(SID_BATCH_SIZE, sids.length - off));
+        }
+
+        for ( SID sid : all ) {
+            SID resolved = unique.get(sid);
+            if ( resolved != sid ) {
+                sid.type = resolved.type;
+                sid.domainName = resolved.domainName;
+                sid.acctName = resolved.acctName;
+                sid.origin_server = null;
+                sid.origin_ctx = null;
+            }
+        }
+    }
+
+
+    private static CIFSException toCIFSException ( Throwable t ) {
+        if ( t instanceof CIFSException ) {
+            return (CIFSException) t;
+        }
+        return new SmbException("Failed to query security descriptor", t);
+    }
+
+    /**
+     * Result of a bulk security query
+     */
+    public static final class Result {
+
+        private final Map<SmbResource, ACE[]> aces;
+        private final Map<SmbResource, CIFSException> failures;
+
+
+        Result ( Map<SmbResource, ACE[]> aces, Map<SmbResource, CIFSException> failures ) {
+            this.aces = Collections.unmodifiableMap(aces);
+            this.failures = Collections.unmodifiableMap(failures);
+        }
+
+
+        /**
+         * @param resource
+         * @return the resource's ACEs, null if it has no DACL or could not be queried
+         */
+        public ACE[] getAces ( SmbResource resource ) {
+            return this.aces.get(resource);
+        }
+
+
+        /**
+         * 
+         * The returned ACE arrays are shared between resources with identical ACLs and must not be modified.
+         * 
+         * @return ACEs of the successfully queried resources, in input order
+         */
+        public Map<SmbResource, ACE[]> getAces () {
+            return this.aces;
+        }
+
+
+        /**
+         * @return resources that could not be queried and the failure cause
+         */
+        public Map<SmbResource, CIFSException> getFailures () {
+            return this.failures;
+        }
+    }
+
+    private static final class DescriptorKey {
+
+        final String server;
+        private final ACE[] aces;
+        private final int hash;
+
+
+        DescriptorKey ( String server, ACE[] aces ) {
+            this.server = server;
+            this.aces = aces;
+            int h = server.hashCode();
+            if ( aces != null ) {
+                for ( ACE ace : aces ) {
+                    h = 31 * h + ( ace.isAllow() ? 1 : 0 );
+                    h = 31 * h + ace.getFlags();
+                    h = 31 * h + ace.getAccessMask();
+                    h = 31 * h + ace.getSID().hashCode();
+                }
+            }
+            this.hash = h;
+        }
+
+
+        @Override
+        public int hashCode () {
+            return this.hash;
+        }
+
+
+        @Override
+        public boolean equals ( Object obj ) {
+            if ( ! ( obj instanceof DescriptorKey ) ) {
+                return false;
+            }
+            DescriptorKey o = (DescriptorKey) obj;
+            return this.hash == o.hash && this.server.equals(o.server) && sameAces(this.aces, o.aces);
+        }
+
+
+        private static boolean sameAces ( ACE[] a, ACE[] b ) {
+            if ( a == null || b == null ) {
+                return a == b;
+            }
+            if ( a.length != b.length ) {
+                return false;
+            }
+            for ( int i = 0; i < a.length; i++ ) {
+                if ( a[ i ].isAllow() != b[ i ].isAllow() || a[ i ].getFlags() != b[ i ].getFlags() || a[ i ].getAccessMask() != b[ i ].getAccessMask()
+                        || !a[ i ].getSID().equals(b[ i ].getSID()) ) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static final class CachedAcl {
+
+        final DescriptorKey key;
+        final CIFSContext context;
+        final ACE[] aces;
+        volatile boolean resolved;
+
+
+        CachedAcl ( DescriptorKey key, CIFSContext context, ACE[] aces ) {
+            this.key = key;
+            this.context = context;
+            this.aces = aces;
+        }
+    }
+}
@@ -29,6 +29,9 @@ import java.util.EnumSet;
 import java.util.List;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
@@ -83,6 +86,8 @@ final class SmbSessionImpl implements SmbSessionInternal {
      * 3 - disconnecting
      */
     private final AtomicInteger connectionState = new AtomicInteger();
+    private final Object reauthLock = new Object();
+    private ScheduledFuture<?> renewal;
     private int uid;
     private List<SmbTreeImpl> trees;
 
@@ -454,54 +459,33 @@ final class SmbSessionImpl implements SmbSessionInternal {
     <T extends CommonServerMessageBlock> T sessionSetup ( CommonServerMessageBlockRequest chained, T chainedResponse )
             throws CIFSException, GeneralSecurityException {
         try ( SmbTransportImpl trans = getTransport() ) {
-            synchronized ( trans ) {
-
-                while ( !this.connectionState.compareAndSet(0, 1) ) {
-                    int st = this.connectionState.get();
-                    if ( st == 2 || st == 3 ) // connected or disconnecting
-                        return chainedResponse;
-                    try {
-                        this.transport.wait();
-                    }
-                    catch ( InterruptedException ie ) {
-                        throw new SmbException(ie.getMessage(), ie);
-                    }
+            trans.ensureConnected();
+
+            if ( trans.isSMB2() ) {
+                // SMB2 sessions are independent of each other, so only a concurrent setup of this session
+                // needs to be waited for. The transport monitor is held for the state transition only, waiting
+                // releases it so that a caller already holding it (e.g. for a DFS referral) cannot block the
+                // thread doing the setup.
+                if ( !beginSessionSetup(trans) ) {
+                    return chainedResponse;
                 }
-
                 try {
-                    trans.ensureConnected();
-
-                    /*
-                     * Session Setup And X Request / Response
-                     */
-
-                    if ( log.isDebugEnabled() ) {
-                        log.debug("sessionSetup: " + this.credentials);
-                    }
-
-                    /*
-                     * We explicitly set uid to 0 here to prevent a new
-                     * SMB_COM_SESSION_SETUP_ANDX from having it's uid set to an
-                     * old value when the session is re-established. Otherwise a
-                     * "The parameter is incorrect" error can occur.
-                     */
-                    this.uid = 0;
-
-                    if ( trans.isSMB2() ) {
-                        return sessionSetupSMB2(trans, this.targetDomain, (ServerMessageBlock2Request<?>) chained, chainedResponse);
+                    return doSessionSetup(trans, chained, chainedResponse);
+                }
+                finally {
+                    synchronized ( trans ) {
+                        trans.notifyAll();
                     }
+                }
+            }
 
-                    sessionSetupSMB1(trans, this.targetDomain, (ServerMessageBlock) chained, (ServerMessageBlock) chainedResponse);
+            // SMB1 signing state is shared by the connection, serialize all session setups
+            synchronized ( trans ) {
+                if ( !beginSessionSetup(trans) ) {
                     return chainedResponse;
                 }
-                catch ( Exception se ) {
-                    log.debug("Session setup failed", se);
-                    if ( this.connectionState.compareAndSet(1, 0) ) {
-                        // only try to logoff if we have not completed the session setup, ignore errors from chained
-                        // responses
-                        logoff(true, true);
-                    }
-                    throw se;
+                try {
+                    return doSessionSetup(trans, chained, chainedResponse);
                 }
                 finally {
                     trans.notifyAll();
@@ -511,6 +495,68 @@ final class SmbSessionImpl implements SmbSessionInternal {
     }
 
 
+    /**
+     * @param trans
+     *            transport whose monitor is used to wait for a concurrent session setup
+     * @return whether the session needs to be set up, false if already connected or disconnecting
+     * @throws SmbException
+     */
+    private boolean beginSessionSetup ( SmbTransportImpl trans ) throws SmbException {
+        synchronized ( trans ) {
+            while ( !this.connectionState.compareAndSet(0, 1) ) {
+                int st = this.connectionState.get();
+                if ( st == 2 || st == 3 ) // connected or disconnecting
+                    return false;
+                try {
+                    trans.wait();
+                }
+                catch ( InterruptedException ie ) {
+                    throw new SmbException(ie.getMessage(), ie);
+                }
+            }
+            return true;
+        }
+    }
+
+
+    private <T extends CommonServerMessageBlock> T doSessionSetup ( SmbTransportImpl trans, CommonServerMessageBlockRequest chained,
+            T chainedResponse ) throws CIFSException, GeneralSecurityException {
+        try {
+            /*
+             * Session Setup And X Request / Response
+             */
+
+            if ( log.isDebugEnabled() ) {
+                log.debug("sessionSetup: " + this.credentials);
+            }
+
+            /*
+             * We explicitly set uid to 0 here to prevent a new
+             * SMB_COM_SESSION_SETUP_ANDX from having it's uid set to an
+             * old value when the session is re-established. Otherwise a
+             * "The parameter is incorrect" error can occur.
+             */
+            this.uid = 0;
+
+            if ( trans.isSMB2() ) {
+                return sessionSetupSMB2(trans, this.targetDomain, (ServerMessageBlock2Request<?>) chained, chainedResponse);
+            }
+
+            sessionSetupSMB1(trans, this.targetDomain, (ServerMessageBlock) chained, (ServerMessageBlock) chainedResponse);
+            return chainedResponse;
+        }
+        catch ( Exception se ) {
+            log.debug("Session setup failed", se);
+            if ( this.connectionState.compareAndSet(1, 0) ) {
+                // only try to logoff if we have not completed the session setup, ignore errors from chained
+                // responses
+                logoff(true, true);
+            }
+            throw se;
+        }
+    }
+
+
     /**
      * @param trans
      * @param chain
@@ -642,6 +688,7 @@ final class SmbSessionImpl implements SmbSessionInternal {
                     log.debug("No digest setup " + anonymous + " B " + isSignatureSetupRequired());
                 }
                 setSessionSetup(response);
+                scheduleRenewal(ctx);
                 if ( ex != null ) {
                     throw ex;
                 }
@@ -746,7 +793,8 @@ final class SmbSessionImpl implements SmbSessionInternal {
         long newSessId = 0;
         long curSessId = this.sessionId;
 
-        synchronized ( trans ) {
+        // requests on the session continue while reauthenticating, only serialize concurrent reauthentication
+        synchronized ( this.reauthLock ) {
             this.credentials.refresh();
             Subject s = this.credentials.getSubject();
             SSPContext ctx = createContext(trans, tdomain, negoResp, doSigning, s);
@@ -812,6 +860,7 @@ final class SmbSessionImpl implements SmbSessionInternal {
 
                 if ( ctx.isEstablished() ) {
                     setSessionSetup(response);
+                    scheduleRenewal(ctx);
                     @SuppressWarnings ( "cast" )
                     CommonServerMessageBlockResponse cresp = (CommonServerMessageBlockResponse) ( response != null ? response.getNextResponse()
                             : null );
@@ -828,6 +877,82 @@ final class SmbSessionImpl implements SmbSessionInternal {
     }
 
 
+    /**
+     * Schedule reauthentication ahead of the expiration of the authentication
+     * 
+     * Only called for SMB2 session setups, SMB1 cannot reauthenticate an existing session so SMB1 sessions are
+     * not renewed.
+     * 
+     * @param ctx
+     *            the established security context
+     */
+    private void scheduleRenewal ( SSPContext ctx ) {
+        SSPContext mechCtx = ctx instanceof SpnegoContext ? ( (SpnegoContext) ctx ).getMechContext() : ctx;
+        Long exp = mechCtx instanceof Kerb5Context ? ( (Kerb5Context) mechCtx ).getExpiration() : null;
+        long margin = getConfig().getSessionRenewalMargin() * 1000L;
+        synchronized ( this ) {
+            cancelRenewal();
+            if ( exp == null || margin <= 0 ) {
+                return;
+            }
+            long remaining = exp - System.currentTimeMillis();
+            if ( remaining <= 0 ) {
+                return;
+            }
+            // if the lifetime is shorter than the margin, renew halfway through
+            long delay = Math.max(remaining - margin, remaining / 2);
+            if ( log.isDebugEnabled() ) {
+                log.debug(String.format("Session authentication expires in %d s, renewing in %d s", remaining / 1000, delay / 1000));
+            }
+            try {
+                this.renewal = getContext().getScheduler().schedule(new Runnable() {
+
+                    @Override
+                    public void run () {
+                        // reauthentication blocks, keep the scheduler thread free
+                        getContext().getExecutor().execute(new Runnable() {
+
+                            @Override
+                            public void run () {
+                                renew();
+                            }
+                        });
+                    }
+                }, delay, TimeUnit.MILLISECONDS);
+            }
+            catch ( RejectedExecutionException e ) {
+                log.debug("Context is closed, not renewing", e);
+            }
+        }
+    }
+
+
+    private void cancelRenewal () {
+        // must not wait for a reauthentication in progress, this is called on disconnect
+        synchronized ( this ) {
+            if ( this.renewal != null ) {
+                this.renewal.cancel(false);
+                this.renewal = null;
+            }
+        }
+    }
+
+
+    void renew () {
+        if ( !isConnected() || !isInUse() ) {
+            log.debug("Session no longer in use, not renewing");
+            return;
+        }
+        log.debug("Renewing session authentication");
+        try {
+            reauthenticate();
+        }
+        catch ( CIFSException e ) {
+            log.warn("Background session renewal failed, reauthenticating on expiration", e);
+        }
+    }
+
+
     @Override
     @SuppressWarnings ( "unchecked" )
     public void reauthenticate () throws CIFSException {
@@ -1207,9 +1332,12 @@ final class SmbSessionImpl implements SmbSessionInternal {
             log.warn("Error in logoff", e);
         }
         finally {
+            cancelRenewal();
             this.connectionState.set(0);
             this.digest = null;
-            this.transport.notifyAll();
+            synchronized ( this.transport ) {
+                this.transport.notifyAll();
+            }
         }
         return wasInUse;
     }
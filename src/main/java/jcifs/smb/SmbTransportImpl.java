@@ -32,6 +32,7 @@ import java.net.SocketException;
 import java.security.MessageDigest;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.EnumSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.ListIterator;
@@ -51,12 +52,15 @@ import jcifs.CIFSContext;
 import jcifs.CIFSException;
 import jcifs.DfsReferralData;
 import jcifs.DialectVersion;
+import jcifs.MetricsCollector;
 import jcifs.SmbConstants;
 import jcifs.SmbTransport;
+import jcifs.SmbTransportPool;
 import jcifs.internal.CommonServerMessageBlock;
 import jcifs.internal.CommonServerMessageBlockRequest;
 import jcifs.internal.CommonServerMessageBlockResponse;
 import jcifs.internal.RequestWithPath;
+import jcifs.internal.RequestWithSentCallback;
 import jcifs.internal.SMBProtocolDecodingException;
 import jcifs.internal.SMBSigningDigest;
 import jcifs.internal.SmbNegotiation;
@@ -80,6 +84,7 @@ import jcifs.internal.smb2.ServerMessageBlock2;
 import jcifs.internal.smb2.ServerMessageBlock2Request;
 import jcifs.internal.smb2.ServerMessageBlock2Response;
 import jcifs.internal.smb2.Smb2Constants;
+import jcifs.internal.smb2.Smb2EchoRequest;
 import jcifs.internal.smb2.io.Smb2ReadResponse;
 import jcifs.internal.smb2.ioctl.Smb2IoctlRequest;
 import jcifs.internal.smb2.ioctl.Smb2IoctlResponse;
@@ -107,17 +112,32 @@ class SmbTransportImpl extends Transport implements SmbTransportInternal, SmbCon
 
     private static Logger log = LoggerFactory.getLogger(SmbTransportImpl.class);
 
+    /**
+     * Command names reported to the metrics collector
+     */
+    private static final ClassValue<String> COMMAND_NAMES = new ClassValue<String>() {
+
+        @Override
+        protected String computeValue ( Class<?> type ) {
+            return type.getSimpleName();
+        }
+    };
+
     private boolean smb2 = false;
     private InetAddress localAddr;
     private int localPort;
     private Address address;
-    private Socket socket;
+    private volatile Socket socket;
     private int port;
     private final AtomicLong mid = new AtomicLong();
     private OutputStream out;
     private InputStream in;
     private final byte[] sbuf = new byte[1024]; /* small local buffer */
     private long sessionExpiration;
+    private volatile long lastActivity = System.currentTimeMillis();
+    private volatile long lastEcho;
+    private volatile long roundTripTime = -1;
+    private final AtomicLong connectLatency = new AtomicLong(-1);
     private final List<SmbSessionImpl> sessions = new LinkedList<>();
 
     private String tconHostName = null;
@@ -133,7 +153,8 @@ class SmbTransportImpl extends Transport implements SmbTransportInternal, SmbCon
 
     private final int desiredCredits = 512;
 
-    private byte[] preauthIntegrityHash = new byte[64];
+    private final Object preauthLock = new Object();
+    private volatile byte[] preauthIntegrityHash = new byte[64];
 
 
     SmbTransportImpl ( CIFSContext tc, Address address, int port, InetAddress localAddr, int localPort, boolean forceSigning ) {
@@ -418,13 +439,24 @@ class SmbTransportImpl extends Transport implements SmbTransportInternal, SmbCon
 
 
     void ssn139 () throws IOException {
+        ssn139(null);
+    }
+
+
+    private void ssn139 ( Socket connected ) throws IOException {
         CIFSContext tc = this.transportContext;
         Name calledName = new Name(tc.getConfig(), this.address.firstCalledName(), 0x20, null);
         do {
-            this.socket = new Socket();
-            if ( this.localAddr != null )
-                this.socket.bind(new InetSocketAddress(this.localAddr, this.localPort));
-            this.socket.connect(new InetSocketAddress(this.address.getHostAddress(), 139), tc.getConfig().getConnTimeout());
+            if ( connected != null ) {
+                this.socket = connected;
+                connected = null;
+            }
+            else {
+                this.socket = new Socket();
+                if ( this.localAddr != null )
+                    this.socket.bind(new InetSocketAddress(this.localAddr, this.localPort));
+                this.socket.connect(new InetSocketAddress(this.address.getHostAddress(), 139), tc.getConfig().getConnTimeout());
+            }
             this.socket.setSoTimeout(tc.getConfig().getSoTimeout());
 
             this.out = this.socket.getOutputStream();
@@ -473,7 +505,48 @@ class SmbTransportImpl extends Transport implements SmbTransportInternal, SmbCon
     }
 
 
-    private SmbNegotiation negotiate ( int prt ) throws IOException {
+    private NegotiationCache getNegotiationCache () {
+        if ( this.transportContext.getConfig().getNegotiationCacheTtl() <= 0 ) {
+            return null;
+        }
+        SmbTransportPool pool = this.transportContext.getTransportPool();
+        if ( pool instanceof SmbTransportPoolImpl ) {
+            return ( (SmbTransportPoolImpl) pool ).getNegotiationCache();
+        }
+        return null;
+    }
+
+
+    private SmbNegotiation negotiate ( int prt, Socket connected ) throws IOException {
+        int effectivePort = prt == 0 ? DEFAULT_PORT : prt;
+        NegotiationCache cache = getNegotiationCache();
+        boolean direct = cache != null && !this.smb2 && getContext().getConfig().getMaximumVersion().isSMB2()
+                && cache.isKnownSMB2(this.address.getHostAddress(), effectivePort);
+        if ( !direct ) {
+            return negotiate(prt, connected, false);
+        }
+
+        this.socket = null;
+        try {
+            return negotiate(prt, connected, true);
+        }
+        catch ( IOException e ) {
+            Socket s = this.socket;
+            if ( s == null || !s.isConnected() ) {
+                // did not get to negotiate at all
+                throw e;
+            }
+            // retry with multi-protocol negotiation, an SMB1 answer to that is still rejected as downgrade
+            log.debug("Direct SMB2 negotiation failed, retrying with multi-protocol negotiation", e);
+            closeQuietly(s);
+            this.smb2 = false;
+            this.mid.set(0);
+            return negotiate(prt, null, false);
+        }
+    }
+
+
+    private SmbNegotiation negotiate ( int prt, Socket connected, boolean direct ) throws IOException {
         /*
          * We cannot use Transport.sendrecv() yet because
          * the Transport thread is not setup until doConnect()
@@ -482,16 +555,23 @@ class SmbTransportImpl extends Transport implements SmbTransportInternal, SmbCon
          */
         synchronized ( this.inLock ) {
             if ( prt == 139 ) {
-                ssn139();
+                ssn139(connected);
             }
             else {
                 if ( prt == 0 )
                     prt = DEFAULT_PORT; // 445
 
-                this.socket = new Socket();
-                if ( this.localAddr != null )
-                    this.socket.bind(new InetSocketAddress(this.localAddr, this.localPort));
-                this.socket.connect(new InetSocketAddress(this.address.getHostAddress(), prt), this.transportContext.getConfig().getConnTimeout());
+                if ( connected != null ) {
+                    this.socket = connected;
+                }
+                else {
+                    this.socket = new Socket();
+                    if ( this.localAddr != null )
+                        this.socket.bind(new InetSocketAddress(this.localAddr, this.localPort));
+                    this.socket.connect(
+                        new InetSocketAddress(this.address.getHostAddress(), prt),
+                        this.transportContext.getConfig().getConnTimeout());
+                }
                 this.socket.setSoTimeout(this.transportContext.getConfig().getSoTimeout());
 
                 this.out = this.socket.getOutputStream();
@@ -502,7 +582,7 @@ class SmbTransportImpl extends Transport implements SmbTransportInternal, SmbCon
                 log.debug("It appears we previously lost some credits");
             }
 
-            if ( this.smb2 || this.getContext().getConfig().isUseSMB2OnlyNegotiation() ) {
+            if ( this.smb2 || this.getContext().getConfig().isUseSMB2OnlyNegotiation() || direct ) {
                 log.debug("Using SMB2 only negotiation");
                 return negotiate2(null);
             }
@@ -692,6 +772,114 @@ class SmbTransportImpl extends Transport implements SmbTransportInternal, SmbCon
     }
 
 
+    /**
+     * Race TCP connections to both ports, the second one is started after the configured delay
+     * 
+     * A connection to the second port is only used once the first one failed, or did not connect within the same
+     * delay.
+     * 
+     * @param first
+     * @param second
+     * @return the first connected socket
+     * @throws IOException
+     */
+    private Socket raceConnect ( int first, int second ) throws IOException {
+        int delay = getContext().getConfig().getConnRaceDelay();
+        return new SocketRace(
+            getContext().getExecutor(),
+            delay,
+            delay,
+            this.address.getHostAddress(),
+            this.localAddr,
+            getContext().getConfig().getConnTimeout(),
+            first,
+            second).run();
+    }
+
+
+    static void closeQuietly ( Socket s ) {
+        if ( s == null ) {
+            return;
+        }
+        try {
+            s.close();
+        }
+        catch ( IOException e ) {
+            log.debug("Failed to close socket", e);
+        }
+    }
+
+
+    /**
+     * Abort a connection attempt in progress by closing the socket
+     */
+    void abortConnect () {
+        closeQuietly(this.socket);
+    }
+
+
+    /**
+     * @return number of usage references held on this transport
+     */
+    long getUsage () {
+        return getUsageCount();
+    }
+
+
+    /**
+     * @return time of the last request sent over this transport, excluding keep alive echos
+     */
+    long getLastActivity () {
+        return this.lastActivity;
+    }
+
+
+    /**
+     * @return time the last keep alive echo was sent, 0 if none
+     */
+    long getLastEcho () {
+        return this.lastEcho;
+    }
+
+
+    /**
+     * @return whether the transport is connected using SMB2 and can be probed using echo requests
+     */
+    boolean isEchoCapable () {
+        return this.smb2 && this.negotiated != null && !isDisconnected();
+    }
+
+
+    /**
+     * Send an echo request and update the round trip time estimate
+     * 
+     * @return the measured round trip time in milliseconds
+     * @throws IOException
+     */
+    long echo () throws IOException {
+        this.lastEcho = System.currentTimeMillis();
+        long start = System.nanoTime();
+        send(new Smb2EchoRequest(getContext().getConfig()), null, EnumSet.of(RequestParam.NO_RETRY));
+        long rtt = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        long prev = this.roundTripTime;
+        // smoothed like TCP's SRTT
+        this.roundTripTime = prev < 0 ? rtt : ( 7 * prev + rtt ) / 8;
+        return rtt;
+    }
+
+
+    @Override
+    public long getRoundTripTime () {
+        return this.roundTripTime;
+    }
+
+
+    @Override
+    public long takeConnectLatency () {
+        return this.connectLatency.getAndSet(-1);
+    }
+
+
     @Override
     protected void doConnect () throws IOException {
         /*
@@ -701,16 +889,29 @@ class SmbTransportImpl extends Transport implements SmbTransportInternal, SmbCon
             log.debug("Connecting in state " + this.state + " addr " + this.address.getHostAddress());
         }
 
+        long connectStart = System.nanoTime();
         SmbNegotiation resp;
+        boolean failover = getContext().getConfig().isPort139FailoverEnabled();
+        int otherPort = ( this.port == 0 || this.port == DEFAULT_PORT ) ? 139 : DEFAULT_PORT;
+        Socket connected = null;
+        if ( failover && getContext().getConfig().getConnRaceDelay() > 0 && this.localPort == 0 ) {
+            connected = raceConnect(this.port == 0 ? DEFAULT_PORT : this.port, otherPort);
+            if ( connected.getPort() == otherPort ) {
+                log.debug("Port {} connected first", otherPort);
+                otherPort = this.port == 0 ? DEFAULT_PORT : this.port;
+                this.port = connected.getPort();
+            }
+        }
+
         try {
-            resp = negotiate(this.port);
+            resp = negotiate(this.port, connected);
         }
         catch ( IOException ce ) {
-            if ( getContext().getConfig().isPort139FailoverEnabled() ) {
-                this.port = ( this.port == 0 || this.port == DEFAULT_PORT ) ? 139 : DEFAULT_PORT;
+            if ( failover ) {
+                this.port = otherPort;
                 this.smb2 = false;
                 this.mid.set(0);
-                resp = negotiate(this.port);
+                resp = negotiate(this.port, null);
             }
             else {
                 throw ce;
@@ -737,6 +938,16 @@ class SmbTransportImpl extends Transport implements SmbTransportInternal, SmbCon
                         + this.getContext().getConfig().isSigningEnabled() + " (server " + serverEnableSig + ")");
         }
 
+        NegotiationCache cache = getNegotiationCache();
+        if ( cache != null ) {
+            cache.update(
+                this.address.getHostAddress(),
+                this.port == 0 ? DEFAULT_PORT : this.port,
+                resp.getResponse().getSelectedDialect(),
+                getContext().getConfig().getNegotiationCacheTtl() * 1000,
+                getContext().getConfig().isRejectDialectDowngrade());
+        }
+
         /* Adjust negotiated values */
         this.tconHostName = this.address.getHostName();
         this.negotiated = resp.getResponse();
@@ -747,6 +958,7 @@ class SmbTransportImpl extends Transport implements SmbTransportInternal, SmbCon
                 log.debug("Preauth hash after negotiate " + Hexdump.toHexString(this.preauthIntegrityHash));
             }
         }
+        this.connectLatency.set(( System.nanoTime() - connectStart ) / 1000000);
     }
 
 
@@ -813,7 +1025,8 @@ class SmbTransportImpl extends Transport implements SmbTransportInternal, SmbCon
 
     @Override
     protected long makeKey ( Request request ) throws IOException {
-        long m = this.mid.incrementAndGet() - 1;
+        // multi-credit requests consume as many message ids as they are charged credits
+        long m = this.mid.getAndAdd(this.smb2 ? request.getCreditCost() : 1);
         if ( !this.smb2 ) {
             m = ( m % 32000 );
         }
@@ -892,6 +1105,9 @@ class SmbTransportImpl extends Transport implements SmbTransportInternal, SmbCon
     protected void doSend ( Request request ) throws IOException {
 
         CommonServerMessageBlock smb = (CommonServerMessageBlock) request;
+        if ( ! ( smb instanceof Smb2EchoRequest ) ) {
+            this.lastActivity = System.currentTimeMillis();
+        }
         byte[] buffer = this.getContext().getBufferCache().getBuffer();
         try {
             // synchronize around encode and write so that the ordering for SMB1 signing can be maintained
@@ -913,6 +1129,10 @@ class SmbTransportImpl extends Transport implements SmbTransportInternal, SmbCon
 
                 this.out.write(buffer, 0, 4 + n);
                 this.out.flush();
+                getContext().getMetrics().bytesSent(4 + n);
+            }
+            if ( request instanceof RequestWithSentCallback ) {
+                ( (RequestWithSentCallback) request ).sent();
             }
         }
         finally {
@@ -921,9 +1141,27 @@ class SmbTransportImpl extends Transport implements SmbTransportInternal, SmbCon
     }
 
 
-    @SuppressWarnings ( "unchecked" )
     public <T extends CommonServerMessageBlockResponse> T sendrecv ( CommonServerMessageBlockRequest request, T response, Set<RequestParam> params )
             throws IOException {
+        MetricsCollector metrics = getContext().getMetrics();
+        String command = COMMAND_NAMES.get(request.getClass());
+        metrics.requestStarted(command);
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            T resp = sendrecv0(request, response, params);
+            success = !resp.isError();
+            return resp;
+        }
+        finally {
+            metrics.requestCompleted(command, System.nanoTime() - start, success);
+        }
+    }
+
+
+    @SuppressWarnings ( "unchecked" )
+    private <T extends CommonServerMessageBlockResponse> T sendrecv0 ( CommonServerMessageBlockRequest request, T response,
+            Set<RequestParam> params ) throws IOException {
         response = setupResponses(request, response);
 
         CommonServerMessageBlockRequest curHead = request;
@@ -959,14 +1197,20 @@ class SmbTransportImpl extends Transport implements SmbTransportInternal, SmbCon
 
                     try {
                         long timeout = getResponseTimeout(chain);
+                        boolean starved = this.credits.availablePermits() < cost;
+                        long waitStart = starved ? System.nanoTime() : 0;
                         if ( params.contains(RequestParam.NO_TIMEOUT) ) {
                             this.credits.acquire(cost);
                         }
                         else {
                             if ( !this.credits.tryAcquire(cost, timeout, TimeUnit.MILLISECONDS) ) {
+                                getContext().getMetrics().creditsStarved(System.nanoTime() - waitStart, false);
                                 throw new SmbException("Failed to acquire credits in time");
                             }
                         }
+                        if ( starved ) {
+                            getContext().getMetrics().creditsStarved(System.nanoTime() - waitStart, true);
+                        }
                         totalSize += size;
                         // split off first request
 
@@ -1171,6 +1415,7 @@ class SmbTransportImpl extends Transport implements SmbTransportInternal, SmbCon
     protected void doRecv ( Response response ) throws IOException {
         CommonServerMessageBlock resp = (CommonServerMessageBlock) response;
         this.negotiated.setupResponse(response);
+        getContext().getMetrics().bytesReceived(4 + ( ( Encdec.dec_uint16be(this.sbuf, 2) & 0xFFFF ) | ( this.sbuf[ 1 ] & 0xFF ) << 16 ));
         try {
             if ( this.smb2 ) {
                 doRecvSMB2(resp);
@@ -1484,7 +1729,8 @@ class SmbTransportImpl extends Transport implements SmbTransportInternal, SmbCon
             }
             if ( resp instanceof Smb2IoctlResponse ) {
                 int ctlCode = ( (Smb2IoctlResponse) resp ).getCtlCode();
-                if ( ctlCode == Smb2IoctlRequest.FSCTL_PIPE_TRANSCEIVE || ctlCode == Smb2IoctlRequest.FSCTL_PIPE_PEEK ) {
+                if ( ctlCode == Smb2IoctlRequest.FSCTL_PIPE_TRANSCEIVE || ctlCode == Smb2IoctlRequest.FSCTL_PIPE_PEEK
+                        || ctlCode == Smb2IoctlRequest.FSCTL_QUERY_ALLOCATED_RANGES ) {
                     break;
                 }
             }
@@ -1799,13 +2045,18 @@ class SmbTransportImpl extends Transport implements SmbTransportInternal, SmbCon
     }
 
 
+    /**
+     * The connection hash is final once negotiation completed, sessions continue from it with their own copy
+     * 
+     * @return the connection preauth integrity hash
+     */
     byte[] getPreauthIntegrityHash () {
         return this.preauthIntegrityHash;
     }
 
 
     private void updatePreauthHash ( byte[] input ) throws CIFSException {
-        synchronized ( this.preauthIntegrityHash ) {
+        synchronized ( this.preauthLock ) {
             this.preauthIntegrityHash = calculatePreauthHash(input, 0, input.length, this.preauthIntegrityHash);
         }
     }
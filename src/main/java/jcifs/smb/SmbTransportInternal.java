@@ -125,4 +125,21 @@ public interface SmbTransportInternal extends SmbTransport {
      * @return number of inflight requests
      */
     int getInflightRequests ();
+
+
+    /**
+     * The estimate is only updated if keep alive echos are enabled (<tt>jcifs.smb.client.keepAliveInterval</tt>).
+     * 
+     * @return smoothed round trip time to the server in milliseconds, -1 if not measured yet
+     */
+    long getRoundTripTime ();
+
+
+    /**
+     * The time is only handed out once per connection, so that reusing an established connection is not mistaken
+     * for a fast one.
+     * 
+     * @return time in milliseconds it took to connect and negotiate, -1 if already taken or not connected
+     */
+    long takeConnectLatency ();
 }
@@ -21,13 +21,17 @@ package jcifs.smb;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -53,6 +57,16 @@ public class SmbTransportPoolImpl implements SmbTransportPool {
     private final List<SmbTransportImpl> nonPooledConnections = new LinkedList<>();
     private final ConcurrentLinkedQueue<SmbTransportImpl> toRemove = new ConcurrentLinkedQueue<>();
     final Map<String, Integer> failCounts = new ConcurrentHashMap<>();
+    private final NegotiationCache negotiationCache = new NegotiationCache();
+    private TransportKeepAlive keepAlive;
+
+
+    /**
+     * @return the cache of server negotiation results
+     */
+    NegotiationCache getNegotiationCache () {
+        return this.negotiationCache;
+    }
 
 
     @Override
@@ -100,6 +114,9 @@ public class SmbTransportPoolImpl implements SmbTransportPool {
             }
             else {
                 this.connections.add(0, conn);
+                if ( this.keepAlive == null && tc.getConfig().getKeepAliveInterval() > 0 ) {
+                    this.keepAlive = new TransportKeepAlive(tc, this, tc.getConfig().getKeepAliveInterval(), tc.getConfig().getKeepAliveMaxIdle());
+                }
             }
             return conn;
         }
@@ -210,30 +227,21 @@ public class SmbTransportPoolImpl implements SmbTransportPool {
             }
         }
 
+        int raceDelay = tf.getConfig().getConnRaceDelay();
+        if ( addrs.length > 1 && raceDelay > 0 ) {
+            return connectRacing(tf, addrs, port, exclusive, forceSigning, raceDelay);
+        }
+
         IOException ex = null;
         for ( Address addr : addrs ) {
             if ( log.isDebugEnabled() ) {
                 log.debug("Trying address {}", addr);
             }
-            try ( SmbTransportImpl trans = getSmbTransport(tf, addr, port, exclusive, forceSigning).unwrap(SmbTransportImpl.class) ) {
-                try {
-                    trans.ensureConnected();
-                }
-                catch ( IOException e ) {
-                    removeTransport(trans);
-                    throw e;
-                }
-                return trans.acquire();
+            try {
+                return connect(tf, addr, port, exclusive, forceSigning);
             }
             catch ( IOException e ) {
-                String hostAddress = addr.getHostAddress();
-                Integer failCount = this.failCounts.get(hostAddress);
-                if ( failCount == null ) {
-                    this.failCounts.put(hostAddress, 1);
-                }
-                else {
-                    this.failCounts.put(hostAddress, failCount + 1);
-                }
+                recordFailure(addr);
                 ex = e;
             }
         }
@@ -245,6 +253,182 @@ public class SmbTransportPoolImpl implements SmbTransportPool {
     }
 
 
+    private SmbTransportImpl connect ( CIFSContext tf, Address addr, int port, boolean exclusive, boolean forceSigning ) throws IOException {
+        try ( SmbTransportImpl trans = getSmbTransport(tf, addr, port, exclusive, forceSigning).unwrap(SmbTransportImpl.class) ) {
+            try {
+                trans.ensureConnected();
+            }
+            catch ( IOException e ) {
+                removeTransport(trans);
+                throw e;
+            }
+            return trans.acquire();
+        }
+    }
+
+
+    /**
+     * Connect to the first address that completes negotiation, staggering attempts to the other addresses
+     * 
+     * @param tf
+     * @param addrs
+     *            addresses, in order of preference
+     * @param port
+     * @param exclusive
+     * @param forceSigning
+     * @param raceDelay
+     * @return the connected transport
+     * @throws IOException
+     */
+    private SmbTransportImpl connectRacing ( final CIFSContext tf, final Address[] addrs, final int port, final boolean exclusive,
+            final boolean forceSigning, int raceDelay ) throws IOException {
+        final AtomicReferenceArray<SmbTransportImpl> pending = new AtomicReferenceArray<>(addrs.length);
+        return new ConnectionRace<SmbTransportImpl>(tf.getExecutor(), raceDelay) {
+
+            @Override
+            protected SmbTransportImpl attempt ( int index ) throws IOException {
+                if ( log.isDebugEnabled() ) {
+                    log.debug("Trying address {}", addrs[ index ]);
+                }
+                try ( SmbTransportImpl trans = getSmbTransport(tf, addrs[ index ], port, exclusive, forceSigning).unwrap(SmbTransportImpl.class) ) {
+                    pending.set(index, trans);
+                    try {
+                        trans.ensureConnected();
+                    }
+                    catch ( IOException e ) {
+                        removeTransport(trans);
+                        throw e;
+                    }
+                    finally {
+                        pending.set(index, null);
+                    }
+                    return trans.acquire();
+                }
+            }
+
+
+            @Override
+            protected void abort ( int index ) {
+                SmbTransportImpl trans = pending.get(index);
+                // do not abort if some other caller is waiting for the same transport
+                if ( trans != null && trans.getUsage() <= 1 ) {
+                    log.debug("Aborting connection attempt to {}", addrs[ index ]);
+                    trans.abortConnect();
+                }
+            }
+
+
+            @Override
+            protected void discard ( int index, SmbTransportImpl trans ) {
+                log.debug("Discarding connection to {}, other address was faster", addrs[ index ]);
+                discardTransport(trans);
+            }
+
+
+            @Override
+            protected void failed ( int index, IOException e ) {
+                if ( log.isDebugEnabled() ) {
+                    log.debug("Connection attempt to " + addrs[ index ] + " failed", e);
+                }
+                recordFailure(addrs[ index ]);
+            }
+        }.run(addrs.length);
+    }
+
+
+    void discardTransport ( SmbTransportImpl trans ) {
+        removeTransport(trans);
+        trans.release();
+        try {
+            if ( trans.getUsage() == 0 ) {
+                trans.disconnect(false, false);
+            }
+        }
+        catch ( IOException e ) {
+            log.debug("Failed to disconnect discarded transport", e);
+        }
+    }
+
+
+    private void recordFailure ( Address addr ) {
+        String hostAddress = addr.getHostAddress();
+        Integer failCount = this.failCounts.get(hostAddress);
+        if ( failCount == null ) {
+            this.failCounts.put(hostAddress, 1);
+        }
+        else {
+            this.failCounts.put(hostAddress, failCount + 1);
+        }
+    }
+
+
+    /**
+     * @return snapshot of the pooled connections
+     */
+    List<SmbTransportImpl> getPooledConnections () {
+        synchronized ( this.connections ) {
+            cleanup();
+            return new ArrayList<>(this.connections);
+        }
+    }
+
+
+    /**
+     * Close unused pooled connections, keeping the most recently used ones
+     * 
+     * @param maxIdle
+     *            number of unused connections to keep per server
+     */
+    void closeIdle ( int maxIdle ) {
+        List<SmbTransportImpl> toClose = new ArrayList<>();
+        synchronized ( this.connections ) {
+            cleanup();
+            Map<String, List<SmbTransportImpl>> idle = new HashMap<>();
+            for ( SmbTransportImpl conn : this.connections ) {
+                if ( conn.getUsage() > 0 || conn.isDisconnected() ) {
+                    continue;
+                }
+                String server = conn.getRemoteAddress().getHostAddress();
+                List<SmbTransportImpl> l = idle.get(server);
+                if ( l == null ) {
+                    l = new ArrayList<>();
+                    idle.put(server, l);
+                }
+                l.add(conn);
+            }
+
+            for ( List<SmbTransportImpl> l : idle.values() ) {
+                if ( l.size() <= maxIdle ) {
+                    continue;
+                }
+                Collections.sort(l, new Comparator<SmbTransportImpl>() {
+
+                    @Override
+                    public int compare ( SmbTransportImpl o1, SmbTransportImpl o2 ) {
+                        return Long.compare(o2.getLastActivity(), o1.getLastActivity());
+                    }
+                });
+                List<SmbTransportImpl> surplus = l.subList(maxIdle, l.size());
+                // removing under the lock makes sure that no one picks them up from the pool in the meantime
+                this.connections.removeAll(surplus);
+                toClose.addAll(surplus);
+            }
+        }
+
+        for ( SmbTransportImpl conn : toClose ) {
+            if ( log.isDebugEnabled() ) {
+                log.debug("Closing surplus idle connection " + conn);
+            }
+            try {
+                conn.disconnect(false, false);
+            }
+            catch ( IOException e ) {
+                log.debug("Failed to close idle connection", e);
+            }
+        }
+    }
+
+
     /**
      * 
      * @param trans
@@ -295,6 +479,10 @@ public class SmbTransportPoolImpl implements SmbTransportPool {
         synchronized ( this.connections ) {
             cleanup();
             log.debug("Closing pool");
+            if ( this.keepAlive != null ) {
+                this.keepAlive.stop();
+                this.keepAlive = null;
+            }
             toClose = new LinkedList<>(this.connections);
             toClose.addAll(this.nonPooledConnections);
             this.connections.clear();
@@ -21,7 +21,9 @@ package jcifs.smb;
 import java.io.IOException;
 import java.net.UnknownHostException;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.EnumSet;
+import java.util.List;
 import java.util.Locale;
 import java.util.Objects;
 import java.util.Random;
@@ -35,6 +37,7 @@ import jcifs.CIFSContext;
 import jcifs.CIFSException;
 import jcifs.Configuration;
 import jcifs.DfsReferralData;
+import jcifs.MetricsCollector;
 import jcifs.RuntimeCIFSException;
 import jcifs.SmbConstants;
 import jcifs.SmbResourceLocator;
@@ -347,6 +350,7 @@ class SmbTreeConnection {
             if ( retries >= maxRetries ) {
                 break;
             }
+            this.ctx.getMetrics().retried(MetricsCollector.RETRY_SEND);
 
             try {
                 if ( retries != 1 ) {
@@ -401,7 +405,14 @@ class SmbTreeConnection {
                 if ( t == null ) {
                     throw new CIFSException("Failed to get tree connection");
                 } ;
-                return t.send(request, response, params);
+                DfsReferralData ref = t.getTreeReferral();
+                if ( ref == null || params.contains(RequestParam.NO_TIMEOUT) ) {
+                    return t.send(request, response, params);
+                }
+                long start = System.nanoTime();
+                T resp = t.send(request, response, params);
+                this.ctx.getDfs().requestCompleted(ref.getServer(), ( System.nanoTime() - start ) / 1000000);
+                return resp;
             }
             catch ( DfsReferral dre ) {
                 if ( dre.getData().unwrap(DfsReferralDataInternal.class).isResolveHashes() ) {
@@ -528,9 +539,10 @@ class SmbTreeConnection {
         String share = loc.getShare();
 
         DfsReferralData start = referral != null ? referral : this.ctx.getDfs().resolve(this.ctx, hostName, loc.getShare(), path);
-        DfsReferralData dr = start;
+        List<DfsReferralData> targets = start != null ? this.ctx.getDfs().orderTargets(this.ctx, start)
+                : Collections.<DfsReferralData> singletonList(null);
         IOException last = null;
-        do {
+        for ( DfsReferralData dr : targets ) {
             if ( dr != null ) {
                 targetDomain = dr.getDomain();
                 host = dr.getServer().toLowerCase(Locale.ROOT);
@@ -555,6 +567,8 @@ class SmbTreeConnection {
                             if ( dr != start ) {
                                 dr.unwrap(DfsReferralDataInternal.class).replaceCache();
                             }
+                            // only a fresh connection tells anything about the target's distance
+                            this.ctx.getDfs().targetConnected(dr.getServer(), trans.takeConnectLatency());
                         }
                         switchTree(ct);
                         return new SmbTreeHandleImpl(loc, this);
@@ -571,6 +585,7 @@ class SmbTreeConnection {
                         if ( dr != start ) {
                             dr.unwrap(DfsReferralDataInternal.class).replaceCache();
                         }
+                        this.ctx.getDfs().targetConnected(dr.getServer(), trans.takeConnectLatency());
                     }
                     switchTree(ct);
                     return new SmbTreeHandleImpl(loc, this);
@@ -579,13 +594,11 @@ class SmbTreeConnection {
             catch ( IOException e ) {
                 last = e;
                 log.debug("Referral failed, trying next", e);
-            }
-
-            if ( dr != null ) {
-                dr = dr.next();
+                if ( dr != null && ! ( e instanceof SmbAuthException ) ) {
+                    this.ctx.getDfs().targetFailed(this.ctx, dr.getServer());
+                }
             }
         }
-        while ( dr != start );
         throw last;
     }
 
@@ -685,6 +698,7 @@ class SmbTreeConnection {
             }
             log.debug("Disconnecting tree on DFS retry");
             disconnect(true);
+            this.ctx.getMetrics().retried(MetricsCollector.RETRY_DFS);
             try {
                 Thread.sleep(500 + RAND.nextInt(5000));
             }
@@ -750,13 +764,12 @@ class SmbTreeConnection {
 
                 if ( !t.getShare().equals(dr.getShare()) ) {
                     // this should only happen for standalone roots or if the DC/domain root lookup failed
-                    IOException last;
-                    DfsReferralData start = dr;
-                    do {
+                    IOException last = null;
+                    for ( DfsReferralData target : this.ctx.getDfs().orderTargets(this.ctx, dr) ) {
                         if ( log.isDebugEnabled() ) {
-                            log.debug("Need to switch tree for " + dr);
+                            log.debug("Need to switch tree for " + target);
                         }
-                        try ( SmbTreeHandleImpl nt = connectHost(loc, session.getTargetHost(), dr) ) {
+                        try ( SmbTreeHandleImpl nt = connectHost(loc, session.getTargetHost(), target) ) {
                             log.debug("Switched tree");
                             return loc;
                         }
@@ -764,9 +777,7 @@ class SmbTreeConnection {
                             log.debug("Failed to connect tree", e);
                             last = e;
                         }
-                        dr = dr.next();
                     }
-                    while ( dr != start );
                     throw new CIFSException("All referral tree connections failed", last);
                 }
 
@@ -814,6 +825,17 @@ class SmbTreeConnection {
     }
 
 
+    /**
+     * 
+     * Only call this method while holding a tree handle
+     * 
+     * @return the tree currently connected
+     */
+    SmbTreeImpl getConnectedTree () {
+        return getTreeInternal();
+    }
+
+
     /**
      * 
      * Only call this method while holding a tree handle
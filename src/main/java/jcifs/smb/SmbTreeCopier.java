@@ -0,0 +1,477 @@
+/*
+ * © 2026 agent <agent@local>
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package jcifs.smb;
+
+
+import java.net.MalformedURLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jcifs.CIFSException;
+import jcifs.ResourceFilter;
+import jcifs.SmbResource;
+import jcifs.SmbTreeVisitor;
+import jcifs.util.NamedThreadFactory;
+
+
+/**
+ * Copies a directory tree, transferring multiple files concurrently
+ * 
+ * Directories are enumerated using a {@link SmbTreeWalker} and created (including their attributes and times) before
+ * their contents are listed. Files are handed to a bounded pool of copy workers, each file is copied server side if
+ * source and destination are on the same SMB2 tree, otherwise it is streamed through the client.
+ * 
+ * <pre>
+ * SmbTreeCopier copier = new SmbTreeCopier(src, dest);
+ * copier.setParallelism(8);
+ * SmbTreeCopier.Result r = copier.copy();
+ * </pre>
+ * 
+ * @author agent
+ *
+ */
+public class SmbTreeCopier {
+
+    private static final Logger log = LoggerFactory.getLogger(SmbTreeCopier.class);
+
+    private final SmbResource source;
+    private final SmbResource dest;
+    private int parallelism = 4;
+    private boolean failFast = true;
+    private boolean sparse;
+    private ResourceFilter filter;
+
+
+    /**
+     * @param source
+     *            directory to copy
+     * @param dest
+     *            target directory
+     */
+    public SmbTreeCopier ( SmbResource source, SmbResource dest ) {
+        this.source = source;
+        this.dest = dest;
+    }
+
+
+    /**
+     * @param parallelism
+     *            number of files copied concurrently (default 4)
+     */
+    public void setParallelism ( int parallelism ) {
+        if ( parallelism <= 0 ) {
+            throw new IllegalArgumentException("Parallelism must be positive");
+        }
+        this.parallelism = parallelism;
+    }
+
+
+    /**
+     * @param failFast
+     *            whether to stop the copy on the first failure, otherwise failures are only collected in the result
+     *            (default true)
+     */
+    public void setFailFast ( boolean failFast ) {
+        this.failFast = failFast;
+    }
+
+
+    /**
+     * @param sparse
+     *            whether to only transfer the allocated ranges of files, recreating holes on the target (default false)
+     */
+    public void setSparse ( boolean sparse ) {
+        this.sparse = sparse;
+    }
+
+
+    /**
+     * @param filter
+     *            filter selecting the resources to copy, directories not accepted will not be copied at all and
+     *            not descended into
+     */
+    public void setFilter ( ResourceFilter filter ) {
+        this.filter = filter;
+    }
+
+
+    /**
+     * Copy the tree, blocking until all files have been copied
+     * 
+     * @return copy result
+     * @throws CIFSException
+     *             if the copy could not be started, or on the first failure when running fail-fast
+     */
+    public Result copy () throws CIFSException {
+        if ( ! ( this.source instanceof SmbFile ) || ! ( this.dest instanceof SmbFile ) ) {
+            throw new SmbException("Invalid target resource");
+        }
+        SmbFile src = (SmbFile) this.source;
+        SmbFile dst = (SmbFile) this.dest;
+        try ( SmbTreeHandleImpl sh = src.ensureTreeConnected();
+              SmbTreeHandleImpl dh = dst.ensureTreeConnected() ) {
+            SmbCopyUtil.checkCopy(src, dst);
+            return copy(src, dst, sh, dh);
+        }
+    }
+
+
+    Result copy ( SmbFile src, SmbFile dst, SmbTreeHandleImpl sh, SmbTreeHandleImpl dh ) throws CIFSException {
+        CopyState state = new CopyState(src, dst, Math.min(sh.getReceiveBufferSize() - 70, dh.getSendBufferSize() - 70));
+        try {
+            if ( !src.isDirectory() ) {
+                try {
+                    state.bytes.addAndGet(SmbCopyUtil.copyFile(src, dst, new byte[state.bufferSize], sh, dh, this.sparse));
+                    state.files.incrementAndGet();
+                }
+                catch ( CIFSException e ) {
+                    state.failed(src, dst, e);
+                }
+            }
+            else {
+                SmbCopyUtil.createDirectory(src, dst, dh);
+                state.directories.incrementAndGet();
+
+                SmbTreeWalker walker = new SmbTreeWalker(src);
+                walker.setParallelism(this.parallelism);
+                walker.setMaxInFlightPerServer(this.parallelism);
+                walker.walk(state);
+            }
+        }
+        finally {
+            dst.clearAttributeCache();
+            state.finish();
+        }
+
+        Result r = state.toResult();
+        if ( log.isDebugEnabled() ) {
+            log.debug(
+                String.format(
+                    "Copied %d files (%d bytes) in %d directories in %d ms, %d failures",
+                    r.getFilesCopied(),
+                    r.getBytesCopied(),
+                    r.getDirectoriesCreated(),
+                    r.getElapsedMillis(),
+                    r.getFailures().size()));
+        }
+        if ( this.failFast && !r.getFailures().isEmpty() ) {
+            throw r.getFailures().get(0).getException();
+        }
+        return r;
+    }
+
+    /**
+     * Outcome of a tree copy
+     */
+    public static final class Result {
+
+        private final long files;
+        private final long directories;
+        private final long bytes;
+        private final long elapsedMillis;
+        private final List<Failure> failures;
+
+
+        Result ( long files, long directories, long bytes, long elapsedMillis, List<Failure> failures ) {
+            this.files = files;
+            this.directories = directories;
+            this.bytes = bytes;
+            this.elapsedMillis = elapsedMillis;
+            this.failures = failures;
+        }
+
+
+        /**
+         * @return number of files successfully copied
+         */
+        public long getFilesCopied () {
+            return this.files;
+        }
+
+
+        /**
+         * @return number of directories created
+         */
+        public long getDirectoriesCreated () {
+            return this.directories;
+        }
+
+
+        /**
+         * @return total number of bytes copied, holes skipped by sparse copies are not included
+         */
+        public long getBytesCopied () {
+            return this.bytes;
+        }
+
+
+        /**
+         * @return wall clock time the copy took
+         */
+        public long getElapsedMillis () {
+            return this.elapsedMillis;
+        }
+
+
+        /**
+         * @return aggregate throughput in bytes per second
+         */
+        public long getThroughput () {
+            return this.bytes * 1000 / Math.max(1, this.elapsedMillis);
+        }
+
+
+        /**
+         * @return resources that could not be copied
+         */
+        public List<Failure> getFailures () {
+            return this.failures;
+        }
+    }
+
+    /**
+     * A resource that failed to copy
+     */
+    public static final class Failure {
+
+        private final SmbResource source;
+        private final SmbResource destination;
+        private final CIFSException exception;
+
+
+        Failure ( SmbResource source, SmbResource destination, CIFSException exception ) {
+            this.source = source;
+            this.destination = destination;
+            this.exception = exception;
+        }
+
+
+        /**
+         * @return the source resource
+         */
+        public SmbResource getSource () {
+            return this.source;
+        }
+
+
+        /**
+         * @return the target resource, null if the source directory could not be listed
+         */
+        public SmbResource getDestination () {
+            return this.destination;
+        }
+
+
+        /**
+         * @return the failure cause
+         */
+        public CIFSException getException () {
+            return this.exception;
+        }
+    }
+
+    private final class CopyState implements SmbTreeVisitor {
+
+        private final SmbFile srcRoot;
+        private final SmbFile destRoot;
+        private final String srcRootPath;
+        final int bufferSize;
+        private final long start = System.currentTimeMillis();
+        private final ThreadPoolExecutor workers;
+        private final ThreadLocal<byte[]> buffers = new ThreadLocal<byte[]>() {
+
+            @Override
+            protected byte[] initialValue () {
+                return new byte[CopyState.this.bufferSize];
+            }
+        };
+
+        final AtomicLong files = new AtomicLong();
+        final AtomicLong directories = new AtomicLong();
+        final AtomicLong bytes = new AtomicLong();
+        final List<Failure> failures = Collections.synchronizedList(new ArrayList<Failure>());
+        volatile boolean aborted;
+
+
+        CopyState ( SmbFile srcRoot, SmbFile destRoot, int bufferSize ) {
+            this.srcRoot = srcRoot;
+            this.destRoot = destRoot;
+            String p = srcRoot.getLocator().getURLPath();
+            this.srcRootPath = p.endsWith("/") ? p : p + "/";
+            this.bufferSize = bufferSize;
+            String name = srcRoot.getLocator().getName();
+            // bounded queue, the walker copies files itself if the workers cannot keep up
+            this.workers = new ThreadPoolExecutor(
+                SmbTreeCopier.this.parallelism,
+                SmbTreeCopier.this.parallelism,
+                1,
+                TimeUnit.MINUTES,
+                new ArrayBlockingQueue<Runnable>(SmbTreeCopier.this.parallelism * 4),
+                new NamedThreadFactory("JCIFS-Copy-" + name + "-"),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        }
+
+
+        @Override
+        public boolean visit ( SmbResource resource, int depth ) throws CIFSException {
+            checkAborted();
+            // filter here instead of in the walker, so that rejected directories are not descended into
+            if ( SmbTreeCopier.this.filter != null && !SmbTreeCopier.this.filter.accept(resource) ) {
+                return false;
+            }
+            String path = resource.getLocator().getURLPath();
+            if ( !path.startsWith(this.srcRootPath) ) {
+                throw new SmbException("Resource " + path + " is outside of " + this.srcRootPath);
+            }
+            String rel = path.substring(this.srcRootPath.length());
+            if ( rel.endsWith("/") ) {
+                rel = rel.substring(0, rel.length() - 1);
+            }
+
+            final SmbFile s;
+            final SmbFile d;
+            try {
+                s = child(this.srcRoot, rel, resource);
+                d = child(this.destRoot, rel, resource);
+            }
+            catch ( MalformedURLException e ) {
+                throw new SmbException(resource.getLocator().getURL().toString(), e);
+            }
+
+            if ( resource.isDirectory() ) {
+                try ( SmbTreeHandleImpl dh = d.ensureTreeConnected() ) {
+                    SmbCopyUtil.createDirectory(s, d, dh);
+                    this.directories.incrementAndGet();
+                    return true;
+                }
+                catch ( CIFSException e ) {
+                    failed(s, d, e);
+                    return false;
+                }
+                finally {
+                    d.clearAttributeCache();
+                    s.close();
+                    d.close();
+                }
+            }
+
+            this.workers.execute(new Runnable() {
+
+                @Override
+                public void run () {
+                    if ( !CopyState.this.aborted ) {
+                        copyFile(s, d);
+                    }
+                }
+            });
+            return false;
+        }
+
+
+        @Override
+        public void visitFailed ( SmbResource directory, CIFSException e ) throws CIFSException {
+            failed(directory, null, e);
+            checkAborted();
+        }
+
+
+        private SmbFile child ( SmbFile root, String rel, SmbResource r ) throws MalformedURLException, CIFSException {
+            return new SmbFile(
+                root,
+                rel,
+                true,
+                r.getLocator().getType(),
+                r.getAttributes(),
+                r.createTime(),
+                r.lastModified(),
+                r.lastAccess(),
+                r.length());
+        }
+
+
+        void copyFile ( SmbFile s, SmbFile d ) {
+            try ( SmbTreeHandleImpl sh = s.ensureTreeConnected();
+                  SmbTreeHandleImpl dh = d.ensureTreeConnected() ) {
+                this.bytes.addAndGet(SmbCopyUtil.copyFile(s, d, this.buffers.get(), sh, dh, SmbTreeCopier.this.sparse));
+                this.files.incrementAndGet();
+            }
+            catch ( CIFSException e ) {
+                failed(s, d, e);
+            }
+            finally {
+                d.clearAttributeCache();
+                s.close();
+                d.close();
+            }
+        }
+
+
+        void failed ( SmbResource s, SmbResource d, CIFSException e ) {
+            log.debug("Failed to copy " + s.getLocator().getURL(), e);
+            this.failures.add(new Failure(s, d, e));
+            if ( SmbTreeCopier.this.failFast ) {
+                this.aborted = true;
+            }
+        }
+
+
+        private void checkAborted () throws CIFSException {
+            if ( this.aborted ) {
+                throw this.failures.get(0).getException();
+            }
+        }
+
+
+        void finish () throws CIFSException {
+            this.workers.shutdown();
+            try {
+                while ( !this.workers.awaitTermination(1, TimeUnit.MINUTES) ) {
+                    log.debug("Still waiting for file copies to complete");
+                }
+            }
+            catch ( InterruptedException e ) {
+                this.aborted = true;
+                this.workers.shutdownNow();
+                Thread.currentThread().interrupt();
+                throw new SmbException("Interrupted while waiting for file copies", e);
+            }
+        }
+
+
+        Result toResult () {
+            List<Failure> f;
+            synchronized ( this.failures ) {
+                f = Collections.unmodifiableList(new ArrayList<>(this.failures));
+            }
+            return new Result(
+                this.files.get(),
+                this.directories.get(),
+                this.bytes.get(),
+                System.currentTimeMillis() - this.start,
+                f);
+        }
+    }
+}
@@ -106,6 +106,14 @@ class SmbTreeHandleImpl implements SmbTreeHandleInternal {
     }
 
 
+    /**
+     * @return the currently connected tree
+     */
+    SmbTreeImpl getTree () {
+        return this.treeConnection.getConnectedTree();
+    }
+
+
     /**
      * 
      * @param req
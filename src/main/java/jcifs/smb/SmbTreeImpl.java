@@ -97,6 +97,10 @@ class SmbTreeImpl implements SmbTreeInternal {
 
     private DfsReferralData treeReferral;
 
+    private final SmbMetadataCache metadataCache;
+    private volatile SmbCopyUtil.CopyChunkLimits copyChunkLimits;
+    private volatile boolean duplicateExtentsUnsupported;
+
 
     SmbTreeImpl ( SmbSessionImpl session, String share, String service ) {
         this.session = session.acquire();
@@ -106,6 +110,9 @@ class SmbTreeImpl implements SmbTreeInternal {
         }
         this.service0 = this.service;
 
+        int cacheSize = this.session.getConfig().getMetadataCacheSize();
+        this.metadataCache = cacheSize > 0 ? new SmbMetadataCache(cacheSize, this.session.getConfig().getAttributeCacheTimeout()) : null;
+
         this.traceResource = this.session.getConfig().isTraceResourceUsage();
         if ( this.traceResource ) {
             this.acquires = new LinkedList<>();
@@ -389,6 +396,47 @@ class SmbTreeImpl implements SmbTreeInternal {
     }
 
 
+    /**
+     * @return metadata cache shared by all resources on this tree, null if disabled
+     */
+    SmbMetadataCache getMetadataCache () {
+        return this.metadataCache;
+    }
+
+
+    /**
+     * @return the server side copy limits learned for this tree, null if not yet known
+     */
+    SmbCopyUtil.CopyChunkLimits getCopyChunkLimits () {
+        return this.copyChunkLimits;
+    }
+
+
+    /**
+     * @param limits
+     *            server side copy limits accepted by the server
+     */
+    void setCopyChunkLimits ( SmbCopyUtil.CopyChunkLimits limits ) {
+        this.copyChunkLimits = limits;
+    }
+
+
+    /**
+     * @return whether the server rejected block cloning on this tree
+     */
+    boolean isDuplicateExtentsUnsupported () {
+        return this.duplicateExtentsUnsupported;
+    }
+
+
+    /**
+     * Remember that the server does not support block cloning on this tree
+     */
+    void markDuplicateExtentsUnsupported () {
+        this.duplicateExtentsUnsupported = true;
+    }
+
+
     /**
      * {@inheritDoc}
      *
@@ -526,122 +574,137 @@ class SmbTreeImpl implements SmbTreeInternal {
     }
 
 
-    @SuppressWarnings ( "unchecked" )
     <T extends CommonServerMessageBlockResponse> T treeConnect ( CommonServerMessageBlockRequest andx, T andxResponse ) throws CIFSException {
-        CommonServerMessageBlockRequest request = null;
-        TreeConnectResponse response = null;
         try ( SmbSessionImpl sess = getSession();
               SmbTransportImpl transport = sess.getTransport() ) {
+            // this needs to be done before the reference to the remote hostname later
+            transport.ensureConnected();
+
+            if ( transport.isSMB2() ) {
+                // SMB2 tree connects only depend on their own session, do not block other sessions on the transport.
+                // The transport monitor is only held for the state transition, waiting releases it.
+                return treeConnect(sess, transport, andx, andxResponse);
+            }
+
             synchronized ( transport ) {
+                return treeConnect(sess, transport, andx, andxResponse);
+            }
+        }
+    }
 
-                // this needs to be done before the reference to the remote hostname later
-                transport.ensureConnected();
 
+    @SuppressWarnings ( "unchecked" )
+    private <T extends CommonServerMessageBlockResponse> T treeConnect ( SmbSessionImpl sess, SmbTransportImpl transport,
+            CommonServerMessageBlockRequest andx, T andxResponse ) throws CIFSException {
+        CommonServerMessageBlockRequest request = null;
+        TreeConnectResponse response = null;
+        synchronized ( transport ) {
+            if ( waitForState(transport) == 2 ) {
+                // already connected
+                return null;
+            }
+            int before = this.connectionState.getAndSet(1);
+            if ( before == 1 ) {
+                // concurrent connection attempt
                 if ( waitForState(transport) == 2 ) {
-                    // already connected
-                    return null;
-                }
-                int before = this.connectionState.getAndSet(1);
-                if ( before == 1 ) {
-                    // concurrent connection attempt
-                    if ( waitForState(transport) == 2 ) {
-                        // finished connecting
-                        return null;
-                    }
-                    // failure to connect
-                    throw new SmbException("Tree disconnected while waiting for connection");
-                }
-                else if ( before == 2 ) {
-                    // concurrently connected
+                    // finished connecting
                     return null;
                 }
+                // failure to connect
+                throw new SmbException("Tree disconnected while waiting for connection");
+            }
+            else if ( before == 2 ) {
+                // concurrently connected
+                return null;
+            }
 
-                if ( log.isDebugEnabled() ) {
-                    log.debug("Connection state was " + before);
-                }
+            if ( log.isDebugEnabled() ) {
+                log.debug("Connection state was " + before);
+            }
+        }
 
-                try {
-                    /*
-                     * The hostname to use in the path is only known for
-                     * sure if the NetBIOS session has been successfully
-                     * established.
-                     */
+        try {
+            /*
+             * The hostname to use in the path is only known for
+             * sure if the NetBIOS session has been successfully
+             * established.
+             */
 
-                    String tconHostName = sess.getTargetHost();
+            String tconHostName = sess.getTargetHost();
 
-                    if ( tconHostName == null ) {
-                        throw new SmbException("Transport disconnected while waiting for connection");
-                    }
+            if ( tconHostName == null ) {
+                throw new SmbException("Transport disconnected while waiting for connection");
+            }
 
-                    SmbNegotiationResponse nego = transport.getNegotiateResponse();
+            SmbNegotiationResponse nego = transport.getNegotiateResponse();
 
-                    String unc = "\\\\" + tconHostName + '\\' + this.share;
+            String unc = "\\\\" + tconHostName + '\\' + this.share;
 
-                    /*
-                     * IBM iSeries doesn't like specifying a service. Always reset
-                     * the service to whatever was determined in the constructor.
-                     */
-                    String svc = this.service0;
+            /*
+             * IBM iSeries doesn't like specifying a service. Always reset
+             * the service to whatever was determined in the constructor.
+             */
+            String svc = this.service0;
 
-                    /*
-                     * Tree Connect And X Request / Response
-                     */
+            /*
+             * Tree Connect And X Request / Response
+             */
 
-                    if ( log.isDebugEnabled() ) {
-                        log.debug("treeConnect: unc=" + unc + ",service=" + svc);
-                    }
+            if ( log.isDebugEnabled() ) {
+                log.debug("treeConnect: unc=" + unc + ",service=" + svc);
+            }
 
-                    if ( transport.isSMB2() ) {
-                        Smb2TreeConnectRequest req = new Smb2TreeConnectRequest(sess.getConfig(), unc);
-                        if ( andx != null ) {
-                            req.chain((ServerMessageBlock2) andx);
-                        }
-                        request = req;
-                    }
-                    else {
-                        response = new SmbComTreeConnectAndXResponse(sess.getConfig(), (ServerMessageBlock) andxResponse);
-                        request = new SmbComTreeConnectAndX(
-                            sess.getContext(),
-                            ( (SmbComNegotiateResponse) nego ).getServerData(),
-                            unc,
-                            svc,
-                            (ServerMessageBlock) andx);
-                    }
+            if ( transport.isSMB2() ) {
+                Smb2TreeConnectRequest req = new Smb2TreeConnectRequest(sess.getConfig(), unc);
+                if ( andx != null ) {
+                    req.chain((ServerMessageBlock2) andx);
+                }
+                request = req;
+            }
+            else {
+                response = new SmbComTreeConnectAndXResponse(sess.getConfig(), (ServerMessageBlock) andxResponse);
+                request = new SmbComTreeConnectAndX(
+                    sess.getContext(),
+                    ( (SmbComNegotiateResponse) nego ).getServerData(),
+                    unc,
+                    svc,
+                    (ServerMessageBlock) andx);
+            }
 
-                    response = sess.send(request, response);
-                    treeConnected(transport, sess, response);
+            response = sess.send(request, response);
+            treeConnected(transport, sess, response);
 
-                    if ( andxResponse != null && andxResponse.isReceived() ) {
-                        return andxResponse;
-                    }
-                    else if ( transport.isSMB2() ) {
-                        return (T) response.getNextResponse();
-                    }
-                    return null;
-                }
-                catch ( IOException se ) {
-                    if ( request != null && request.getResponse() != null ) {
-                        // tree connect might still have succeeded
-                        response = (TreeConnectResponse) request.getResponse();
-                        if ( response.isReceived() && !response.isError() && response.getErrorCode() == NtStatus.NT_STATUS_OK ) {
-                            if ( !transport.isDisconnected() ) {
-                                treeConnected(transport, sess, response);
-                            }
-                            throw se;
-                        }
-                    }
-                    try {
-                        log.debug("Disconnect tree on treeConnectFailure", se);
-                        treeDisconnect(true, true);
-                    }
-                    finally {
-                        this.connectionState.set(0);
+            if ( andxResponse != null && andxResponse.isReceived() ) {
+                return andxResponse;
+            }
+            else if ( transport.isSMB2() ) {
+                return (T) response.getNextResponse();
+            }
+            return null;
+        }
+        catch ( IOException se ) {
+            if ( request != null && request.getResponse() != null ) {
+                // tree connect might still have succeeded
+                response = (TreeConnectResponse) request.getResponse();
+                if ( response.isReceived() && !response.isError() && response.getErrorCode() == NtStatus.NT_STATUS_OK ) {
+                    if ( !transport.isDisconnected() ) {
+                        treeConnected(transport, sess, response);
                     }
                     throw se;
                 }
-                finally {
-                    transport.notifyAll();
-                }
+            }
+            try {
+                log.debug("Disconnect tree on treeConnectFailure", se);
+                treeDisconnect(true, true);
+            }
+            finally {
+                this.connectionState.set(0);
+            }
+            throw se;
+        }
+        finally {
+            synchronized ( transport ) {
+                transport.notifyAll();
             }
         }
     }
@@ -754,6 +817,7 @@ class SmbTreeImpl implements SmbTreeInternal {
 
     /**
      * @param transport
+     *            transport whose monitor is notified on state changes
      * @return
      * @throws SmbException
      */
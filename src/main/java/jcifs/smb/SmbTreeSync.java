@@ -0,0 +1,848 @@
+/*
+ * © 2026 agent <agent@local>
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package jcifs.smb;
+
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.MalformedURLException;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jcifs.CIFSException;
+import jcifs.DirectoryInfoClass;
+import jcifs.SmbResource;
+import jcifs.SmbTreeVisitor;
+
+
+/**
+ * Incrementally mirrors a directory tree to another SMB directory or a local directory
+ * 
+ * Files are compared by size and last write time (and optionally the server file id) and only transferred if they
+ * differ. Transfers use {@link SmbCopyUtil} for SMB targets, so files on the same tree are copied server side, and
+ * are streamed to local targets.
+ * 
+ * If a manifest file is configured the state of all synchronized entries is recorded after each run. Subsequent runs
+ * then only need to look at the target for entries that changed on the source, and entries to delete are determined
+ * from the manifest instead of walking the target. The manifest assumes that the target is not modified by other
+ * means.
+ * 
+ * <pre>
+ * SmbTreeSync sync = new SmbTreeSync(src, new File("/backup/share"));
+ * sync.setDelete(true);
+ * sync.setManifest(new File("/backup/share.manifest"));
+ * SmbTreeSync.Result r = sync.sync();
+ * </pre>
+ * 
+ * @author agent
+ *
+ */
+public class SmbTreeSync {
+
+    private static final Logger log = LoggerFactory.getLogger(SmbTreeSync.class);
+
+    private static final String MANIFEST_HEADER = "# jcifs sync manifest v1";
+
+    private final SmbResource source;
+    private final Target target;
+    private int parallelism = 4;
+    private boolean failFast = true;
+    private boolean delete;
+    private boolean compareFileId;
+    private long timeTolerance = 1000;
+    private File manifest;
+
+
+    /**
+     * @param source
+     *            directory to mirror
+     * @param dest
+     *            target SMB directory
+     */
+    public SmbTreeSync ( SmbResource source, SmbResource dest ) {
+        this.source = source;
+        this.target = new SmbTarget(dest);
+    }
+
+
+    /**
+     * @param source
+     *            directory to mirror
+     * @param dest
+     *            target local directory
+     */
+    public SmbTreeSync ( SmbResource source, File dest ) {
+        this.source = source;
+        this.target = new LocalTarget(dest);
+    }
+
+
+    /**
+     * @param parallelism
+     *            number of directories listed and files transferred concurrently (default 4)
+     */
+    public void setParallelism ( int parallelism ) {
+        if ( parallelism <= 0 ) {
+            throw new IllegalArgumentException("Parallelism must be positive");
+        }
+        this.parallelism = parallelism;
+    }
+
+
+    /**
+     * @param failFast
+     *            whether to stop on the first failure, otherwise failures are only collected in the result
+     *            (default true)
+     */
+    public void setFailFast ( boolean failFast ) {
+        this.failFast = failFast;
+    }
+
+
+    /**
+     * @param delete
+     *            whether to delete target entries that no longer exist on the source (default false)
+     */
+    public void setDelete ( boolean delete ) {
+        this.delete = delete;
+    }
+
+
+    /**
+     * @param compareFileId
+     *            whether to also compare the source file id against the one recorded in the manifest, detecting files
+     *            that were replaced while keeping size and time (default false, requires a manifest)
+     */
+    public void setCompareFileId ( boolean compareFileId ) {
+        this.compareFileId = compareFileId;
+    }
+
+
+    /**
+     * @param timeTolerance
+     *            maximum difference in milliseconds between last write times considered equal, to account for
+     *            target file systems with coarser timestamps (default 1000)
+     */
+    public void setTimeTolerance ( long timeTolerance ) {
+        this.timeTolerance = timeTolerance;
+    }
+
+
+    /**
+     * @param manifest
+     *            local file to load the previous state from and store the new state to
+     */
+    public void setManifest ( File manifest ) {
+        this.manifest = manifest;
+    }
+
+
+    /**
+     * Synchronize the target with the source, blocking until done
+     * 
+     * @return sync result
+     * @throws CIFSException
+     *             if the sync could not be started, or on the first failure when running fail-fast
+     */
+    public Result sync () throws CIFSException {
+        if ( ! ( this.source instanceof SmbFile ) ) {
+            throw new SmbException("Invalid source resource");
+        }
+        SmbFile src = (SmbFile) this.source;
+        if ( !src.isDirectory() ) {
+            throw new SmbException("Source is not a directory");
+        }
+
+        Map<String, ManifestEntry> previous = loadManifest();
+        SyncState state = new SyncState(src, previous);
+        this.target.mkdir("");
+
+        SmbTreeWalker walker = new SmbTreeWalker(src);
+        walker.setParallelism(this.parallelism);
+        walker.setMaxInFlightPerServer(this.parallelism);
+        if ( this.compareFileId ) {
+            walker.setInfoClass(DirectoryInfoClass.ID_FULL_DIRECTORY_INFO);
+        }
+        walker.walk(state);
+        if ( this.delete && !state.aborted ) {
+            if ( previous != null ) {
+                state.deleteFromManifest();
+            }
+            else {
+                state.deleteUnseen();
+            }
+        }
+        if ( !state.aborted ) {
+            storeManifest(state.current);
+        }
+
+        Result r = state.toResult();
+        if ( log.isDebugEnabled() ) {
+            log.debug(
+                String.format(
+                    "Synchronized %s: %d transferred (%d bytes), %d unchanged, %d deleted in %d ms, %d failures",
+                    src,
+                    r.getFilesTransferred(),
+                    r.getBytesTransferred(),
+                    r.getFilesUnchanged(),
+                    r.getDeleted(),
+                    r.getElapsedMillis(),
+                    r.getFailures().size()));
+        }
+        if ( this.failFast && !r.getFailures().isEmpty() ) {
+            throw r.getFailures().get(0).getException();
+        }
+        return r;
+    }
+
+
+    private Map<String, ManifestEntry> loadManifest () throws CIFSException {
+        if ( this.manifest == null || !this.manifest.exists() ) {
+            return null;
+        }
+        Map<String, ManifestEntry> entries = new ConcurrentHashMap<>();
+        try ( BufferedReader r = new BufferedReader(new InputStreamReader(new FileInputStream(this.manifest), StandardCharsets.UTF_8)) ) {
+            String line = r.readLine();
+            if ( !MANIFEST_HEADER.equals(line) ) {
+                log.warn("Ignoring invalid manifest " + this.manifest);
+                return null;
+            }
+            while ( ( line = r.readLine() ) != null ) {
+                String[] parts = line.split("\t", 4);
+                if ( parts.length != 4 ) {
+                    throw new IOException("Invalid manifest line " + line);
+                }
+                entries.put(parts[3], new ManifestEntry(Long.parseLong(parts[0]), Long.parseLong(parts[1]), Long.parseLong(parts[2])));
+            }
+        }
+        catch ( IOException | NumberFormatException e ) {
+            throw new SmbException("Failed to read manifest " + this.manifest, e);
+        }
+        return entries;
+    }
+
+
+    private void storeManifest ( Map<String, ManifestEntry> entries ) throws CIFSException {
+        if ( this.manifest == null ) {
+            return;
+        }
+        File tmp = new File(this.manifest.getPath() + ".tmp");
+        try {
+            try ( Writer w = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmp), StandardCharsets.UTF_8)) ) {
+                w.write(MANIFEST_HEADER);
+                w.write('\n');
+                for ( Map.Entry<String, ManifestEntry> e : new TreeMap<>(entries).entrySet() ) {
+                    ManifestEntry me = e.getValue();
+                    w.write(me.size + "\t" + me.lastModified + "\t" + me.fileId + "\t" + e.getKey() + "\n");
+                }
+            }
+            Files.move(tmp.toPath(), this.manifest.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch ( IOException e ) {
+            throw new SmbException("Failed to write manifest " + this.manifest, e);
+        }
+    }
+
+    /**
+     * Outcome of a sync run
+     */
+    public static final class Result {
+
+        private final long transferred;
+        private final long unchanged;
+        private final long deleted;
+        private final long bytes;
+        private final long elapsedMillis;
+        private final List<Failure> failures;
+
+
+        Result ( long transferred, long unchanged, long deleted, long bytes, long elapsedMillis, List<Failure> failures ) {
+            this.transferred = transferred;
+            this.unchanged = unchanged;
+            this.deleted = deleted;
+            this.bytes = bytes;
+            this.elapsedMillis = elapsedMillis;
+            this.failures = failures;
+        }
+
+
+        /**
+         * @return number of files transferred because they were new or changed
+         */
+        public long getFilesTransferred () {
+            return this.transferred;
+        }
+
+
+        /**
+         * @return number of files found unchanged
+         */
+        public long getFilesUnchanged () {
+            return this.unchanged;
+        }
+
+
+        /**
+         * @return number of target entries deleted
+         */
+        public long getDeleted () {
+            return this.deleted;
+        }
+
+
+        /**
+         * @return total number of bytes transferred
+         */
+        public long getBytesTransferred () {
+            return this.bytes;
+        }
+
+
+        /**
+         * @return wall clock time the sync took
+         */
+        public long getElapsedMillis () {
+            return this.elapsedMillis;
+        }
+
+
+        /**
+         * @return entries that could not be synchronized
+         */
+        public List<Failure> getFailures () {
+            return this.failures;
+        }
+    }
+
+    /**
+     * An entry that failed to synchronize
+     */
+    public static final class Failure {
+
+        private final String path;
+        private final CIFSException exception;
+
+
+        Failure ( String path, CIFSException exception ) {
+            this.path = path;
+            this.exception = exception;
+        }
+
+
+        /**
+         * @return path relative to the sync roots
+         */
+        public String getPath () {
+            return this.path;
+        }
+
+
+        /**
+         * @return the failure cause
+         */
+        public CIFSException getException () {
+            return this.exception;
+        }
+    }
+
+    private static final class ManifestEntry {
+
+        final long size;
+        final long lastModified;
+        final long fileId;
+
+
+        ManifestEntry ( long size, long lastModified, long fileId ) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.fileId = fileId;
+        }
+
+
+        boolean isDirectory () {
+            return this.size < 0;
+        }
+    }
+
+    /**
+     * Target entry state, size is negative for directories
+     */
+    private static final class TargetEntry {
+
+        final long size;
+        final long lastModified;
+
+
+        TargetEntry ( long size, long lastModified ) {
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+
+
+        boolean isDirectory () {
+            return this.size < 0;
+        }
+    }
+
+    private abstract static class Target {
+
+        abstract TargetEntry stat ( String rel ) throws CIFSException;
+
+
+        abstract void mkdir ( String rel ) throws CIFSException;
+
+
+        abstract long transfer ( SmbFile src, String rel, byte[] buffer ) throws CIFSException;
+
+
+        abstract void delete ( String rel ) throws CIFSException;
+
+
+        abstract void list ( String rel, List<String> entries ) throws CIFSException;
+
+
+        abstract int getBufferSize ( SmbFile src ) throws CIFSException;
+    }
+
+    private static final class SmbTarget extends Target {
+
+        private final SmbResource root;
+
+
+        SmbTarget ( SmbResource root ) {
+            this.root = root;
+        }
+
+
+        private SmbFile resolve ( String rel ) throws CIFSException {
+            if ( ! ( this.root instanceof SmbFile ) ) {
+                throw new SmbException("Invalid target resource");
+            }
+            if ( rel.isEmpty() ) {
+                return (SmbFile) this.root;
+            }
+            try {
+                return new SmbFile(this.root, rel);
+            }
+            catch ( MalformedURLException | UnknownHostException e ) {
+                throw new SmbException("Invalid path " + rel, e);
+            }
+        }
+
+
+        @Override
+        TargetEntry stat ( String rel ) throws CIFSException {
+            try ( SmbFile f = resolve(rel) ) {
+                if ( !f.exists() ) {
+                    return null;
+                }
+                return new TargetEntry(f.isDirectory() ? -1 : f.length(), f.lastModified());
+            }
+        }
+
+
+        @Override
+        void mkdir ( String rel ) throws CIFSException {
+            SmbFile f = resolve(rel.isEmpty() ? rel : rel + "/");
+            if ( !f.exists() ) {
+                f.mkdirs();
+            }
+        }
+
+
+        @Override
+        long transfer ( SmbFile src, String rel, byte[] buffer ) throws CIFSException {
+            try ( SmbFile d = resolve(rel);
+                  SmbTreeHandleImpl sh = src.ensureTreeConnected();
+                  SmbTreeHandleImpl dh = d.ensureTreeConnected() ) {
+                try {
+                    return SmbCopyUtil.copyFile(src, d, buffer, sh, dh, false);
+                }
+                finally {
+                    d.clearAttributeCache();
+                }
+            }
+        }
+
+
+        @Override
+        void delete ( String rel ) throws CIFSException {
+            try ( SmbFile f = resolve(rel) ) {
+                if ( f.exists() ) {
+                    if ( f.isDirectory() ) {
+                        try ( SmbFile dir = resolve(rel + "/") ) {
+                            dir.delete();
+                        }
+                    }
+                    else {
+                        f.delete();
+                    }
+                }
+            }
+        }
+
+
+        @Override
+        void list ( String rel, List<String> entries ) throws CIFSException {
+            SmbFile dir = resolve(rel.isEmpty() ? rel : rel + "/");
+            for ( SmbFile f : dir.listFiles() ) {
+                String name = f.getName();
+                entries.add(rel.isEmpty() ? name : rel + "/" + name);
+                f.close();
+            }
+        }
+
+
+        @Override
+        int getBufferSize ( SmbFile src ) throws CIFSException {
+            try ( SmbTreeHandleImpl sh = src.ensureTreeConnected();
+                  SmbTreeHandleImpl dh = resolve("").ensureTreeConnected() ) {
+                return Math.min(sh.getReceiveBufferSize() - 70, dh.getSendBufferSize() - 70);
+            }
+        }
+    }
+
+    private static final class LocalTarget extends Target {
+
+        private final File root;
+
+
+        LocalTarget ( File root ) {
+            this.root = root;
+        }
+
+
+        private File resolve ( String rel ) {
+            return rel.isEmpty() ? this.root : new File(this.root, rel.replace('/', File.separatorChar));
+        }
+
+
+        @Override
+        TargetEntry stat ( String rel ) {
+            File f = resolve(rel);
+            if ( !f.exists() ) {
+                return null;
+            }
+            return new TargetEntry(f.isDirectory() ? -1 : f.length(), f.lastModified());
+        }
+
+
+        @Override
+        void mkdir ( String rel ) throws CIFSException {
+            File f = resolve(rel);
+            if ( !f.isDirectory() && !f.mkdirs() && !f.isDirectory() ) {
+                throw new SmbException("Failed to create directory " + f);
+            }
+        }
+
+
+        @Override
+        long transfer ( SmbFile src, String rel, byte[] buffer ) throws CIFSException {
+            File f = resolve(rel);
+            try ( SmbTreeHandleImpl th = src.ensureTreeConnected() ) {
+                long size = SmbCopyUtil.download(src, th, f, buffer, false);
+                if ( !f.setLastModified(src.lastModified()) ) {
+                    log.debug("Failed to set last modified time on " + f);
+                }
+                return size;
+            }
+        }
+
+
+        @Override
+        void delete ( String rel ) throws CIFSException {
+            deleteRecursive(resolve(rel));
+        }
+
+
+        private static void deleteRecursive ( File f ) throws CIFSException {
+            File[] children = f.listFiles();
+            if ( children != null ) {
+                for ( File c : children ) {
+                    deleteRecursive(c);
+                }
+            }
+            if ( !f.delete() && f.exists() ) {
+                throw new SmbException("Failed to delete " + f);
+            }
+        }
+
+
+        @Override
+        void list ( String rel, List<String> entries ) throws CIFSException {
+            String[] names = resolve(rel).list();
+            if ( names == null ) {
+                throw new SmbException("Failed to list " + resolve(rel));
+            }
+            for ( String name : names ) {
+                entries.add(rel.isEmpty() ? name : rel + "/" + name);
+            }
+        }
+
+
+        @Override
+        int getBufferSize ( SmbFile src ) throws CIFSException {
+            try ( SmbTreeHandleImpl th = src.ensureTreeConnected() ) {
+                return th.getReceiveBufferSize() - 70;
+            }
+        }
+    }
+
+    private final class SyncState implements SmbTreeVisitor {
+
+        private final String srcRootPath;
+        private final Map<String, ManifestEntry> previous;
+        final ConcurrentMap<String, ManifestEntry> current = new ConcurrentHashMap<>();
+        // paths that failed to synchronize, nothing at or below them must be deleted
+        private final Set<String> skipped = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        private final long start = System.currentTimeMillis();
+        private final ThreadLocal<byte[]> buffers;
+
+        final AtomicLong transferred = new AtomicLong();
+        final AtomicLong unchanged = new AtomicLong();
+        final AtomicLong deleted = new AtomicLong();
+        final AtomicLong bytes = new AtomicLong();
+        final List<Failure> failures = Collections.synchronizedList(new ArrayList<Failure>());
+        volatile boolean aborted;
+
+
+        SyncState ( SmbFile srcRoot, Map<String, ManifestEntry> previous ) throws CIFSException {
+            String p = srcRoot.getLocator().getURLPath();
+            this.srcRootPath = p.endsWith("/") ? p : p + "/";
+            this.previous = previous;
+            final int bufferSize = SmbTreeSync.this.target.getBufferSize(srcRoot);
+            this.buffers = new ThreadLocal<byte[]>() {
+
+                @Override
+                protected byte[] initialValue () {
+                    return new byte[bufferSize];
+                }
+            };
+        }
+
+
+        @Override
+        public boolean visit ( SmbResource resource, int depth ) throws CIFSException {
+            checkAborted();
+            String path = resource.getLocator().getURLPath();
+            if ( !path.startsWith(this.srcRootPath) ) {
+                throw new SmbException("Resource " + path + " is outside of " + this.srcRootPath);
+            }
+            String rel = path.substring(this.srcRootPath.length());
+            if ( rel.endsWith("/") ) {
+                rel = rel.substring(0, rel.length() - 1);
+            }
+
+            ManifestEntry prev = this.previous != null ? this.previous.get(rel) : null;
+            try {
+                if ( resource.isDirectory() ) {
+                    if ( prev == null || !prev.isDirectory() ) {
+                        TargetEntry t = SmbTreeSync.this.target.stat(rel);
+                        if ( t != null && !t.isDirectory() ) {
+                            SmbTreeSync.this.target.delete(rel);
+                        }
+                        SmbTreeSync.this.target.mkdir(rel);
+                    }
+                    this.current.put(rel, new ManifestEntry(-1, 0, 0));
+                    return true;
+                }
+
+                long size = resource.length();
+                long mtime = resource.lastModified();
+                long fileId = SmbTreeSync.this.compareFileId ? resource.fileIndex() : 0;
+                ManifestEntry me = new ManifestEntry(size, mtime, fileId);
+                if ( prev != null && !prev.isDirectory() && prev.size == size && prev.lastModified == mtime
+                        && ( !SmbTreeSync.this.compareFileId || prev.fileId == fileId ) ) {
+                    // unchanged since the last run, no need to look at the target
+                    this.unchanged.incrementAndGet();
+                    this.current.put(rel, me);
+                    return false;
+                }
+
+                TargetEntry t = SmbTreeSync.this.target.stat(rel);
+                boolean replaced = SmbTreeSync.this.compareFileId && prev != null && prev.fileId != fileId;
+                if ( t != null && !replaced && !t.isDirectory() && t.size == size
+                        && Math.abs(t.lastModified - mtime) <= SmbTreeSync.this.timeTolerance ) {
+                    this.unchanged.incrementAndGet();
+                    this.current.put(rel, me);
+                    return false;
+                }
+
+                if ( t != null && t.isDirectory() ) {
+                    SmbTreeSync.this.target.delete(rel);
+                }
+                this.bytes.addAndGet(SmbTreeSync.this.target.transfer((SmbFile) resource, rel, this.buffers.get()));
+                this.transferred.incrementAndGet();
+                this.current.put(rel, me);
+            }
+            catch ( CIFSException e ) {
+                failed(rel, e);
+                keepPrevious(rel);
+            }
+            return false;
+        }
+
+
+        @Override
+        public void visitFailed ( SmbResource directory, CIFSException e ) throws CIFSException {
+            String path = directory.getLocator().getURLPath();
+            String rel = path.startsWith(this.srcRootPath) ? path.substring(this.srcRootPath.length()) : path;
+            if ( rel.endsWith("/") ) {
+                rel = rel.substring(0, rel.length() - 1);
+            }
+            failed(rel, e);
+            keepPrevious(rel);
+            checkAborted();
+        }
+
+
+        /**
+         * Keep the previous state of a path that failed to synchronize, so that neither it nor anything below it is
+         * deleted from the target
+         */
+        private void keepPrevious ( String rel ) {
+            this.skipped.add(rel);
+            if ( this.previous == null ) {
+                return;
+            }
+            ManifestEntry prev = this.previous.get(rel);
+            if ( prev != null ) {
+                this.current.put(rel, prev);
+            }
+            String prefix = rel.isEmpty() ? rel : rel + "/";
+            for ( Map.Entry<String, ManifestEntry> me : this.previous.entrySet() ) {
+                if ( me.getKey().startsWith(prefix) ) {
+                    this.current.putIfAbsent(me.getKey(), me.getValue());
+                }
+            }
+        }
+
+
+        void deleteFromManifest () {
+            // sorted, so parents are deleted before their children
+            String deletedDir = null;
+            for ( String rel : new TreeMap<>(this.previous).keySet() ) {
+                if ( this.current.containsKey(rel) ) {
+                    continue;
+                }
+                if ( deletedDir != null && rel.startsWith(deletedDir) ) {
+                    continue;
+                }
+                ManifestEntry me = this.previous.get(rel);
+                if ( !deleteEntry(rel) ) {
+                    // retry on the next run
+                    this.current.put(rel, me);
+                }
+                else if ( me.isDirectory() ) {
+                    deletedDir = rel + "/";
+                }
+            }
+        }
+
+
+        void deleteUnseen () throws CIFSException {
+            List<String> dirs = new ArrayList<>();
+            dirs.add("");
+            while ( !dirs.isEmpty() ) {
+                String dir = dirs.remove(dirs.size() - 1);
+                List<String> entries = new ArrayList<>();
+                SmbTreeSync.this.target.list(dir, entries);
+                for ( String rel : entries ) {
+                    if ( rel.endsWith("/") ) {
+                        rel = rel.substring(0, rel.length() - 1);
+                    }
+                    if ( this.skipped.contains(rel) ) {
+                        continue;
+                    }
+                    ManifestEntry me = this.current.get(rel);
+                    if ( me == null ) {
+                        deleteEntry(rel);
+                    }
+                    else if ( me.isDirectory() ) {
+                        dirs.add(rel);
+                    }
+                }
+            }
+        }
+
+
+        private boolean deleteEntry ( String rel ) {
+            try {
+                SmbTreeSync.this.target.delete(rel);
+                this.deleted.incrementAndGet();
+                return true;
+            }
+            catch ( CIFSException e ) {
+                failed(rel, e);
+                return false;
+            }
+        }
+
+
+        void failed ( String rel, CIFSException e ) {
+            log.debug("Failed to synchronize " + rel, e);
+            this.failures.add(new Failure(rel, e));
+            if ( SmbTreeSync.this.failFast ) {
+                this.aborted = true;
+            }
+        }
+
+
+        private void checkAborted () throws CIFSException {
+            if ( this.aborted ) {
+                throw this.failures.get(0).getException();
+            }
+        }
+
+
+        Result toResult () {
+            List<Failure> f;
+            synchronized ( this.failures ) {
+                f = Collections.unmodifiableList(new ArrayList<>(this.failures));
+            }
+            return new Result(
+                this.transferred.get(),
+                this.unchanged.get(),
+                this.deleted.get(),
+                this.bytes.get(),
+                System.currentTimeMillis() - this.start,
+                f);
+        }
+    }
+}
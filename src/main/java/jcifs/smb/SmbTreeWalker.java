@@ -0,0 +1,331 @@
+/*
+ * © 2026 agent <agent@local>
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package jcifs.smb;
+
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jcifs.CIFSException;
+import jcifs.CloseableIterator;
+import jcifs.DirectoryInfoClass;
+import jcifs.ResourceFilter;
+import jcifs.RuntimeCIFSException;
+import jcifs.SmbResource;
+import jcifs.SmbTreeVisitor;
+
+
+/**
+ * Recursively walks a directory tree, enumerating multiple directories concurrently
+ * 
+ * Directories are processed by a work-stealing pool, the number of directory listings
+ * that are active at the same time against a single server can be limited separately.
+ * 
+ * <pre>
+ * SmbTreeWalker walker = new SmbTreeWalker(root);
+ * walker.setMaxDepth(3);
+ * walker.walk(visitor);
+ * </pre>
+ * 
+ * @author agent
+ *
+ */
+public class SmbTreeWalker {
+
+    private static final Logger log = LoggerFactory.getLogger(SmbTreeWalker.class);
+
+    private final SmbResource root;
+    private int parallelism = 8;
+    private int maxInFlightPerServer = 4;
+    private int maxDepth = -1;
+    private String wildcard = "*";
+    private ResourceFilter filter;
+    private DirectoryInfoClass infoClass = DirectoryInfoClass.BOTH_DIRECTORY_INFO;
+
+
+    /**
+     * @param root
+     *            directory to start the walk from
+     */
+    public SmbTreeWalker ( SmbResource root ) {
+        this.root = root;
+    }
+
+
+    /**
+     * @param parallelism
+     *            number of threads used for the walk (default 8)
+     */
+    public void setParallelism ( int parallelism ) {
+        if ( parallelism <= 0 ) {
+            throw new IllegalArgumentException("Parallelism must be positive");
+        }
+        this.parallelism = parallelism;
+    }
+
+
+    /**
+     * @param maxInFlightPerServer
+     *            maximum number of directories that are enumerated concurrently against a single server (default 4)
+     */
+    public void setMaxInFlightPerServer ( int maxInFlightPerServer ) {
+        if ( maxInFlightPerServer <= 0 ) {
+            throw new IllegalArgumentException("Maximum in-flight directories must be positive");
+        }
+        this.maxInFlightPerServer = maxInFlightPerServer;
+    }
+
+
+    /**
+     * @param maxDepth
+     *            maximum depth of resources to visit, direct children of the root have depth 1 (default -1, unlimited)
+     */
+    public void setMaxDepth ( int maxDepth ) {
+        this.maxDepth = maxDepth;
+    }
+
+
+    /**
+     * @param wildcard
+     *            server-side filter applied to all listings, directories not matching will not be descended into
+     */
+    public void setWildcard ( String wildcard ) {
+        this.wildcard = wildcard;
+    }
+
+
+    /**
+     * 
+     * Resources not accepted by the filter are not passed to the visitor, however directories will still be
+     * descended into.
+     * 
+     * @param filter
+     *            filter selecting the resources passed to the visitor
+     */
+    public void setFilter ( ResourceFilter filter ) {
+        this.filter = filter;
+    }
+
+
+    /**
+     * @param infoClass
+     *            file information class used for listing directories
+     */
+    public void setInfoClass ( DirectoryInfoClass infoClass ) {
+        this.infoClass = infoClass;
+    }
+
+
+    /**
+     * Walk the tree, blocking until all directories have been processed
+     * 
+     * @param visitor
+     * @return the number of resources visited
+     * @throws CIFSException
+     *             if the visitor aborted the walk
+     */
+    public long walk ( SmbTreeVisitor visitor ) throws CIFSException {
+        WalkState state = new WalkState(visitor);
+        ForkJoinPool pool = new ForkJoinPool(this.parallelism);
+        try {
+            pool.invoke(new DirectoryTask(state, this.root, 0, false));
+        }
+        catch ( RuntimeCIFSException e ) {
+            // the exception may have been re-wrapped when crossing threads
+            Throwable t = e.getCause();
+            while ( t != null ) {
+                if ( t instanceof CIFSException ) {
+                    throw (CIFSException) t;
+                }
+                t = t.getCause();
+            }
+            throw e;
+        }
+        finally {
+            pool.shutdown();
+        }
+        if ( log.isDebugEnabled() ) {
+            log.debug(String.format("Walked %d directories, visited %d resources", state.directories.get(), state.visited.get()));
+        }
+        return state.visited.get();
+    }
+
+
+    private final class WalkState {
+
+        final SmbTreeVisitor visitor;
+        final ConcurrentMap<String, Semaphore> serverLimits = new ConcurrentHashMap<>();
+        final AtomicLong visited = new AtomicLong();
+        final AtomicLong directories = new AtomicLong();
+        volatile boolean aborted;
+
+
+        WalkState ( SmbTreeVisitor visitor ) {
+            this.visitor = visitor;
+        }
+
+
+        Semaphore getServerLimit ( SmbResource dir ) {
+            String server = dir.getLocator().getServerWithDfs();
+            if ( server == null ) {
+                server = "";
+            }
+            Semaphore s = this.serverLimits.get(server);
+            if ( s == null ) {
+                s = new Semaphore(SmbTreeWalker.this.maxInFlightPerServer);
+                Semaphore old = this.serverLimits.putIfAbsent(server, s);
+                if ( old != null ) {
+                    s = old;
+                }
+            }
+            return s;
+        }
+    }
+
+    private final class DirectoryTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient WalkState state;
+        private final transient SmbResource dir;
+        private final int depth;
+        private final boolean closeDir;
+
+
+        DirectoryTask ( WalkState state, SmbResource dir, int depth, boolean closeDir ) {
+            this.state = state;
+            this.dir = dir;
+            this.depth = depth;
+            this.closeDir = closeDir;
+        }
+
+
+        @Override
+        protected void compute () {
+            try {
+                List<DirectoryTask> subdirs = list();
+                if ( !subdirs.isEmpty() && !this.state.aborted ) {
+                    invokeAll(subdirs);
+                }
+                else {
+                    for ( DirectoryTask t : subdirs ) {
+                        t.dir.close();
+                    }
+                }
+            }
+            finally {
+                if ( this.closeDir ) {
+                    this.dir.close();
+                }
+            }
+        }
+
+
+        private List<DirectoryTask> list () {
+            List<DirectoryTask> subdirs = new ArrayList<>();
+            if ( this.state.aborted ) {
+                return subdirs;
+            }
+            Semaphore limit = this.state.getServerLimit(this.dir);
+            try {
+                limit.acquire();
+            }
+            catch ( InterruptedException e ) {
+                Thread.currentThread().interrupt();
+                this.state.aborted = true;
+                throw new RuntimeCIFSException("Interrupted while waiting for directory slot", e);
+            }
+
+            try {
+                this.state.directories.incrementAndGet();
+                int childDepth = this.depth + 1;
+                boolean descend = SmbTreeWalker.this.maxDepth < 0 || childDepth < SmbTreeWalker.this.maxDepth;
+                try ( CloseableIterator<SmbResource> it = this.dir.children(SmbTreeWalker.this.wildcard, SmbTreeWalker.this.infoClass) ) {
+                    while ( it.hasNext() && !this.state.aborted ) {
+                        SmbResource r = it.next();
+                        boolean keep = false;
+                        try {
+                            keep = visitChild(r, childDepth, descend);
+                            if ( keep ) {
+                                subdirs.add(new DirectoryTask(this.state, r, childDepth, true));
+                            }
+                        }
+                        finally {
+                            if ( !keep ) {
+                                r.close();
+                            }
+                        }
+                    }
+                }
+            }
+            catch ( CIFSException e ) {
+                try {
+                    this.state.visitor.visitFailed(this.dir, e);
+                }
+                catch ( CIFSException e2 ) {
+                    abort(subdirs, e2);
+                }
+            }
+            catch ( RuntimeCIFSException e ) {
+                abort(subdirs, e);
+            }
+            finally {
+                limit.release();
+            }
+            return subdirs;
+        }
+
+
+        private boolean visitChild ( SmbResource r, int childDepth, boolean descend ) {
+            try {
+                boolean accepted = SmbTreeWalker.this.filter == null || SmbTreeWalker.this.filter.accept(r);
+                boolean visit = true;
+                if ( accepted ) {
+                    this.state.visited.incrementAndGet();
+                    visit = this.state.visitor.visit(r, childDepth);
+                }
+                return descend && visit && r.isDirectory();
+            }
+            catch ( CIFSException e ) {
+                this.state.aborted = true;
+                throw new RuntimeCIFSException(e);
+            }
+        }
+
+
+        private void abort ( List<DirectoryTask> subdirs, Exception e ) {
+            this.state.aborted = true;
+            for ( DirectoryTask t : subdirs ) {
+                t.dir.close();
+            }
+            if ( e instanceof RuntimeCIFSException ) {
+                throw (RuntimeCIFSException) e;
+            }
+            throw new RuntimeCIFSException(e);
+        }
+    }
+}
@@ -27,8 +27,8 @@ import jcifs.CIFSException;
 import jcifs.FileNotifyInformation;
 import jcifs.SmbConstants;
 import jcifs.SmbWatchHandle;
-import jcifs.internal.CommonServerMessageBlockRequest;
 import jcifs.internal.NotifyResponse;
+import jcifs.internal.RequestWithSentCallback;
 import jcifs.internal.smb1.trans.nt.NtTransNotifyChange;
 import jcifs.internal.smb1.trans.nt.NtTransNotifyChangeResponse;
 import jcifs.internal.smb2.notify.Smb2ChangeNotifyRequest;
@@ -67,12 +67,26 @@ class SmbWatchHandleImpl implements SmbWatchHandle {
      */
     @Override
     public List<FileNotifyInformation> watch () throws CIFSException {
+        return watch(null);
+    }
+
+
+    /**
+     * Wait for changes
+     * 
+     * @param armed
+     *            run once the notify request has been sent, i.e. the server will report any change that happens
+     *            afterwards, may be null
+     * @return the changes, see {@link #watch()}
+     * @throws CIFSException
+     */
+    List<FileNotifyInformation> watch ( Runnable armed ) throws CIFSException {
         if ( !this.handle.isValid() ) {
             throw new SmbException("Watch was broken by tree disconnect");
         }
         try ( SmbTreeHandleImpl th = this.handle.getTree() ) {
 
-            CommonServerMessageBlockRequest req;
+            RequestWithSentCallback req;
             NotifyResponse resp = null;
             if ( th.isSMB2() ) {
                 Smb2ChangeNotifyRequest r = new Smb2ChangeNotifyRequest(th.getConfig(), this.handle.getFileId());
@@ -91,6 +105,7 @@ class SmbWatchHandleImpl implements SmbWatchHandle {
                 req = new NtTransNotifyChange(th.getConfig(), this.handle.getFid(), this.filter, this.recursive);
                 resp = new NtTransNotifyChangeResponse(th.getConfig());
             }
+            req.setSentCallback(armed);
 
             if ( log.isTraceEnabled() ) {
                 log.trace("Sending NtTransNotifyChange for " + this.handle);
@@ -0,0 +1,238 @@
+/*
+ * © 2026 agent <agent@local>
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package jcifs.smb;
+
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jcifs.CIFSContext;
+import jcifs.CIFSException;
+import jcifs.FileNotifyInformation;
+import jcifs.SmbWatchListener;
+import jcifs.SmbWatchRegistration;
+
+
+/**
+ * Continuous watch keeping a change notify request outstanding
+ * 
+ * The transport only offers blocking requests, so each active watch occupies one thread of the context's executor
+ * that waits for the server's response. As the request is re-armed immediately, that thread stays blocked until the
+ * watch is closed or fails. Results are handed to the executor for delivery, so that a slow listener does not delay
+ * re-arming, delivery for a single watch is serialized.
+ * 
+ * Only one notify request is outstanding at a time. Servers keep collecting changes for the open directory handle
+ * while no request is pending and return them with the next one, so the short gap before re-arming does not lose
+ * changes. If more changes accumulate than fit the notify buffer the server reports an overflow, which is passed on
+ * as an empty change list.
+ * 
+ * This is the only watch loop, {@link SmbDirectoryCache} is built on it as well.
+ * 
+ * @author agent
+ *
+ */
+class SmbWatchRegistrationImpl implements SmbWatchRegistration, Runnable {
+
+    private static final Logger log = LoggerFactory.getLogger(SmbWatchRegistrationImpl.class);
+
+    private final CIFSContext context;
+    private final SmbWatchHandleImpl handle;
+    private final SmbWatchListener listener;
+
+    private final Queue<Runnable> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean delivering = new AtomicBoolean();
+    private final CountDownLatch armed = new CountDownLatch(1);
+    private volatile boolean active = true;
+
+
+    /**
+     * @param tc
+     *            context whose executor to use
+     * @param handle
+     * @param listener
+     */
+    SmbWatchRegistrationImpl ( CIFSContext tc, SmbWatchHandleImpl handle, SmbWatchListener listener ) {
+        this.context = tc;
+        this.handle = handle;
+        this.listener = listener;
+    }
+
+
+    SmbWatchRegistrationImpl start () throws CIFSException {
+        try {
+            this.context.getExecutor().execute(this);
+        }
+        catch ( RejectedExecutionException e ) {
+            this.active = false;
+            this.handle.close();
+            throw new SmbException("Context is closed", e);
+        }
+        return this;
+    }
+
+
+    /**
+     * Wait until the first notify request has been sent
+     * 
+     * Changes happening after this returns are reported to the listener.
+     * 
+     * @throws CIFSException
+     *             if the watch failed or was not armed within the response timeout
+     */
+    void awaitArmed () throws CIFSException {
+        try {
+            if ( !this.armed.await(this.context.getConfig().getResponseTimeout(), TimeUnit.MILLISECONDS) ) {
+                close();
+                throw new SmbException("Timeout waiting for the watch to start");
+            }
+        }
+        catch ( InterruptedException e ) {
+            close();
+            throw new SmbException("Interrupted waiting for the watch to start", e);
+        }
+        if ( !this.active ) {
+            throw new SmbException("Watch failed to start");
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see jcifs.SmbWatchRegistration#isActive()
+     */
+    @Override
+    public boolean isActive () {
+        return this.active;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see jcifs.SmbWatchRegistration#close()
+     */
+    @Override
+    public void close () throws CIFSException {
+        if ( this.active ) {
+            this.active = false;
+            this.handle.close();
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see java.lang.Runnable#run()
+     */
+    @Override
+    public void run () {
+        Runnable onArmed = new Runnable() {
+
+            @Override
+            public void run () {
+                SmbWatchRegistrationImpl.this.armed.countDown();
+            }
+        };
+        try {
+            while ( this.active ) {
+                final List<FileNotifyInformation> changes = this.handle.watch(onArmed);
+                if ( !this.active ) {
+                    // closed
+                    break;
+                }
+                if ( changes == null ) {
+                    throw new SmbException("Watch was cancelled by the server");
+                }
+                deliver(new Runnable() {
+
+                    @Override
+                    public void run () {
+                        SmbWatchRegistrationImpl.this.listener.changed(changes);
+                    }
+                });
+            }
+        }
+        catch ( final CIFSException e ) {
+            if ( this.active ) {
+                log.debug("Watch failed", e);
+                this.active = false;
+                deliver(new Runnable() {
+
+                    @Override
+                    public void run () {
+                        SmbWatchRegistrationImpl.this.listener.failed(e);
+                    }
+                });
+            }
+        }
+        catch ( RuntimeException e ) {
+            log.error("Unexpected watch failure", e);
+        }
+        finally {
+            this.active = false;
+            this.armed.countDown();
+            try {
+                this.handle.close();
+            }
+            catch ( CIFSException e ) {
+                log.debug("Failed to close watch handle", e);
+            }
+        }
+    }
+
+
+    private void deliver ( Runnable r ) {
+        this.pending.add(r);
+        if ( this.delivering.compareAndSet(false, true) ) {
+            this.context.getExecutor().execute(new Runnable() {
+
+                @Override
+                public void run () {
+                    drain();
+                }
+            });
+        }
+    }
+
+
+    void drain () {
+        do {
+            Runnable r;
+            while ( ( r = this.pending.poll() ) != null ) {
+                try {
+                    r.run();
+                }
+                catch ( RuntimeException e ) {
+                    log.warn("Watch listener failed", e);
+                }
+            }
+            this.delivering.set(false);
+        }
+        while ( !this.pending.isEmpty() && this.delivering.compareAndSet(false, true) );
+    }
+}
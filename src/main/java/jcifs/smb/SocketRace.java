@@ -0,0 +1,107 @@
+/*
+ * © 2026 agent <agent@local>
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package jcifs.smb;
+
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+
+/**
+ * Races TCP connections to several ports of the same host
+ * 
+ * Ports are in order of preference, sockets that lose the race are closed.
+ * 
+ * @author agent
+ *
+ */
+class SocketRace extends ConnectionRace<Socket> {
+
+    private final String host;
+    private final int[] ports;
+    private final InetAddress localAddr;
+    private final int connTimeout;
+    private final AtomicReferenceArray<Socket> sockets;
+
+
+    /**
+     * @param executor
+     * @param delay
+     *            delay between starting attempts, in milliseconds
+     * @param preferenceWindow
+     *            time a connection to a less preferred port is held back while a preferred one is still connecting,
+     *            in milliseconds
+     * @param host
+     * @param localAddr
+     *            local address to bind to, null for any
+     * @param connTimeout
+     *            connect timeout, in milliseconds
+     * @param ports
+     *            ports in order of preference
+     */
+    SocketRace ( Executor executor, int delay, int preferenceWindow, String host, InetAddress localAddr, int connTimeout, int... ports ) {
+        super(executor, delay, preferenceWindow);
+        this.host = host;
+        this.ports = ports;
+        this.localAddr = localAddr;
+        this.connTimeout = connTimeout;
+        this.sockets = new AtomicReferenceArray<>(ports.length);
+    }
+
+
+    /**
+     * @return the first connected socket
+     * @throws IOException
+     */
+    Socket run () throws IOException {
+        return run(this.ports.length);
+    }
+
+
+    @Override
+    protected Socket attempt ( int index ) throws IOException {
+        Socket s = new Socket();
+        this.sockets.set(index, s);
+        try {
+            if ( this.localAddr != null )
+                s.bind(new InetSocketAddress(this.localAddr, 0));
+            s.connect(new InetSocketAddress(this.host, this.ports[ index ]), this.connTimeout);
+            return s;
+        }
+        catch ( IOException | RuntimeException e ) {
+            s.close();
+            throw e;
+        }
+    }
+
+
+    @Override
+    protected void abort ( int index ) {
+        SmbTransportImpl.closeQuietly(this.sockets.get(index));
+    }
+
+
+    @Override
+    protected void discard ( int index, Socket conn ) {
+        SmbTransportImpl.closeQuietly(conn);
+    }
+}
@@ -100,6 +100,14 @@ class SpnegoContext implements SSPContext {
     }
 
 
+    /**
+     * @return the wrapped mechanism context
+     */
+    SSPContext getMechContext () {
+        return this.mechContext;
+    }
+
+
     /**
      * {@inheritDoc}
      *
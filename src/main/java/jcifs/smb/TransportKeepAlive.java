@@ -0,0 +1,137 @@
+/*
+ * © 2026 agent <agent@local>
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package jcifs.smb;
+
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jcifs.CIFSContext;
+
+
+/**
+ * Periodically probes idle pooled transports using SMB2 echo requests and closes surplus idle connections
+ * 
+ * Echoing keeps the connections from running into the socket idle timeout and from being dropped by firewalls,
+ * and provides a round trip time estimate for each transport. Of the connections to a server that are not in
+ * use, only the most recently used <tt>maxIdle</tt> are kept.
+ * 
+ * @author agent
+ */
+final class TransportKeepAlive {
+
+    private static final Logger log = LoggerFactory.getLogger(TransportKeepAlive.class);
+
+    private final CIFSContext context;
+    private final SmbTransportPoolImpl pool;
+    private final long interval;
+    private final int maxIdle;
+    private final Set<SmbTransportImpl> probing = Collections.newSetFromMap(new ConcurrentHashMap<SmbTransportImpl, Boolean>());
+    private final ScheduledFuture<?> task;
+
+
+    /**
+     * @param tc
+     *            context whose executors to use
+     * @param pool
+     *            pool whose connections to maintain
+     * @param interval
+     *            time in milliseconds after which an idle connection is probed
+     * @param maxIdle
+     *            number of idle connections per server to keep
+     */
+    TransportKeepAlive ( CIFSContext tc, SmbTransportPoolImpl pool, long interval, int maxIdle ) {
+        this.context = tc;
+        this.pool = pool;
+        this.interval = interval;
+        this.maxIdle = maxIdle;
+        // check twice per interval, so that no connection stays idle for much longer than the interval
+        long period = Math.max(interval / 2, 1);
+        this.task = tc.getScheduler().scheduleWithFixedDelay(new Runnable() {
+
+            @Override
+            public void run () {
+                try {
+                    check();
+                }
+                catch ( RuntimeException e ) {
+                    log.warn("Keep alive check failed", e);
+                }
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+    }
+
+
+    /**
+     * Stop probing
+     */
+    void stop () {
+        this.task.cancel(false);
+    }
+
+
+    void check () {
+        if ( this.maxIdle >= 0 ) {
+            this.pool.closeIdle(this.maxIdle);
+        }
+
+        long now = System.currentTimeMillis();
+        for ( final SmbTransportImpl trans : this.pool.getPooledConnections() ) {
+            // echos do not count as activity, but an idle connection only needs to be probed once per interval
+            long last = Math.max(trans.getLastActivity(), trans.getLastEcho());
+            if ( now - last < this.interval || !trans.isEchoCapable() || !this.probing.add(trans) ) {
+                continue;
+            }
+
+            try {
+                this.context.getExecutor().execute(new Runnable() {
+
+                    @Override
+                    public void run () {
+                        try ( SmbTransportImpl t = trans.acquire() ) {
+                            if ( t.isEchoCapable() ) {
+                                long rtt = t.echo();
+                                if ( log.isTraceEnabled() ) {
+                                    log.trace(String.format("Echo on %s took %d ms, smoothed %d ms", t, rtt, t.getRoundTripTime()));
+                                }
+                            }
+                        }
+                        catch ( IOException e ) {
+                            log.debug("Keep alive echo failed on " + trans, e);
+                        }
+                        finally {
+                            TransportKeepAlive.this.probing.remove(trans);
+                        }
+                    }
+                });
+            }
+            catch ( RejectedExecutionException e ) {
+                log.debug("Context is closed", e);
+                this.probing.remove(trans);
+            }
+        }
+    }
+}
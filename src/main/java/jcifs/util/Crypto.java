@@ -22,8 +22,13 @@ import java.security.InvalidKeyException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.Provider;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.crypto.Cipher;
+import javax.crypto.Mac;
 import javax.crypto.NoSuchPaddingException;
 import javax.crypto.spec.SecretKeySpec;
 
@@ -33,12 +38,48 @@ import jcifs.CIFSUnsupportedCryptoException;
 
 
 /**
+ * Factory for the cryptographic primitives used by the library
+ * 
+ * Digests and MACs are created by cloning a prototype instance that is looked up once, instead of going through the
+ * provider framework for every call. Every call still returns a new, independent instance.
+ * 
  * @author mbechler
  *
  */
 public final class Crypto {
 
     private static Provider provider = null;
+    private static volatile boolean providerConfigured;
+
+    private static final Prototypes<MessageDigest> DIGESTS = new Prototypes<MessageDigest>() {
+
+        @Override
+        protected MessageDigest create ( String algorithm, Provider p ) throws NoSuchAlgorithmException {
+            return p != null ? MessageDigest.getInstance(algorithm, p) : MessageDigest.getInstance(algorithm);
+        }
+
+
+        @Override
+        protected MessageDigest copy ( MessageDigest prototype ) throws CloneNotSupportedException {
+            return (MessageDigest) prototype.clone();
+        }
+    };
+
+    private static final Prototypes<Mac> MACS = new Prototypes<Mac>() {
+
+        @Override
+        protected Mac create ( String algorithm, Provider p ) throws NoSuchAlgorithmException {
+            return p != null ? Mac.getInstance(algorithm, p) : Mac.getInstance(algorithm);
+        }
+
+
+        @Override
+        protected Mac copy ( Mac prototype ) throws CloneNotSupportedException {
+            return (Mac) prototype.clone();
+        }
+    };
+
+    private static final ConcurrentMap<String, Provider> CIPHER_PROVIDERS = new ConcurrentHashMap<>();
 
 
     /**
@@ -52,12 +93,10 @@ public final class Crypto {
      * @return MD4 digest
      */
     public static MessageDigest getMD4 () {
-        try {
-            return MessageDigest.getInstance("MD4", getProvider());
-        }
-        catch ( NoSuchAlgorithmException e ) {
-            throw new CIFSUnsupportedCryptoException(e);
+        if ( !providerConfigured ) {
+            return new MD4();
         }
+        return DIGESTS.get("MD4", getProvider());
     }
 
 
@@ -66,12 +105,7 @@ public final class Crypto {
      * @return MD5 digest
      */
     public static MessageDigest getMD5 () {
-        try {
-            return MessageDigest.getInstance("MD5");
-        }
-        catch ( NoSuchAlgorithmException e ) {
-            throw new CIFSUnsupportedCryptoException(e);
-        }
+        return DIGESTS.get("MD5", null);
     }
 
 
@@ -79,12 +113,23 @@ public final class Crypto {
      * @return SHA512 digest
      */
     public static MessageDigest getSHA512 () {
-        try {
-            return MessageDigest.getInstance("SHA-512");
-        }
-        catch ( NoSuchAlgorithmException e ) {
-            throw new CIFSUnsupportedCryptoException(e);
-        }
+        return DIGESTS.get("SHA-512", null);
+    }
+
+
+    /**
+     * @return uninitialized HMAC-SHA256 MAC
+     */
+    public static Mac getHmacSHA256 () {
+        return MACS.get("HmacSHA256", null);
+    }
+
+
+    /**
+     * @return uninitialized AES-CMAC MAC
+     */
+    public static Mac getAesCmac () {
+        return MACS.get("AESCMAC", getProvider());
     }
 
 
@@ -105,7 +150,7 @@ public final class Crypto {
      */
     public static Cipher getArcfour ( byte[] key ) {
         try {
-            Cipher c = Cipher.getInstance("RC4");
+            Cipher c = getCipher("RC4");
             c.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, "RC4"));
             return c;
         }
@@ -129,7 +174,7 @@ public final class Crypto {
         }
 
         try {
-            Cipher c = Cipher.getInstance("DES/ECB/NoPadding");
+            Cipher c = getCipher("DES/ECB/NoPadding");
             c.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, "DES"));
             return c;
         }
@@ -142,6 +187,21 @@ public final class Crypto {
     }
 
 
+    /**
+     * Ciphers cannot be copied, but the provider lookup can be skipped once it is known which provider implements the
+     * transformation.
+     */
+    private static Cipher getCipher ( String transformation ) throws NoSuchAlgorithmException, NoSuchPaddingException {
+        Provider p = CIPHER_PROVIDERS.get(transformation);
+        if ( p != null ) {
+            return Cipher.getInstance(transformation, p);
+        }
+        Cipher c = Cipher.getInstance(transformation);
+        CIPHER_PROVIDERS.putIfAbsent(transformation, c.getProvider());
+        return c;
+    }
+
+
     /**
      * @param key
      *            7-byte "raw" DES key
@@ -187,5 +247,54 @@ public final class Crypto {
             throw new CIFSUnsupportedCryptoException("Provider can't be re-initialized. Provider has already been initialized with "+ provider.getInfo());
         }
         provider = customProvider;
+        providerConfigured = true;
+    }
+
+
+    /**
+     * Prototype instances per algorithm, copied for every use
+     * 
+     * @param <T>
+     */
+    private static abstract class Prototypes <T> {
+
+        private final ConcurrentMap<String, T> prototypes = new ConcurrentHashMap<>();
+        private final Set<String> uncloneable = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+
+        protected abstract T create ( String algorithm, Provider p ) throws NoSuchAlgorithmException;
+
+
+        protected abstract T copy ( T prototype ) throws CloneNotSupportedException;
+
+
+        T get ( String algorithm, Provider p ) {
+            String key = p != null ? algorithm + '/' + p.getName() : algorithm;
+            try {
+                if ( this.uncloneable.contains(key) ) {
+                    return create(algorithm, p);
+                }
+                T prototype = this.prototypes.get(key);
+                if ( prototype != null ) {
+                    return copy(prototype);
+                }
+                prototype = create(algorithm, p);
+                T existing = this.prototypes.putIfAbsent(key, prototype);
+                return copy(existing != null ? existing : prototype);
+            }
+            catch ( CloneNotSupportedException e ) {
+                // implementation is not cloneable, always create a fresh instance
+                this.uncloneable.add(key);
+                try {
+                    return create(algorithm, p);
+                }
+                catch ( NoSuchAlgorithmException e2 ) {
+                    throw new CIFSUnsupportedCryptoException(e2);
+                }
+            }
+            catch ( NoSuchAlgorithmException e ) {
+                throw new CIFSUnsupportedCryptoException(e);
+            }
+        }
     }
 }
@@ -0,0 +1,258 @@
+/*
+ * © 2026 agent <agent@local>
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package jcifs.smb;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+
+/**
+ * @author agent
+ *
+ */
+@SuppressWarnings ( "javadoc" )
+public class ConnectionRaceTest {
+
+    /**
+     * Attempt blocks until aborted
+     */
+    private static final long HANG = -1;
+
+    /**
+     * Attempt fails right away
+     */
+    private static final long FAIL = -2;
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+
+    @After
+    public void tearDown () {
+        this.executor.shutdownNow();
+    }
+
+
+    @Test
+    public void testStaggeredStart () throws IOException {
+        TestRace race = new TestRace(300, 0, HANG, 0);
+        assertEquals("conn1", race.run(2));
+        long gap = TimeUnit.NANOSECONDS.toMillis(race.started[ 1 ] - race.started[ 0 ]);
+        assertTrue("Second attempt started after " + gap, gap >= 250);
+        assertEquals(Arrays.asList(0), race.aborted);
+        assertEquals(Collections.emptyList(), race.discarded);
+    }
+
+
+    @Test
+    public void testStartNextOnFailure () throws IOException {
+        TestRace race = new TestRace(5000, 0, FAIL, 0);
+        long start = System.currentTimeMillis();
+        assertEquals("conn1", race.run(2));
+        assertTrue(System.currentTimeMillis() - start < 2000);
+        assertEquals(Arrays.asList(0), race.failures);
+        assertEquals(Collections.emptyList(), race.aborted);
+    }
+
+
+    @Test
+    public void testAllFailed () {
+        TestRace race = new TestRace(50, 0, FAIL, FAIL);
+        try {
+            race.run(2);
+            fail("Should have failed");
+        }
+        catch ( IOException e ) {
+            assertTrue(e.getMessage().startsWith("attempt"));
+        }
+        assertEquals(2, race.failures.size());
+    }
+
+
+    @Test
+    public void testPreferredWinsWithinWindow () throws IOException {
+        TestRace race = new TestRace(50, 2000, 300, 0);
+        assertEquals("conn0", race.run(2));
+        assertEquals(Arrays.asList(1), race.discarded);
+        assertEquals(Collections.emptyList(), race.aborted);
+    }
+
+
+    @Test
+    public void testPreferenceWindowExpires () throws IOException {
+        TestRace race = new TestRace(50, 300, HANG, 0);
+        long start = System.currentTimeMillis();
+        assertEquals("conn1", race.run(2));
+        long elapsed = System.currentTimeMillis() - start;
+        assertTrue("Returned after " + elapsed, elapsed >= 300 && elapsed < 2000);
+        assertEquals(Arrays.asList(0), race.aborted);
+        assertEquals(Collections.emptyList(), race.discarded);
+    }
+
+
+    @Test
+    public void testPreferredFailureEndsWindow () throws IOException {
+        TestRace race = new TestRace(50, 5000, 300, 0);
+        race.fail[ 0 ] = true;
+        long start = System.currentTimeMillis();
+        assertEquals("conn1", race.run(2));
+        assertTrue(System.currentTimeMillis() - start < 2000);
+        assertEquals(Arrays.asList(0), race.failures);
+    }
+
+
+    @Test
+    public void testLosingSocketClosed () throws IOException {
+        InetAddress lo = InetAddress.getByName("127.0.0.1");
+        try ( ServerSocket preferred = new ServerSocket(0, 5, lo);
+              ServerSocket other = new ServerSocket(0, 5, lo) ) {
+            // both are started at once, the preferred port must win
+            SocketRace race = new SocketRace(this.executor, 0, 5000, "127.0.0.1", null, 5000, preferred.getLocalPort(), other.getLocalPort());
+            try ( Socket s = race.run() ) {
+                assertEquals(preferred.getLocalPort(), s.getPort());
+                assertFalse(s.isClosed());
+
+                preferred.setSoTimeout(5000);
+                try ( Socket accepted = preferred.accept() ) {
+                    accepted.setSoTimeout(200);
+                    accepted.getInputStream().read();
+                    fail("Winning connection was closed");
+                }
+                catch ( SocketTimeoutException e ) {
+                    // still open
+                }
+
+                other.setSoTimeout(1000);
+                try ( Socket accepted = other.accept() ) {
+                    accepted.setSoTimeout(5000);
+                    assertEquals(-1, accepted.getInputStream().read());
+                }
+                catch ( SocketTimeoutException e ) {
+                    // aborted before it connected
+                }
+            }
+        }
+    }
+
+
+    @Test
+    public void testRefusedPortFallsBack () throws IOException {
+        InetAddress lo = InetAddress.getByName("127.0.0.1");
+        int closedPort;
+        try ( ServerSocket ss = new ServerSocket(0, 5, lo) ) {
+            closedPort = ss.getLocalPort();
+        }
+        try ( ServerSocket other = new ServerSocket(0, 5, lo) ) {
+            SocketRace race = new SocketRace(this.executor, 5000, 5000, "127.0.0.1", null, 5000, closedPort, other.getLocalPort());
+            long start = System.currentTimeMillis();
+            try ( Socket s = race.run() ) {
+                assertEquals(other.getLocalPort(), s.getPort());
+            }
+            assertTrue(System.currentTimeMillis() - start < 2000);
+        }
+    }
+
+    private final class TestRace extends ConnectionRace<String> {
+
+        final long[] durations;
+        final boolean[] fail;
+        final long[] started;
+        final CountDownLatch[] abortLatches;
+        final List<Integer> aborted = new CopyOnWriteArrayList<>();
+        final List<Integer> discarded = new CopyOnWriteArrayList<>();
+        final List<Integer> failures = new CopyOnWriteArrayList<>();
+
+
+        /**
+         * @param durations
+         *            time each attempt takes to succeed, or HANG/FAIL
+         */
+        TestRace ( int delay, int preferenceWindow, long... durations ) {
+            super(ConnectionRaceTest.this.executor, delay, preferenceWindow);
+            this.durations = durations;
+            this.fail = new boolean[durations.length];
+            this.started = new long[durations.length];
+            this.abortLatches = new CountDownLatch[durations.length];
+            for ( int i = 0; i < durations.length; i++ ) {
+                this.abortLatches[ i ] = new CountDownLatch(1);
+                this.fail[ i ] = durations[ i ] == FAIL;
+            }
+        }
+
+
+        @Override
+        protected String attempt ( int index ) throws IOException {
+            this.started[ index ] = System.nanoTime();
+            try {
+                long d = this.durations[ index ];
+                if ( d == HANG ) {
+                    this.abortLatches[ index ].await();
+                    throw new IOException("aborted " + index);
+                }
+                else if ( d > 0 ) {
+                    Thread.sleep(d);
+                }
+            }
+            catch ( InterruptedException e ) {
+                throw new IOException(e);
+            }
+            if ( this.fail[ index ] ) {
+                throw new IOException("attempt " + index);
+            }
+            return "conn" + index;
+        }
+
+
+        @Override
+        protected void abort ( int index ) {
+            this.aborted.add(index);
+            this.abortLatches[ index ].countDown();
+        }
+
+
+        @Override
+        protected void discard ( int index, String conn ) {
+            this.discarded.add(index);
+        }
+
+
+        @Override
+        protected void failed ( int index, IOException e ) {
+            this.failures.add(index);
+        }
+    }
+}
@@ -0,0 +1,314 @@
+/*
+ * © 2026 agent <agent@local>
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package jcifs.smb;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import jcifs.CIFSContext;
+import jcifs.CIFSException;
+import jcifs.DfsReferralData;
+import jcifs.config.PropertyConfiguration;
+import jcifs.context.BaseContext;
+import jcifs.internal.dfs.DfsReferralDataImpl;
+import jcifs.internal.dfs.DfsReferralDataInternal;
+
+
+/**
+ * Tests the DFS referral caching with the referral requests stubbed out
+ * 
+ * @author agent
+ *
+ */
+@SuppressWarnings ( "javadoc" )
+public class DfsCacheTest {
+
+    private static final String DOMAIN = "example.com";
+    private static final String ROOT = "root";
+
+    /**
+     * DFS TTL in seconds, background refresh starts after three quarters
+     */
+    private static final int TTL = 2;
+
+    private BaseContext base;
+    private CIFSContext ctx;
+    private StubDfs dfs;
+
+
+    @Before
+    public void setUp () throws CIFSException {
+        Properties props = new Properties();
+        props.setProperty("jcifs.smb.client.dfs.ttl", String.valueOf(TTL));
+        this.base = new BaseContext(new PropertyConfiguration(props));
+        this.ctx = this.base.withCredentials(new NtlmPasswordAuthenticator(DOMAIN, "user", "password"));
+        this.dfs = new StubDfs(this.ctx);
+    }
+
+
+    @After
+    public void tearDown () throws CIFSException {
+        this.dfs.release.countDown();
+        this.base.close();
+    }
+
+
+    @Test
+    public void testConcurrentLookupsCoalesced () throws Exception {
+        this.dfs.blockRoot = true;
+        int threads = 8;
+        ExecutorService exec = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<DfsReferralData>> results = new ArrayList<>();
+            for ( int i = 0; i < threads; i++ ) {
+                results.add(exec.submit(new Callable<DfsReferralData>() {
+
+                    @Override
+                    public DfsReferralData call () throws Exception {
+                        return DfsCacheTest.this.dfs.resolve(DfsCacheTest.this.ctx, DOMAIN, ROOT, "\\");
+                    }
+                }));
+            }
+
+            assertTrue(this.dfs.rootRequested.await(5, TimeUnit.SECONDS));
+            // give the other lookups time to pile up behind the one in flight
+            Thread.sleep(200);
+            this.dfs.release.countDown();
+
+            DfsReferralData first = results.get(0).get(5, TimeUnit.SECONDS);
+            assertEquals("fs1", first.getServer());
+            for ( Future<DfsReferralData> r : results ) {
+                assertSame(first, r.get(5, TimeUnit.SECONDS));
+            }
+        }
+        finally {
+            exec.shutdownNow();
+        }
+        assertEquals(1, this.dfs.domainRequests.get());
+        assertEquals(1, this.dfs.rootRequests.get());
+    }
+
+
+    @Test
+    public void testNegativeLinkCache () throws Exception {
+        for ( int i = 0; i < 3; i++ ) {
+            assertNull(this.dfs.resolve(this.ctx, DOMAIN, ROOT, "\\missing"));
+        }
+        assertEquals(1, this.dfs.linkRequests.get());
+
+        // a link below the missing one is a different lookup
+        assertNull(this.dfs.resolve(this.ctx, DOMAIN, ROOT, "\\other"));
+        assertEquals(2, this.dfs.linkRequests.get());
+
+        // the negative entry expires with the DFS TTL
+        Thread.sleep(TTL * 1000 + 200);
+        assertNull(this.dfs.resolve(this.ctx, DOMAIN, ROOT, "\\missing"));
+        assertEquals(3, this.dfs.linkRequests.get());
+    }
+
+
+    @Test
+    public void testStaleWhileRevalidate () throws Exception {
+        DfsReferralData first = this.dfs.resolve(this.ctx, DOMAIN, ROOT, "\\");
+        assertEquals(1, this.dfs.rootRequests.get());
+
+        // past three quarters of the TTL, but not expired
+        Thread.sleep(TTL * 750 + 200);
+        this.dfs.blockRoot = true;
+        long start = System.currentTimeMillis();
+        assertSame(first, this.dfs.resolve(this.ctx, DOMAIN, ROOT, "\\"));
+        assertTrue("Lookup waited for the refresh", System.currentTimeMillis() - start < 1000);
+
+        // refresh runs in the background, only once
+        assertTrue(this.dfs.rootRequested.await(5, TimeUnit.SECONDS));
+        assertSame(first, this.dfs.resolve(this.ctx, DOMAIN, ROOT, "\\"));
+        assertEquals(2, this.dfs.rootRequests.get());
+        this.dfs.release.countDown();
+
+        long deadline = System.currentTimeMillis() + 5000;
+        DfsReferralData refreshed;
+        while ( ( refreshed = this.dfs.resolve(this.ctx, DOMAIN, ROOT, "\\") ) == first && System.currentTimeMillis() < deadline ) {
+            Thread.sleep(20);
+        }
+        assertEquals("fs2", refreshed.getServer());
+        assertEquals(2, this.dfs.rootRequests.get());
+    }
+
+
+    @Test
+    public void testReloadAfterExpiry () throws Exception {
+        DfsReferralData first = this.dfs.resolve(this.ctx, DOMAIN, ROOT, "\\");
+        assertEquals("fs1", first.getServer());
+
+        Thread.sleep(TTL * 1000 + 200);
+        DfsReferralData second = this.dfs.resolve(this.ctx, DOMAIN, ROOT, "\\");
+        assertNotSame(first, second);
+        assertEquals("fs2", second.getServer());
+        assertEquals(2, this.dfs.rootRequests.get());
+    }
+
+
+    @Test
+    public void testLinkCached () throws Exception {
+        this.dfs.links = true;
+        DfsReferralData dr = this.dfs.resolve(this.ctx, DOMAIN, ROOT, "\\link\\file");
+        assertEquals("target1", dr.getServer());
+        assertSame(dr, this.dfs.resolve(this.ctx, DOMAIN, ROOT, "\\link\\other"));
+        assertEquals(1, this.dfs.linkRequests.get());
+    }
+
+
+    static DfsReferralDataInternal referral ( final String server, final String share, final long ttl ) {
+        final long expiration = System.currentTimeMillis() + ttl * 1000L;
+        return new DfsReferralDataImpl().combine(new DfsReferralData() {
+
+            @Override
+            public <T extends DfsReferralData> T unwrap ( Class<T> type ) {
+                throw new ClassCastException();
+            }
+
+
+            @Override
+            public String getServer () {
+                return server;
+            }
+
+
+            @Override
+            public String getDomain () {
+                return null;
+            }
+
+
+            @Override
+            public String getShare () {
+                return share;
+            }
+
+
+            @Override
+            public int getPathConsumed () {
+                return 0;
+            }
+
+
+            @Override
+            public String getPath () {
+                return null;
+            }
+
+
+            @Override
+            public long getExpiration () {
+                return expiration;
+            }
+
+
+            @Override
+            public DfsReferralData next () {
+                return this;
+            }
+
+
+            @Override
+            public String getLink () {
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Resolver with the referral requests replaced
+     */
+    static final class StubDfs extends DfsImpl {
+
+        final AtomicInteger domainRequests = new AtomicInteger();
+        final AtomicInteger rootRequests = new AtomicInteger();
+        final AtomicInteger linkRequests = new AtomicInteger();
+        final CountDownLatch rootRequested = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        volatile boolean blockRoot;
+        volatile boolean links;
+
+
+        StubDfs ( CIFSContext tc ) {
+            super(tc);
+        }
+
+
+        @Override
+        DfsReferralData fetchDomainReferral ( CIFSContext tf, String authDomain ) throws IOException {
+            this.domainRequests.incrementAndGet();
+            return referral(DOMAIN, null, TTL * 10);
+        }
+
+
+        @Override
+        DfsReferralData fetchDcReferral ( CIFSContext tf, String domain, String dom ) throws IOException {
+            throw new IOException("Not expected");
+        }
+
+
+        @Override
+        DfsReferralDataInternal fetchRootReferral ( CIFSContext tf, String domain, String root, String refServerName ) {
+            int n = this.rootRequests.incrementAndGet();
+            if ( this.blockRoot ) {
+                this.rootRequested.countDown();
+                try {
+                    this.release.await(10, TimeUnit.SECONDS);
+                }
+                catch ( InterruptedException e ) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return referral("fs" + n, root, TTL);
+        }
+
+
+        @Override
+        DfsReferralDataInternal fetchLinkReferral ( CIFSContext tf, String domain, String root, String path, DfsReferralDataInternal rootDr ) {
+            int n = this.linkRequests.incrementAndGet();
+            if ( !this.links ) {
+                return null;
+            }
+            DfsReferralDataInternal dr = referral("target" + n, "share", TTL);
+            dr.setLink(path.substring(0, path.indexOf('\\', 1)));
+            return dr;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * © 2026 agent <agent@local>
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package jcifs.smb;
+
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import jcifs.DialectVersion;
+
+
+/**
+ * @author agent
+ *
+ */
+@SuppressWarnings ( "javadoc" )
+public class NegotiationCacheTest {
+
+    private static final String HOST = "192.0.2.1";
+    private static final long TTL = 60000;
+
+
+    @Test
+    public void testRemembersSMB2 () throws SmbException {
+        NegotiationCache cache = new NegotiationCache();
+        assertFalse(cache.isKnownSMB2(HOST, 445));
+        cache.update(HOST, 445, DialectVersion.SMB1, TTL, false);
+        assertFalse(cache.isKnownSMB2(HOST, 445));
+        cache.update(HOST, 445, DialectVersion.SMB210, TTL, false);
+        assertTrue(cache.isKnownSMB2(HOST, 445));
+        assertFalse(cache.isKnownSMB2(HOST, 139));
+    }
+
+
+    @Test
+    public void testUpgradeAllowed () throws SmbException {
+        NegotiationCache cache = new NegotiationCache();
+        cache.update(HOST, 445, DialectVersion.SMB210, TTL, false);
+        cache.update(HOST, 445, DialectVersion.SMB210, TTL, false);
+        cache.update(HOST, 445, DialectVersion.SMB311, TTL, false);
+        assertTrue(cache.isKnownSMB2(HOST, 445));
+    }
+
+
+    @Test
+    public void testDowngradeRejected () throws SmbException {
+        NegotiationCache cache = new NegotiationCache();
+        cache.update(HOST, 445, DialectVersion.SMB311, TTL, true);
+        for ( int i = 0; i < 2; i++ ) {
+            // the previous dialect stays in effect
+            try {
+                cache.update(HOST, 445, DialectVersion.SMB300, TTL, true);
+                fail("Downgrade not detected");
+            }
+            catch ( SmbException e ) {
+                // expected
+            }
+        }
+        try {
+            cache.update(HOST, 445, DialectVersion.SMB1, TTL, true);
+            fail("Downgrade to SMB1 not detected");
+        }
+        catch ( SmbException e ) {
+            // expected
+        }
+        // other endpoints are independent
+        cache.update(HOST, 139, DialectVersion.SMB1, TTL, true);
+        cache.update(HOST, 445, DialectVersion.SMB311, TTL, true);
+    }
+
+
+    @Test
+    public void testDowngradeReplaced () throws SmbException {
+        NegotiationCache cache = new NegotiationCache();
+        cache.update(HOST, 445, DialectVersion.SMB311, TTL, false);
+        cache.update(HOST, 445, DialectVersion.SMB300, TTL, false);
+        assertTrue(cache.isKnownSMB2(HOST, 445));
+        // the lower dialect replaced the previous one
+        cache.update(HOST, 445, DialectVersion.SMB300, TTL, true);
+        cache.update(HOST, 445, DialectVersion.SMB1, TTL, false);
+        assertFalse(cache.isKnownSMB2(HOST, 445));
+        cache.update(HOST, 445, DialectVersion.SMB1, TTL, true);
+    }
+
+
+    @Test
+    public void testDowngradeAfterExpiry () throws Exception {
+        NegotiationCache cache = new NegotiationCache();
+        cache.update(HOST, 445, DialectVersion.SMB311, 50, false);
+        Thread.sleep(100);
+        assertFalse(cache.isKnownSMB2(HOST, 445));
+        cache.update(HOST, 445, DialectVersion.SMB210, TTL, false);
+        assertTrue(cache.isKnownSMB2(HOST, 445));
+    }
+}
@@ -0,0 +1,229 @@
+/*
+ * © 2026 agent <agent@local>
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package jcifs.smb;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import jcifs.CIFSContext;
+import jcifs.CIFSException;
+import jcifs.config.PropertyConfiguration;
+import jcifs.context.BaseContext;
+
+
+/**
+ * Tests SID lookup coalescing with the LSA round trip stubbed out
+ * 
+ * @author agent
+ *
+ */
+@SuppressWarnings ( "javadoc" )
+public class SIDCacheTest {
+
+    private static final String AUTHORITY = "dc.example.com";
+    private static final String USER_SID = "S-1-5-21-1111111111-2222222222-3333333333-1001";
+    private static final int THREADS = 8;
+
+    private BaseContext ctx;
+    private ExecutorService executor;
+
+
+    @Before
+    public void setUp () throws CIFSException {
+        this.ctx = new BaseContext(new PropertyConfiguration(new Properties()));
+        this.executor = Executors.newFixedThreadPool(THREADS);
+    }
+
+
+    @After
+    public void tearDown () throws CIFSException {
+        this.executor.shutdownNow();
+        this.ctx.close();
+    }
+
+
+    @Test
+    public void testConcurrentLookupsCoalesced () throws Exception {
+        StubCache cache = new StubCache(this.ctx, null);
+        List<Future<SID>> futures = lookupConcurrently(cache);
+        cache.release.countDown();
+
+        for ( Future<SID> f : futures ) {
+            SID s = f.get(5, TimeUnit.SECONDS);
+            assertEquals("user", s.getAccountName());
+            assertEquals("EXAMPLE", s.getDomainName());
+            assertEquals(jcifs.SID.SID_TYPE_USER, s.getType());
+        }
+        assertEquals("Lookups were not coalesced", 1, cache.lookups.get());
+
+        // later lookups are served from the cache
+        SID s = new SID(USER_SID);
+        cache.resolveSids(this.ctx, AUTHORITY, new SID[] {
+            s
+        });
+        assertEquals("user", s.getAccountName());
+        assertEquals(1, cache.lookups.get());
+    }
+
+
+    @Test
+    public void testWaitersFailOnError () throws Exception {
+        StubCache cache = new StubCache(this.ctx, new AssertionError("Lookup blew up"));
+        List<Future<SID>> futures = lookupConcurrently(cache);
+        cache.release.countDown();
+
+        int errors = 0, failures = 0;
+        for ( Future<SID> f : futures ) {
+            try {
+                f.get(5, TimeUnit.SECONDS);
+                fail("Lookup should have failed");
+            }
+            catch ( ExecutionException e ) {
+                if ( e.getCause() instanceof AssertionError ) {
+                    errors++;
+                }
+                else {
+                    assertTrue(e.getCause() instanceof CIFSException);
+                    failures++;
+                }
+            }
+        }
+        // the owner sees the original error, all coalesced waiters are released with a failure
+        assertEquals(1, errors);
+        assertEquals(THREADS - 1, failures);
+        assertEquals(1, cache.lookups.get());
+    }
+
+
+    @Test
+    public void testWaitersFailOnRuntimeException () throws Exception {
+        StubCache cache = new StubCache(this.ctx, new IllegalStateException("Lookup blew up"));
+        List<Future<SID>> futures = lookupConcurrently(cache);
+        cache.release.countDown();
+
+        int failures = 0;
+        for ( Future<SID> f : futures ) {
+            try {
+                f.get(5, TimeUnit.SECONDS);
+                fail("Lookup should have failed");
+            }
+            catch ( ExecutionException e ) {
+                failures++;
+            }
+        }
+        assertEquals(THREADS, failures);
+        assertEquals(1, cache.lookups.get());
+    }
+
+
+    /**
+     * Start lookups of the same SID on all threads and wait until all but the owner wait for its result
+     */
+    private List<Future<SID>> lookupConcurrently ( final StubCache cache ) throws InterruptedException {
+        final List<Thread> threads = new ArrayList<>();
+        List<Future<SID>> futures = new ArrayList<>();
+        for ( int i = 0; i < THREADS; i++ ) {
+            futures.add(this.executor.submit(new Callable<SID>() {
+
+                @Override
+                public SID call () throws CIFSException {
+                    synchronized ( threads ) {
+                        threads.add(Thread.currentThread());
+                    }
+                    SID s = new SID(USER_SID);
+                    cache.resolveSids(SIDCacheTest.this.ctx, AUTHORITY, new SID[] {
+                        s
+                    });
+                    return s;
+                }
+            }));
+        }
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while ( System.currentTimeMillis() < deadline ) {
+            int waiting = 0;
+            synchronized ( threads ) {
+                for ( Thread t : threads ) {
+                    if ( t.getState() == Thread.State.WAITING ) {
+                        waiting++;
+                    }
+                }
+            }
+            if ( waiting == THREADS && cache.lookups.get() == 1 ) {
+                break;
+            }
+            Thread.sleep(10);
+        }
+        return futures;
+    }
+
+    private static final class StubCache extends SIDCacheImpl {
+
+        final AtomicInteger lookups = new AtomicInteger();
+        final CountDownLatch release = new CountDownLatch(1);
+        private final Throwable failure;
+
+
+        StubCache ( CIFSContext ctx, Throwable failure ) {
+            super(ctx);
+            this.failure = failure;
+        }
+
+
+        @Override
+        void resolveSids0 ( String authorityServerName, CIFSContext tc, jcifs.SID[] sids ) throws CIFSException {
+            this.lookups.incrementAndGet();
+            try {
+                this.release.await();
+            }
+            catch ( InterruptedException e ) {
+                throw new CIFSException("Interrupted", e);
+            }
+            if ( this.failure instanceof RuntimeException ) {
+                throw (RuntimeException) this.failure;
+            }
+            else if ( this.failure instanceof Error ) {
+                throw (Error) this.failure;
+            }
+            for ( jcifs.SID sid : sids ) {
+                SID s = sid.unwrap(SID.class);
+                s.type = jcifs.SID.SID_TYPE_USER;
+                s.domainName = "EXAMPLE";
+                s.acctName = "user";
+            }
+        }
+    }
+}
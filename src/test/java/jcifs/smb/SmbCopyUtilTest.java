@@ -0,0 +1,364 @@
+/*
+ * © 2026 agent <agent@local>
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package jcifs.smb;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import jcifs.CIFSException;
+import jcifs.Configuration;
+import jcifs.config.PropertyConfiguration;
+import jcifs.context.BaseContext;
+import jcifs.internal.smb2.ioctl.Smb2IoctlRequest;
+import jcifs.internal.smb2.ioctl.Smb2IoctlResponse;
+import jcifs.internal.util.SMBUtil;
+import jcifs.smb.SmbCopyUtil.CopyChunkLimits;
+
+
+/**
+ * Tests the server side copy strategies against a simulated ioctl target
+ * 
+ * @author agent
+ *
+ */
+@SuppressWarnings ( "javadoc" )
+public class SmbCopyUtilTest {
+
+    private static final long MB = 1024 * 1024;
+    private static final byte[] RESUME_KEY = new byte[24];
+    private static final byte[] SOURCE_FILE_ID = new byte[16];
+
+    private BaseContext ctx;
+    private ExecutorService executor;
+
+
+    @Before
+    public void setUp () throws CIFSException {
+        this.ctx = new BaseContext(new PropertyConfiguration(new Properties()));
+        this.executor = Executors.newCachedThreadPool();
+    }
+
+
+    @After
+    public void tearDown () throws CIFSException {
+        this.executor.shutdownNow();
+        this.ctx.close();
+    }
+
+
+    @Test
+    public void testPipelinedCopyChunk () throws CIFSException {
+        FakeTarget target = new FakeTarget();
+        // only block once the first (synchronous) request taught the limits
+        target.gate = new CountDownLatch(4);
+        long size = 9 * 16 * MB + 123;
+        SmbCopyUtil.copyChunks(this.executor, target, RESUME_KEY, 0, size, false);
+
+        assertCovered(target, 0, size);
+        assertEquals(10, target.requests.get());
+        assertEquals("Requests were not sent concurrently", 4, target.maxInFlight.get());
+        assertNotNull(target.getCopyChunkLimits());
+    }
+
+
+    @Test
+    public void testCopyChunkLearnsLimits () throws CIFSException {
+        FakeTarget target = new FakeTarget();
+        target.serverLimits = new CopyChunkLimits(16, 64 * 1024, (int) MB);
+        long size = 10 * MB + 5;
+        SmbCopyUtil.copyChunks(this.executor, target, RESUME_KEY, 0, size, true);
+
+        assertCovered(target, 0, size);
+        assertEquals(1, target.rejected.get());
+        // one rejected plus eleven accepted requests of at most 1MB
+        assertEquals(12, target.requests.get());
+        CopyChunkLimits learned = target.getCopyChunkLimits();
+        assertEquals(16, learned.maxChunks);
+        assertEquals(64 * 1024, learned.maxChunkSize);
+        assertEquals(MB, learned.byteLimit);
+        assertEquals(Smb2IoctlRequest.FSCTL_SRV_COPYCHUNK_WRITE, target.lastCtlCode);
+    }
+
+
+    @Test
+    public void testCopyChunkKnownLimits () throws CIFSException {
+        FakeTarget target = new FakeTarget();
+        target.serverLimits = new CopyChunkLimits(16, 64 * 1024, (int) MB);
+        target.setCopyChunkLimits(target.serverLimits);
+        SmbCopyUtil.copyChunks(this.executor, target, RESUME_KEY, 3 * MB, 7 * MB, false);
+
+        assertCovered(target, 3 * MB, 7 * MB);
+        assertEquals(0, target.rejected.get());
+        assertEquals(4, target.requests.get());
+    }
+
+
+    @Test
+    public void testDuplicateExtents () throws CIFSException {
+        FakeTarget target = new FakeTarget();
+        long size = 2 * 1024 * MB + 17;
+        assertTrue(SmbCopyUtil.duplicateExtents(target, SOURCE_FILE_ID, size));
+
+        assertEquals(size, target.endOfFile);
+        assertCovered(target, 0, size);
+        // split at 1GB per request
+        assertEquals(3, target.requests.get());
+        assertFalse(target.duplicateExtentsUnsupported);
+    }
+
+
+    @Test
+    public void testDuplicateExtentsUnsupportedFallback () throws CIFSException {
+        FakeTarget target = new FakeTarget();
+        target.duplicateStatus = 0xC00000BB; // NT_STATUS_NOT_SUPPORTED
+        long size = 20 * MB;
+        assertFalse(SmbCopyUtil.duplicateExtents(target, SOURCE_FILE_ID, size));
+        assertTrue(target.duplicateExtentsUnsupported);
+        assertTrue(target.ranges.isEmpty());
+
+        SmbCopyUtil.copyChunks(this.executor, target, RESUME_KEY, 0, size, false);
+        assertCovered(target, 0, size);
+        assertEquals(Smb2IoctlRequest.FSCTL_SRV_COPYCHUNK, target.lastCtlCode);
+    }
+
+
+    @Test
+    public void testDuplicateExtentsFailureFallback () throws CIFSException {
+        FakeTarget target = new FakeTarget();
+        target.duplicateStatus = NtStatus.NT_STATUS_ACCESS_DENIED;
+        assertFalse(SmbCopyUtil.duplicateExtents(target, SOURCE_FILE_ID, MB));
+        // may work for other files on the same tree
+        assertFalse(target.duplicateExtentsUnsupported);
+        assertNull(target.getCopyChunkLimits());
+    }
+
+
+    private static void assertCovered ( FakeTarget target, long start, long end ) {
+        List<long[]> ranges;
+        synchronized ( target.ranges ) {
+            ranges = new ArrayList<>(target.ranges);
+        }
+        Collections.sort(ranges, new Comparator<long[]>() {
+
+            @Override
+            public int compare ( long[] o1, long[] o2 ) {
+                return Long.compare(o1[ 0 ], o2[ 0 ]);
+            }
+        });
+        long off = start;
+        for ( long[] r : ranges ) {
+            assertEquals("Gap or overlap in copied ranges", off, r[ 0 ]);
+            assertEquals("Source and target offset differ", r[ 0 ], r[ 1 ]);
+            off += r[ 2 ];
+        }
+        assertEquals(end, off);
+    }
+
+    /**
+     * Decodes the ioctl requests and answers them like a server would, remembering what was copied
+     */
+    private final class FakeTarget implements SmbCopyUtil.CopyTarget {
+
+        final List<long[]> ranges = new ArrayList<>();
+        final AtomicInteger requests = new AtomicInteger();
+        final AtomicInteger rejected = new AtomicInteger();
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+
+        volatile CopyChunkLimits limits;
+        volatile CopyChunkLimits serverLimits;
+        volatile CountDownLatch gate;
+        volatile int duplicateStatus = NtStatus.NT_STATUS_OK;
+        volatile boolean duplicateExtentsUnsupported;
+        volatile long endOfFile = -1;
+        volatile int lastCtlCode;
+
+
+        @Override
+        public Configuration getConfig () {
+            return SmbCopyUtilTest.this.ctx.getConfig();
+        }
+
+
+        @Override
+        public byte[] getFileId () {
+            return new byte[16];
+        }
+
+
+        @Override
+        public void setEndOfFile ( long size ) {
+            this.endOfFile = size;
+        }
+
+
+        @Override
+        public CopyChunkLimits getCopyChunkLimits () {
+            return this.limits;
+        }
+
+
+        @Override
+        public void setCopyChunkLimits ( CopyChunkLimits l ) {
+            this.limits = l;
+        }
+
+
+        @Override
+        public void markDuplicateExtentsUnsupported () {
+            this.duplicateExtentsUnsupported = true;
+        }
+
+
+        @Override
+        public Smb2IoctlResponse ioctl ( Smb2IoctlRequest req ) throws CIFSException {
+            this.requests.incrementAndGet();
+            int cur = this.inFlight.incrementAndGet();
+            try {
+                CountDownLatch g = this.gate;
+                if ( g != null && this.limits != null ) {
+                    g.countDown();
+                    g.await(5, TimeUnit.SECONDS);
+                }
+                int max;
+                while ( ( max = this.maxInFlight.get() ) < cur && !this.maxInFlight.compareAndSet(max, cur) ) {
+                    // retry
+                }
+                return handle(req);
+            }
+            catch ( InterruptedException e ) {
+                throw new SmbException("Interrupted", e);
+            }
+            finally {
+                this.inFlight.decrementAndGet();
+            }
+        }
+
+
+        private Smb2IoctlResponse handle ( Smb2IoctlRequest req ) throws CIFSException {
+            byte[] buf = new byte[req.size()];
+            req.encode(buf, 0);
+            int ctlCode = SMBUtil.readInt4(buf, 68);
+            int in = SMBUtil.readInt4(buf, 88);
+            this.lastCtlCode = ctlCode;
+
+            if ( ctlCode == Smb2IoctlRequest.FSCTL_DUPLICATE_EXTENTS_TO_FILE ) {
+                if ( this.duplicateStatus == 0xC00000BB ) {
+                    throw new SmbUnsupportedOperationException();
+                }
+                else if ( this.duplicateStatus != NtStatus.NT_STATUS_OK ) {
+                    throw new SmbException(this.duplicateStatus, null);
+                }
+                long src = SMBUtil.readInt8(buf, in + 16);
+                long tgt = SMBUtil.readInt8(buf, in + 24);
+                long count = SMBUtil.readInt8(buf, in + 32);
+                record(src, tgt, count);
+                return respond(req, NtStatus.NT_STATUS_OK, ctlCode, new byte[0]);
+            }
+
+            int chunks = SMBUtil.readInt4(buf, in + 24);
+            CopyChunkLimits sl = this.serverLimits;
+            long total = 0;
+            for ( int i = 0; i < chunks; i++ ) {
+                int len = SMBUtil.readInt4(buf, in + 32 + i * 24 + 16);
+                total += len;
+                if ( sl != null && len > sl.maxChunkSize ) {
+                    return reject(req, ctlCode, sl);
+                }
+            }
+            if ( sl != null && ( chunks > sl.maxChunks || total > sl.byteLimit ) ) {
+                return reject(req, ctlCode, sl);
+            }
+            for ( int i = 0; i < chunks; i++ ) {
+                int c = in + 32 + i * 24;
+                record(SMBUtil.readInt8(buf, c), SMBUtil.readInt8(buf, c + 8), SMBUtil.readInt4(buf, c + 16));
+            }
+            return respond(req, NtStatus.NT_STATUS_OK, ctlCode, copyChunkOutput(chunks, 0, (int) total));
+        }
+
+
+        private Smb2IoctlResponse reject ( Smb2IoctlRequest req, int ctlCode, CopyChunkLimits sl ) throws CIFSException {
+            this.rejected.incrementAndGet();
+            respond(req, NtStatus.NT_STATUS_INVALID_PARAMETER, ctlCode, copyChunkOutput(sl.maxChunks, sl.maxChunkSize, sl.byteLimit));
+            // like the transport does for any non success status
+            throw new SmbException(NtStatus.NT_STATUS_INVALID_PARAMETER, null);
+        }
+
+
+        private void record ( long src, long tgt, long len ) {
+            synchronized ( this.ranges ) {
+                this.ranges.add(new long[] {
+                    src, tgt, len
+                });
+            }
+        }
+
+
+        private byte[] copyChunkOutput ( int chunksWritten, int chunkBytesWritten, int totalBytesWritten ) {
+            byte[] out = new byte[12];
+            SMBUtil.writeInt4(chunksWritten, out, 0);
+            SMBUtil.writeInt4(chunkBytesWritten, out, 4);
+            SMBUtil.writeInt4(totalBytesWritten, out, 8);
+            return out;
+        }
+
+
+        private Smb2IoctlResponse respond ( Smb2IoctlRequest req, int status, int ctlCode, byte[] output ) throws CIFSException {
+            byte[] buf = new byte[64 + 48 + output.length];
+            buf[ 0 ] = (byte) 0xFE;
+            buf[ 1 ] = 'S';
+            buf[ 2 ] = 'M';
+            buf[ 3 ] = 'B';
+            SMBUtil.writeInt2(64, buf, 4);
+            SMBUtil.writeInt4(status, buf, 8);
+            SMBUtil.writeInt2(0x0B, buf, 12);
+            SMBUtil.writeInt4(0x1, buf, 16); // SMB2_FLAGS_SERVER_TO_REDIR
+
+            SMBUtil.writeInt2(49, buf, 64);
+            SMBUtil.writeInt4(ctlCode, buf, 68);
+            SMBUtil.writeInt4(112, buf, 88); // input offset
+            SMBUtil.writeInt4(112, buf, 96); // output offset
+            SMBUtil.writeInt4(output.length, buf, 100);
+            System.arraycopy(output, 0, buf, 112, output.length);
+
+            Smb2IoctlResponse resp = req.initResponse(SmbCopyUtilTest.this.ctx);
+            resp.decode(buf, 0);
+            resp.received();
+            return resp;
+        }
+    }
+}
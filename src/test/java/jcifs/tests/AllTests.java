@@ -46,6 +46,11 @@ import jcifs.CIFSContext;
 import jcifs.CIFSException;
 import jcifs.config.PropertyConfiguration;
 import jcifs.context.BaseContext;
+import jcifs.smb.ConnectionRaceTest;
+import jcifs.smb.DfsCacheTest;
+import jcifs.smb.NegotiationCacheTest;
+import jcifs.smb.SIDCacheTest;
+import jcifs.smb.SmbCopyUtilTest;
 
 
 /**
@@ -56,7 +61,9 @@ import jcifs.context.BaseContext;
 @SuiteClasses ( {
     ContextConfigTest.class, PACTest.class, NtlmTest.class, FileLocationTest.class, SessionTest.class, KerberosTest.class, TimeoutTest.class,
     SidTest.class, NamingTest.class, DfsTest.class, FileAttributesTest.class, EnumTest.class, PipeTest.class, FileOperationsTest.class,
-    WatchTest.class, ReadWriteTest.class, ConcurrencyTest.class, RandomAccessFileTest.class, OplockTests.class
+    WatchTest.class, ReadWriteTest.class, ConcurrencyTest.class, RandomAccessFileTest.class, OplockTests.class,
+    SIDCacheTest.class, SmbCopyUtilTest.class, DfsCacheTest.class, NameServiceClientTest.class, ConnectionRaceTest.class, NegotiationCacheTest.class,
+    NtlmChallengeProviderTest.class, CryptoTest.class, MetricsTest.class
 } )
 
 public class AllTests {
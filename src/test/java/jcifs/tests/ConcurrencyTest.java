@@ -49,14 +49,18 @@ import jcifs.CIFSContext;
 import jcifs.SmbConstants;
 import jcifs.SmbResource;
 import jcifs.SmbSession;
+import jcifs.SmbTransport;
+import jcifs.context.BaseContext;
 import jcifs.internal.smb2.Smb2Constants;
 import jcifs.internal.smb2.create.Smb2CloseRequest;
 import jcifs.internal.smb2.create.Smb2CreateRequest;
 import jcifs.smb.NtStatus;
+import jcifs.smb.NtlmPasswordAuthenticator;
 import jcifs.smb.SmbException;
 import jcifs.smb.SmbFile;
 import jcifs.smb.SmbFileOutputStream;
 import jcifs.smb.SmbSessionInternal;
+import jcifs.smb.SmbTreeHandleInternal;
 import jcifs.smb.SmbTransportInternal;
 import jcifs.smb.SmbTreeInternal;
 import jcifs.util.transport.TransportException;
@@ -490,6 +494,76 @@ public class ConcurrencyTest extends BaseCIFSTest {
     }
 
 
+    @Test
+    public void testConcurrentSessionSetup () throws Exception {
+        RecordingMetricsCollector m = new RecordingMetricsCollector();
+        CIFSContext ctx = new BaseContext(getContext().getConfig(), m);
+        try {
+            List<SessionSetupTestCase> runnables = new ArrayList<>();
+            for ( int i = 0; i < 10; i++ ) {
+                // credentials that are not equal to each other, so that every worker needs its own session
+                runnables.add(new SessionSetupTestCase(
+                    ctx.withCredentials(new DistinctNtlmCredentials(getTestUserDomain(), getTestUser(), getTestUserPassword()))));
+            }
+            runMultiTestCase(runnables, 60);
+            long setups = m.get(m.commands, "Smb2SessionSetupRequest") + m.get(m.commands, "SmbComSessionSetupAndX");
+            assertTrue("Expected a session setup per worker, got " + setups, setups >= runnables.size());
+        }
+        finally {
+            ctx.close();
+        }
+    }
+
+    @Test
+    public void testSessionSetupWhileTransportLocked () throws Exception {
+        CIFSContext ctx = withTestNTLMCredentials(getContext());
+        try ( SmbFile root = new SmbFile(getTestShareURL(), ctx);
+              SmbTreeHandleInternal th = (SmbTreeHandleInternal) root.getTreeHandle();
+              SmbSession sess = th.getSession();
+              SmbTransport trans = sess.unwrap(SmbSessionInternal.class).getTransport() ) {
+            List<SessionSetupTestCase> runnables = new ArrayList<>();
+            for ( int i = 0; i < 10; i++ ) {
+                // both workers need the same new session, one of them holds the transport monitor
+                // like DFS referral lookups do while the other one may be setting up the session
+                CIFSContext c = ctx.withCredentials(new DistinctNtlmCredentials(getTestUserDomain(), getTestUser(), getTestUserPassword()));
+                runnables.add(new SessionSetupTestCase(c));
+                runnables.add(new SessionSetupTestCase(c, trans));
+            }
+            runMultiTestCase(runnables, 60);
+        }
+    }
+
+
+    private static final class DistinctNtlmCredentials extends NtlmPasswordAuthenticator {
+
+        private static final long serialVersionUID = 1L;
+
+
+        DistinctNtlmCredentials ( String domain, String username, String password ) {
+            super(domain, username, password);
+        }
+
+
+        @Override
+        public NtlmPasswordAuthenticator clone () {
+            // sessions keep a clone, which must still match the context's credentials
+            return this;
+        }
+
+
+        @Override
+        public boolean equals ( Object obj ) {
+            return this == obj;
+        }
+
+
+        @Override
+        public int hashCode () {
+            return System.identityHashCode(this);
+        }
+    }
+
+
     private void runMultiTestCase ( List<? extends MultiTestCase> testcases, int timeoutSecs ) throws InterruptedException {
         for ( Runnable r : testcases ) {
             this.executor.submit(r);
@@ -508,6 +582,44 @@ public class ConcurrencyTest extends BaseCIFSTest {
         boolean completed;
     }
 
+    private class SessionSetupTestCase extends MultiTestCase {
+
+        private final CIFSContext ctx;
+        private final Object monitor;
+
+
+        public SessionSetupTestCase ( CIFSContext ctx ) {
+            this(ctx, null);
+        }
+
+
+        public SessionSetupTestCase ( CIFSContext ctx, Object monitor ) {
+            this.ctx = ctx;
+            this.monitor = monitor;
+        }
+
+
+        @Override
+        public void run () {
+            try ( SmbFile f = new SmbFile(getTestShareURL(), this.ctx) ) {
+                if ( this.monitor != null ) {
+                    synchronized ( this.monitor ) {
+                        f.exists();
+                    }
+                }
+                else {
+                    f.exists();
+                }
+                this.completed = true;
+            }
+            catch (
+                IOException |
+                RuntimeException e ) {
+                log.error("Test case failed", e);
+            }
+        }
+    }
+
     private class MutiThreadTestCase extends MultiTestCase {
 
         public MutiThreadTestCase () {}
@@ -22,6 +22,9 @@ import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
 
 import jcifs.context.BaseContext;
 import org.hamcrest.CoreMatchers;
@@ -223,6 +226,33 @@ public class ContextConfigTest {
 
 
 
+    @Test
+    public void testExecutorsShutdownOnClose () throws Exception {
+        CIFSContext ctx = new BaseContext(new PropertyConfiguration(new Properties()));
+        CIFSContext wrapped = ctx.withAnonymousCredentials();
+        ExecutorService executor = wrapped.getExecutor();
+        ScheduledExecutorService scheduler = wrapped.getScheduler();
+        assertSame(executor, ctx.getExecutor());
+        assertSame(scheduler, ctx.getScheduler());
+        assertTrue(executor.submit(new Callable<Boolean>() {
+
+            @Override
+            public Boolean call () {
+                return Thread.currentThread().isDaemon();
+            }
+        }).get());
+
+        ctx.close();
+        assertTrue(executor.isShutdown());
+        assertTrue(scheduler.isShutdown());
+
+        // usable again after closing
+        assertNotSame(executor, ctx.getExecutor());
+        assertFalse(ctx.getExecutor().isShutdown());
+        ctx.close();
+    }
+
+
     @Test
     public void testPasswordAt() throws MalformedURLException, CIFSException {
         Config.registerSmbURLHandler();
@@ -0,0 +1,180 @@
+/*
+ * © 2026 agent <agent@local>
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package jcifs.tests;
+
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNotSame;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.junit.Test;
+
+import jcifs.smb.NtlmUtil;
+import jcifs.util.Crypto;
+
+
+/**
+ * Checks the cached/pure java crypto primitives against the provider implementations
+ * 
+ * @author agent
+ */
+@SuppressWarnings ( "javadoc" )
+public class CryptoTest {
+
+    private static final String[] INPUTS = new String[] {
+        "", "a", "abc", "message digest", "abcdefghijklmnopqrstuvwxyz", "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789",
+        "12345678901234567890123456789012345678901234567890123456789012345678901234567890"
+    };
+
+
+    @Test
+    public void testMD4Vectors () {
+        // RFC 1320 test suite
+        String[] expect = new String[] {
+            "31D6CFE0D16AE931B73C59D7E0C089C0", "BDE52CB31DE33E46245E05FBDBD6FB24", "A448017AAF21D8525FC10AE87AA6729D",
+            "D9130A8164549FE818874806E1C7014B", "D79E1C308AA5BBCDEEA8ED63DF412DA9", "043F8582F241DB351CE627E153E7F0E4",
+            "E33B4DDC9C38F2199C3E7B164FCC0536"
+        };
+        for ( int i = 0; i < INPUTS.length; i++ ) {
+            MessageDigest md4 = Crypto.getMD4();
+            md4.update(INPUTS[ i ].getBytes(StandardCharsets.US_ASCII));
+            assertArrayEquals(INPUTS[ i ], decode(expect[ i ]), md4.digest());
+        }
+    }
+
+
+    @Test
+    public void testMD4Provider () throws Exception {
+        byte[] data = new byte[1000];
+        for ( int i = 0; i < data.length; i++ ) {
+            data[ i ] = (byte) ( i * 31 );
+        }
+        for ( int len = 0; len < data.length; len += 7 ) {
+            MessageDigest ref = MessageDigest.getInstance("MD4", new BouncyCastleProvider());
+            ref.update(data, 0, len);
+
+            MessageDigest md4 = Crypto.getMD4();
+            // split updates across block boundaries
+            int split = len / 3;
+            md4.update(data, 0, split);
+            if ( split < len ) {
+                md4.update(data[ split ]);
+                md4.update(data, split + 1, len - split - 1);
+            }
+            assertArrayEquals(ref.digest(), md4.digest());
+        }
+    }
+
+
+    @Test
+    public void testHMACT64 () throws Exception {
+        byte[] key = decode("0102030405060708090A0B0C0D0E0F10");
+        for ( String input : INPUTS ) {
+            Mac ref = Mac.getInstance("HmacMD5");
+            ref.init(new SecretKeySpec(key, "HmacMD5"));
+            MessageDigest hmac = Crypto.getHMACT64(key);
+            hmac.update(input.getBytes(StandardCharsets.US_ASCII));
+            assertArrayEquals(ref.doFinal(input.getBytes(StandardCharsets.US_ASCII)), hmac.digest());
+        }
+    }
+
+
+    @Test
+    public void testIndependentInstances () throws Exception {
+        MessageDigest a = Crypto.getMD5();
+        MessageDigest b = Crypto.getMD5();
+        assertNotSame(a, b);
+        a.update((byte) 1);
+        assertArrayEquals(MessageDigest.getInstance("MD5").digest(), b.digest());
+
+        Mac m1 = Crypto.getHmacSHA256();
+        Mac m2 = Crypto.getHmacSHA256();
+        assertNotSame(m1, m2);
+        m1.init(new SecretKeySpec(new byte[16], "HMAC"));
+        m2.init(new SecretKeySpec(new byte[] {
+            1
+        }, "HMAC"));
+        Mac ref = Mac.getInstance("HmacSHA256");
+        ref.init(new SecretKeySpec(new byte[16], "HMAC"));
+        assertArrayEquals(ref.doFinal(), m1.doFinal());
+
+        Mac cmac = Crypto.getAesCmac();
+        cmac.init(new SecretKeySpec(new byte[16], "HMAC"));
+        Mac cref = Mac.getInstance("AESCMAC", new BouncyCastleProvider());
+        cref.init(new SecretKeySpec(new byte[16], "HMAC"));
+        assertArrayEquals(cref.doFinal(), cmac.doFinal());
+    }
+
+
+    @Test
+    public void testNTLMv2Response () throws Exception {
+        // MS-NLMP 4.2.4
+        byte[] responseKeyNT = NtlmUtil.nTOWFv2("Domain", "User", "Password");
+        assertArrayEquals(decode("0C868A403BFD7A93A3001EF22EF02E3F"), responseKeyNT);
+        assertArrayEquals(decode("A4F49C406510BDCAB6824EE7C30FD852"), NtlmUtil.getNTHash("Password"));
+    }
+
+
+    @Test
+    public void testConcurrentUse () throws Exception {
+        final byte[] expect = NtlmUtil.nTOWFv2("Domain", "User", "Password");
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for ( int i = 0; i < 8; i++ ) {
+                futures.add(executor.submit(new Callable<Void>() {
+
+                    @Override
+                    public Void call () throws Exception {
+                        for ( int j = 0; j < 1000; j++ ) {
+                            assertArrayEquals(expect, NtlmUtil.nTOWFv2("Domain", "User", "Password"));
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for ( Future<?> f : futures ) {
+                f.get();
+            }
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+
+    private static byte[] decode ( String hex ) {
+        byte[] data = new byte[hex.length() / 2];
+        for ( int i = 0; i < data.length; i++ ) {
+            data[ i ] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+        }
+        return data;
+    }
+}
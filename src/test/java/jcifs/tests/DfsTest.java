@@ -27,6 +27,7 @@ import static org.junit.Assert.assertTrue;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.Collection;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 
@@ -46,6 +47,7 @@ import jcifs.DfsReferralData;
 import jcifs.DfsResolver;
 import jcifs.SmbResource;
 import jcifs.SmbTransport;
+import jcifs.config.DelegatingConfiguration;
 import jcifs.internal.dfs.DfsReferralDataImpl;
 import jcifs.smb.DfsImpl;
 
@@ -224,6 +226,51 @@ public class DfsTest extends BaseCIFSTest {
     }
 
 
+    @Test
+    public void testTargetOrder () throws CIFSException {
+        CIFSContext context = withConfig(getContext(), new DelegatingConfiguration(getContext().getConfig()) {
+
+            @Override
+            public boolean isDfsPreferLowLatency () {
+                return true;
+            }
+        });
+        DfsImpl dfs = new DfsImpl(context);
+
+        DfsReferralDataImpl dr1 = new DfsReferralDataImpl() {
+
+            @Override
+            public String getServer () {
+                return "slow";
+            }
+        };
+        DfsReferralDataImpl dr2 = new DfsReferralDataImpl() {
+
+            @Override
+            public String getServer () {
+                return "fast";
+            }
+        };
+        dr1.append(dr2);
+
+        dfs.targetConnected("slow", 50);
+        dfs.targetConnected("fast", 5);
+        // reused connections carry no latency and must not affect the order
+        dfs.targetConnected("fast", -1);
+        List<DfsReferralData> order = dfs.orderTargets(context, dr1);
+        assertEquals(2, order.size());
+        assertEquals("fast", order.get(0).getServer());
+
+        // by default the server's order is kept
+        assertEquals("slow", dfs.orderTargets(getContext(), dr1).get(0).getServer());
+
+        dfs.targetFailed(context, "fast");
+        order = dfs.orderTargets(context, dr1);
+        assertEquals("slow", order.get(0).getServer());
+        assertEquals(2, dfs.getTargetStatistics().size());
+    }
+
+
     @Test
     public void testStandaloneDFSCacheSubresource () throws CIFSException {
         CIFSContext context = getContext();
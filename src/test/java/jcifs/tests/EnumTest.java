@@ -27,10 +27,12 @@ import java.net.MalformedURLException;
 import java.net.UnknownHostException;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Properties;
 import java.util.Set;
 
 import org.junit.Assert;
@@ -46,17 +48,22 @@ import org.slf4j.LoggerFactory;
 import jcifs.CIFSContext;
 import jcifs.CIFSException;
 import jcifs.CloseableIterator;
+import jcifs.DirectoryInfoClass;
 import jcifs.ResolverType;
 import jcifs.SmbConstants;
 import jcifs.SmbResource;
 import jcifs.SmbTreeHandle;
+import jcifs.SmbTreeVisitor;
 import jcifs.config.DelegatingConfiguration;
+import jcifs.config.PropertyConfiguration;
+import jcifs.context.BaseContext;
 import jcifs.context.CIFSContextWrapper;
 import jcifs.netbios.NameServiceClientImpl;
 import jcifs.smb.DosFileFilter;
 import jcifs.smb.SmbException;
 import jcifs.smb.SmbFile;
 import jcifs.smb.SmbFilenameFilter;
+import jcifs.smb.SmbTreeWalker;
 import jcifs.smb.SmbUnsupportedOperationException;
 
 
@@ -728,8 +735,106 @@ public class EnumTest extends BaseCIFSTest {
 
     }
 
+    @Test
+    public void testDirEnumInfoClasses () throws CIFSException, MalformedURLException, UnknownHostException {
+        try ( SmbFile f = createTestDirectory() ) {
+            try ( SmbFile a = new SmbFile(f, "a");
+                  SmbFile b = new SmbFile(f, "b/") ) {
+                a.createNewFile();
+                b.mkdir();
+
+                for ( DirectoryInfoClass infoClass : DirectoryInfoClass.values() ) {
+                    Set<String> names = new HashSet<>();
+                    try ( CloseableIterator<SmbResource> chld = f.children("*", infoClass) ) {
+                        while ( chld.hasNext() ) {
+                            try ( SmbResource next = chld.next() ) {
+                                names.add(next.getName());
+                                assertTrue(next.exists());
+                                if ( next.getName().startsWith("b") ) {
+                                    assertTrue(next.isDirectory());
+                                }
+                                if ( infoClass == DirectoryInfoClass.ID_BOTH_DIRECTORY_INFO || infoClass == DirectoryInfoClass.ID_FULL_DIRECTORY_INFO ) {
+                                    try ( SmbTreeHandle th = f.getTreeHandle() ) {
+                                        if ( th.isSMB2() ) {
+                                            assertTrue(next.fileIndex() != 0);
+                                        }
+                                    }
+                                }
+                            }
+                        }
+                    }
+                    assertEquals(2, names.size());
+                }
+            }
+            finally {
+                f.delete();
+            }
+        }
+    }
+
+
+    @Test
+    public void testTreeWalk () throws CIFSException, MalformedURLException, UnknownHostException {
+        try ( SmbFile f = createTestDirectory() ) {
+            try {
+                for ( int i = 0; i < 3; i++ ) {
+                    try ( SmbResource d = f.resolve("d" + i + "/") ) {
+                        d.mkdir();
+                        for ( int j = 0; j < 3; j++ ) {
+                            try ( SmbResource sd = d.resolve("sd" + j + "/");
+                                  SmbResource sf = sd.resolve("file") ) {
+                                sd.mkdir();
+                                sf.createNewFile();
+                            }
+                        }
+                    }
+                }
+
+                final Set<String> seen = Collections.synchronizedSet(new HashSet<String>());
+                SmbTreeVisitor visitor = new SmbTreeVisitor() {
+
+                    @Override
+                    public boolean visit ( SmbResource resource, int depth ) throws CIFSException {
+                        seen.add(resource.getLocator().getUNCPath());
+                        return true;
+                    }
+
+
+                    @Override
+                    public void visitFailed ( SmbResource directory, CIFSException e ) throws CIFSException {
+                        throw e;
+                    }
+                };
+
+                SmbTreeWalker walker = new SmbTreeWalker(f);
+                walker.setMaxInFlightPerServer(2);
+                assertEquals(3 + 9 + 9, walker.walk(visitor));
+                assertEquals(3 + 9 + 9, seen.size());
+
+                seen.clear();
+                walker.setMaxDepth(2);
+                assertEquals(3 + 9, walker.walk(visitor));
+            }
+            finally {
+                f.delete();
+            }
+        }
+    }
+
+
     @Test
     public void testListSmallBufferSize() throws CIFSException {
+        testListSmallBufferSize(true);
+    }
+
+
+    @Test
+    public void testListSmallBufferSizeNoPrefetch () throws CIFSException {
+        testListSmallBufferSize(false);
+    }
+
+
+    private void testListSmallBufferSize ( final boolean prefetch ) throws CIFSException {
         int numFiles = 100;
         CIFSContext ctx = getContext();
         ctx = withConfig(ctx, new DelegatingConfiguration(ctx.getConfig()) {
@@ -738,6 +843,12 @@ public class EnumTest extends BaseCIFSTest {
             public int getListSize () {
                 return 1024;
             }
+
+
+            @Override
+            public boolean isListPrefetch () {
+                return prefetch;
+            }
         });
         ctx = withTestNTLMCredentials(ctx);
         try ( SmbResource root = ctx.get(getTestShareURL());
@@ -770,6 +881,49 @@ public class EnumTest extends BaseCIFSTest {
         }
     }
 
+    @Test
+    public void testListLargeMtu () throws CIFSException {
+        // long names, so that a single page of the listing exceeds a credit's 64k payload
+        int numFiles = 300;
+        Properties props = new Properties();
+        props.putAll(getProperties());
+        props.setProperty("jcifs.smb.client.largeMtuEnabled", "true");
+        props.setProperty("jcifs.smb.client.maximumBufferSize", "262144");
+        props.setProperty("jcifs.smb.client.transaction_buf_size", "262144");
+        props.setProperty("jcifs.smb.client.listSize", "262144");
+        CIFSContext ctx = withTestNTLMCredentials(new BaseContext(new PropertyConfiguration(props)));
+        try ( SmbResource root = ctx.get(getTestShareURL());
+              SmbResource f = root.resolve(makeRandomDirectoryName()) ) {
+            f.mkdir();
+            try {
+                String prefix = repeat('x', 200);
+                for ( int i = 0; i < numFiles; i++ ) {
+                    try ( SmbResource r = f.resolve(prefix + String.format("%04x", i)) ) {
+                        r.createNewFile();
+                    }
+                }
+
+                int cnt = 0;
+                try ( CloseableIterator<SmbResource> chld = f.children() ) {
+                    while ( chld.hasNext() ) {
+                        try ( SmbResource next = chld.next() ) {
+                            cnt++;
+                        }
+                    }
+                }
+
+                assertEquals(numFiles, cnt);
+            }
+            finally {
+                f.delete();
+            }
+        }
+        finally {
+            ctx.close();
+        }
+    }
+
+
     private static String repeat ( char c, int n ) {
         char chs[] = new char[n];
         for ( int i = 0; i < n; i++ ) {
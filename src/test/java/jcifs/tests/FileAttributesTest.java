@@ -19,6 +19,7 @@ package jcifs.tests;
 
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
@@ -26,9 +27,12 @@ import static org.junit.Assert.assertTrue;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.UnknownHostException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
+import java.util.List;
 import java.util.Map;
+import java.util.Properties;
 
 import org.junit.Assert;
 import org.junit.Assume;
@@ -37,13 +41,17 @@ import org.junit.runner.RunWith;
 import org.junit.runners.Parameterized;
 import org.junit.runners.Parameterized.Parameters;
 
+import jcifs.CIFSContext;
 import jcifs.CIFSException;
 import jcifs.SmbConstants;
 import jcifs.SmbResource;
+import jcifs.config.PropertyConfiguration;
+import jcifs.context.BaseContext;
 import jcifs.smb.NtStatus;
 import jcifs.smb.SmbException;
 import jcifs.smb.SmbFile;
 import jcifs.smb.SmbFileOutputStream;
+import jcifs.smb.SmbSecurityReader;
 import jcifs.smb.SmbUnsupportedOperationException;
 import jcifs.smb.WinError;
 
@@ -108,6 +116,80 @@ public class FileAttributesTest extends BaseCIFSTest {
     }
 
 
+    @Test
+    public void testSharedMetadata () throws IOException {
+        CIFSContext ctx = getSharedMetadataContext();
+        try ( SmbFile created = createTestFile();
+              SmbFile f = new SmbFile(created.getURL().toString(), ctx) ) {
+            try {
+                try ( SmbFile f2 = new SmbFile(f.getURL().toString(), ctx) ) {
+                    assertTrue(f2.exists());
+                    assertEquals(0, f2.length());
+                    try ( SmbFileOutputStream os = f.openOutputStream() ) {
+                        os.write(new byte[] {
+                            1, 2, 3
+                        });
+                    }
+                    try ( SmbFile f3 = new SmbFile(f.getURL().toString(), ctx) ) {
+                        // writes invalidate the shared entry
+                        assertEquals(3, f3.length());
+                    }
+                }
+            }
+            finally {
+                f.delete();
+            }
+            try ( SmbFile f4 = new SmbFile(f.getURL().toString(), ctx) ) {
+                assertTrue(!f4.exists());
+            }
+        }
+        finally {
+            ctx.close();
+        }
+    }
+
+
+    @Test
+    public void testSharedMetadataCaseInsensitive () throws IOException {
+        CIFSContext ctx = getSharedMetadataContext();
+        try ( SmbFile created = createTestDirectory();
+              SmbFile d = new SmbFile(created.getURL().toString(), ctx);
+              SmbFile sub = new SmbFile(d, "Sub/");
+              SmbFile f = new SmbFile(sub, "File") ) {
+            try {
+                sub.mkdir();
+                f.createNewFile();
+                String url = d.getURL().toString();
+                try ( SmbFile other = new SmbFile(url + "sub/file", ctx) ) {
+                    Assume.assumeTrue("Server is case sensitive", other.exists());
+                    // removing the parent with the original casing must invalidate the other casing as well
+                    sub.delete();
+                    try ( SmbFile other2 = new SmbFile(url + "sub/file", ctx) ) {
+                        assertFalse(other2.exists());
+                    }
+                }
+            }
+            finally {
+                d.delete();
+            }
+        }
+        finally {
+            ctx.close();
+        }
+    }
+
+
+    /**
+     * Sharing metadata between resource objects is disabled by default
+     */
+    private CIFSContext getSharedMetadataContext () throws CIFSException {
+        Properties props = new Properties();
+        props.putAll(getProperties());
+        props.setProperty("jcifs.smb.client.metadataCacheSize", "1024");
+        return withTestNTLMCredentials(new BaseContext(new PropertyConfiguration(props)));
+    }
+
+
     @Test
     public void testSetLastModified () throws CIFSException, MalformedURLException, UnknownHostException {
         try ( SmbResource f = createTestFile() ) {
@@ -276,6 +358,38 @@ public class FileAttributesTest extends BaseCIFSTest {
     }
 
 
+    @Test
+    public void testGetACLBulk () throws IOException {
+        try ( SmbFile dir = createTestDirectory() ) {
+            try {
+                List<SmbResource> files = new ArrayList<>();
+                for ( int i = 0; i < 10; i++ ) {
+                    SmbFile f = new SmbFile(dir, makeRandomName());
+                    f.createNewFile();
+                    files.add(f);
+                }
+                files.add(dir);
+
+                SmbSecurityReader reader = new SmbSecurityReader();
+                SmbSecurityReader.Result r = reader.getSecurity(files);
+                assertTrue(r.getFailures().isEmpty());
+                assertEquals(files.size(), r.getAces().size());
+                for ( SmbResource f : files ) {
+                    assertNotNull(r.getAces(f));
+                }
+                // new files inherit the same ACL
+                assertTrue(reader.getCachedDescriptorCount() < files.size());
+            }
+            catch ( SmbUnsupportedOperationException e ) {
+                Assume.assumeTrue("No Ntsmbs", false);
+            }
+            finally {
+                dir.delete();
+            }
+        }
+    }
+
+
     @Test
     public void testGetOwner () throws IOException {
         try ( SmbFile f = getDefaultShareRoot() ) {
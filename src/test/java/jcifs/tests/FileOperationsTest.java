@@ -22,6 +22,8 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -39,6 +41,7 @@ import org.junit.runners.Parameterized;
 import org.junit.runners.Parameterized.Parameters;
 
 import jcifs.CIFSException;
+import jcifs.ResourceFilter;
 import jcifs.SmbResource;
 import jcifs.SmbTreeHandle;
 
@@ -328,6 +331,273 @@ public class FileOperationsTest extends BaseCIFSTest {
     }
 
 
+    @Test
+    public void testCopyTree () throws IOException {
+        int bufSize = 65536;
+        long length = 4096 * 4;
+        try ( SmbFile src = createTestDirectory();
+              SmbFile d1 = createTestDirectory();
+              SmbFile t = new SmbFile(d1, makeRandomDirectoryName()) ) {
+            try {
+                for ( int i = 0; i < 3; i++ ) {
+                    try ( SmbFile sub = new SmbFile(src, "sub" + i + "/") ) {
+                        sub.mkdir();
+                        for ( int j = 0; j < 4; j++ ) {
+                            try ( SmbFile f = new SmbFile(sub, "file" + j);
+                                  OutputStream os = f.getOutputStream() ) {
+                                ReadWriteTest.writeRandom(bufSize, length, os);
+                            }
+                        }
+                    }
+                }
+
+                SmbTreeCopier copier = new SmbTreeCopier(src, t);
+                copier.setParallelism(3);
+                SmbTreeCopier.Result r = copier.copy();
+                assertTrue(r.getFailures().isEmpty());
+                assertEquals(12, r.getFilesCopied());
+                assertEquals(4, r.getDirectoriesCreated());
+                assertEquals(12 * length, r.getBytesCopied());
+
+                for ( int i = 0; i < 3; i++ ) {
+                    for ( int j = 0; j < 4; j++ ) {
+                        try ( SmbFile f = new SmbFile(t, "sub" + i + "/file" + j);
+                              InputStream is = f.getInputStream() ) {
+                            assertEquals(length, f.length());
+                            ReadWriteTest.verifyRandom(bufSize, length, is);
+                        }
+                    }
+                }
+            }
+            finally {
+                src.delete();
+                d1.delete();
+            }
+        }
+    }
+
+
+    @Test
+    public void testCopyTreeFiltered () throws IOException {
+        try ( SmbFile src = createTestDirectory();
+              SmbFile d1 = createTestDirectory();
+              SmbFile t = new SmbFile(d1, makeRandomDirectoryName()) ) {
+            try {
+                for ( String dir : new String[] {
+                    "keep/", "skip/", "skip/nested/"
+                } ) {
+                    try ( SmbFile sub = new SmbFile(src, dir);
+                          SmbFile f = new SmbFile(sub, "file") ) {
+                        sub.mkdir();
+                        f.createNewFile();
+                    }
+                }
+
+                SmbTreeCopier copier = new SmbTreeCopier(src, t);
+                copier.setFilter(new ResourceFilter() {
+
+                    @Override
+                    public boolean accept ( SmbResource resource ) throws CIFSException {
+                        return !"skip/".equals(resource.getName());
+                    }
+                });
+                SmbTreeCopier.Result r = copier.copy();
+                assertTrue(r.getFailures().isEmpty());
+                assertEquals(1, r.getFilesCopied());
+                assertEquals(2, r.getDirectoriesCreated());
+
+                try ( SmbFile kept = new SmbFile(t, "keep/file");
+                      SmbFile skipped = new SmbFile(t, "skip/") ) {
+                    assertTrue(kept.exists());
+                    assertFalse(skipped.exists());
+                }
+            }
+            finally {
+                src.delete();
+                d1.delete();
+            }
+        }
+    }
+
+
+    @Test
+    public void testSyncTree () throws IOException {
+        int bufSize = 65536;
+        long length = 4096;
+        File manifest = File.createTempFile("sync", ".manifest");
+        try ( SmbFile src = createTestDirectory();
+              SmbFile t = createTestDirectory() ) {
+            try {
+                for ( int i = 0; i < 4; i++ ) {
+                    try ( SmbFile f = new SmbFile(src, "file" + i);
+                          OutputStream os = f.getOutputStream() ) {
+                        ReadWriteTest.writeRandom(bufSize, length, os);
+                    }
+                }
+                try ( SmbFile sub = new SmbFile(src, "sub/") ) {
+                    sub.mkdir();
+                }
+
+                assertTrue(manifest.delete());
+                SmbTreeSync sync = new SmbTreeSync(src, t);
+                sync.setManifest(manifest);
+                sync.setDelete(true);
+                SmbTreeSync.Result r = sync.sync();
+                assertEquals(4, r.getFilesTransferred());
+                assertEquals(0, r.getFilesUnchanged());
+                assertEquals(4 * length, r.getBytesTransferred());
+
+                r = sync.sync();
+                assertEquals(0, r.getFilesTransferred());
+                assertEquals(4, r.getFilesUnchanged());
+
+                try ( SmbFile f = new SmbFile(src, "file0") ) {
+                    f.delete();
+                }
+                try ( SmbFile f = new SmbFile(src, "file1");
+                      OutputStream os = f.getOutputStream() ) {
+                    ReadWriteTest.writeRandom(bufSize, 2 * length, os);
+                }
+
+                r = sync.sync();
+                assertEquals(1, r.getFilesTransferred());
+                assertEquals(2, r.getFilesUnchanged());
+                assertEquals(1, r.getDeleted());
+
+                try ( SmbFile f = new SmbFile(t, "file0") ) {
+                    assertFalse(f.exists());
+                }
+                try ( SmbFile f = new SmbFile(t, "file1");
+                      InputStream is = f.getInputStream() ) {
+                    assertEquals(2 * length, f.length());
+                    ReadWriteTest.verifyRandom(bufSize, 2 * length, is);
+                }
+            }
+            finally {
+                manifest.delete();
+                src.delete();
+                t.delete();
+            }
+        }
+    }
+
+
+    @Test
+    public void testSyncTreeFailureKeepsTarget () throws IOException {
+        int bufSize = 65536;
+        long length = 4096;
+        File manifest = File.createTempFile("sync", ".manifest");
+        try ( SmbFile src = createTestDirectory();
+              SmbFile t1 = createTestDirectory();
+              SmbFile t2 = createTestDirectory() ) {
+            try {
+                for ( int i = 0; i < 2; i++ ) {
+                    try ( SmbFile f = new SmbFile(src, "file" + i);
+                          OutputStream os = f.getOutputStream() ) {
+                        ReadWriteTest.writeRandom(bufSize, length, os);
+                    }
+                }
+
+                assertTrue(manifest.delete());
+                SmbTreeSync withManifest = new SmbTreeSync(src, t1);
+                withManifest.setManifest(manifest);
+                withManifest.setDelete(true);
+                withManifest.setFailFast(false);
+                SmbTreeSync withoutManifest = new SmbTreeSync(src, t2);
+                withoutManifest.setDelete(true);
+                withoutManifest.setFailFast(false);
+                assertEquals(2, withManifest.sync().getFilesTransferred());
+                assertEquals(2, withoutManifest.sync().getFilesTransferred());
+
+                try ( SmbFile f = new SmbFile(src, "file0") ) {
+                    try ( OutputStream os = f.getOutputStream() ) {
+                        ReadWriteTest.writeRandom(bufSize, 2 * length, os);
+                    }
+                    // hold an exclusive handle so that the transfer fails
+                    try ( InputStream is = f.openInputStream(0) ) {
+                        for ( SmbTreeSync sync : new SmbTreeSync[] {
+                            withManifest, withoutManifest
+                        } ) {
+                            SmbTreeSync.Result r = sync.sync();
+                            assertEquals(1, r.getFailures().size());
+                            assertEquals("file0", r.getFailures().get(0).getPath());
+                            assertEquals(0, r.getDeleted());
+                        }
+                    }
+                }
+
+                for ( SmbFile t : new SmbFile[] {
+                    t1, t2
+                } ) {
+                    try ( SmbFile f = new SmbFile(t, "file0") ) {
+                        assertTrue(f.exists());
+                    }
+                }
+
+                // picked up once the source is accessible again
+                SmbTreeSync.Result r = withManifest.sync();
+                assertTrue(r.getFailures().isEmpty());
+                assertEquals(1, r.getFilesTransferred());
+            }
+            finally {
+                manifest.delete();
+                src.delete();
+                t1.delete();
+                t2.delete();
+            }
+        }
+    }
+
+
+    @Test
+    public void testCopySparse () throws IOException {
+        int bufSize = 65536;
+        long length = 4096 * 16;
+        long sparseLength = 4 * 1024 * 1024;
+        try ( SmbFile f = createTestFile() ) {
+            try ( SmbFile d1 = createTestDirectory();
+                  SmbFile t = new SmbFile(d1, makeRandomName()) ) {
+                try {
+                    try ( OutputStream os = f.getOutputStream() ) {
+                        ReadWriteTest.writeRandom(bufSize, length, os);
+                    }
+                    try ( SmbRandomAccessFile ra = f.openRandomAccess("rw") ) {
+                        ra.setLength(sparseLength);
+                    }
+
+                    SmbTreeCopier copier = new SmbTreeCopier(f, t);
+                    copier.setSparse(true);
+                    SmbTreeCopier.Result r = copier.copy();
+                    assertEquals(sparseLength, t.length());
+                    // holes are not transferred, so they do not count
+                    assertTrue(r.getBytesCopied() >= length && r.getBytesCopied() <= sparseLength);
+                    try ( InputStream is = t.getInputStream() ) {
+                        ReadWriteTest.verifyRandom(bufSize, length, is);
+                    }
+
+                    File local = File.createTempFile("sparse", ".dat");
+                    try {
+                        assertEquals(sparseLength, t.downloadTo(local, true));
+                        assertEquals(sparseLength, local.length());
+                        try ( InputStream is = new FileInputStream(local) ) {
+                            ReadWriteTest.verifyRandom(bufSize, length, is);
+                        }
+                    }
+                    finally {
+                        local.delete();
+                    }
+                }
+                finally {
+                    d1.delete();
+                }
+            }
+            finally {
+                f.delete();
+            }
+        }
+    }
+
+
     // #173
     @Test
     public void testCopyTargetExists () throws IOException {
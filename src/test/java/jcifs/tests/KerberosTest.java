@@ -18,14 +18,20 @@
 package jcifs.tests;
 
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
 import java.io.IOException;
 import java.lang.reflect.Field;
 import java.net.MalformedURLException;
 import java.security.Principal;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -49,8 +55,10 @@ import jcifs.CIFSException;
 import jcifs.ResolverType;
 import jcifs.SmbResource;
 import jcifs.SmbTreeHandle;
+import jcifs.config.DelegatingConfiguration;
 import jcifs.smb.JAASAuthenticator;
 import jcifs.smb.Kerb5Authenticator;
+import jcifs.smb.SSPContext;
 import jcifs.smb.SmbException;
 import jcifs.smb.SmbFile;
 import jcifs.smb.SmbSessionInternal;
@@ -159,6 +167,74 @@ public class KerberosTest extends BaseCIFSTest {
     }
 
 
+    @Test
+    public void testServiceTicketShared () throws Exception {
+        Assume.assumeTrue(getContext().getConfig().getResolveOrder().contains(ResolverType.RESOLVER_DNS));
+        Subject s1 = getInitiatorSubject(getTestUser(), getTestUserPassword(), getTestUserDomainRequired(), null);
+        Subject s2 = getInitiatorSubject(getTestUser(), getTestUserPassword(), getTestUserDomainRequired(), null);
+        Set<Object> s2Creds = new HashSet<>(s2.getPrivateCredentials());
+        // separate contexts, so that each needs to set up its own session
+        CIFSContext ctx1 = getNewContext().withCredentials(new Kerb5Authenticator(s1));
+        CIFSContext ctx2 = getNewContext().withCredentials(new Kerb5Authenticator(s2));
+        try ( SmbResource f1 = new SmbFile(getTestShareURL(), ctx1);
+              SmbResource f2 = new SmbFile(getTestShareURL(), ctx2) ) {
+            f1.exists();
+            f2.exists();
+        }
+        catch ( SmbUnsupportedOperationException e ) {
+            Assume.assumeTrue("Using short names", false);
+        }
+        finally {
+            ctx1.close();
+            ctx2.close();
+        }
+
+        Set<KerberosTicket> serviceTickets = new HashSet<>();
+        for ( KerberosTicket t : s1.getPrivateCredentials(KerberosTicket.class) ) {
+            if ( !t.getServer().getName().startsWith("krbtgt/") ) {
+                serviceTickets.add(t);
+            }
+        }
+        Assume.assumeFalse("No service ticket obtained", serviceTickets.isEmpty());
+        // the second subject used the first one's ticket through a private copy, instead of requesting a new one,
+        // and was left untouched
+        assertEquals(s2Creds, new HashSet<>(s2.getPrivateCredentials()));
+    }
+
+
+    @Test
+    public void testServiceTicketNotSharedWithoutTGT () throws Exception {
+        Assume.assumeTrue(getContext().getConfig().getResolveOrder().contains(ResolverType.RESOLVER_DNS));
+        Subject s1 = getInitiatorSubject(getTestUser(), getTestUserPassword(), getTestUserDomainRequired(), null);
+        CIFSContext ctx1 = getNewContext().withCredentials(new Kerb5Authenticator(s1));
+        try ( SmbResource f1 = new SmbFile(getTestShareURL(), ctx1) ) {
+            f1.exists();
+        }
+        catch ( SmbUnsupportedOperationException e ) {
+            Assume.assumeTrue("Using short names", false);
+        }
+        finally {
+            ctx1.close();
+        }
+
+        // same principal name, but no credentials at all
+        Subject s2 = new Subject();
+        s2.getPrincipals().addAll(s1.getPrincipals(KerberosPrincipal.class));
+        CIFSContext ctx2 = getNewContext().withCredentials(new Kerb5Authenticator(s2));
+        try ( SmbResource f2 = new SmbFile(getTestShareURL(), ctx2) ) {
+            f2.exists();
+            fail("Should not authenticate without TGT");
+        }
+        catch ( SmbException e ) {
+            // expected
+        }
+        finally {
+            ctx2.close();
+        }
+        assertTrue(s2.getPrivateCredentials().isEmpty());
+    }
+
+
     @Test
     public void testSessionExpiration () throws Exception {
         Assume.assumeTrue(getContext().getConfig().getResolveOrder().contains(ResolverType.RESOLVER_DNS));
@@ -196,6 +272,50 @@ public class KerberosTest extends BaseCIFSTest {
     }
 
 
+    @Test
+    public void testSessionRenewal () throws Exception {
+        Assume.assumeTrue(getContext().getConfig().getResolveOrder().contains(ResolverType.RESOLVER_DNS));
+        long start = System.currentTimeMillis() / 1000 * 1000;
+        // ticket lifetime is shorter than the margin, so the session is renewed halfway through
+        int wait = 10 * 1000;
+        Subject s = getInitiatorSubject(getTestUser(), getTestUserPassword(), getTestUserDomainRequired(), start + wait);
+        RefreshableKerb5Authenticator creds = new RefreshableKerb5Authenticator(s, getTestUserDomainRequired(), getTestUser(), getTestUserPassword());
+        CIFSContext ctx = withConfig(getContext(), new DelegatingConfiguration(getContext().getConfig()) {
+
+            @Override
+            public int getSessionRenewalMargin () {
+                return 3600;
+            }
+        }).withCredentials(creds);
+        try ( SmbFile f = new SmbFile(getTestShareURL(), ctx) ) {
+            try ( SmbTreeHandle th = f.getTreeHandle() ) {
+                // SMB1 sessions are not renewed
+                Assume.assumeTrue("Not SMB2", th.isSMB2());
+                f.exists();
+                int initial = creds.contextsCreated.size();
+                assertTrue(initial > 0);
+                // still in use, so renewed in the background halfway through the lifetime
+                Thread.sleep(wait * 3 / 4);
+                List<Long> created = new ArrayList<>(creds.contextsCreated);
+                assertTrue("Session was not renewed", created.size() > initial);
+                assertTrue("Session was renewed after expiration", created.get(initial) < start + wait);
+                Thread.sleep(wait / 4);
+                f.exists();
+            }
+        }
+        catch ( SmbUnsupportedOperationException e ) {
+            Assume.assumeTrue("Using short names", false);
+        }
+        catch ( SmbException e ) {
+            if ( ! ( e.getCause() instanceof GSSException ) ) {
+                throw e;
+            }
+            log.error("Kerberos problem", e);
+            Assume.assumeTrue("Kerberos problem, clockskew?", false);
+        }
+    }
+
+
     public static Subject getInitiatorSubject ( KeyTab keytab, final KerberosPrincipal principal ) throws Asn1Exception, KrbException, IOException {
         KerberosTicket ticket = getKerberosTicket(keytab, principal);
         Set<Object> privCreds = new HashSet<>();
@@ -275,9 +395,28 @@ public class KerberosTest extends BaseCIFSTest {
          */
         private static final long serialVersionUID = -4979600496889213143L;
 
+        /**
+         * times at which security contexts were created, shared with clones
+         */
+        final List<Long> contextsCreated;
+
 
         public RefreshableKerb5Authenticator ( Subject subject, String domain, String username, String password ) {
+            this(subject, domain, username, password, Collections.synchronizedList(new ArrayList<Long>()));
+        }
+
+
+        RefreshableKerb5Authenticator ( Subject subject, String domain, String username, String password, List<Long> contextsCreated ) {
             super(subject, domain, username, password);
+            this.contextsCreated = contextsCreated;
+        }
+
+
+        @Override
+        public SSPContext createContext ( CIFSContext tc, String targetDomain, String host, byte[] initialToken, boolean doSigning )
+                throws SmbException {
+            this.contextsCreated.add(System.currentTimeMillis());
+            return super.createContext(tc, targetDomain, host, initialToken, doSigning);
         }
 
 
@@ -296,7 +435,7 @@ public class KerberosTest extends BaseCIFSTest {
 
         @Override
         public Kerb5Authenticator clone () {
-            Kerb5Authenticator auth = new RefreshableKerb5Authenticator(getSubject(), getUserDomain(), getUser(), getPassword());
+            Kerb5Authenticator auth = new RefreshableKerb5Authenticator(getSubject(), getUserDomain(), getUser(), getPassword(), this.contextsCreated);
             cloneInternal(auth, this);
             return auth;
         }
@@ -0,0 +1,75 @@
+/*
+ * © 2026 agent <agent@local>
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package jcifs.tests;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+import jcifs.MetricsCollector;
+import jcifs.config.PropertyConfiguration;
+import jcifs.context.BaseContext;
+import jcifs.smb.BufferCacheImpl;
+import jcifs.smb.NoopMetricsCollector;
+
+
+/**
+ * Checks the metrics hooks that do not require a server
+ * 
+ * @author agent
+ */
+@SuppressWarnings ( "javadoc" )
+public class MetricsTest {
+
+    @Test
+    public void testDefaultNoop () throws Exception {
+        BaseContext ctx = new BaseContext(new PropertyConfiguration(System.getProperties()));
+        assertSame(NoopMetricsCollector.INSTANCE, ctx.getMetrics());
+    }
+
+
+    @Test
+    public void testBufferCache () throws Exception {
+        RecordingMetricsCollector m = new RecordingMetricsCollector();
+        BufferCacheImpl cache = new BufferCacheImpl(2, 128, m);
+        byte[] a = cache.getBuffer();
+        byte[] b = cache.getBuffer();
+        cache.releaseBuffer(a);
+        cache.releaseBuffer(b);
+        cache.getBuffer();
+        cache.getBuffer();
+        cache.getBuffer();
+
+        assertEquals(2, m.get(m.hits, MetricsCollector.CACHE_BUFFER));
+        assertEquals(3, m.get(m.misses, MetricsCollector.CACHE_BUFFER));
+    }
+
+
+    @Test
+    public void testContextBufferCache () throws Exception {
+        RecordingMetricsCollector m = new RecordingMetricsCollector();
+        BaseContext ctx = new BaseContext(new PropertyConfiguration(System.getProperties()), m);
+        assertSame(m, ctx.getMetrics());
+        assertSame(m, ctx.withGuestCrendentials().getMetrics());
+        ctx.getBufferCache().releaseBuffer(ctx.getBufferCache().getBuffer());
+        ctx.getBufferCache().getBuffer();
+        assertEquals(1, m.get(m.hits, MetricsCollector.CACHE_BUFFER));
+    }
+}
@@ -0,0 +1,408 @@
+/*
+ * © 2026 agent <agent@local>
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package jcifs.tests;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+import jcifs.CIFSException;
+import jcifs.config.PropertyConfiguration;
+import jcifs.context.BaseContext;
+import jcifs.netbios.NameServiceClientImpl;
+import jcifs.netbios.NbtAddress;
+
+
+/**
+ * Tests the NetBIOS name service client against local stand-in name servers
+ * 
+ * @author agent
+ *
+ */
+@SuppressWarnings ( "javadoc" )
+public class NameServiceClientTest {
+
+    private static final int NAM_ERR = 0x3;
+
+    private final List<StandInServer> servers = new ArrayList<>();
+    private final List<BaseContext> contexts = new ArrayList<>();
+
+
+    @After
+    public void tearDown () throws CIFSException {
+        for ( StandInServer s : this.servers ) {
+            s.close();
+        }
+        for ( BaseContext c : this.contexts ) {
+            c.close();
+        }
+    }
+
+
+    @Test
+    public void testTransactionIdMatching () throws Exception {
+        StandInServer wins = startServer("127.0.0.1", 0, new Responder() {
+
+            @Override
+            public void respond ( StandInServer s, DatagramPacket req, String name ) throws IOException {
+                // a reply for some other transaction must not be taken as the answer
+                s.reply(req, response(req, trnId(req) + 1, 0, address("10.0.0.66")));
+                s.reply(req, response(req, trnId(req), 0, address("10.0.0.1")));
+            }
+        });
+
+        NameServiceClientImpl nsc = createClient(wins.getPort(), 1000, wins);
+        assertEquals("10.0.0.1", nsc.getNbtByName("HOSTA").getHostAddress());
+    }
+
+
+    @Test
+    public void testOutOfOrderReplies () throws Exception {
+        StandInServer wins = startServer("127.0.0.1", 0, new Responder() {
+
+            private DatagramPacket held;
+
+
+            @Override
+            public void respond ( StandInServer s, DatagramPacket req, String name ) throws IOException {
+                if ( this.held == null ) {
+                    // hold back the first query until the second one arrived, then answer in reverse order
+                    this.held = req;
+                    return;
+                }
+                s.reply(req, response(req, trnId(req), 0, addressFor(name)));
+                s.reply(this.held, response(this.held, trnId(this.held), 0, addressFor(nameOf(this.held))));
+            }
+        });
+
+        final NameServiceClientImpl nsc = createClient(wins.getPort(), 3000, wins);
+        ExecutorService exec = Executors.newFixedThreadPool(2);
+        try {
+            List<Future<NbtAddress>> results = new ArrayList<>();
+            for ( final String host : Arrays.asList("HOSTA", "HOSTB") ) {
+                results.add(exec.submit(new Callable<NbtAddress>() {
+
+                    @Override
+                    public NbtAddress call () throws Exception {
+                        return nsc.getNbtByName(host);
+                    }
+                }));
+            }
+            assertEquals("10.0.0.1", results.get(0).get(10, TimeUnit.SECONDS).getHostAddress());
+            assertEquals("10.0.0.2", results.get(1).get(10, TimeUnit.SECONDS).getHostAddress());
+        }
+        finally {
+            exec.shutdownNow();
+        }
+        assertEquals(2, wins.getQueries());
+    }
+
+
+    @Test
+    public void testDuplicateReplies () throws Exception {
+        StandInServer wins = startServer("127.0.0.1", 0, new Responder() {
+
+            private DatagramPacket previous;
+
+
+            @Override
+            public void respond ( StandInServer s, DatagramPacket req, String name ) throws IOException {
+                if ( this.previous != null ) {
+                    // late duplicate of the previous answer
+                    s.reply(this.previous, response(this.previous, trnId(this.previous), 0, addressFor(nameOf(this.previous))));
+                }
+                byte[] resp = response(req, trnId(req), 0, addressFor(name));
+                s.reply(req, resp);
+                s.reply(req, resp);
+                this.previous = req;
+            }
+        });
+
+        NameServiceClientImpl nsc = createClient(wins.getPort(), 1000, wins);
+        assertEquals("10.0.0.1", nsc.getNbtByName("HOSTA").getHostAddress());
+        assertEquals("10.0.0.2", nsc.getNbtByName("HOSTB").getHostAddress());
+        assertEquals(2, wins.getQueries());
+    }
+
+
+    @Test
+    public void testTimeout () throws Exception {
+        StandInServer wins = startServer("127.0.0.1", 0, null);
+
+        NameServiceClientImpl nsc = createClient(wins.getPort(), 500, wins);
+        long start = System.currentTimeMillis();
+        try {
+            nsc.getNbtByName("HOSTA");
+            fail("Should not resolve");
+        }
+        catch ( UnknownHostException e ) {
+            // expected
+        }
+        long elapsed = System.currentTimeMillis() - start;
+        assertTrue("Gave up too early " + elapsed, elapsed >= 450);
+        assertTrue("Took too long " + elapsed, elapsed < 5000);
+        assertEquals(1, wins.getQueries());
+    }
+
+
+    @Test
+    public void testParallelWINSFallback () throws Exception {
+        StandInServer silent = startServer("127.0.0.1", 0, null);
+        StandInServer wins = startServer("127.0.0.2", silent.getPort(), new Responder() {
+
+            @Override
+            public void respond ( StandInServer s, DatagramPacket req, String name ) throws IOException {
+                s.reply(req, response(req, trnId(req), 0, addressFor(name)));
+            }
+        });
+
+        // the unresponsive server is the preferred one
+        NameServiceClientImpl nsc = createClient(silent.getPort(), 5000, silent, wins);
+        long start = System.currentTimeMillis();
+        assertEquals("10.0.0.1", nsc.getNbtByName("HOSTA").getHostAddress());
+        long elapsed = System.currentTimeMillis() - start;
+        assertTrue("Did not query in parallel " + elapsed, elapsed < 2500);
+        assertEquals(1, silent.awaitQueries(1));
+        assertEquals(1, wins.getQueries());
+
+        // the server that answered is now preferred, all are still asked
+        assertEquals("10.0.0.2", nsc.getNbtByName("HOSTB").getHostAddress());
+        assertEquals(2, silent.awaitQueries(2));
+        assertEquals(2, wins.getQueries());
+    }
+
+
+    @Test
+    public void testNegativeCache () throws Exception {
+        StandInServer wins = startServer("127.0.0.1", 0, new Responder() {
+
+            @Override
+            public void respond ( StandInServer s, DatagramPacket req, String name ) throws IOException {
+                s.reply(req, response(req, trnId(req), NAM_ERR, null));
+            }
+        });
+
+        NameServiceClientImpl nsc = createClient(wins.getPort(), 1000, wins);
+        for ( int i = 0; i < 3; i++ ) {
+            long start = System.currentTimeMillis();
+            try {
+                nsc.getNbtByName("UNKNOWN");
+                fail("Should not resolve");
+            }
+            catch ( UnknownHostException e ) {
+                // expected
+            }
+            // a negative answer completes the query without waiting for the timeout
+            assertTrue(System.currentTimeMillis() - start < 900);
+        }
+        assertEquals(1, wins.getQueries());
+    }
+
+
+    private NameServiceClientImpl createClient ( final int port, int timeout, StandInServer... wins ) throws CIFSException {
+        StringBuilder sb = new StringBuilder();
+        for ( StandInServer s : wins ) {
+            if ( sb.length() > 0 ) {
+                sb.append(',');
+            }
+            sb.append(s.getAddress().getHostAddress());
+        }
+        Properties props = new Properties();
+        props.setProperty("jcifs.resolveOrder", "WINS");
+        props.setProperty("jcifs.netbios.wins", sb.toString());
+        props.setProperty("jcifs.netbios.retryTimeout", String.valueOf(timeout));
+        props.setProperty("jcifs.netbios.laddr", "127.0.0.1");
+        BaseContext ctx = new BaseContext(new PropertyConfiguration(props));
+        this.contexts.add(ctx);
+        return new NameServiceClientImpl(ctx) {
+
+            @Override
+            protected int getNameServicePort () {
+                return port;
+            }
+        };
+    }
+
+
+    private StandInServer startServer ( String addr, int port, Responder responder ) throws IOException {
+        StandInServer s = new StandInServer(new InetSocketAddress(InetAddress.getByName(addr), port), responder);
+        this.servers.add(s);
+        s.start();
+        return s;
+    }
+
+
+    static int trnId ( DatagramPacket req ) {
+        byte[] data = req.getData();
+        return ( ( data[ 0 ] & 0xFF ) << 8 ) | ( data[ 1 ] & 0xFF );
+    }
+
+
+    /**
+     * Decode the first level encoded question name
+     */
+    static String nameOf ( DatagramPacket req ) {
+        byte[] data = req.getData();
+        StringBuilder sb = new StringBuilder();
+        for ( int i = 0; i < 15; i++ ) {
+            sb.append((char) ( ( ( data[ 13 + 2 * i ] - 'A' ) << 4 ) | ( data[ 14 + 2 * i ] - 'A' ) ));
+        }
+        return sb.toString().trim();
+    }
+
+
+    static byte[] addressFor ( String name ) throws UnknownHostException {
+        return address("10.0.0." + ( name.charAt(name.length() - 1) - 'A' + 1 ));
+    }
+
+
+    static byte[] address ( String addr ) throws UnknownHostException {
+        return InetAddress.getByName(addr).getAddress();
+    }
+
+
+    /**
+     * Build a name query response echoing the question name of the request
+     */
+    static byte[] response ( DatagramPacket req, int trnId, int rcode, byte[] addr ) {
+        byte[] data = req.getData();
+        int nameEnd = 12;
+        while ( data[ nameEnd ] != 0 ) {
+            nameEnd += ( data[ nameEnd ] & 0xFF ) + 1;
+        }
+        nameEnd++;
+
+        int rdLength = addr != null ? 6 : 0;
+        byte[] resp = new byte[nameEnd + 10 + rdLength];
+        resp[ 0 ] = (byte) ( trnId >> 8 );
+        resp[ 1 ] = (byte) trnId;
+        resp[ 2 ] = (byte) 0x85; // response, authoritative, recursion desired
+        resp[ 3 ] = (byte) ( 0x80 | rcode );
+        resp[ 7 ] = 1; // answer count
+        System.arraycopy(data, 12, resp, 12, nameEnd - 12);
+        int i = nameEnd;
+        resp[ i + 1 ] = 0x20; // NB
+        resp[ i + 3 ] = 0x01; // IN
+        resp[ i + 6 ] = 0x01; // TTL
+        resp[ i + 9 ] = (byte) rdLength;
+        if ( addr != null ) {
+            System.arraycopy(addr, 0, resp, i + 12, 4);
+        }
+        return resp;
+    }
+
+    static interface Responder {
+
+        void respond ( StandInServer s, DatagramPacket req, String name ) throws IOException;
+    }
+
+    /**
+     * Minimal name server, replies are scripted by a {@link Responder}
+     */
+    static final class StandInServer extends Thread {
+
+        private final DatagramSocket socket;
+        private final Responder responder;
+        private final AtomicInteger queries = new AtomicInteger();
+
+
+        StandInServer ( InetSocketAddress addr, Responder responder ) throws SocketException {
+            super("StandInNameServer");
+            setDaemon(true);
+            this.socket = new DatagramSocket(addr);
+            this.responder = responder;
+        }
+
+
+        InetAddress getAddress () {
+            return this.socket.getLocalAddress();
+        }
+
+
+        int getPort () {
+            return this.socket.getLocalPort();
+        }
+
+
+        int getQueries () {
+            return this.queries.get();
+        }
+
+
+        /**
+         * The answer may arrive before the query to another server has been received
+         */
+        int awaitQueries ( int n ) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + 5000;
+            while ( this.queries.get() < n && System.currentTimeMillis() < deadline ) {
+                Thread.sleep(10);
+            }
+            return this.queries.get();
+        }
+
+
+        void reply ( DatagramPacket req, byte[] resp ) throws IOException {
+            this.socket.send(new DatagramPacket(resp, resp.length, req.getSocketAddress()));
+        }
+
+
+        void close () {
+            this.socket.close();
+        }
+
+
+        @Override
+        public void run () {
+            try {
+                while ( true ) {
+                    DatagramPacket req = new DatagramPacket(new byte[576], 576);
+                    this.socket.receive(req);
+                    this.queries.incrementAndGet();
+                    if ( this.responder != null ) {
+                        this.responder.respond(this, req, nameOf(req));
+                    }
+                }
+            }
+            catch ( IOException e ) {
+                // closed
+            }
+        }
+    }
+}
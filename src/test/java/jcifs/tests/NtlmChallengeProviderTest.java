@@ -0,0 +1,206 @@
+/*
+ * © 2026 agent <agent@local>
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package jcifs.tests;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jcifs.Address;
+import jcifs.context.SingletonContext;
+import jcifs.http.NtlmChallengeProvider;
+import jcifs.http.NtlmChallengeProvider.DomainController;
+import jcifs.netbios.UniAddress;
+import jcifs.smb.NtlmChallenge;
+
+
+/**
+ * Exercises the challenge provider against stand-in domain controllers
+ * 
+ * @author agent
+ */
+@SuppressWarnings ( "javadoc" )
+public class NtlmChallengeProviderTest {
+
+    private static final Logger log = LoggerFactory.getLogger(NtlmChallengeProviderTest.class);
+
+    private Address[] dcs;
+
+
+    @Before
+    public void setUp () throws UnknownHostException {
+        this.dcs = new Address[] {
+            new UniAddress(InetAddress.getByName("192.0.2.1")), new UniAddress(InetAddress.getByName("192.0.2.2")),
+            new UniAddress(InetAddress.getByName("192.0.2.3"))
+        };
+    }
+
+
+    @Test
+    public void testRoundRobin () throws UnknownHostException {
+        StandInProvider p = new StandInProvider(0, -1);
+        for ( int i = 0; i < 300; i++ ) {
+            assertNotNull(p.getChallenge());
+        }
+        for ( DomainController dc : p.getDomainControllers() ) {
+            assertEquals(100, dc.getRequests());
+        }
+        assertEquals(1, p.lookups.get());
+    }
+
+
+    @Test
+    public void testFailingControllerSkipped () throws UnknownHostException {
+        StandInProvider p = new StandInProvider(0, 1);
+        for ( int i = 0; i < 300; i++ ) {
+            NtlmChallenge chal = p.getChallenge();
+            assertTrue(!chal.dc.getHostAddress().equals(this.dcs[ 1 ].getHostAddress()));
+        }
+        DomainController failing = p.getDomainControllers().get(1);
+        assertEquals(1, failing.getFailures());
+        assertEquals(0, failing.getRequests());
+        assertTrue(!failing.isAvailable(System.currentTimeMillis()));
+    }
+
+
+    @Test
+    public void testAllFailing () {
+        StandInProvider p = new StandInProvider(0, -1);
+        p.failAll = true;
+        try {
+            p.getChallenge();
+            fail("Should have failed");
+        }
+        catch ( UnknownHostException e ) {
+            // expected, list should have been refreshed once
+            assertEquals(2, p.lookups.get());
+        }
+    }
+
+
+    @Test
+    public void testConcurrentLoad () throws Exception {
+        final StandInProvider p = new StandInProvider(2, -1);
+        int threads = 32;
+        final int perThread = 100;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Void>> futures = new ArrayList<>();
+            long start = System.nanoTime();
+            for ( int t = 0; t < threads; t++ ) {
+                futures.add(executor.submit(new Callable<Void>() {
+
+                    @Override
+                    public Void call () throws Exception {
+                        for ( int i = 0; i < perThread; i++ ) {
+                            assertNotNull(p.getChallenge());
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for ( Future<Void> f : futures ) {
+                f.get(60, TimeUnit.SECONDS);
+            }
+            long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            log.info(String.format("%d challenges in %d ms, max concurrency %d", threads * perThread, elapsed, p.maxInflight.get()));
+            for ( DomainController dc : p.getDomainControllers() ) {
+                log.info(dc.toString());
+            }
+            // challenges must be obtained in parallel, not one at a time
+            assertTrue(p.maxInflight.get() > 1);
+            long total = 0;
+            for ( DomainController dc : p.getDomainControllers() ) {
+                total += dc.getRequests();
+            }
+            assertEquals(threads * perThread, total);
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private class StandInProvider extends NtlmChallengeProvider {
+
+        private final long latency;
+        private final int failing;
+        volatile boolean failAll;
+        final AtomicInteger lookups = new AtomicInteger();
+        final AtomicInteger inflight = new AtomicInteger();
+        final AtomicInteger maxInflight = new AtomicInteger();
+
+
+        StandInProvider ( long latency, int failing ) {
+            super(SingletonContext.getInstance(), "TESTDOM", 3, 60000, 60000);
+            this.latency = latency;
+            this.failing = failing;
+        }
+
+
+        @Override
+        protected Address[] lookupDomainControllers () {
+            this.lookups.incrementAndGet();
+            return NtlmChallengeProviderTest.this.dcs;
+        }
+
+
+        @Override
+        protected NtlmChallenge interrogate ( Address addr ) throws IOException {
+            int cur = this.inflight.incrementAndGet();
+            try {
+                int max;
+                while ( ( max = this.maxInflight.get() ) < cur && !this.maxInflight.compareAndSet(max, cur) ) {
+                    // retry
+                }
+                if ( this.latency > 0 ) {
+                    Thread.sleep(this.latency);
+                }
+                if ( this.failAll
+                        || ( this.failing >= 0 && addr.getHostAddress().equals(NtlmChallengeProviderTest.this.dcs[ this.failing ].getHostAddress()) ) ) {
+                    throw new IOException("Stand-in DC unavailable " + addr);
+                }
+                return new NtlmChallenge(new byte[8], (UniAddress) addr);
+            }
+            catch ( InterruptedException e ) {
+                throw new IOException(e);
+            }
+            finally {
+                this.inflight.decrementAndGet();
+            }
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * © 2026 agent <agent@local>
+ * 
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package jcifs.tests;
+
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import jcifs.MetricsCollector;
+
+
+/**
+ * Metrics collector keeping simple counters
+ * 
+ * @author agent
+ *
+ */
+public class RecordingMetricsCollector implements MetricsCollector {
+
+    final AtomicInteger inflight = new AtomicInteger();
+    final AtomicInteger maxInflight = new AtomicInteger();
+    final AtomicLong requests = new AtomicLong();
+    final AtomicLong failures = new AtomicLong();
+    final AtomicLong totalNanos = new AtomicLong();
+    final AtomicLong sent = new AtomicLong();
+    final AtomicLong received = new AtomicLong();
+    final AtomicLong starved = new AtomicLong();
+    final ConcurrentMap<String, AtomicLong> commands = new ConcurrentHashMap<>();
+    final ConcurrentMap<String, AtomicLong> retries = new ConcurrentHashMap<>();
+    final ConcurrentMap<String, AtomicLong> hits = new ConcurrentHashMap<>();
+    final ConcurrentMap<String, AtomicLong> misses = new ConcurrentHashMap<>();
+
+
+    @Override
+    public void requestStarted ( String command ) {
+        int cur = this.inflight.incrementAndGet();
+        int max;
+        while ( ( max = this.maxInflight.get() ) < cur && !this.maxInflight.compareAndSet(max, cur) ) {}
+    }
+
+
+    @Override
+    public void requestCompleted ( String command, long durationNanos, boolean success ) {
+        this.inflight.decrementAndGet();
+        this.requests.incrementAndGet();
+        this.totalNanos.addAndGet(durationNanos);
+        if ( !success ) {
+            this.failures.incrementAndGet();
+        }
+        increment(this.commands, command);
+    }
+
+
+    @Override
+    public void bytesSent ( int bytes ) {
+        this.sent.addAndGet(bytes);
+    }
+
+
+    @Override
+    public void bytesReceived ( int bytes ) {
+        this.received.addAndGet(bytes);
+    }
+
+
+    @Override
+    public void creditsStarved ( long waitNanos, boolean acquired ) {
+        this.starved.incrementAndGet();
+    }
+
+
+    @Override
+    public void retried ( String operation ) {
+        increment(this.retries, operation);
+    }
+
+
+    @Override
+    public void cacheAccess ( String cache, boolean hit ) {
+        increment(hit ? this.hits : this.misses, cache);
+    }
+
+
+    long get ( ConcurrentMap<String, AtomicLong> counters, String key ) {
+        AtomicLong c = counters.get(key);
+        return c != null ? c.get() : 0;
+    }
+
+
+    private static void increment ( ConcurrentMap<String, AtomicLong> counters, String key ) {
+        AtomicLong c = counters.get(key);
+        if ( c == null ) {
+            AtomicLong n = new AtomicLong();
+            c = counters.putIfAbsent(key, n);
+            if ( c == null ) {
+                c = n;
+            }
+        }
+        c.incrementAndGet();
+    }
+}
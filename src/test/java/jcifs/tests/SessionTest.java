@@ -28,6 +28,7 @@ import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.UnknownHostException;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Map;
 
 import org.junit.Assert;
@@ -42,9 +43,12 @@ import org.slf4j.LoggerFactory;
 import jcifs.CIFSContext;
 import jcifs.CIFSException;
 import jcifs.Credentials;
+import jcifs.MetricsCollector;
+import jcifs.PrewarmHandle;
 import jcifs.SmbResource;
 import jcifs.SmbTransport;
 import jcifs.config.DelegatingConfiguration;
+import jcifs.context.BaseContext;
 import jcifs.smb.NtStatus;
 import jcifs.smb.NtlmNtHashAuthenticator;
 import jcifs.smb.NtlmPasswordAuthentication;
@@ -53,6 +57,7 @@ import jcifs.smb.NtlmUtil;
 import jcifs.smb.SmbAuthException;
 import jcifs.smb.SmbException;
 import jcifs.smb.SmbFile;
+import jcifs.smb.SmbPrewarmer;
 import jcifs.smb.SmbSessionInternal;
 import jcifs.smb.SmbTransportInternal;
 import jcifs.smb.SmbTreeHandleInternal;
@@ -471,6 +476,88 @@ public class SessionTest extends BaseCIFSTest {
     }
 
 
+    @Test
+    public void testPrewarm () throws IOException {
+        RecordingMetricsCollector m = new RecordingMetricsCollector();
+        CIFSContext ctx = withTestNTLMCredentials(new BaseContext(getNewContext().getConfig(), m));
+        try ( PrewarmHandle h = SmbPrewarmer.prewarm(ctx, Collections.singletonList(getTestShareURL()), 0) ) {
+            assertTrue(h.isWarm());
+            long setups = countSetupRequests(m);
+            assertTrue(setups > 0);
+            try ( SmbResource r = ctx.get(getTestShareURL()) ) {
+                assertTrue(r.exists());
+            }
+            assertTrue(h.refresh());
+            // the established session and tree must have been reused
+            assertEquals(setups, countSetupRequests(m));
+        }
+        finally {
+            ctx.close();
+        }
+    }
+
+
+    private static long countSetupRequests ( RecordingMetricsCollector m ) {
+        long count = 0;
+        for ( String command : m.commands.keySet() ) {
+            if ( command.contains("SessionSetup") || command.contains("TreeConnect") ) {
+                count += m.get(m.commands, command);
+            }
+        }
+        return count;
+    }
+
+
+    @Test
+    public void testKeepAliveEcho () throws IOException, InterruptedException {
+        CIFSContext ctx = getNewContext();
+        ctx = withTestNTLMCredentials(withConfig(ctx, new DelegatingConfiguration(ctx.getConfig()) {
+
+            @Override
+            public int getKeepAliveInterval () {
+                return 100;
+            }
+        }));
+        try ( SmbFile f = new SmbFile(getTestShareURL(), ctx) ) {
+            f.exists();
+            try ( SmbTreeHandleInternal th = (SmbTreeHandleInternal) f.getTreeHandle();
+                  SmbSessionInternal sess = th.getSession().unwrap(SmbSessionInternal.class);
+                  SmbTransportInternal t = (SmbTransportInternal) sess.getTransport() ) {
+                Assume.assumeTrue(t.isSMB2());
+                long deadline = System.currentTimeMillis() + 5000;
+                while ( t.getRoundTripTime() < 0 && System.currentTimeMillis() < deadline ) {
+                    Thread.sleep(50);
+                }
+                assertTrue(t.getRoundTripTime() >= 0);
+                f.exists();
+            }
+        }
+        finally {
+            ctx.close();
+        }
+    }
+
+
+    @Test
+    public void testMetrics () throws IOException {
+        RecordingMetricsCollector m = new RecordingMetricsCollector();
+        CIFSContext ctx = withTestNTLMCredentials(new BaseContext(getNewContext().getConfig(), m));
+        try ( SmbFile f = new SmbFile(getTestShareURL(), ctx) ) {
+            f.exists();
+            f.list();
+        }
+        finally {
+            ctx.close();
+        }
+
+        assertTrue(m.requests.get() > 0);
+        assertEquals(0, m.inflight.get());
+        assertTrue(m.sent.get() > 0);
+        assertTrue(m.received.get() > 0);
+        assertTrue(m.get(m.hits, MetricsCollector.CACHE_BUFFER) > 0);
+    }
+
+
     // this test is meant to test server-side session invalidation behavior
     // and not part of the regular test suite as manual steps are required
     //@Test
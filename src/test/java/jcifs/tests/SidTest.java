@@ -21,14 +21,21 @@ package jcifs.tests;
 import static org.junit.Assert.assertEquals;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.Parameterized;
 import org.junit.runners.Parameterized.Parameters;
 
+import jcifs.CIFSContext;
 import jcifs.smb.SID;
 
 
@@ -115,4 +122,37 @@ public class SidTest extends BaseCIFSTest {
         assertEquals(jcifs.SID.SID_TYPE_USER, s.getType());
     }
 
+
+    @Test
+    public void resolveConcurrent () throws Exception {
+        final String dc = getRequiredProperty(TestProperties.TEST_DOMAIN_DC);
+        final CIFSContext ctx = withTestNTLMCredentials(getContext());
+        final String sid = getRequiredProperty(TestProperties.TEST_USER_SID);
+        ExecutorService exec = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<SID>> futures = new ArrayList<>();
+            for ( int i = 0; i < 32; i++ ) {
+                futures.add(exec.submit(new Callable<SID>() {
+
+                    @Override
+                    public SID call () throws Exception {
+                        SID s = new SID(sid);
+                        ctx.getSIDResolver().resolveSids(ctx, dc, new SID[] {
+                            s
+                        });
+                        return s;
+                    }
+                }));
+            }
+            for ( Future<SID> f : futures ) {
+                SID s = f.get();
+                assertEquals(getTestUser(), s.getAccountName());
+                assertEquals(jcifs.SID.SID_TYPE_USER, s.getType());
+            }
+        }
+        finally {
+            exec.shutdown();
+        }
+    }
+
 }
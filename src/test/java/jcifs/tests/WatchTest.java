@@ -18,7 +18,10 @@
 package jcifs.tests;
 
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -29,10 +32,12 @@ import java.net.UnknownHostException;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
@@ -45,10 +50,14 @@ import org.junit.runners.Parameterized.Parameters;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import jcifs.CIFSContext;
 import jcifs.CIFSException;
 import jcifs.FileNotifyInformation;
 import jcifs.SmbResource;
 import jcifs.SmbWatchHandle;
+import jcifs.SmbWatchListener;
+import jcifs.SmbWatchRegistration;
+import jcifs.smb.SmbDirectoryCache;
 import jcifs.smb.SmbFile;
 
 
@@ -214,6 +223,110 @@ public class WatchTest extends BaseCIFSTest {
     }
 
 
+    @Test
+    public void testContinuousWatch () throws InterruptedException, IOException {
+        final BlockingQueue<FileNotifyInformation> received = new LinkedBlockingQueue<>();
+        SmbWatchListener l = new SmbWatchListener() {
+
+            @Override
+            public void changed ( List<FileNotifyInformation> changes ) {
+                received.addAll(changes);
+            }
+
+
+            @Override
+            public void failed ( CIFSException e ) {
+                log.warn("Watch failed", e);
+            }
+        };
+
+        try ( SmbWatchRegistration w = this.base.watch(FileNotifyInformation.FILE_NOTIFY_CHANGE_FILE_NAME, false, l) ) {
+            Thread.sleep(1000);
+            for ( int i = 0; i < 3; i++ ) {
+                try ( SmbResource cr = new SmbFile(this.base, "created" + i) ) {
+                    cr.createNewFile();
+                }
+            }
+
+            for ( int i = 0; i < 3; i++ ) {
+                FileNotifyInformation fi = received.poll(10, TimeUnit.SECONDS);
+                assertNotNull("Did not recieve notification", fi);
+                assertEquals(FileNotifyInformation.FILE_ACTION_ADDED, fi.getAction());
+                assertEquals("created" + i, fi.getFileName());
+            }
+            assertTrue(w.isActive());
+            w.close();
+            assertFalse(w.isActive());
+        }
+    }
+
+
+    @Test
+    public void testDirectoryCache () throws InterruptedException, IOException {
+        try ( SmbResource existing = new SmbFile(this.base, "existing") ) {
+            existing.createNewFile();
+            try ( SmbDirectoryCache cache = new SmbDirectoryCache(this.base) ) {
+                cache.start();
+                assertEquals(1, cache.listFiles().length);
+                assertNotNull(cache.get("existing"));
+
+                try ( SmbResource cr = new SmbFile(this.base, "created") ) {
+                    cr.createNewFile();
+                    waitForCache(cache, "created", true);
+                    cr.delete();
+                    waitForCache(cache, "created", false);
+                }
+                assertEquals(1, cache.listFiles().length);
+                assertTrue(cache.isValid());
+            }
+        }
+    }
+
+
+    @Test
+    public void testDirectoryCacheModified () throws InterruptedException, IOException {
+        try ( SmbFile existing = new SmbFile(this.base, "existing") ) {
+            existing.createNewFile();
+            try ( SmbDirectoryCache cache = new SmbDirectoryCache(this.base) ) {
+                cache.start();
+                assertEquals(0, cache.get("existing").length());
+
+                // modify through another context, so that the shared metadata is not invalidated locally
+                CIFSContext other = withTestNTLMCredentials(getNewContext());
+                try ( SmbFile f = new SmbFile(existing.getURL().toString(), other);
+                      OutputStream os = f.getOutputStream() ) {
+                    os.write(new byte[] {
+                        1, 2, 3
+                    });
+                }
+                finally {
+                    other.close();
+                }
+
+                for ( int i = 0; i < 100 && cache.get("existing").length() != 3; i++ ) {
+                    Thread.sleep(100);
+                }
+                assertEquals(3, cache.get("existing").length());
+                assertTrue(cache.getUpdateCount() > 0);
+            }
+        }
+    }
+
+
+    private static void waitForCache ( SmbDirectoryCache cache, String name, boolean present ) throws InterruptedException, CIFSException {
+        for ( int i = 0; i < 100; i++ ) {
+            if ( ( cache.get(name) != null ) == present ) {
+                return;
+            }
+            Thread.sleep(100);
+        }
+        if ( present ) {
+            fail("Entry did not show up in cache");
+        }
+        assertNull(cache.get(name));
+    }
+
+
     private void assertNotified ( SmbWatchHandle w, int action, String name, List<FileNotifyInformation> infos )
             throws InterruptedException, ExecutionException, TimeoutException {
         boolean found = checkInResult(action, name, infos);